@@ -284,3 +284,10 @@ UPDATE dealers SET ubication = ST_SetSRID(ST_MakePoint(-70.57000, -33.41500), 43
 UPDATE dealers SET ubication = ST_SetSRID(ST_MakePoint(-71.62400, -33.04400), 4326) WHERE id = 4;
 UPDATE dealers SET ubication = ST_SetSRID(ST_MakePoint(-71.61900, -33.04700), 4326) WHERE id = 5;
 
+
+-- Reconstruir las metricas de las empresas (deliveries, failed_deliveries, total_sales), el ranking de repartidores, las zonas que cruza cada pedido, la empresa mas cercana a cada cliente y los agregados de pedidos
+SELECT reconcile_company_metrics();
+SELECT reconcile_dealer_performance();
+SELECT reconcile_order_coverage_areas();
+SELECT reconcile_client_company_proximity();
+SELECT reconcile_order_rollups();
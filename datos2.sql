@@ -181,3 +181,10 @@ SET estimated_route = ST_MakeLine(d.ubication, c.ubication)
 FROM dealers d, clients c
 WHERE o.dealer_id = d.id AND o.client_id = c.id AND o.dealer_id IS NOT NULL AND o.client_id IS NOT NULL;
 
+
+-- Reconstruir las metricas de las empresas (deliveries, failed_deliveries, total_sales), el ranking de repartidores, las zonas que cruza cada pedido, la empresa mas cercana a cada cliente y los agregados de pedidos
+SELECT reconcile_company_metrics();
+SELECT reconcile_dealer_performance();
+SELECT reconcile_order_coverage_areas();
+SELECT reconcile_client_company_proximity();
+SELECT reconcile_order_rollups();
@@ -145,4 +145,11 @@ SELECT 'Productos', COUNT(*) FROM products UNION ALL
 SELECT 'Órdenes', COUNT(*) FROM orders UNION ALL
 SELECT 'Order_Products', COUNT(*) FROM order_products UNION ALL
 SELECT 'Reportes Emergencia', COUNT(*) FROM emergency_report UNION ALL
-SELECT 'Calificaciones', COUNT(*) FROM ratings;
\ No newline at end of file
+SELECT 'Calificaciones', COUNT(*) FROM ratings;
+
+-- Reconstruir las metricas de las empresas (deliveries, failed_deliveries, total_sales), el ranking de repartidores, las zonas que cruza cada pedido, la empresa mas cercana a cada cliente y los agregados de pedidos
+SELECT reconcile_company_metrics();
+SELECT reconcile_dealer_performance();
+SELECT reconcile_order_coverage_areas();
+SELECT reconcile_client_company_proximity();
+SELECT reconcile_order_rollups();
@@ -0,0 +1,160 @@
+package bdavanzadas.lab1.Controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Prueba de carga de GET /orders/dealer/active-order: muchos repartidores consultando su pedido activo a la vez.
+ * Cada repartidor simulado es un hilo virtual que repite la consulta durante la duración indicada
+ * (opcionalmente con una pausa entre consultas). Al final informa el throughput, los códigos de respuesta
+ * y los percentiles de latencia. Requiere el backend en ejecución y al menos un repartidor registrado.
+ *
+ * Uso (parámetros opcionales clave=valor):
+ * <pre>
+ * java -cp target/benchmarks.jar bdavanzadas.lab1.Controllers.ActiveOrderLoadTest \
+ *     baseUrl=http://localhost:8090 users=dealer1,dealer2 password=pass concurrency=1000 durationSeconds=30 pollIntervalMs=0
+ * </pre>
+ * En lugar de users/password se puede pasar token=... (un JWT de repartidor) para todos los repartidores simulados.
+ */
+public class ActiveOrderLoadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String baseUrl = options.getOrDefault("baseUrl", "http://localhost:8090");
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "1000"));
+        long durationMs = Long.parseLong(options.getOrDefault("durationSeconds", "30")) * 1000;
+        long pollIntervalMs = Long.parseLong(options.getOrDefault("pollIntervalMs", "0"));
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        List<String> tokens = resolveTokens(client, baseUrl, options);
+        URI target = URI.create(baseUrl + "/orders/dealer/active-order");
+
+        Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+        LongAdder errors = new LongAdder();
+        List<LatencyRecorder> recorders = new ArrayList<>(concurrency);
+        long deadline = System.currentTimeMillis() + durationMs;
+
+        System.out.printf("Repartidores simulados: %d, duración: %d s, pausa entre consultas: %d ms%n",
+                concurrency, durationMs / 1000, pollIntervalMs);
+
+        long start = System.nanoTime();
+        try (ExecutorService dealers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                String token = tokens.get(i % tokens.size());
+                LatencyRecorder recorder = new LatencyRecorder();
+                recorders.add(recorder);
+                dealers.submit(() -> {
+                    HttpRequest request = HttpRequest.newBuilder(target)
+                            .header("Authorization", "Bearer " + token)
+                            .timeout(Duration.ofSeconds(30))
+                            .GET()
+                            .build();
+                    while (System.currentTimeMillis() < deadline) {
+                        long t0 = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            recorder.record(System.nanoTime() - t0);
+                            statusCounts.computeIfAbsent(response.statusCode(), s -> new LongAdder()).increment();
+                        } catch (Exception e) {
+                            errors.increment();
+                        }
+                        if (pollIntervalMs > 0) {
+                            Thread.sleep(pollIntervalMs);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        long[] all = recorders.stream().flatMapToLong(r -> Arrays.stream(r.samples, 0, r.count)).sorted().toArray();
+        long total = all.length;
+        System.out.printf("Solicitudes completadas: %d en %.1f s (%.0f solicitudes/s)%n", total, elapsedSeconds, total / elapsedSeconds);
+        System.out.println("Códigos de respuesta: " + new TreeMap<>(statusCounts));
+        System.out.println("Errores de conexión/timeout: " + errors.sum());
+        if (total > 0) {
+            System.out.printf("Latencia (ms): p50=%.1f p95=%.1f p99=%.1f max=%.1f%n",
+                    percentile(all, 0.50), percentile(all, 0.95), percentile(all, 0.99), all[all.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Obtiene los tokens de los repartidores: el token indicado o uno por cada usuario (login en /auth/login).
+     */
+    private static List<String> resolveTokens(HttpClient client, String baseUrl, Map<String, String> options) throws Exception {
+        if (options.containsKey("token")) {
+            return List.of(options.get("token"));
+        }
+        String password = options.getOrDefault("password", "pass");
+        List<String> tokens = new ArrayList<>();
+        for (String username : options.getOrDefault("users", "dealer1").split(",")) {
+            String body = MAPPER.writeValueAsString(Map.of("username", username.trim(), "password", password));
+            HttpRequest login = HttpRequest.newBuilder(URI.create(baseUrl + "/auth/login"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            HttpResponse<String> response = client.send(login, HttpResponse.BodyHandlers.ofString());
+            JsonNode json = MAPPER.readTree(response.body());
+            if (response.statusCode() != 200 || !json.hasNonNull("token")) {
+                throw new IllegalStateException("No se pudo iniciar sesión con " + username + ": " + response.body());
+            }
+            tokens.add(json.get("token").asText());
+        }
+        return tokens;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    /**
+     * Latencias (ns) de un repartidor simulado; lo escribe un solo hilo y se lee al terminar.
+     */
+    private static final class LatencyRecorder {
+        private long[] samples = new long[1024];
+        private int count;
+
+        void record(long nanos) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+        }
+    }
+}
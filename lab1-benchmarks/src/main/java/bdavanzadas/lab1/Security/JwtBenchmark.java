@@ -0,0 +1,56 @@
+package bdavanzadas.lab1.Security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Mide la generación y verificación de tokens con JwtUtil.
+ * validateExtractRoleUserId reproduce el camino anterior del filtro (tres verificaciones de firma por solicitud),
+ * para comparar con parseToken (una sola verificación).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        token = jwtUtil.generateToken("cliente1", "CLIENT", 7L);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken("cliente1", "CLIENT", 7L);
+    }
+
+    @Benchmark
+    public VerifiedToken parseToken() {
+        return jwtUtil.parseToken(token);
+    }
+
+    @Benchmark
+    public void validateExtractRoleUserId(Blackhole blackhole) {
+        blackhole.consume(jwtUtil.validateToken(token));
+        blackhole.consume(jwtUtil.extractRole(token));
+        blackhole.consume(jwtUtil.extractUserId(token));
+    }
+}
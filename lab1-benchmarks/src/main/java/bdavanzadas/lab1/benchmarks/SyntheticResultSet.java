@@ -0,0 +1,97 @@
+package bdavanzadas.lab1.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * ResultSet sintético en memoria para los benchmarks de los row mappers.
+ * Implementa con un proxy los getters por nombre de columna que usan los repositorios
+ * (getInt, getDouble, getFloat, getString, getDate, getObject...), sin necesidad de una base de datos.
+ */
+public final class SyntheticResultSet {
+
+    private SyntheticResultSet() {
+    }
+
+    /**
+     * Crea un ResultSet con las filas dadas. Cada fila es un mapa columna -> valor.
+     * El cursor empieza en la primera fila, para poder pasarlo directamente a un RowMapper;
+     * next() avanza a la siguiente.
+     * @param rows Las filas del resultado
+     * @return El ResultSet sintético
+     */
+    public static ResultSet of(List<Map<String, Object>> rows) {
+        return (ResultSet) Proxy.newProxyInstance(
+                SyntheticResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class},
+                new Handler(rows));
+    }
+
+    private static final class Handler implements InvocationHandler {
+        private final List<Map<String, Object>> rows;
+        private int index;
+        private boolean lastWasNull;
+
+        private Handler(List<Map<String, Object>> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            switch (name) {
+                case "next":
+                    return ++index < rows.size();
+                case "wasNull":
+                    return lastWasNull;
+                case "getRow":
+                    return index + 1;
+                case "close":
+                    return null;
+                case "isClosed":
+                    return false;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "SyntheticResultSet" + rows;
+                default:
+                    break;
+            }
+            if (name.startsWith("get") && args != null && args.length >= 1 && args[0] instanceof String column) {
+                Object value = rows.get(index).get(column);
+                lastWasNull = value == null;
+                return convert(value, method.getReturnType());
+            }
+            throw new UnsupportedOperationException("SyntheticResultSet no soporta " + method);
+        }
+
+        private static Object convert(Object value, Class<?> type) {
+            if (type == int.class) {
+                return value == null ? 0 : ((Number) value).intValue();
+            }
+            if (type == long.class) {
+                return value == null ? 0L : ((Number) value).longValue();
+            }
+            if (type == double.class) {
+                return value == null ? 0.0 : ((Number) value).doubleValue();
+            }
+            if (type == float.class) {
+                return value == null ? 0.0f : ((Number) value).floatValue();
+            }
+            if (type == boolean.class) {
+                return value != null && (Boolean) value;
+            }
+            if (type == String.class) {
+                return value == null ? null : value.toString();
+            }
+            return value; // getObject, getDate, getTimestamp...
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package bdavanzadas.lab1.repositories;
+
+import bdavanzadas.lab1.benchmarks.SyntheticResultSet;
+import bdavanzadas.lab1.entities.GeometryValue;
+import bdavanzadas.lab1.entities.OrdersEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Mide el mapeo de una fila de orders a OrdersEntity (OrdersRepository.ORDERS_ROW_MAPPER),
+ * con y sin dealer asignado, sobre un ResultSet sintético.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrdersRowMapperBenchmark {
+
+    /**
+     * Ruta en EWKB, como la entrega ST_AsEWKB(estimated_route).
+     */
+    private static final byte[] ROUTE_EWKB =
+            GeometryValue.fromWkt("LINESTRING(-70.64827 -33.43727,-70.6495 -33.4401,-70.65 -33.445)").toEwkb();
+
+    private ResultSet withDealer;
+    private ResultSet withoutDealer;
+
+    @Setup
+    public void setUp() {
+        withDealer = SyntheticResultSet.of(List.of(row(42)));
+        withoutDealer = SyntheticResultSet.of(List.of(row(null)));
+    }
+
+    @Benchmark
+    public OrdersEntity mapRowWithDealer() throws SQLException {
+        return OrdersRepository.ORDERS_ROW_MAPPER.mapRow(withDealer, 0);
+    }
+
+    @Benchmark
+    public OrdersEntity mapRowWithoutDealer() throws SQLException {
+        return OrdersRepository.ORDERS_ROW_MAPPER.mapRow(withoutDealer, 0);
+    }
+
+    private static Map<String, Object> row(Integer dealerId) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", 1001);
+        row.put("order_date", Date.valueOf("2025-05-01"));
+        row.put("delivery_date", Date.valueOf("2025-05-02"));
+        row.put("status", "ENTREGADO");
+        row.put("client_id", 7);
+        row.put("dealer_id", dealerId);
+        row.put("total_price", 15990.0);
+        row.put("estimated_route", ROUTE_EWKB);
+        row.put("version", 3);
+        return row;
+    }
+}
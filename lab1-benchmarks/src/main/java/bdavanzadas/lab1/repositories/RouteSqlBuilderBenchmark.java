@@ -0,0 +1,55 @@
+package bdavanzadas.lab1.repositories;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Mide la construcción de la sentencia y los parámetros de OrdersRepository.updateEstimatedRouteFromPoints
+ * para distintas cantidades de puntos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteSqlBuilderBenchmark {
+
+    @Param({"2", "10", "100"})
+    private int pointCount;
+
+    private List<Map<String, Double>> points;
+
+    @Setup
+    public void setUp() {
+        points = new ArrayList<>(pointCount);
+        for (int i = 0; i < pointCount; i++) {
+            points.add(Map.of("longitude", -70.65 + i * 0.001, "latitude", -33.44 - i * 0.001));
+        }
+    }
+
+    @Benchmark
+    public String buildSql() {
+        return OrdersRepository.buildRouteFromPointsSql(pointCount);
+    }
+
+    @Benchmark
+    public Object[] buildArgs() {
+        return OrdersRepository.routeFromPointsArgs(1001, points);
+    }
+}
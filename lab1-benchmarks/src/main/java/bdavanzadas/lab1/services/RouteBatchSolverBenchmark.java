@@ -0,0 +1,55 @@
+package bdavanzadas.lab1.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Mide el orden de paradas de un lote de reparto (RouteBatchSolver: vecino más cercano y 2-opt).
+ * Cada pedido agrega un retiro y una entrega, de modo que orders=10 es un lote de 20 paradas.
+ * Los retiros quedan en un radio de ~1,5 km y las entregas en uno de ~5 km, como en DealerBatchService.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteBatchSolverBenchmark {
+
+    @Param({"10", "20"})
+    private int orders;
+
+    private double[] start;
+    private double[][] pickups;
+    private double[][] dropoffs;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        start = new double[]{-70.6483, -33.4372};
+        pickups = new double[orders][];
+        dropoffs = new double[orders][];
+        for (int i = 0; i < orders; i++) {
+            pickups[i] = new double[]{-70.60 + (random.nextDouble() - 0.5) * 0.03, -33.42 + (random.nextDouble() - 0.5) * 0.03};
+            dropoffs[i] = new double[]{-70.57 + (random.nextDouble() - 0.5) * 0.1, -33.40 + (random.nextDouble() - 0.5) * 0.1};
+        }
+    }
+
+    @Benchmark
+    public RouteBatchSolver.Solution solve() {
+        return RouteBatchSolver.solve(start, pickups, dropoffs);
+    }
+}
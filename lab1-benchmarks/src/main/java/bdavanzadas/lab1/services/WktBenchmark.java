@@ -0,0 +1,61 @@
+package bdavanzadas.lab1.services;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Mide la validación de ubicaciones WKT que hacen los servicios
+ * (DealerService.WKT_PATTERN y EmergencyReportService.isValidWktPoint)
+ * y el parseo de WKT con JTS.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WktBenchmark {
+
+    private final String point = "POINT(-70.64827 -33.43727)";
+    private final String invalidPoint = "POINT(-70.64827,-33.43727)";
+    private final String lineString = "LINESTRING(-70.64827 -33.43727,-70.6495 -33.4401,-70.65 -33.445,-70.655 -33.447)";
+    private final WKTReader reader = new WKTReader();
+
+    @Benchmark
+    public boolean dealerPatternValid() {
+        return DealerService.WKT_PATTERN.matcher(point).matches();
+    }
+
+    @Benchmark
+    public boolean dealerPatternInvalid() {
+        return DealerService.WKT_PATTERN.matcher(invalidPoint).matches();
+    }
+
+    @Benchmark
+    public boolean emergencyIsValidWktPoint() {
+        return EmergencyReportService.isValidWktPoint(point);
+    }
+
+    @Benchmark
+    public Geometry parsePoint() throws ParseException {
+        return reader.read(point);
+    }
+
+    @Benchmark
+    public Geometry parseLineString() throws ParseException {
+        return reader.read(lineString);
+    }
+}
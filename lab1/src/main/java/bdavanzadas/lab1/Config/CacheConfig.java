@@ -0,0 +1,65 @@
+package bdavanzadas.lab1.Config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+
+/**
+ * Configuración del cache de las lecturas del catálogo (productos, categorías, métodos de pago por empresa
+ * y áreas de cobertura), que se consultan en cada carga de la tienda y cambian poco.
+ * Los caches se invalidan desde los servicios que escriben esos datos (@CacheEvict) y, como el administrador
+ * de caches es transaccional, la invalidación se aplica al confirmar la transacción y no antes.
+ * Además, las respuestas del catálogo llevan ETag para que el frontend reciba 304 si no cambiaron.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /** Todos los productos (ProductService.getAllProducts). */
+    public static final String PRODUCTS = "products";
+
+    /** Productos ordenados por stock (ProductService.getProductsByStock). */
+    public static final String PRODUCTS_BY_STOCK = "productsByStock";
+
+    /** Productos por categoría (ProductService.getProductsByCategory). */
+    public static final String PRODUCTS_BY_CATEGORY = "productsByCategory";
+
+    /** Categorías de productos (ProductService.findallCategories). */
+    public static final String PRODUCT_CATEGORIES = "productCategories";
+
+    /** Métodos de pago por empresa (PaymentMethodService.getPaymentMethodsByCompanyId). */
+    public static final String COMPANY_PAYMENT_METHODS = "companyPaymentMethods";
+
+    /** Áreas de cobertura (CoverageAreaService.getAllCoverageAreas). */
+    public static final String COVERAGE_AREAS = "coverageAreas";
+
+    /**
+     * Administrador de caches Caffeine, con tamaño máximo y expiración definidos por "catalog.cache.spec".
+     * Las estadísticas (recordStats) quedan disponibles en las métricas cache.* de actuator.
+     */
+    @Bean
+    public CacheManager cacheManager(@Value("${catalog.cache.spec:maximumSize=1000,expireAfterWrite=10m,recordStats}") String spec) {
+        CaffeineCacheManager caffeine = new CaffeineCacheManager(
+                PRODUCTS, PRODUCTS_BY_STOCK, PRODUCTS_BY_CATEGORY, PRODUCT_CATEGORIES, COMPANY_PAYMENT_METHODS, COVERAGE_AREAS);
+        caffeine.setCacheSpecification(spec);
+        return new TransactionAwareCacheManagerProxy(caffeine);
+    }
+
+    /**
+     * Filtro que agrega ETag a las respuestas del catálogo y responde 304 si coincide con If-None-Match.
+     */
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> catalogEtagFilter() {
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration = new FilterRegistrationBean<>(new ShallowEtagHeaderFilter());
+        registration.addUrlPatterns("/products/*", "/paymentmethod/*", "/coverage-areas/*");
+        registration.setName("catalogEtagFilter");
+        return registration;
+    }
+}
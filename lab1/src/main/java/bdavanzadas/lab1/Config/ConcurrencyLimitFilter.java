@@ -0,0 +1,155 @@
+package bdavanzadas.lab1.Config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Limita la cantidad de solicitudes que se atienden al mismo tiempo.
+ * Con hilos virtuales Tomcat acepta miles de solicitudes simultáneas, pero todas terminan esperando
+ * una de las pocas conexiones del pool de HikariCP. Este filtro deja pasar tantas solicitudes como
+ * conexiones tienen los pools (o el valor configurado) y el resto espera en una cola justa, que es barata
+ * para un hilo virtual. Si la espera supera el tiempo máximo se responde 503 con Retry-After.
+ * Los endpoints de actuator no se limitan, para que el monitoreo siga respondiendo bajo carga.
+ * Los endpoints de streaming (/stream y /geojson) mantienen su conexión durante toda la respuesta,
+ * por lo que usan permisos propios, descontados del límite general: así unas pocas descargas largas
+ * no dejan sin conexión a las solicitudes cortas.
+ * El filtro se ejecuta después de Spring Security, de modo que las solicitudes rechazadas por
+ * autenticación no ocupan un permiso.
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER + 1)
+@ConditionalOnProperty(name = "web.concurrency.limit.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    /**
+     * Pools de conexiones de la aplicación (el primario y, si está activa, la réplica de lectura).
+     */
+    @Autowired
+    private List<HikariDataSource> pools;
+
+    /**
+     * Registro de métricas (cola y rechazos del limitador).
+     */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Solicitudes simultáneas permitidas; 0 usa la suma de los tamaños máximos de los pools de conexiones.
+     */
+    @Value("${web.concurrency.limit.max-concurrent:0}")
+    private int maxConcurrent;
+
+    /**
+     * Descargas en streaming simultáneas permitidas; se descuentan del límite general.
+     */
+    @Value("${web.concurrency.limit.streaming-max-concurrent:2}")
+    private int streamingMaxConcurrent;
+
+    /**
+     * Tiempo máximo de espera en la cola antes de responder 503 (ms).
+     */
+    @Value("${web.concurrency.limit.queue-timeout-ms:2000}")
+    private long queueTimeoutMs;
+
+    private Semaphore permits;
+
+    private Semaphore streamingPermits;
+
+    private Counter rejected;
+
+    @PostConstruct
+    void init() {
+        int limit = maxConcurrent > 0 ? maxConcurrent : poolSize();
+        // Al menos un permiso para cada tipo de solicitud, aunque el pool sea muy chico
+        int streamingLimit = Math.max(1, Math.min(streamingMaxConcurrent, limit - 1));
+        permits = register("request", Math.max(1, limit - streamingLimit));
+        streamingPermits = register("stream", streamingLimit);
+        rejected = Counter.builder("lab1.web.concurrency.rejected")
+                .description("Solicitudes rechazadas con 503 por superar el tiempo de espera del limitador")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith(request.getContextPath() + "/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Semaphore semaphore = isStreaming(request) ? streamingPermits : permits;
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            rejected.increment();
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Servidor ocupado, intente nuevamente");
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Crea un semáforo justo con sus métricas de cola y límite, etiquetadas con el tipo de solicitud.
+     */
+    private Semaphore register(String type, int limit) {
+        Semaphore semaphore = new Semaphore(limit, true);
+        Gauge.builder("lab1.web.concurrency.queued", semaphore, Semaphore::getQueueLength)
+                .tag("type", type)
+                .description("Solicitudes esperando un permiso del limitador de concurrencia")
+                .register(meterRegistry);
+        Gauge.builder("lab1.web.concurrency.limit", () -> limit)
+                .tag("type", type)
+                .description("Solicitudes simultáneas permitidas por el limitador de concurrencia")
+                .register(meterRegistry);
+        return semaphore;
+    }
+
+    /**
+     * Indica si la solicitud es una descarga en streaming (NDJSON o GeoJSON) que mantiene la conexión abierta.
+     */
+    static boolean isStreaming(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return uri.endsWith("/stream") || uri.endsWith("/geojson");
+    }
+
+    /**
+     * Suma de los tamaños máximos de los pools de conexiones (10, el valor por defecto de HikariCP, si no hay pools Hikari).
+     */
+    private int poolSize() {
+        int size = pools.stream().mapToInt(HikariDataSource::getMaximumPoolSize).sum();
+        return size > 0 ? size : 10;
+    }
+}
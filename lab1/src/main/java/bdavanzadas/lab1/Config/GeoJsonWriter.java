@@ -0,0 +1,90 @@
+package bdavanzadas.lab1.Config;
+
+import bdavanzadas.lab1.dtos.MapFeatureDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Consumer;
+
+
+/**
+ * Escribe capas del mapa como un FeatureCollection de GeoJSON directamente en la respuesta HTTP.
+ * Cada Feature se escribe con el generador de Jackson en cuanto se recibe (por ejemplo, desde el cursor
+ * de una consulta), sin acumular la colección en memoria ni pasar por texto WKT.
+ * Los Features quedan en el orden en que llegan: las consultas no los ordenan, para que el primero se envíe
+ * sin esperar a leer toda la vista. Si la escritura falla a mitad de camino, el JSON queda incompleto
+ * (no se cierra la colección), de modo que el cliente no lo confunda con una respuesta completa.
+ */
+@Component
+public class GeoJsonWriter {
+
+    public static final String MEDIA_TYPE = "application/geo+json";
+
+    /**
+     * ObjectMapper de la aplicación, para serializar las propiedades igual que el resto de los endpoints.
+     */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Escribe en la respuesta un FeatureCollection con todos los elementos que entregue el productor.
+     * @param response La respuesta HTTP
+     * @param decimals Decimales de las coordenadas, o GeometryJsonConfig.FULL_PRECISION para no redondearlas
+     * @param producer Recibe el consumidor al que debe pasar cada elemento (por ejemplo, un método de streaming de un repositorio)
+     */
+    public void write(HttpServletResponse response, int decimals, Consumer<Consumer<MapFeatureDTO>> producer) throws IOException {
+        response.setContentType(MEDIA_TYPE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        try (JsonGenerator generator = objectMapper.createGenerator(response.getOutputStream())) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Al cerrar el generador tras un error no se agregan los ] y } que faltan
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            generator.writeStartObject();
+            generator.writeStringField("type", "FeatureCollection");
+            generator.writeArrayFieldStart("features");
+            try {
+                producer.accept(feature -> {
+                    try {
+                        writeFeature(generator, feature, decimals);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause(); // El cliente cerró la conexión u otro error de escritura
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+
+    private static void writeFeature(JsonGenerator generator, MapFeatureDTO feature, int decimals) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("type", "Feature");
+        generator.writeNumberField("id", feature.getId());
+        generator.writeFieldName("geometry");
+        if (feature.getGeometry() != null) {
+            GeometryJsonConfig.writeGeoJson(feature.getGeometry().getGeometry(), generator, decimals);
+        } else {
+            generator.writeNull();
+        }
+        generator.writeObjectFieldStart("properties");
+        Map<String, Object> properties = feature.getProperties();
+        if (properties != null) {
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                generator.writeObjectField(property.getKey(), property.getValue());
+            }
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,179 @@
+package bdavanzadas.lab1.Config;
+
+import bdavanzadas.lab1.entities.GeometryValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+
+
+/**
+ * Serialización JSON de las geometrías (GeometryValue).
+ * Por defecto una geometría se escribe como texto WKT, igual que antes, pero el cliente puede pedir otro
+ * formato con el parámetro geometryFormat de la solicitud:
+ * - geometryFormat=wkt (por defecto): texto WKT,
+ * - geometryFormat=geojson: objeto GeoJSON, escrito directamente desde las coordenadas,
+ * - geometryFormat=none: null, sin decodificar la geometría (útil en listados que no dibujan las rutas).
+ * Al leer JSON, las geometrías se reciben como texto WKT.
+ */
+@Configuration
+public class GeometryJsonConfig {
+
+    public static final String FORMAT_PARAMETER = "geometryFormat";
+
+    /**
+     * Indica que las coordenadas GeoJSON se escriben sin redondear.
+     */
+    public static final int FULL_PRECISION = -1;
+
+    /**
+     * Módulo de Jackson con el serializador y el deserializador de GeometryValue.
+     * Spring Boot lo registra en el ObjectMapper de la aplicación.
+     */
+    @Bean
+    public Module geometryModule() {
+        SimpleModule module = new SimpleModule("GeometryModule");
+        module.addSerializer(GeometryValue.class, new GeometryValueSerializer());
+        module.addDeserializer(GeometryValue.class, new GeometryValueDeserializer());
+        return module;
+    }
+
+    /**
+     * Formato pedido en la solicitud en curso (wkt si no hay solicitud o no se indicó).
+     */
+    static String requestedFormat() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            String format = servletAttributes.getRequest().getParameter(FORMAT_PARAMETER);
+            if (format != null) {
+                return format.toLowerCase();
+            }
+        }
+        return "wkt";
+    }
+
+    static class GeometryValueSerializer extends JsonSerializer<GeometryValue> {
+
+        @Override
+        public void serialize(GeometryValue value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            switch (requestedFormat()) {
+                case "none" -> gen.writeNull();
+                case "geojson" -> writeGeoJson(value.getGeometry(), gen, FULL_PRECISION);
+                default -> gen.writeString(value.toWkt());
+            }
+        }
+    }
+
+    static class GeometryValueDeserializer extends JsonDeserializer<GeometryValue> {
+
+        @Override
+        public GeometryValue deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() != JsonToken.VALUE_STRING) {
+                return (GeometryValue) ctxt.handleUnexpectedToken(GeometryValue.class, p);
+            }
+            String wkt = p.getText();
+            if (wkt.isBlank()) {
+                return null;
+            }
+            try {
+                return GeometryValue.fromWkt(wkt);
+            } catch (IllegalArgumentException e) {
+                return (GeometryValue) ctxt.handleWeirdStringValue(GeometryValue.class, wkt, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Escribe una geometría como objeto GeoJSON (RFC 7946).
+     * @param decimals Decimales de las coordenadas, o FULL_PRECISION para no redondearlas
+     */
+    static void writeGeoJson(Geometry geometry, JsonGenerator gen, int decimals) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", geometry.getGeometryType());
+        if (geometry instanceof GeometryCollection collection
+                && !(geometry instanceof MultiPoint || geometry instanceof MultiLineString || geometry instanceof MultiPolygon)) {
+            gen.writeArrayFieldStart("geometries");
+            for (int i = 0; i < collection.getNumGeometries(); i++) {
+                writeGeoJson(collection.getGeometryN(i), gen, decimals);
+            }
+            gen.writeEndArray();
+        } else {
+            gen.writeFieldName("coordinates");
+            writeCoordinates(geometry, gen, decimals);
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeCoordinates(Geometry geometry, JsonGenerator gen, int decimals) throws IOException {
+        if (geometry instanceof Point point) {
+            if (point.isEmpty()) {
+                gen.writeStartArray();
+                gen.writeEndArray();
+            } else {
+                writePosition(point.getCoordinate(), gen, decimals);
+            }
+        } else if (geometry instanceof LineString line) {
+            writePositions(line.getCoordinates(), gen, decimals);
+        } else if (geometry instanceof Polygon polygon) {
+            gen.writeStartArray();
+            if (!polygon.isEmpty()) {
+                writePositions(polygon.getExteriorRing().getCoordinates(), gen, decimals);
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    writePositions(polygon.getInteriorRingN(i).getCoordinates(), gen, decimals);
+                }
+            }
+            gen.writeEndArray();
+        } else {
+            // MultiPoint, MultiLineString o MultiPolygon: un arreglo con las coordenadas de cada parte
+            gen.writeStartArray();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(geometry.getGeometryN(i), gen, decimals);
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    private static void writePositions(Coordinate[] coordinates, JsonGenerator gen, int decimals) throws IOException {
+        gen.writeStartArray();
+        for (Coordinate coordinate : coordinates) {
+            writePosition(coordinate, gen, decimals);
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writePosition(Coordinate coordinate, JsonGenerator gen, int decimals) throws IOException {
+        gen.writeStartArray();
+        gen.writeNumber(round(coordinate.getX(), decimals));
+        gen.writeNumber(round(coordinate.getY(), decimals));
+        gen.writeEndArray();
+    }
+
+    private static double round(double value, int decimals) {
+        if (decimals == FULL_PRECISION) {
+            return value;
+        }
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+}
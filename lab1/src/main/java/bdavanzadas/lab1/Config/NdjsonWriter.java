@@ -0,0 +1,61 @@
+package bdavanzadas.lab1.Config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+
+/**
+ * Escribe respuestas en formato NDJSON (un objeto JSON por línea) directamente en la respuesta HTTP.
+ * Cada elemento se serializa en cuanto se recibe, sin acumular la lista completa en memoria.
+ */
+@Component
+public class NdjsonWriter {
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    /**
+     * ObjectMapper de la aplicación, para serializar igual que el resto de los endpoints.
+     */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Escribe en la respuesta todos los elementos que entregue el productor.
+     * @param response La respuesta HTTP
+     * @param producer Recibe el consumidor al que debe pasar cada elemento (por ejemplo, un método streamAll de un repositorio)
+     */
+    public <T> void write(HttpServletResponse response, Consumer<Consumer<T>> producer) throws IOException {
+        response.setContentType(MEDIA_TYPE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        // Sin flush por elemento: el buffer de la respuesta se vacía solo al llenarse
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            try {
+                producer.accept(item -> {
+                    try {
+                        writer.writeValue(generator, item);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause(); // El cliente cerró la conexión u otro error de escritura
+            }
+            generator.flush();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package bdavanzadas.lab1.Config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+
+/**
+ * Configuración de la réplica de lectura (se activa con replica.datasource.enabled=true).
+ * Define dos pools de conexiones, cada uno con su propio tamaño:
+ * - el primario, con las propiedades spring.datasource.* (spring.datasource.hikari.* para el pool),
+ * - la réplica, con las propiedades replica.datasource.* (replica.datasource.hikari.* para el pool).
+ * El DataSource de la aplicación (JdbcTemplate, transacciones y Flyway) envía las transacciones de solo
+ * lectura a la réplica y todo lo demás al primario; si la réplica se atrasa más de
+ * replica.datasource.max-lag-ms, las lecturas vuelven al primario.
+ * Sin esta propiedad se mantiene el DataSource único autoconfigurado por Spring Boot.
+ */
+@Configuration
+@ConditionalOnProperty(name = "replica.datasource.enabled", havingValue = "true")
+public class ReadReplicaDataSourceConfig {
+
+    /**
+     * Pool del primario (escrituras y transacciones que no son de solo lectura).
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    /**
+     * Pool de la réplica (transacciones de solo lectura). Sus conexiones se abren en modo de solo lectura.
+     */
+    @Bean
+    @ConfigurationProperties("replica.datasource.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${replica.datasource.url}") String url,
+                                              @Value("${replica.datasource.username:${spring.datasource.username}}") String username,
+                                              @Value("${replica.datasource.password:${spring.datasource.password}}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /**
+     * Monitor del retraso de la réplica.
+     */
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("replicaDataSource") DataSource replica,
+                                               @Value("${replica.datasource.max-lag-ms:5000}") long maxLagMs,
+                                               MeterRegistry meterRegistry) {
+        return new ReplicaLagMonitor(replica, maxLagMs, meterRegistry);
+    }
+
+    /**
+     * DataSource de la aplicación. El proxy perezoso pide la conexión en la primera sentencia,
+     * cuando ya se sabe si la transacción es de solo lectura.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 ReplicaLagMonitor replicaLagMonitor) {
+        ReadReplicaRoutingDataSource routing = new ReadReplicaRoutingDataSource(primary, replica, replicaLagMonitor);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
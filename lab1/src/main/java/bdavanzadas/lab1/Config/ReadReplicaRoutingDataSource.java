@@ -0,0 +1,37 @@
+package bdavanzadas.lab1.Config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+
+/**
+ * DataSource que elige el pool según la transacción en curso:
+ * las transacciones de solo lectura (@Transactional(readOnly = true)) usan la réplica, siempre que
+ * su retraso esté bajo el límite, y todo lo demás usa el primario.
+ * Debe usarse detrás de un LazyConnectionDataSourceProxy, para que la conexión se pida cuando la
+ * transacción ya está marcada como de solo lectura.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private final ReplicaLagMonitor lagMonitor;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor lagMonitor) {
+        this.lagMonitor = lagMonitor;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && lagMonitor.isReplicaUsable()) {
+            return REPLICA;
+        }
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,72 @@
+package bdavanzadas.lab1.Config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+
+/**
+ * Mide periódicamente el retraso de la réplica de lectura respecto del primario.
+ * Si el retraso supera el máximo configurado, o la réplica no responde, las lecturas vuelven al
+ * primario hasta la siguiente medición en la que la réplica esté al día.
+ * Una instancia que no está en recuperación (por ejemplo, una segunda base de datos local sin
+ * replicación) se considera sin retraso.
+ */
+public class ReplicaLagMonitor {
+
+    /**
+     * Retraso de la réplica en milisegundos. Es 0 si no está en recuperación o si ya aplicó todo lo recibido
+     * (en un primario sin escrituras, el tiempo desde la última transacción aplicada no es retraso).
+     */
+    private static final String LAG_SQL = """
+            SELECT CASE
+                       WHEN NOT pg_is_in_recovery() THEN 0
+                       WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                       ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0)
+                   END
+            """;
+
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final long maxLagMs;
+
+    private volatile double lagMs = Double.NaN;
+    private volatile boolean replicaUsable;
+
+    public ReplicaLagMonitor(DataSource replica, long maxLagMs, MeterRegistry meterRegistry) {
+        this.replicaJdbcTemplate = new JdbcTemplate(replica);
+        this.replicaJdbcTemplate.setQueryTimeout(5);
+        this.maxLagMs = maxLagMs;
+        Gauge.builder("lab1.datasource.replica.lag", this, m -> m.lagMs)
+                .description("Retraso de la réplica de lectura (ms); NaN si no responde")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("lab1.datasource.replica.usable", this, m -> m.replicaUsable ? 1 : 0)
+                .description("1 si las lecturas se envían a la réplica, 0 si vuelven al primario")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Indica si las transacciones de solo lectura pueden usar la réplica.
+     */
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    /**
+     * Mide el retraso de la réplica y actualiza si puede usarse.
+     */
+    @Scheduled(fixedDelayString = "${replica.datasource.lag-check-interval-ms:5000}")
+    public void check() {
+        try {
+            Double lag = replicaJdbcTemplate.queryForObject(LAG_SQL, Double.class);
+            lagMs = lag != null ? lag : 0;
+            replicaUsable = lagMs <= maxLagMs;
+        } catch (Exception e) {
+            lagMs = Double.NaN;
+            replicaUsable = false;
+        }
+    }
+}
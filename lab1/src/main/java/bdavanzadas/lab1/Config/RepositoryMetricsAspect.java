@@ -0,0 +1,102 @@
+package bdavanzadas.lab1.Config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+
+/**
+ * Aspecto que mide cada llamada pública a los repositorios (bdavanzadas.lab1.repositories).
+ * Publica, etiquetadas por repositorio y método (por ejemplo OrdersRepository.findOrdersCrossingMoreThanTwoCoverageAreas):
+ * - lab1.repository.query: latencia (con histograma), con el resultado success o error
+ * - lab1.repository.rows: cantidad de filas devueltas (listas, mapas y lotes; 0 o 1 para un único objeto)
+ * - lab1.repository.errors: cantidad de errores por tipo de excepción
+ * Las métricas se exponen en /actuator/prometheus junto con las del pool HikariCP.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Around("execution(public * bdavanzadas.lab1.repositories..*(..))")
+    public Object timeQuery(ProceedingJoinPoint joinPoint) throws Throwable {
+        String repository = joinPoint.getSignature().getDeclaringType().getSimpleName();
+        String method = joinPoint.getSignature().getName();
+        String query = repository + "." + method;
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            Object result = joinPoint.proceed();
+            sample.stop(timer(query, repository, method, "success"));
+            Long rows = rowCount(((MethodSignature) joinPoint.getSignature()).getReturnType(), result);
+            if (rows != null) {
+                DistributionSummary.builder("lab1.repository.rows")
+                        .description("Filas devueltas o modificadas por consulta de repositorio")
+                        .tag("query", query)
+                        .tag("repository", repository)
+                        .tag("method", method)
+                        .register(meterRegistry)
+                        .record(rows);
+            }
+            return result;
+        } catch (Throwable e) {
+            sample.stop(timer(query, repository, method, "error"));
+            Counter.builder("lab1.repository.errors")
+                    .description("Errores en consultas de repositorio")
+                    .tag("query", query)
+                    .tag("repository", repository)
+                    .tag("method", method)
+                    .tag("exception", e.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .increment();
+            throw e;
+        }
+    }
+
+    private Timer timer(String query, String repository, String method, String outcome) {
+        return Timer.builder("lab1.repository.query")
+                .description("Latencia de las consultas de repositorio")
+                .tag("query", query)
+                .tag("repository", repository)
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cantidad de filas de un resultado: tamaño de la colección, del mapa o del lote,
+     * o 0/1 para un único objeto. Null si el método es void (no hay nada que medir).
+     */
+    private static Long rowCount(Class<?> returnType, Object result) {
+        if (returnType == void.class) {
+            return null;
+        }
+        if (result instanceof Collection<?> collection) {
+            return (long) collection.size();
+        }
+        if (result instanceof Map<?, ?> map) {
+            return (long) map.size();
+        }
+        if (result instanceof int[] batch) {
+            return (long) batch.length;
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1L : 0L;
+        }
+        return result == null ? 0L : 1L;
+    }
+}
@@ -1,6 +1,9 @@
 package bdavanzadas.lab1.Config;
 
-import bdavanzadas.lab1.Security.JwtUtil;
+import bdavanzadas.lab1.Security.ActorIdentityCache;
+import bdavanzadas.lab1.Security.AuthenticatedUser;
+import bdavanzadas.lab1.Security.JwtClaimsCache;
+import bdavanzadas.lab1.Security.VerifiedToken;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -32,11 +35,15 @@ import java.util.Collections;
 public class SecurityConfig {
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private JwtClaimsCache jwtClaimsCache;
+
+    @Autowired
+    private ActorIdentityCache actorIdentityCache;
 
     /**
      - Define reglas de autorización:
      - Permite acceso público a rutas `/auth/**`, `/clients/**`, etc.
+     - Permite acceso público a `/actuator/health` y `/actuator/prometheus`
      - Restringe acceso a `/companies/**` a usuarios con roles ADMIN, CLIENT o DEALER
      - Requiere autenticación para otras rutas
      */
@@ -45,6 +52,8 @@ public class SecurityConfig {
         http.csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/auth/**", "/clients/**", "/orders/**","/companies/**","/paymentmethod/**","/products/**", "/dealers/**","/order-details/**","/ratings/**","/coverage-areas/**","/emergencies/**").permitAll()
+                        // Salud y métricas para el monitoreo (Prometheus); el resto de actuator requiere autenticación
+                        .requestMatchers("/actuator/health/**", "/actuator/prometheus").permitAll()
                         .requestMatchers("/companies/**").hasAnyRole("ADMIN", "CLIENT", "DEALER")
                         .anyRequest().authenticated()
                 )
@@ -84,14 +93,16 @@ public class SecurityConfig {
                 if (authHeader != null && authHeader.startsWith("Bearer ")) {
                     String token = authHeader.substring(7); // Extraer el token después de "Bearer "
 
-                    // Validar el token
-                    if (jwtUtil.validateToken(token)) {
-                        // Extraer el rol y el ID del usuario del token
-                        String role = jwtUtil.extractRole(token);
-                        Long userId = jwtUtil.extractUserId(token); // Extraer el ID del usuario
+                    // Validar el token (se parsea una sola vez y los claims quedan en cache)
+                    VerifiedToken verified = jwtClaimsCache.resolve(token);
+                    if (verified != null) {
+                        String role = verified.getRole();
+
+                        // Resolver el cliente o repartidor asociado (queda en cache por usuario)
+                        AuthenticatedUser principal = actorIdentityCache.resolve(verified);
 
-                        // Configurar el contexto de seguridad con el ID del usuario y el rol
-                        var auth = new UsernamePasswordAuthenticationToken(userId, null, Collections.singletonList(() -> role));
+                        // Configurar el contexto de seguridad con el usuario autenticado y el rol
+                        var auth = new UsernamePasswordAuthenticationToken(principal, null, Collections.singletonList(() -> role));
                         SecurityContextHolder.getContext().setAuthentication(auth);
                     }
                 }
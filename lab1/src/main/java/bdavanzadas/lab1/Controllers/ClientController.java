@@ -1,12 +1,17 @@
 package bdavanzadas.lab1.Controllers;
 
 
+import bdavanzadas.lab1.Config.NdjsonWriter;
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
 import bdavanzadas.lab1.entities.ClientEntity;
 import bdavanzadas.lab1.services.ClientService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +29,12 @@ public class ClientController {
 
     private final ClientService clientService;
 
+    /**
+     * Escritor de respuestas NDJSON para los endpoints de streaming.
+     */
+    @Autowired
+    private NdjsonWriter ndjsonWriter;
+
     public ClientController(ClientService clientService) {
         this.clientService = clientService;
     }
@@ -39,6 +50,36 @@ public class ClientController {
         return new ResponseEntity<>(clients, HttpStatus.OK);
     }
 
+
+    /**
+     * Endpoint para obtener los clientes paginados por cursor.
+     * Devuelve hasta "limit" clientes con ID mayor a "afterId" y el cursor de la siguiente página.
+     *
+     * @param "afterId" ID desde el cual paginar (0 para la primera página)
+     * @param "limit" Cantidad de elementos por página (máximo 1000)
+     * @return Página de clientes, o BAD REQUEST si los parámetros no son válidos
+     */
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPageDTO<ClientEntity>> getClientsPage(
+            @RequestParam(defaultValue = "0") int afterId,
+            @RequestParam(defaultValue = "" + KeysetPageDTO.DEFAULT_LIMIT) int limit) {
+        try {
+            return ResponseEntity.ok(clientService.getClientsPage(afterId, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+
+    /**
+     * Endpoint para obtener todos los clientes en formato NDJSON (un objeto JSON por línea).
+     * Las filas se escriben a medida que se leen de la base de datos, con memoria constante.
+     */
+    @GetMapping(value = "/stream", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamClients(HttpServletResponse response) throws IOException {
+        ndjsonWriter.write(response, clientService::streamAllClients);
+    }
+
     /**
      * Obtiene un cliente por su ID.
      * @param "id" ID del cliente
@@ -155,4 +196,35 @@ public class ClientController {
         List<ClientEntity> clients = clientService.getClientsBeyond5KmFromCompanies();
         return ResponseEntity.ok(clients);
     }
+
+    /**
+     * Obtiene los clientes ubicados a mas de "meters" metros de la empresa mas cercana
+     * @param "meters" Distancia minima en metros (por defecto 5000)
+     * @return Lista de clientes, o BAD REQUEST si la distancia no es valida
+     */
+    @GetMapping("/beyond")
+    public ResponseEntity<?> getClientsBeyondDistance(@RequestParam(defaultValue = "5000") double meters) {
+        try {
+            return ResponseEntity.ok(clientService.getClientsBeyondDistanceFromCompanies(meters));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Transmite como NDJSON (un cliente por linea) los clientes ubicados a mas de "meters" metros
+     * de la empresa mas cercana, sin cargarlos en memoria. Pensado para resultados grandes.
+     * @param "meters" Distancia minima en metros (por defecto 5000)
+     */
+    @GetMapping(value = "/beyond/stream", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamClientsBeyondDistance(@RequestParam(defaultValue = "5000") double meters,
+                                            HttpServletResponse response) throws IOException {
+        try {
+            clientService.validateDistance(meters);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        ndjsonWriter.<ClientEntity>write(response, consumer -> clientService.streamClientsBeyondDistanceFromCompanies(meters, consumer));
+    }
 }
@@ -137,10 +137,18 @@ public class CompanyController {
         return ResponseEntity.ok(companies);
     }
 
+    /**
+     *
+     * Endpoint para obtener los puntos de entrega más cercanos a una compañía.
+     * Parámetros opcionales: k (cantidad de puntos, por defecto 5) y radiusMeters (distancia máxima en metros).
+     *
+     * */
     @GetMapping("/nearest/{companyId}")
-    public ResponseEntity<?> getNearestDeliveryPoints(@PathVariable int companyId) {
+    public ResponseEntity<?> getNearestDeliveryPoints(@PathVariable int companyId,
+                                                      @RequestParam(defaultValue = "5") int k,
+                                                      @RequestParam(required = false) Double radiusMeters) {
         try {
-            List<NearestDeliveryPointDTO> result = service.getTop5NearestDeliveryPoints(companyId);
+            List<NearestDeliveryPointDTO> result = service.getNearestDeliveryPoints(companyId, k, radiusMeters);
 
             if (result == null || result.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -149,6 +157,8 @@ public class CompanyController {
 
             return ResponseEntity.ok(result);
 
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error al procesar la solicitud");
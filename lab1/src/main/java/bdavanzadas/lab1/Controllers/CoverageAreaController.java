@@ -1,12 +1,19 @@
 package bdavanzadas.lab1.Controllers;
 
+import bdavanzadas.lab1.Config.GeoJsonWriter;
 import bdavanzadas.lab1.dtos.CoverageCheckDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
 import bdavanzadas.lab1.entities.CoverageAreaEntity;
 import bdavanzadas.lab1.services.CoverageAreaService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +39,12 @@ public class CoverageAreaController {
     @Autowired
     private CoverageAreaService coverageAreaService;
 
+    /**
+     * Escritor de capas del mapa en formato GeoJSON.
+     */
+    @Autowired
+    private GeoJsonWriter geoJsonWriter;
+
 
     /**
      * Endpoint para obtener todas las áreas de cobertura.
@@ -44,6 +57,31 @@ public class CoverageAreaController {
         return coverageAreaService.getAllCoverageAreas();
     }
 
+    /**
+     * Endpoint para obtener las áreas de cobertura como FeatureCollection de GeoJSON, para dibujarlas en el mapa.
+     * Las áreas se escriben a medida que se leen de la base de datos, con memoria constante.
+     *
+     * @param "bbox" Rectángulo visible como minLon,minLat,maxLon,maxLat (opcional)
+     * @param "zoom" Nivel de zoom del mapa (opcional); simplifica las áreas al tamaño de un pixel
+     */
+    @GetMapping(value = "/geojson", produces = GeoJsonWriter.MEDIA_TYPE)
+    public void getCoverageAreasGeoJson(@RequestParam(required = false) String bbox,
+                                        @RequestParam(required = false) Integer zoom,
+                                        HttpServletRequest request,
+                                        HttpServletResponse response) throws IOException {
+        // El filtro de ETag del catálogo acumularía toda la respuesta para calcularlo; aquí se escribe por partes
+        ShallowEtagHeaderFilter.disableContentCaching(request);
+        MapViewportDTO viewport;
+        try {
+            viewport = MapViewportDTO.of(bbox, zoom);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        geoJsonWriter.write(response, viewport.getCoordinateDecimals(),
+                consumer -> coverageAreaService.streamMapFeatures(viewport, consumer));
+    }
+
     /**
      * Endpoint para obtener un área de cobertura por su ID.
      * Este endpoint devuelve un área de cobertura específica basada en su ID.
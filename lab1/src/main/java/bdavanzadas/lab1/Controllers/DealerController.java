@@ -1,13 +1,21 @@
 package bdavanzadas.lab1.Controllers;
 
+import bdavanzadas.lab1.Config.GeoJsonWriter;
+import bdavanzadas.lab1.Config.NdjsonWriter;
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
+import bdavanzadas.lab1.dtos.DealerLocationDTO;
 import bdavanzadas.lab1.dtos.DealerWithDistanceDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
 import bdavanzadas.lab1.entities.DealerEntity;
 import bdavanzadas.lab1.services.DealerService;
 import org.springframework.dao.DataIntegrityViolationException;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +40,18 @@ public class DealerController {
      * */
     private final DealerService dealerService;
 
+    /**
+     * Escritor de respuestas NDJSON para los endpoints de streaming.
+     */
+    @Autowired
+    private NdjsonWriter ndjsonWriter;
+
+    /**
+     * Escritor de capas del mapa en formato GeoJSON.
+     */
+    @Autowired
+    private GeoJsonWriter geoJsonWriter;
+
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DealerController.class);
 
 
@@ -59,6 +79,59 @@ public class DealerController {
         return new ResponseEntity<>(dealers, HttpStatus.OK);
     }
 
+
+    /**
+     * Endpoint para obtener los dealers paginados por cursor.
+     * Devuelve hasta "limit" dealers con ID mayor a "afterId" y el cursor de la siguiente página.
+     *
+     * @param "afterId" ID desde el cual paginar (0 para la primera página)
+     * @param "limit" Cantidad de elementos por página (máximo 1000)
+     * @return Página de dealers, o BAD REQUEST si los parámetros no son válidos
+     */
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPageDTO<DealerEntity>> getDealersPage(
+            @RequestParam(defaultValue = "0") int afterId,
+            @RequestParam(defaultValue = "" + KeysetPageDTO.DEFAULT_LIMIT) int limit) {
+        try {
+            return ResponseEntity.ok(dealerService.getDealersPage(afterId, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+
+    /**
+     * Endpoint para obtener todos los dealers en formato NDJSON (un objeto JSON por línea).
+     * Las filas se escriben a medida que se leen de la base de datos, con memoria constante.
+     */
+    @GetMapping(value = "/stream", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamDealers(HttpServletResponse response) throws IOException {
+        ndjsonWriter.write(response, dealerService::streamAllDealers);
+    }
+
+
+    /**
+     * Endpoint para obtener la posición de los repartidores como FeatureCollection de GeoJSON, para dibujarlos en el mapa.
+     * Las posiciones se escriben a medida que se leen de la base de datos, con memoria constante.
+     *
+     * @param "bbox" Rectángulo visible como minLon,minLat,maxLon,maxLat (opcional)
+     * @param "zoom" Nivel de zoom del mapa (opcional); define los decimales de las coordenadas
+     */
+    @GetMapping(value = "/geojson", produces = GeoJsonWriter.MEDIA_TYPE)
+    public void getDealersGeoJson(@RequestParam(required = false) String bbox,
+                                  @RequestParam(required = false) Integer zoom,
+                                  HttpServletResponse response) throws IOException {
+        MapViewportDTO viewport;
+        try {
+            viewport = MapViewportDTO.of(bbox, zoom);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        geoJsonWriter.write(response, viewport.getCoordinateDecimals(),
+                consumer -> dealerService.streamMapFeatures(viewport, consumer));
+    }
+
     /**
      *
      * Endpoint para obtener un dealer por su ID.
@@ -271,6 +344,60 @@ public class DealerController {
     }
 
 
+    /**
+     * Endpoint para que el repartidor autenticado informe su posición GPS.
+     * Pensado para llamadas frecuentes: la posición se guarda en memoria y se escribe en la base de datos por lotes.
+     *
+     * @param "location" Mapa con "longitude" y "latitude".
+     * @return 202 ACCEPTED con la posición registrada, o 400 si las coordenadas no son válidas o el usuario no es repartidor.
+     */
+    @PostMapping("/location")
+    public ResponseEntity<?> reportLocation(@RequestBody Map<String, Double> location) {
+        try {
+            Double longitude = location.get("longitude");
+            Double latitude = location.get("latitude");
+            if (longitude == null || latitude == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Se requieren 'longitude' y 'latitude'"));
+            }
+            DealerLocationDTO recorded = dealerService.recordAuthenticatedDealerLocation(longitude, latitude);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(recorded);
+        } catch (IllegalArgumentException e) {
+            // Coordenadas inválidas o usuario sin repartidor asociado
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error interno del servidor", "details", e.getMessage()));
+        }
+    }
+
+
+    /**
+     * Endpoint para obtener la última posición informada por cada repartidor.
+     *
+     * @return Lista con la última posición de cada repartidor.
+     */
+    @GetMapping("/locations")
+    public ResponseEntity<List<DealerLocationDTO>> getAllLatestLocations() {
+        return ResponseEntity.ok(dealerService.getAllLatestLocations());
+    }
+
+
+    /**
+     * Endpoint para obtener la última posición informada por un repartidor.
+     *
+     * @param "id" El ID del repartidor.
+     * @return La posición, o 404 si el repartidor no ha informado posiciones.
+     */
+    @GetMapping("/{id}/location")
+    public ResponseEntity<DealerLocationDTO> getLatestLocation(@PathVariable int id) {
+        DealerLocationDTO location = dealerService.getLatestLocation(id);
+        if (location == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(location);
+    }
+
+
     /**
      * Obtiene todos los dealers con su distancia desde un punto de referencia.
      * Este endpoint devuelve una lista de dealers junto con la distancia desde un punto de referencia.
@@ -1,12 +1,16 @@
 package bdavanzadas.lab1.Controllers;
 
+import bdavanzadas.lab1.Config.NdjsonWriter;
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
 import bdavanzadas.lab1.entities.EmergencyReportEntity;
 import bdavanzadas.lab1.services.EmergencyReportService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -23,6 +27,12 @@ public class EmergencyReportController {
      */
     private final EmergencyReportService emergencyReportService;
 
+    /**
+     * Escritor de respuestas NDJSON para los endpoints de streaming.
+     */
+    @Autowired
+    private NdjsonWriter ndjsonWriter;
+
     /**
      * Constructor del controlador que inyecta el servicio de reportes de emergencia
      * @param emergencyReportService Servicio de reportes de emergencia
@@ -42,6 +52,36 @@ public class EmergencyReportController {
         return new ResponseEntity<>(reports, HttpStatus.OK);
     }
 
+
+    /**
+     * Endpoint para obtener los reportes de emergencia paginados por cursor.
+     * Devuelve hasta "limit" reportes de emergencia con ID mayor a "afterId" y el cursor de la siguiente página.
+     *
+     * @param "afterId" ID desde el cual paginar (0 para la primera página)
+     * @param "limit" Cantidad de elementos por página (máximo 1000)
+     * @return Página de reportes de emergencia, o BAD REQUEST si los parámetros no son válidos
+     */
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPageDTO<EmergencyReportEntity>> getEmergencyReportsPage(
+            @RequestParam(defaultValue = "0") int afterId,
+            @RequestParam(defaultValue = "" + KeysetPageDTO.DEFAULT_LIMIT) int limit) {
+        try {
+            return ResponseEntity.ok(emergencyReportService.getEmergencyReportsPage(afterId, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+
+    /**
+     * Endpoint para obtener todos los reportes de emergencia en formato NDJSON (un objeto JSON por línea).
+     * Las filas se escriben a medida que se leen de la base de datos, con memoria constante.
+     */
+    @GetMapping(value = "/stream", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamEmergencyReports(HttpServletResponse response) throws IOException {
+        ndjsonWriter.write(response, emergencyReportService::streamAllEmergencyReports);
+    }
+
     /**
      * Crea un nuevo reporte de emergencia
      * @param emergencyReport Datos del reporte
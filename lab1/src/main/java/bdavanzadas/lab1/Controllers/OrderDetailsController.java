@@ -139,10 +139,12 @@ public class OrderDetailsController {
         return ResponseEntity.ok(result);
     }
     /**
-     * Crea detalles de orden para la última orden registrada.
+     * Crea detalles de orden para la última orden registrada del cliente autenticado.
      * @param requestBody mapa con los datos extraídos del body.
      * @return 201 CREATED o 500 INTERNAL SERVER ERROR.
+     * @deprecated POST /orders/create con paymentMethod crea el detalle junto con el pedido.
      */
+    @Deprecated
     @PostMapping("/create-for-last-order")
     public ResponseEntity<Void> createOrderDetailsForLastOrder(@RequestBody Map<String, Object> requestBody) {
         try {
@@ -1,22 +1,37 @@
 package bdavanzadas.lab1.Controllers;
 
+import bdavanzadas.lab1.Config.GeoJsonWriter;
+import bdavanzadas.lab1.Config.NdjsonWriter;
+import bdavanzadas.lab1.dtos.DealerBatchDTO;
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
+import bdavanzadas.lab1.dtos.OrderBatchItemDTO;
 import bdavanzadas.lab1.dtos.OrderNameAddressDTO;
+import bdavanzadas.lab1.dtos.OrderStatusChangeDTO;
 import bdavanzadas.lab1.dtos.OrderTotalProductsDTO;
 import bdavanzadas.lab1.dtos.TopSpenderDTO;
+import bdavanzadas.lab1.entities.GeometryValue;
 import bdavanzadas.lab1.entities.OrdersEntity;
 import bdavanzadas.lab1.entities.ProductEntity;
 import bdavanzadas.lab1.repositories.OrdersRepository;
+import bdavanzadas.lab1.services.DealerBatchService;
+import bdavanzadas.lab1.services.DealerDispatchService;
 import bdavanzadas.lab1.services.DealerService;
+import bdavanzadas.lab1.services.OrderStatusService;
 import bdavanzadas.lab1.services.OrdersService;
 import bdavanzadas.lab1.services.UserService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 
+import java.time.LocalDate;
 import java.util.Date;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -38,19 +53,23 @@ public class OrdersController {
     private final OrdersService ordersService;
 
     /**
-     * Repositorio de pedidos.
-     * Este repositorio se utiliza para realizar operaciones CRUD en la base de datos de pedidos.
+     * Escritor de respuestas NDJSON para los endpoints de streaming.
      */
     @Autowired
-    private OrdersRepository ordersRepository;
+    private NdjsonWriter ndjsonWriter;
 
     /**
-     * jdbc sirve para ejecutar consultas SQL directas.
-     * Este objeto se utiliza para ejecutar consultas SQL en la base de datos.
+     * Escritor de capas del mapa en formato GeoJSON.
      */
     @Autowired
-    private JdbcTemplate jdbcTemplate;
+    private GeoJsonWriter geoJsonWriter;
 
+    /**
+     * Repositorio de pedidos.
+     * Este repositorio se utiliza para realizar operaciones CRUD en la base de datos de pedidos.
+     */
+    @Autowired
+    private OrdersRepository ordersRepository;
 
     /**
      * Servicio de dealers.
@@ -59,6 +78,18 @@ public class OrdersController {
     @Autowired
     private UserService userService;
 
+    /**
+     * Servicio de despacho de pedidos al repartidor disponible más cercano.
+     */
+    @Autowired
+    private DealerDispatchService dealerDispatchService;
+
+    /**
+     * Servicio de lotes de reparto (varios pedidos cercanos por repartidor).
+     */
+    @Autowired
+    private DealerBatchService dealerBatchService;
+
 
     /**
      * Constructor de la clase OrdersController.
@@ -79,6 +110,86 @@ public class OrdersController {
     }
 
 
+    /**
+     * Endpoint para obtener los pedidos paginados por cursor.
+     * Devuelve hasta "limit" pedidos con ID mayor a "afterId" y el cursor de la siguiente página.
+     *
+     * @param "afterId" ID desde el cual paginar (0 para la primera página)
+     * @param "limit" Cantidad de elementos por página (máximo 1000)
+     * @return Página de pedidos, o BAD REQUEST si los parámetros no son válidos
+     */
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPageDTO<OrdersEntity>> getOrdersPage(
+            @RequestParam(defaultValue = "0") int afterId,
+            @RequestParam(defaultValue = "" + KeysetPageDTO.DEFAULT_LIMIT) int limit) {
+        try {
+            return ResponseEntity.ok(ordersService.getOrdersPage(afterId, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+
+    /**
+     * Endpoint para obtener todos los pedidos en formato NDJSON (un objeto JSON por línea).
+     * Las filas se escriben a medida que se leen de la base de datos, con memoria constante.
+     */
+    @GetMapping(value = "/stream", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamOrders(HttpServletResponse response) throws IOException {
+        ndjsonWriter.write(response, ordersService::streamAllOrders);
+    }
+
+
+    /**
+     * Endpoint para obtener las rutas estimadas de los pedidos como FeatureCollection de GeoJSON, para dibujarlas en el mapa.
+     * Las rutas se escriben a medida que se leen de la base de datos, con memoria constante.
+     *
+     * @param "bbox" Rectángulo visible como minLon,minLat,maxLon,maxLat (opcional)
+     * @param "zoom" Nivel de zoom del mapa (opcional); simplifica las rutas al tamaño de un pixel
+     * @param "status" Estado de los pedidos a incluir (opcional)
+     */
+    @GetMapping(value = "/routes/geojson", produces = GeoJsonWriter.MEDIA_TYPE)
+    public void getRoutesGeoJson(@RequestParam(required = false) String bbox,
+                                 @RequestParam(required = false) Integer zoom,
+                                 @RequestParam(required = false) String status,
+                                 HttpServletResponse response) throws IOException {
+        MapViewportDTO viewport;
+        try {
+            viewport = MapViewportDTO.of(bbox, zoom);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        geoJsonWriter.write(response, viewport.getCoordinateDecimals(),
+                consumer -> ordersService.streamRouteFeatures(viewport, status, consumer));
+    }
+
+
+    /**
+     * Endpoint para obtener la ruta estimada de un pedido en un nivel de detalle.
+     * Con zoom o tolerancia se entrega la versión simplificada (precalculada) que corresponde; sin ellos, la ruta completa.
+     * El formato sigue el parámetro geometryFormat (wkt por defecto, o geojson).
+     *
+     * @param "id" ID del pedido
+     * @param "zoom" Nivel de zoom del mapa, entre 0 y 22 (opcional)
+     * @param "tolerance" Error máximo aceptado en grados (opcional, se usa si no hay zoom)
+     * @return La ruta, NOT FOUND si el pedido no existe o no tiene ruta, o BAD REQUEST si los parámetros no son válidos
+     */
+    @GetMapping("/{id}/route")
+    public ResponseEntity<GeometryValue> getOrderRoute(@PathVariable int id,
+                                                       @RequestParam(required = false) Integer zoom,
+                                                       @RequestParam(required = false) Double tolerance) {
+        try {
+            GeometryValue route = ordersService.getOrderRoute(id, zoom, tolerance);
+            return route != null ? ResponseEntity.ok(route) : ResponseEntity.notFound().build();
+        } catch (EmptyResultDataAccessException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+
     /**
      * Endpoint para obtener un pedido por su ID.
      * Este endpoint devuelve un pedido específico basado en su ID.
@@ -107,6 +218,7 @@ public class OrdersController {
     /**
      * Endpoint para actualizar un pedido existente.
      * Este endpoint actualiza un pedido existente en la base de datos.
+     * El estado y el repartidor no se cambian aquí, sino con los endpoints de estado y de asignación.
      */
     @PutMapping("/{id}")
     public ResponseEntity<Void> updateOrder(@PathVariable int id, @RequestBody OrdersEntity order) {
@@ -164,6 +276,32 @@ public class OrdersController {
     }
 
 
+    /**
+     * Endpoint para obtener los agregados de pedidos de un repartidor, empresa o cliente.
+     * Devuelve, por día o por mes y por estado, la cantidad de pedidos, las ventas y la distancia recorrida.
+     * Sin fechas se usa el mes actual.
+     * @param "scope" DEALER, COMPANY o CLIENT
+     * @param "id" ID del repartidor, empresa o cliente
+     * @param "from" Primer día (yyyy-MM-dd, opcional)
+     * @param "to" Último día (yyyy-MM-dd, opcional)
+     * @param "granularity" day o month (por defecto day)
+     */
+    @GetMapping("/reports/rollup")
+    public ResponseEntity<?> getOrderRollups(@RequestParam String scope,
+                                             @RequestParam int id,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                             @RequestParam(defaultValue = "day") String granularity) {
+        LocalDate start = from != null ? from : LocalDate.now().withDayOfMonth(1);
+        LocalDate end = to != null ? to : start.withDayOfMonth(start.lengthOfMonth());
+        try {
+            return ResponseEntity.ok(ordersService.getOrderRollups(scope, id, start, end, granularity));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+
     /**
      * Endpoint para crear un pedido con productos.
      * Este endpoint guarda un nuevo pedido en la base de datos y asocia productos a él.
@@ -171,26 +309,51 @@ public class OrdersController {
     @PostMapping("/create")
     public ResponseEntity<?> createOrder(
             @RequestBody OrdersEntity order,
-            @RequestParam List<Integer> productIds) {
+            @RequestParam List<Integer> productIds,
+            @RequestParam(required = false) String paymentMethod) {
 
         try {
-            // Asume que order.getEstimatedRoute() contiene el WKT
-            ordersService.createOrderWithProducts(order, productIds, null);
-            return ResponseEntity.ok("Orden creada exitosamente");
+            // Asume que order.getEstimatedRoute() contiene el WKT; si viene paymentMethod también se crea el detalle
+            Integer orderId = ordersService.createOrderWithProducts(order, productIds, null, paymentMethod);
+            return ResponseEntity.ok(Map.of("message", "Orden creada exitosamente", "orderId", orderId));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
 
+    /**
+     * Endpoint para crear varios pedidos con productos en una sola solicitud.
+     * Todos los pedidos se registran en una transacción; si uno falla no se crea ninguno.
+     * Devuelve los IDs generados en el mismo orden de la solicitud.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> createOrdersBatch(@RequestBody List<OrderBatchItemDTO> orders) {
+        try {
+            List<Integer> ids = ordersService.createOrdersBatch(orders);
+            return ResponseEntity.status(HttpStatus.CREATED).body(ids);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error al crear los pedidos: " + e.getMessage());
+        }
+    }
+
+
     /**
      * Endpoint para marcar un pedido como entregado.
      * Este endpoint actualiza el estado de un pedido a "ENTREGADO".
      */
     @PutMapping("/{id}/deliver")
     public ResponseEntity<String> marcarComoEntregado(@PathVariable int id) {
-        ordersService.markAsDelivered(id, new Date());
-        return ResponseEntity.ok("Pedido marcado como entregado");
+        try {
+            ordersService.markAsDelivered(id, new Date());
+            return ResponseEntity.ok("Pedido marcado como entregado");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException | OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
     }
 
 
@@ -251,9 +414,12 @@ public class OrdersController {
     /**
      * Actualiza el estado del pedido (ENTREGADO / FALLIDA) asegurando
      * que el dealer autenticado sea el propietario de la orden.
+     * El cuerpo puede incluir "version" (la versión del pedido que vio el dealer) para rechazar el cambio
+     * si el pedido fue modificado entretanto.
+     * @return El pedido con su nueva versión, 403 si no pertenece al dealer o 409 si el cambio no está permitido
      */
     @PutMapping("/{id}/dealer/{dealerId}/status")
-    public ResponseEntity<Void> updateOrderStatusByDealerId(
+    public ResponseEntity<?> updateOrderStatusByDealerId(
             @PathVariable int id,
             @PathVariable int dealerId,
             @RequestBody Map<String, String> requestBody) {
@@ -262,8 +428,17 @@ public class OrdersController {
         System.out.println("ID del dealer: " + dealerId);
         System.out.println("Nuevo estado: " + requestBody.get("status"));
 
-        ordersService.updateOrderStatusByDealerId(id, dealerId, requestBody.get("status"));
-        return ResponseEntity.noContent().build();
+        try {
+            Integer version = parseVersion(requestBody.get("version"));
+            OrderStatusChangeDTO changed = ordersService.updateOrderStatusByDealerId(id, dealerId, requestBody.get("status"), version);
+            return ResponseEntity.ok(changed);
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException | OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
     }
 
 
@@ -289,7 +464,9 @@ public class OrdersController {
     /**
      * Endpoint para obtener el último ID de pedido insertado.
      * Este endpoint devuelve el ID del último pedido insertado en la base de datos.
+     * @deprecated POST /orders/create ya devuelve el ID del pedido creado (orderId).
      */
+    @Deprecated
     @GetMapping("/last-inserted")
     public ResponseEntity<Integer> getLastInsertedOrderId() {
         try {
@@ -329,6 +506,10 @@ public class OrdersController {
         try {
             ordersService.markAsUrgent(id);
             return ResponseEntity.ok("Pedido marcado como URGENTE");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException | OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error al marcar el pedido como URGENTE");
         }
@@ -375,67 +556,144 @@ public class OrdersController {
     /**
      * Endpoint para asignar un pedido a un dealer.
      * Este endpoint asigna un pedido específico a un dealer basado en su ID.
+     * @return NO CONTENT si se asignó, 403 si el usuario no es dealer, 404 si el pedido no existe
+     *         o 409 si el pedido ya fue asignado o finalizado o el dealer ya tiene un pedido activo
      */
     @PutMapping("/{id}/assign")
-    public ResponseEntity<Void> assignOrderToDealer(@PathVariable int id) {
+    public ResponseEntity<?> assignOrderToDealer(@PathVariable int id) {
         try {
             ordersService.assignOrderToDealer(id);
             return ResponseEntity.noContent().build();
+        } catch (EmptyResultDataAccessException e) {
+            return ResponseEntity.notFound().build();
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         } catch (IllegalStateException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
 
+    /**
+     * Endpoint para despachar un pedido pendiente al repartidor disponible más cercano.
+     * Se consideran los "k" repartidores sin pedidos en proceso más cercanos al punto de retiro del pedido.
+     *
+     * @param "id" El ID del pedido
+     * @param "k" Cantidad de repartidores candidatos (por defecto 5, máximo 50)
+     * @return El ID del pedido y del repartidor asignado, 400 si el pedido no está pendiente
+     *         o 409 si no hay repartidores disponibles cerca
+     */
+    @PostMapping("/{id}/dispatch")
+    public ResponseEntity<?> dispatchOrder(
+            @PathVariable int id,
+            @RequestParam(defaultValue = "" + DealerDispatchService.DEFAULT_CANDIDATES) int k) {
+        try {
+            int dealerId = dealerDispatchService.dispatch(id, k);
+            return ResponseEntity.ok(Map.of("orderId", id, "dealerId", dealerId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error al despachar el pedido: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Endpoint para agrupar los pedidos pendientes en lotes de reparto y asignarlos a los repartidores disponibles.
+     * Cada lote reúne pedidos con retiros y entregas cercanos; el primero en el orden de entrega queda EN PROCESO
+     * y los demás quedan asignados al repartidor hasta que termine el anterior.
+     *
+     * @param "maxOrders" Cantidad máxima de pedidos por lote (por defecto 10, máximo 20)
+     * @param "pickupRadiusMeters" Distancia máxima entre los retiros de un lote (por defecto 1500 m)
+     * @param "dropoffRadiusMeters" Distancia máxima entre las entregas de un lote (por defecto 5000 m)
+     * @return Los lotes creados, 400 si algún parámetro no es válido o 409 si ya hay una planificación en curso
+     */
+    @PostMapping("/batches")
+    public ResponseEntity<?> planDealerBatches(
+            @RequestParam(defaultValue = "10") int maxOrders,
+            @RequestParam(defaultValue = "1500") double pickupRadiusMeters,
+            @RequestParam(defaultValue = "5000") double dropoffRadiusMeters) {
+        try {
+            List<DealerBatchDTO> batches = dealerBatchService.planBatches(maxOrders, pickupRadiusMeters, dropoffRadiusMeters);
+            return ResponseEntity.ok(batches);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error al planificar los lotes: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Endpoint para obtener el último lote de reparto del repartidor autenticado,
+     * con sus pedidos en el orden de entrega y la ruta de varias paradas.
+     * @return El lote, o 404 si el repartidor no tiene lotes
+     */
+    @GetMapping("/batches/me")
+    public ResponseEntity<?> getDealerBatch() {
+        try {
+            DealerBatchDTO batch = dealerBatchService.getAuthenticatedDealerBatch();
+            if (batch == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(batch);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error al obtener el lote: " + e.getMessage());
+        }
+    }
+
+
     /**
      * Endpoint para actualizar el estado de un pedido.
      * Este endpoint actualiza el estado de un pedido específico basado en su ID.
+     * El cambio se aplica en una sola sentencia, solo si el pedido pertenece al dealer autenticado;
+     * el cuerpo puede incluir "version" para rechazarlo si el pedido fue modificado entretanto.
+     * @return El pedido con su nueva versión, 403 si no pertenece al dealer o 409 si el cambio no está permitido
      */
     @PutMapping("/{id}/status")
-    public ResponseEntity<Void> updateOrderStatus(
+    public ResponseEntity<?> updateOrderStatus(
             @PathVariable int id,
             @RequestBody Map<String, String> requestBody) {
 
         try {
             String newStatus = requestBody.get("status");
-
-            // Obtener dealerId del usuario autenticado
-            Long userId = userService.getAuthenticatedUserId();
-            Integer dealerId = jdbcTemplate.queryForObject(
-                    "SELECT id FROM dealers WHERE user_id = ?",
-                    Integer.class, userId
-            );
-
-            if (dealerId == null) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
-
-            // Verificar que la orden pertenece al dealer
-            OrdersEntity order = ordersRepository.findById(id);
-            if (order == null || !dealerId.equals(order.getDealerId())) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
-            }
-
-            // Actualizar estado
-            if ("ENTREGADO".equals(newStatus)) {
-                ordersService.markAsDelivered(id, new Date());
-            } else if ("FALLIDA".equals(newStatus)) {
-                ordersService.markAsFailed(id);
-            } else {
+            if (!OrderStatusService.ENTREGADO.equals(newStatus) && !OrderStatusService.FALLIDA.equals(newStatus)) {
                 return ResponseEntity.badRequest().build();
             }
+            Integer version = parseVersion(requestBody.get("version"));
 
-            return ResponseEntity.noContent().build();
+            // Obtener dealerId del usuario autenticado
+            Integer dealerId = userService.getAuthenticatedDealerId();
+
+            OrderStatusChangeDTO changed = ordersService.updateOrderStatusByDealerId(id, dealerId, newStatus, version);
+            return ResponseEntity.ok(changed);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalArgumentException | SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build(); // Usuario sin dealer asociado o pedido de otro dealer
+        } catch (IllegalStateException | OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
 
+    /**
+     * Versión enviada en el cuerpo de un cambio de estado (null si no se envió).
+     * @throws NumberFormatException Si no es un número
+     */
+    private static Integer parseVersion(String version) {
+        return version == null || version.isBlank() ? null : Integer.valueOf(version.trim());
+    }
+
+
     /**
      * Endpoint para obtener los pedidos con el conteo de productos por dealer.
      * Este endpoint devuelve una lista de pedidos con el conteo de productos específicos basados en el ID del dealer.
@@ -476,12 +734,9 @@ public class OrdersController {
      */
     @GetMapping("/client/failed")
     public ResponseEntity<List<OrdersEntity>> getFailedOrdersByClient() {
-        Long userId = userService.getAuthenticatedUserId();
-        String sql = "SELECT id FROM clients WHERE user_id = ?";
-        Integer clientId = jdbcTemplate.queryForObject(sql, Integer.class, userId);
+        Integer clientId = userService.getAuthenticatedClientId();
 
-        String query = "SELECT * FROM orders WHERE client_id = ? AND status = 'FALLIDA' ORDER BY order_date DESC";
-        List<OrdersEntity> failedOrders = jdbcTemplate.query(query, new BeanPropertyRowMapper<>(OrdersEntity.class), clientId);
+        List<OrdersEntity> failedOrders = ordersRepository.findFailedByClientId(clientId);
 
         return ResponseEntity.ok(failedOrders);
     }
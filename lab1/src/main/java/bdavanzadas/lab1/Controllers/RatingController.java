@@ -1,11 +1,16 @@
 package bdavanzadas.lab1.Controllers;
 
+import bdavanzadas.lab1.Config.NdjsonWriter;
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
 import bdavanzadas.lab1.entities.RatingEntity;
 import bdavanzadas.lab1.services.RatingService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 
 
@@ -30,6 +35,12 @@ public class RatingController {
      * */
     private final RatingService ratingService;
 
+    /**
+     * Escritor de respuestas NDJSON para los endpoints de streaming.
+     */
+    @Autowired
+    private NdjsonWriter ndjsonWriter;
+
 
     /**
      *
@@ -57,6 +68,36 @@ public class RatingController {
     }
 
 
+    /**
+     * Endpoint para obtener los calificaciones paginados por cursor.
+     * Devuelve hasta "limit" calificaciones con ID mayor a "afterId" y el cursor de la siguiente página.
+     *
+     * @param "afterId" ID desde el cual paginar (0 para la primera página)
+     * @param "limit" Cantidad de elementos por página (máximo 1000)
+     * @return Página de calificaciones, o BAD REQUEST si los parámetros no son válidos
+     */
+    @GetMapping("/page")
+    public ResponseEntity<KeysetPageDTO<RatingEntity>> getRatingsPage(
+            @RequestParam(defaultValue = "0") int afterId,
+            @RequestParam(defaultValue = "" + KeysetPageDTO.DEFAULT_LIMIT) int limit) {
+        try {
+            return ResponseEntity.ok(ratingService.getRatingsPage(afterId, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+
+    /**
+     * Endpoint para obtener todos los calificaciones en formato NDJSON (un objeto JSON por línea).
+     * Las filas se escriben a medida que se leen de la base de datos, con memoria constante.
+     */
+    @GetMapping(value = "/stream", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamRatings(HttpServletResponse response) throws IOException {
+        ndjsonWriter.write(response, ratingService::streamAllRatings);
+    }
+
+
 
     /**
      * Endpoint para obtener una calificación por su ID.
@@ -0,0 +1,201 @@
+package bdavanzadas.lab1.Security;
+
+import bdavanzadas.lab1.repositories.ClientRepository;
+import bdavanzadas.lab1.repositories.DealerRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+
+/**
+ * Cache de identidades de los usuarios autenticados.
+ * Relaciona el ID de usuario con el ID del cliente o del repartidor asociado, de modo que
+ * la consulta a la base de datos se haga una sola vez por usuario y no en cada solicitud.
+ * El cache está acotado (security.identity-cache.max-entries) y la consulta se hace fuera de todo lock.
+ * Las entradas se invalidan al registrar o eliminar clientes y repartidores; para eliminar las de un
+ * cliente o repartidor sin recorrer el cache se mantiene la relación inversa (ID -> usuario).
+ */
+@Component
+public class ActorIdentityCache {
+
+    /**
+     * Repositorio de clientes.
+     * Se utiliza para buscar el cliente asociado a un usuario cuando no está en el cache.
+     */
+    @Autowired
+    private ClientRepository clientRepository;
+
+    /**
+     * Repositorio de dealers.
+     * Se utiliza para buscar el dealer asociado a un usuario cuando no está en el cache.
+     */
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    /**
+     * Registro de métricas (aciertos, fallos y tamaño de los caches).
+     */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Cantidad máxima de usuarios por cache (clientes y repartidores).
+     */
+    @Value("${security.identity-cache.max-entries:10000}")
+    private long maxEntries;
+
+    private final Identities clients = new Identities();
+    private final Identities dealers = new Identities();
+
+    @PostConstruct
+    void init() {
+        clients.init(maxEntries);
+        dealers.init(maxEntries);
+        CaffeineCacheMetrics.monitor(meterRegistry, clients.ids, "actorClientIds");
+        CaffeineCacheMetrics.monitor(meterRegistry, dealers.ids, "actorDealerIds");
+    }
+
+    /**
+     * Construye el principal del usuario autenticado a partir de los claims del token.
+     * Solo se resuelve el ID de cliente o de repartidor según el rol del usuario.
+     * @param token Los claims verificados del token JWT
+     * @return El principal con el ID del cliente o repartidor asociado
+     */
+    public AuthenticatedUser resolve(VerifiedToken token) {
+        Long userId = token.getUserId();
+        String role = token.getRole();
+        Integer clientId = "CLIENT".equals(role) ? getClientId(userId) : null;
+        Integer dealerId = "DEALER".equals(role) ? getDealerId(userId) : null;
+        return new AuthenticatedUser(userId, role, clientId, dealerId);
+    }
+
+    /**
+     * Obtiene el ID del cliente asociado a un usuario.
+     * @param userId El ID del usuario
+     * @return El ID del cliente, o null si el usuario no tiene un cliente asociado
+     */
+    public Integer getClientId(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return clients.get(userId, clientRepository::findIdByUserId);
+    }
+
+    /**
+     * Obtiene el ID del repartidor asociado a un usuario.
+     * @param userId El ID del usuario
+     * @return El ID del repartidor, o null si el usuario no tiene un repartidor asociado
+     */
+    public Integer getDealerId(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return dealers.get(userId, dealerRepository::findIdByUserId);
+    }
+
+    /**
+     * Elimina del cache las identidades de un usuario (por ejemplo, al registrarlo).
+     * @param userId El ID del usuario
+     */
+    public void invalidateUser(Long userId) {
+        clients.invalidateUser(userId);
+        dealers.invalidateUser(userId);
+    }
+
+    /**
+     * Elimina del cache el usuario asociado a un cliente eliminado.
+     * @param clientId El ID del cliente
+     */
+    public void invalidateClient(int clientId) {
+        clients.invalidateId(clientId);
+    }
+
+    /**
+     * Elimina del cache el usuario asociado a un repartidor eliminado.
+     * @param dealerId El ID del repartidor
+     */
+    public void invalidateDealer(int dealerId) {
+        dealers.invalidateId(dealerId);
+    }
+
+    /**
+     * Usuario -> ID (cache acotado) y su relación inversa ID -> usuario.
+     * La relación inversa se escribe dentro del compute del cache y se borra cuando el cache descarta
+     * la entrada, de modo que toda entrada del cache se puede encontrar por su ID.
+     */
+    private static final class Identities {
+
+        private final Map<Integer, Long> users = new ConcurrentHashMap<>();
+
+        /**
+         * Invalidaciones hasta ahora. Un ID leído antes de una invalidación no se guarda en cache.
+         */
+        private final AtomicLong invalidations = new AtomicLong();
+
+        private Cache<Long, Integer> ids;
+
+        void init(long maxEntries) {
+            ids = Caffeine.newBuilder()
+                    .maximumSize(maxEntries)
+                    .evictionListener((Long userId, Integer id, RemovalCause cause) -> {
+                        if (id != null) {
+                            users.remove(id, userId);
+                        }
+                    })
+                    .recordStats()
+                    .build();
+        }
+
+        Integer get(Long userId, Function<Long, Integer> query) {
+            Integer cached = ids.getIfPresent(userId);
+            if (cached != null) {
+                return cached;
+            }
+            long seen = invalidations.get();
+            Integer id = query.apply(userId); // Consulta fuera del lock del cache
+            if (id == null) {
+                return null; // Sin cliente o repartidor asociado: no se guarda, puede registrarse después
+            }
+            ids.asMap().compute(userId, (key, previous) -> {
+                if (previous != null) {
+                    return previous;
+                }
+                // La relación inversa se escribe antes de revisar las invalidaciones: una invalidación posterior la encuentra
+                users.put(id, key);
+                if (invalidations.get() != seen) {
+                    users.remove(id, key);
+                    return null;
+                }
+                return id;
+            });
+            return id;
+        }
+
+        void invalidateUser(Long userId) {
+            invalidations.incrementAndGet();
+            Integer id = ids.asMap().remove(userId);
+            if (id != null) {
+                users.remove(id, userId);
+            }
+        }
+
+        void invalidateId(int id) {
+            invalidations.incrementAndGet();
+            Long userId = users.remove(id);
+            if (userId != null) {
+                ids.asMap().remove(userId, id);
+            }
+        }
+    }
+}
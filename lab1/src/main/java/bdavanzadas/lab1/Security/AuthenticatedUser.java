@@ -0,0 +1,18 @@
+package bdavanzadas.lab1.Security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * La clase AuthenticatedUser representa el principal que se guarda en el contexto de seguridad.
+ * Además del ID del usuario y su rol, lleva el ID del cliente o del repartidor asociado,
+ * para que los servicios no tengan que buscarlo en la base de datos en cada solicitud.
+ */
+@Getter
+@AllArgsConstructor
+public class AuthenticatedUser {
+    private final Long userId;
+    private final String role; // ADMIN, CLIENT, DEALER
+    private final Integer clientId; // null si el usuario no es cliente
+    private final Integer dealerId; // null si el usuario no es repartidor
+}
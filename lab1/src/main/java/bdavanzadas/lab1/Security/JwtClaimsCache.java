@@ -0,0 +1,97 @@
+package bdavanzadas.lab1.Security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Cache de tokens JWT ya verificados.
+ * Guarda los claims de cada token (indexados por el hash SHA-256 del token) hasta su expiración,
+ * de modo que la firma HS256 se verifique una sola vez por token y no en cada solicitud.
+ * El cache está acotado y puede leerse de forma concurrente desde varios hilos.
+ */
+@Component
+public class JwtClaimsCache {
+
+    /**
+     * Utilidad JWT usada para verificar los tokens que no están en el cache.
+     */
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    /**
+     * Número máximo de tokens que se mantienen en memoria.
+     */
+    @Value("${security.jwt.cache.max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<String, VerifiedToken> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Obtiene los claims verificados de un token.
+     * Si el token está en el cache y no ha expirado se devuelve sin volver a parsearlo;
+     * en otro caso se verifica una única vez y se guarda.
+     * @param token El token JWT
+     * @return Los claims verificados, o null si el token no es válido o ya expiró
+     */
+    public VerifiedToken resolve(String token) {
+        long now = System.currentTimeMillis();
+        String key = hash(token);
+
+        VerifiedToken cached = entries.get(key);
+        if (cached != null) {
+            if (!cached.isExpired(now)) {
+                return cached;
+            }
+            entries.remove(key, cached);
+            return null;
+        }
+
+        VerifiedToken verified = jwtUtil.parseToken(token);
+        if (verified == null || verified.isExpired(now)) {
+            return null;
+        }
+
+        if (entries.size() >= maxEntries) {
+            evict(now);
+        }
+        entries.put(key, verified);
+        return verified;
+    }
+
+    /**
+     * Libera espacio en el cache: primero descarta los tokens expirados y,
+     * si aún se supera el límite, elimina entradas hasta quedar bajo él.
+     */
+    private void evict(long now) {
+        entries.values().removeIf(token -> token.isExpired(now));
+
+        Iterator<String> it = entries.keySet().iterator();
+        while (entries.size() >= maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Calcula el hash SHA-256 del token para no guardar el token en claro como llave.
+     */
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
@@ -24,6 +24,11 @@ public class JwtUtil {
 
     private final Key key = Keys.hmacShaKeyFor(SECRET.getBytes());
 
+    /**
+     * Parser reutilizable; es inmutable y seguro para usar desde varios hilos
+     */
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(key).build();
+
     /**
      * Método para generar un token JWT
      * @param "username" El nombre de usuario
@@ -48,9 +53,7 @@ public class JwtUtil {
      * @return El rol contenido en el token
      */
     public String extractRole(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
+        return parser
                 .parseClaimsJws(token)
                 .getBody()
                 .get("role", String.class);
@@ -62,9 +65,7 @@ public class JwtUtil {
      * @return El ID de usuario contenido en el token
      */
     public Long extractUserId(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
+        return parser
                 .parseClaimsJws(token)
                 .getBody()
                 .get("userId", Long.class);
@@ -77,10 +78,30 @@ public class JwtUtil {
      */
     public boolean validateToken(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token);
+            parser.parseClaimsJws(token);
             return true;
         } catch (JwtException e) {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Método para verificar un token y extraer sus claims en una sola pasada.
+     * A diferencia de validateToken, extractRole y extractUserId, la firma se verifica una única vez.
+     * @param "token" El token JWT
+     * @return Los claims verificados, o null si el token no es válido
+     */
+    public VerifiedToken parseToken(String token) {
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            Date expiration = claims.getExpiration();
+            return new VerifiedToken(
+                    claims.get("userId", Long.class),
+                    claims.get("role", String.class),
+                    expiration != null ? expiration.getTime() : Long.MAX_VALUE
+            );
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
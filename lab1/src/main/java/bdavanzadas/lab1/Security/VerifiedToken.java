@@ -0,0 +1,25 @@
+package bdavanzadas.lab1.Security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * La clase VerifiedToken representa los claims de un token JWT que ya fue verificado.
+ * Se guarda en el JwtClaimsCache para no volver a verificar la firma en cada solicitud.
+ */
+@Getter
+@AllArgsConstructor
+public class VerifiedToken {
+    private final Long userId;
+    private final String role;
+    private final long expiresAtMillis; // Expiración del token en milisegundos (epoch)
+
+    /**
+     * Indica si el token ya expiró en el instante indicado.
+     * @param nowMillis El instante actual en milisegundos.
+     * @return true si el token ya no es válido.
+     */
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+}
@@ -0,0 +1,24 @@
+package bdavanzadas.lab1.dtos;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+
+/**
+ *
+ *  La clase BatchCandidateDTO representa un pedido pendiente que puede agruparse en un lote de reparto,
+ *  con su punto de retiro (la empresa) y su punto de entrega (el cliente).
+ *  Es inmutable, ya que los lotes se resuelven en paralelo.
+ *
+ */
+public class BatchCandidateDTO {
+    private final int orderId;
+    private final boolean urgent;
+    private final double pickupLongitude;
+    private final double pickupLatitude;
+    private final double dropoffLongitude;
+    private final double dropoffLatitude;
+}
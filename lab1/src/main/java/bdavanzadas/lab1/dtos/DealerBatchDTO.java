@@ -0,0 +1,28 @@
+package bdavanzadas.lab1.dtos;
+
+import bdavanzadas.lab1.entities.GeometryValue;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+
+/**
+ *
+ * La clase DealerBatchDTO representa un lote de reparto: los pedidos asignados a un repartidor,
+ * en el orden en que se entregan, y la ruta de varias paradas que los recorre.
+ *
+ */
+public class DealerBatchDTO {
+    private int id;
+    private int dealerId;
+    private List<Integer> orderIds; // En el orden de entrega; el primero queda EN PROCESO
+    private double distanceMeters;
+    private GeometryValue route; // Repartidor, retiros y entregas
+    private Date createdAt;
+}
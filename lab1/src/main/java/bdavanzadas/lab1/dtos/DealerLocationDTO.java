@@ -0,0 +1,21 @@
+package bdavanzadas.lab1.dtos;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+
+/**
+ *
+ *  La clase DealerLocationDTO representa la última posición GPS informada por un repartidor.
+ *  Es inmutable, ya que se comparte entre hilos en el DealerLocationStore.
+ *
+ */
+public class DealerLocationDTO {
+    private final int dealerId;
+    private final double longitude;
+    private final double latitude;
+    private final long receivedAtMillis; // Instante en que el servidor recibió la posición (epoch)
+}
@@ -0,0 +1,24 @@
+package bdavanzadas.lab1.dtos;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+
+/**
+ *
+ *  La clase DealerPerformanceDTO representa las estadísticas de un repartidor en el ranking (tabla dealer_performance).
+ *  Los promedios son null cuando el repartidor aún no tiene entregas con fecha o calificaciones.
+ *
+ */
+public class DealerPerformanceDTO {
+    private int dealerId;
+    private int deliveries;
+    private Double avgDeliveryHours;
+    private Double avgRating;
+    private double performanceScore;
+}
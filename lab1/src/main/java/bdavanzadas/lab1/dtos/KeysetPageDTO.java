@@ -0,0 +1,54 @@
+package bdavanzadas.lab1.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+
+/**
+ *
+ *  La clase KeysetPageDTO representa una página de resultados paginada por cursor (keyset).
+ *  Contiene los elementos de la página y el ID desde el cual pedir la siguiente página,
+ *  que es null cuando ya no quedan más resultados.
+ *
+ */
+public class KeysetPageDTO<T> {
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private List<T> items;
+    private Integer nextAfterId; // null si es la última página
+
+    /**
+     * Construye una página a partir de los elementos obtenidos con un límite dado.
+     * Si se obtuvieron menos elementos que el límite, es la última página.
+     * @param items Los elementos de la página, ordenados por ID
+     * @param limit El límite usado en la consulta
+     * @param idOf Función que obtiene el ID de un elemento
+     * @return La página con el cursor de la siguiente
+     */
+    public static <T> KeysetPageDTO<T> of(List<T> items, int limit, ToIntFunction<T> idOf) {
+        Integer next = items.size() < limit ? null : idOf.applyAsInt(items.get(items.size() - 1));
+        return new KeysetPageDTO<>(items, next);
+    }
+
+    /**
+     * Valida los parámetros de paginación.
+     * @param afterId El ID desde el cual paginar (se devuelven los IDs mayores)
+     * @param limit La cantidad de elementos por página
+     */
+    public static void validate(int afterId, int limit) {
+        if (afterId < 0) {
+            throw new IllegalArgumentException("afterId no puede ser negativo");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit debe estar entre 1 y " + MAX_LIMIT);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package bdavanzadas.lab1.dtos;
+
+import bdavanzadas.lab1.entities.GeometryValue;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+
+/**
+ *
+ * La clase MapFeatureDTO representa un elemento de una capa del mapa (un Feature de GeoJSON):
+ * un área de cobertura, la posición de un repartidor o la ruta de un pedido.
+ *
+ */
+public class MapFeatureDTO {
+    private int id;
+    private GeometryValue geometry;
+    private Map<String, Object> properties; // Atributos del elemento (nombre, estado, ...)
+}
@@ -0,0 +1,74 @@
+package bdavanzadas.lab1.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+
+/**
+ *
+ * La clase MapViewportDTO representa la vista del mapa que pide el frontend: el rectángulo visible
+ * (bbox, en longitud y latitud WGS84) y el nivel de zoom.
+ * Del zoom se obtienen la tolerancia de simplificación (el tamaño de un pixel en grados) y los decimales
+ * con que vale la pena escribir las coordenadas; sin zoom las geometrías se entregan completas.
+ *
+ */
+public class MapViewportDTO {
+
+    public static final int MAX_ZOOM = 22;
+
+    private final double minLon;
+    private final double minLat;
+    private final double maxLon;
+    private final double maxLat;
+    private final double toleranceDegrees;   // 0 = sin simplificar
+    private final int coordinateDecimals;    // -1 = sin redondear
+
+    /**
+     * Crea la vista a partir de los parámetros de la solicitud.
+     * @param "bbox" Rectángulo visible como "minLon,minLat,maxLon,maxLat" (null = todo el mundo)
+     * @param "zoom" Nivel de zoom del mapa, entre 0 y 22 (null = sin simplificar)
+     * @return La vista del mapa
+     * @throws IllegalArgumentException si el bbox o el zoom no son válidos
+     */
+    public static MapViewportDTO of(String bbox, Integer zoom) {
+        double[] box = {-180, -90, 180, 90};
+        if (bbox != null && !bbox.isBlank()) {
+            String[] parts = bbox.split(",");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("El bbox debe tener la forma minLon,minLat,maxLon,maxLat");
+            }
+            try {
+                for (int i = 0; i < 4; i++) {
+                    box[i] = Double.parseDouble(parts[i].trim());
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("El bbox debe contener 4 números");
+            }
+            if (box[0] < -180 || box[2] > 180 || box[1] < -90 || box[3] > 90
+                    || box[0] >= box[2] || box[1] >= box[3]) {
+                throw new IllegalArgumentException("El bbox debe estar en WGS84 y cumplir minLon < maxLon y minLat < maxLat");
+            }
+        }
+
+        if (zoom == null) {
+            return new MapViewportDTO(box[0], box[1], box[2], box[3], 0, -1);
+        }
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("El zoom debe estar entre 0 y " + MAX_ZOOM);
+        }
+        double pixelDegrees = pixelDegrees(zoom);
+        int decimals = Math.min(7, (int) Math.ceil(-Math.log10(pixelDegrees)));
+        return new MapViewportDTO(box[0], box[1], box[2], box[3], pixelDegrees, Math.max(0, decimals));
+    }
+
+    /**
+     * Ancho de un pixel en grados en un nivel de zoom, con teselas de 256 pixeles: 360 / (256 * 2^zoom).
+     * @param "zoom" Nivel de zoom del mapa, entre 0 y 22
+     * @return El ancho de un pixel en grados
+     */
+    public static double pixelDegrees(int zoom) {
+        return 360.0 / (256.0 * (1L << zoom));
+    }
+}
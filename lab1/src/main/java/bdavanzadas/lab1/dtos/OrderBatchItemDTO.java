@@ -0,0 +1,28 @@
+package bdavanzadas.lab1.dtos;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+
+/**
+ *
+ *  La clase OrderBatchItemDTO representa un pedido dentro de una carga masiva de pedidos (POST /orders/batch).
+ *  Contiene los mismos datos que recibe el procedimiento register_order_with_products.
+ *  El clientId solo se considera cuando la carga la hace un administrador; para un cliente se usa su propio ID.
+ *
+ */
+public class OrderBatchItemDTO {
+    private Date orderDate;
+    private String status;
+    private Integer clientId;
+    private Integer dealerId;
+    private List<Integer> productIds;
+}
@@ -0,0 +1,28 @@
+package bdavanzadas.lab1.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+
+/**
+ *
+ * La clase OrderRollupDTO representa un agregado de pedidos de un repartidor, empresa o cliente
+ * en un período (día o mes) y estado.
+ * Los pedidos ENTREGADO se agrupan por su fecha de entrega y los demás por su fecha de pedido.
+ *
+ */
+public class OrderRollupDTO {
+    private String scope;          // DEALER, COMPANY o CLIENT
+    private int scopeId;
+    private LocalDate period;      // Día, o primer día del mes
+    private String status;
+    private int orderCount;
+    private double revenue;        // Suma de total_price
+    private double distanceMeters; // Suma del largo de las rutas en metros
+}
@@ -0,0 +1,25 @@
+package bdavanzadas.lab1.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+
+/**
+ *
+ * La clase OrderStatusChangeDTO representa el estado de un pedido después de un cambio de estado,
+ * con la versión que debe enviarse en el siguiente cambio.
+ *
+ */
+public class OrderStatusChangeDTO {
+    private int orderId;
+    private String status;
+    private Integer dealerId;
+    private Date deliveryDate;
+    private int version;
+}
@@ -16,7 +16,7 @@ public class CoverageAreaEntity {
 
     private int id;
     private String name;
-    private String coverageArea;
+    private GeometryValue coverageArea; // Se lee en EWKB y se formatea solo al serializar
 
 
 
@@ -0,0 +1,171 @@
+package bdavanzadas.lab1.entities;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.locationtech.jts.io.WKTReader;
+import org.locationtech.jts.io.WKTWriter;
+
+import java.util.Arrays;
+
+
+/**
+ *
+ * La clase GeometryValue representa una geometría PostGIS (SRID 4326) de una entidad.
+ * Se lee y se escribe en binario (EWKB) a través del driver de PostgreSQL, sin pasar por texto.
+ * Los bytes se decodifican a una geometría JTS y se formatean a WKT solo cuando alguien lo pide
+ * (por ejemplo, al serializar la respuesta JSON), y cada conversión se hace una sola vez.
+ *
+ */
+public final class GeometryValue {
+
+    public static final int SRID = 4326;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), SRID);
+
+    // Las conversiones son idempotentes: si dos hilos las calculan a la vez, ambos obtienen el mismo valor
+    private volatile byte[] ewkb;
+    private volatile Geometry geometry;
+    private volatile String wkt;
+
+    private GeometryValue(byte[] ewkb, Geometry geometry, String wkt) {
+        this.ewkb = ewkb;
+        this.geometry = geometry;
+        this.wkt = wkt;
+    }
+
+    /**
+     * Crea la geometría a partir de WKB o EWKB (por ejemplo, el resultado de ST_AsEWKB).
+     * Los bytes se decodifican recién cuando se piden la geometría o el WKT.
+     * @param "ewkb" Los bytes de la geometría.
+     * @return La geometría.
+     */
+    public static GeometryValue fromWkb(byte[] ewkb) {
+        if (ewkb == null) {
+            throw new IllegalArgumentException("La geometría WKB no puede ser nula");
+        }
+        return new GeometryValue(ewkb, null, null);
+    }
+
+    /**
+     * Crea la geometría a partir de un texto WKT (por ejemplo, el enviado por un cliente).
+     * El texto se valida al crearla y se conserva tal cual para volver a entregarlo.
+     * @param "wkt" La geometría en formato WKT, en coordenadas WGS84.
+     * @return La geometría.
+     * @throws IllegalArgumentException si el texto no es un WKT válido.
+     */
+    public static GeometryValue fromWkt(String wkt) {
+        if (wkt == null || wkt.isBlank()) {
+            throw new IllegalArgumentException("La geometría WKT no puede estar vacía");
+        }
+        try {
+            Geometry parsed = new WKTReader(GEOMETRY_FACTORY).read(wkt);
+            return new GeometryValue(null, parsed, wkt);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Formato WKT inválido: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Crea la geometría a partir de una geometría JTS. Si no tiene SRID se asume 4326.
+     * @param "geometry" La geometría JTS.
+     * @return La geometría.
+     */
+    public static GeometryValue of(Geometry geometry) {
+        if (geometry == null) {
+            throw new IllegalArgumentException("La geometría no puede ser nula");
+        }
+        if (geometry.getSRID() == 0) {
+            geometry.setSRID(SRID);
+        }
+        return new GeometryValue(null, geometry, null);
+    }
+
+    /**
+     * Obtiene la geometría JTS, decodificando los bytes la primera vez.
+     * @return La geometría JTS.
+     */
+    public Geometry getGeometry() {
+        Geometry result = geometry;
+        if (result == null) {
+            try {
+                result = new WKBReader(GEOMETRY_FACTORY).read(ewkb);
+            } catch (ParseException e) {
+                throw new IllegalStateException("Geometría WKB inválida", e);
+            }
+            if (result.getSRID() == 0) {
+                result.setSRID(SRID);
+            }
+            geometry = result;
+        }
+        return result;
+    }
+
+    /**
+     * Obtiene la geometría en EWKB (little endian, 2D, con SRID), lista para ST_GeomFromEWKB.
+     * @return Los bytes de la geometría.
+     */
+    public byte[] toEwkb() {
+        byte[] result = ewkb;
+        if (result == null) {
+            result = new WKBWriter(2, ByteOrderValues.LITTLE_ENDIAN, true).write(getGeometry());
+            ewkb = result;
+        }
+        return result;
+    }
+
+    /**
+     * Obtiene la geometría en formato WKT, formateándola la primera vez.
+     * El formato es el de ST_AsText de PostGIS (por ejemplo, LINESTRING(-70.65 -33.45,-70.6 -33.4)),
+     * el mismo que entregaba la API cuando el WKT se calculaba en la base de datos.
+     * @return La geometría en formato WKT.
+     */
+    public String toWkt() {
+        String result = wkt;
+        if (result == null) {
+            result = toPostgisWkt(new WKTWriter().write(getGeometry()));
+            wkt = result;
+        }
+        return result;
+    }
+
+    /**
+     * Convierte el WKT de JTS (LINESTRING (x y, x y)) al de PostGIS (LINESTRING(x y,x y)):
+     * sin espacio antes de los paréntesis ni después de las comas. "EMPTY" conserva su espacio.
+     */
+    static String toPostgisWkt(String jtsWkt) {
+        return jtsWkt.replace(" (", "(").replace(", ", ",");
+    }
+
+    /**
+     * Tipo de la geometría (Point, LineString, Polygon, ...).
+     */
+    public String getGeometryType() {
+        return getGeometry().getGeometryType();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GeometryValue other)) {
+            return false;
+        }
+        return Arrays.equals(toEwkb(), other.toEwkb());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toEwkb());
+    }
+
+    @Override
+    public String toString() {
+        return toWkt();
+    }
+}
@@ -24,5 +24,6 @@ public class OrdersEntity {
     private int clientId;
     private Integer dealerId;
     private double totalPrice;
-    private String estimatedRoute;
+    private GeometryValue estimatedRoute; // Se lee en EWKB y se formatea solo al serializar
+    private int version; // Aumenta con cada cambio de estado; se envía para detectar cambios concurrentes
 }
@@ -4,9 +4,12 @@ import bdavanzadas.lab1.entities.ClientEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 
 /**
@@ -24,6 +27,38 @@ public class ClientRepository implements ClientRepositoryInt {
      */
     @Autowired
     private JdbcTemplate jdbcTemplate;
+
+    private static final String CLIENT_COLUMNS = "id, name, rut, email, phone, address, user_id, ST_AsText(ubication) as ubication";
+
+    /**
+     * Mapper de una fila de la tabla clients (con la ubicación en WKT) a ClientEntity.
+     */
+    private static final RowMapper<ClientEntity> CLIENT_ROW_MAPPER = (rs, rowNum) -> {
+        ClientEntity client = new ClientEntity();
+        client.setId(rs.getInt("id"));
+        client.setName(rs.getString("name"));
+        client.setRut(rs.getString("rut"));
+        client.setEmail(rs.getString("email"));
+        client.setPhone(rs.getString("phone"));
+        client.setAddress(rs.getString("address"));
+        client.setUbication(rs.getString("ubication")); // WKT
+        return client;
+    };
+
+    /**
+     * Mapper de una fila de la tabla clients que además incluye user_id.
+     */
+    private static final RowMapper<ClientEntity> CLIENT_WITH_USER_ROW_MAPPER = (rs, rowNum) ->
+            new ClientEntity(
+                    rs.getInt("id"),
+                    rs.getString("name"),
+                    rs.getString("rut"),
+                    rs.getString("email"),
+                    rs.getString("phone"),
+                    rs.getString("address"),
+                    rs.getInt("user_id"),
+                    rs.getString("ubication")
+            );
     /**
      * Metodo para guardar un cliente en la base de datos.
      * @param "client" El cliente a guardar.
@@ -97,6 +132,36 @@ public class ClientRepository implements ClientRepositoryInt {
         });
     }
 
+    /**
+     * Metodo para obtener el nombre y la ubicación (longitud y latitud) de un cliente.
+     * @param "id" El id del cliente.
+     * @return Un mapa con las columnas name, lon y lat, o null si el cliente no existe.
+     *
+     */
+    public Map<String, Object> findLocationById(int id) {
+        String sql = "SELECT name, ST_X(ubication) AS lon, ST_Y(ubication) AS lat FROM clients WHERE id = ?";
+        try {
+            return jdbcTemplate.queryForMap(sql, id);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Metodo para obtener solo el id del cliente asociado a un usuario.
+     * @param "userId" El id del usuario.
+     * @return El id del cliente, o null si el usuario no tiene un cliente asociado.
+     *
+     */
+    public Integer findIdByUserId(Long userId) {
+        String sql = "SELECT id FROM clients WHERE user_id = ?";
+        try {
+            return jdbcTemplate.queryForObject(sql, Integer.class, userId);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
     public ClientEntity findByUserId(int userId) {
         String sql = "SELECT id, name, rut, email, phone, address, user_id, " +
                 "ST_AsText(ubication) as ubication FROM clients WHERE user_id = ?";
@@ -124,19 +189,31 @@ public class ClientRepository implements ClientRepositoryInt {
      *
      */
     public List<ClientEntity> findAll() {
-        String sql = "SELECT id, name, rut, email, phone, address, user_id, " +
-                "ST_AsText(ubication) as ubication FROM clients";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> {
-            ClientEntity client = new ClientEntity();
-            client.setId(rs.getInt("id"));
-            client.setName(rs.getString("name"));
-            client.setRut(rs.getString("rut"));
-            client.setEmail(rs.getString("email"));
-            client.setPhone(rs.getString("phone"));
-            client.setAddress(rs.getString("address"));
-            client.setUbication(rs.getString("ubication")); // WKT
-            return client;
-        });
+        String sql = "SELECT " + CLIENT_COLUMNS + " FROM clients";
+        return jdbcTemplate.query(sql, CLIENT_ROW_MAPPER);
+    }
+
+    /**
+     * Metodo para obtener una página de clientes ordenada por id (paginación por cursor).
+     * @param "afterId" Se devuelven los clientes con id mayor a este valor.
+     * @param "limit" La cantidad máxima de clientes a devolver.
+     * @return Una lista de clientes.
+     *
+     */
+    public List<ClientEntity> findAllAfter(int afterId, int limit) {
+        String sql = "SELECT " + CLIENT_COLUMNS + " FROM clients WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql, CLIENT_ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * Metodo para recorrer todos los clientes sin cargarlos en memoria.
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param "consumer" Recibe cada cliente a medida que se lee.
+     *
+     */
+    public void streamAll(Consumer<? super ClientEntity> consumer) {
+        String sql = "SELECT " + CLIENT_COLUMNS + " FROM clients ORDER BY id";
+        StreamingQueries.stream(jdbcTemplate, sql, CLIENT_ROW_MAPPER, consumer);
     }
 
     /**
@@ -152,12 +229,12 @@ public class ClientRepository implements ClientRepositoryInt {
     }
 
     /**
-     * Encuentra clientes que están a más de 5 km de todas las empresas registradas
-     * @return Lista de ClientEntity que cumplen con el criterio de distancia
+     * Consulta de los clientes cuya empresa más cercana está a más de "?" metros.
+     * Se responde con un rango sobre el índice de client_company_proximity.distance_meters
+     * (mantenida por triggers), sin calcular distancias cliente-empresa.
      */
-    public List<ClientEntity> findClientsBeyond5KmFromCompanies() {
-        String sql = """
-        SELECT 
+    private static final String CLIENTS_BEYOND_DISTANCE_SQL = """
+        SELECT
             c.id,
             c.name,
             c.rut,
@@ -166,30 +243,38 @@ public class ClientRepository implements ClientRepositoryInt {
             c.address,
             c.user_id,
             ST_AsText(c.ubication) as ubication
-        FROM clients c
-        WHERE NOT EXISTS (
-            SELECT 1 
-            FROM companies co
-            WHERE ST_DWithin(
-                c.ubication::geography,
-                co.ubication::geography,
-                5000  -- 5000 metros = 5 km
-            )
-        )
-        ORDER BY c.name
-    """;
-
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                new ClientEntity(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("rut"),
-                        rs.getString("email"),
-                        rs.getString("phone"),
-                        rs.getString("address"),
-                        rs.getInt("user_id"),
-                        rs.getString("ubication")
-                ));
+        FROM client_company_proximity p
+        JOIN clients c ON c.id = p.client_id
+        WHERE p.distance_meters > ?
+        """;
+
+    /**
+     * Encuentra clientes que están a más de 5 km de todas las empresas registradas
+     * @return Lista de ClientEntity que cumplen con el criterio de distancia
+     */
+    public List<ClientEntity> findClientsBeyond5KmFromCompanies() {
+        return findClientsBeyondDistanceFromCompanies(5000);
+    }
+
+    /**
+     * Encuentra clientes que están a más de "meters" metros de todas las empresas registradas.
+     * @param "meters" La distancia mínima en metros a la empresa más cercana.
+     * @return Lista de ClientEntity ordenada por nombre.
+     */
+    public List<ClientEntity> findClientsBeyondDistanceFromCompanies(double meters) {
+        return jdbcTemplate.query(CLIENTS_BEYOND_DISTANCE_SQL + " ORDER BY c.name", CLIENT_WITH_USER_ROW_MAPPER, meters);
+    }
+
+    /**
+     * Recorre los clientes que están a más de "meters" metros de todas las empresas, sin cargarlos en memoria.
+     * Se entregan en el orden del índice (de la empresa más cercana a la más lejana), sin ordenar por nombre.
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param "meters" La distancia mínima en metros a la empresa más cercana.
+     * @param "consumer" Recibe cada cliente a medida que se lee.
+     */
+    public void streamClientsBeyondDistanceFromCompanies(double meters, Consumer<? super ClientEntity> consumer) {
+        StreamingQueries.stream(jdbcTemplate, CLIENTS_BEYOND_DISTANCE_SQL + " ORDER BY p.distance_meters",
+                CLIENT_WITH_USER_ROW_MAPPER, consumer, meters);
     }
 
 }
\ No newline at end of file
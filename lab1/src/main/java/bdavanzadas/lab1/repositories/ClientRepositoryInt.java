@@ -3,6 +3,7 @@ package bdavanzadas.lab1.repositories;
 
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import bdavanzadas.lab1.entities.ClientEntity;
 
@@ -22,6 +23,22 @@ public interface ClientRepositoryInt {
      */
     List<ClientEntity> findAll();
 
+    /**
+     * Metodo para obtener una página de clientes ordenada por id (paginación por cursor).
+     * @param "afterId" Se devuelven los clientes con id mayor a este valor.
+     * @param "limit" La cantidad máxima de clientes a devolver.
+     * @return Una lista de clientes.
+     *
+     */
+    List<ClientEntity> findAllAfter(int afterId, int limit);
+
+    /**
+     * Metodo para recorrer todos los clientes sin cargarlos en memoria.
+     * @param "consumer" Recibe cada elemento a medida que se lee.
+     *
+     */
+    void streamAll(Consumer<? super ClientEntity> consumer);
+
     /**
      * Metodo para guardar un cliente en la base de datos.
      * @param "client" El cliente a guardar.
@@ -51,5 +68,13 @@ public interface ClientRepositoryInt {
      */
     ClientEntity findById(int id);
 
+    /**
+     * Metodo para obtener solo el id del cliente asociado a un usuario.
+     * @param "userId" El id del usuario.
+     * @return El id del cliente, o null si el usuario no tiene un cliente asociado.
+     *
+     */
+    Integer findIdByUserId(Long userId);
+
 
 }
@@ -5,6 +5,7 @@ import bdavanzadas.lab1.entities.CompanyEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collections;
@@ -28,8 +29,42 @@ public class CompanyRepository implements CompanyRepositoryInt {
     private JdbcTemplate jdbcTemplate;
 
 
+    /**
+     * Mapper de una fila de la tabla companies (con la ubicación en WKT) a CompanyEntity.
+     */
+    private static final RowMapper<CompanyEntity> COMPANY_ROW_MAPPER = (rs, rowNum) ->
+            new CompanyEntity(
+                    rs.getInt("id"),
+                    rs.getString("name"),
+                    rs.getString("email"),
+                    rs.getString("phone"),
+                    rs.getString("address"),
+                    rs.getString("rut"),
+                    rs.getString("type"),
+                    rs.getInt("deliveries"),
+                    rs.getInt("failed_deliveries"),
+                    rs.getInt("total_sales"),
+                    rs.getString("ubication")
+            );
+
+    /**
+     * Mapper de una fila de la búsqueda de puntos de entrega cercanos a NearestDeliveryPointDTO.
+     */
+    private static final RowMapper<NearestDeliveryPointDTO> NEAREST_DELIVERY_POINT_ROW_MAPPER = (rs, rowNum) ->
+            new NearestDeliveryPointDTO(
+                    rs.getInt("client_id"),
+                    rs.getString("client_name"),
+                    rs.getString("client_address"),
+                    rs.getString("client_location"),
+                    rs.getString("company_name"),
+                    rs.getDouble("distance_meters")
+            );
+
+
     /**
      * Método para obtener todas las compañías con sus métricas de entregas, ventas y fallidas.
+     * Las métricas se leen de las columnas de la tabla, que se mantienen actualizadas de forma incremental
+     * (procedimiento register_order_with_products y trigger trg_update_company_metrics).
      * @return Lista de CompanyEntity con las métricas correspondientes.
      */
     public List<CompanyEntity> findAll() {
@@ -43,31 +78,14 @@ public class CompanyRepository implements CompanyRepositoryInt {
             c.rut,
             c.type,
             ST_AsText(c.ubication) AS ubication,
-            COUNT(o.id) AS deliveries,
-            SUM(CASE WHEN o.status = 'FALLIDA' THEN 1 ELSE 0 END) AS failed_deliveries,
-            SUM(o.total_price) AS total_sales
+            c.deliveries,
+            c.failed_deliveries,
+            c.total_sales
         FROM 
             companies c
-        LEFT JOIN orders o ON c.id = o.client_id
-        GROUP BY 
-            c.id, c.name, c.email, c.phone, c.address, c.rut, c.type, c.ubication
         """;
 
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                new CompanyEntity(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getString("phone"),
-                        rs.getString("address"),
-                        rs.getString("rut"),
-                        rs.getString("type"),
-                        rs.getInt("deliveries"),
-                        rs.getInt("failed_deliveries"),
-                        rs.getInt("total_sales"),
-                        rs.getString("ubication")
-                )
-        );
+        return jdbcTemplate.query(sql, COMPANY_ROW_MAPPER);
     }
 
 
@@ -94,6 +112,16 @@ public class CompanyRepository implements CompanyRepositoryInt {
         );
     }
 
+    /**
+     * Método para obtener el nombre y la ubicación (longitud y latitud) de todas las compañías.
+     * Se usa para construir el índice de cobertura en memoria (CoverageAreaIndex).
+     * @return Lista de mapas con las columnas id, name, lon y lat.
+     */
+    public List<Map<String, Object>> findAllLocations() {
+        String sql = "SELECT id, name, ST_X(ubication) AS lon, ST_Y(ubication) AS lat FROM companies";
+        return jdbcTemplate.queryForList(sql);
+    }
+
     /**
      * Método para crear una nueva compañía en la base de datos.
      * @param c CompanyEntity con los datos de la compañía a crear.
@@ -166,67 +194,29 @@ public class CompanyRepository implements CompanyRepositoryInt {
             c.rut,
             c.type,
             ST_AsText(c.ubication) AS ubication,
-            COUNT(o.id) AS deliveries,
-            SUM(CASE WHEN o.status = 'FALLIDA' THEN 1 ELSE 0 END) AS failed_deliveries,
-            SUM(o.total_price) AS total_sales
+            c.deliveries,
+            c.failed_deliveries,
+            c.total_sales
         FROM
             companies c
-        LEFT JOIN orders o ON c.id = o.client_id
-        GROUP BY
-            c.id, c.name, c.email, c.phone, c.address, c.rut, c.type, c.ubication
-        ORDER BY failed_deliveries DESC
+        ORDER BY c.failed_deliveries DESC
         """;
 
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                new CompanyEntity(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getString("phone"),
-                        rs.getString("address"),
-                        rs.getString("rut"),
-                        rs.getString("type"),
-                        rs.getInt("deliveries"),
-                        rs.getInt("failed_deliveries"),
-                        rs.getInt("total_sales"),
-                        rs.getString("ubication")
-                )
-        );
+        return jdbcTemplate.query(sql, COMPANY_ROW_MAPPER);
     }
 
 
     /**
-     * Método para actualizar las métricas de las compañías en la base de datos.
-     * Este método recalcula el número de entregas, entregas fallidas y ventas totales para cada compañía.
+     * Método para reconstruir las métricas de las compañías desde cero (reconciliación).
+     * Las métricas se mantienen de forma incremental al registrar pedidos y cambiar su estado;
+     * este método las recalcula con la función reconcile_company_metrics, que solo actualiza
+     * las compañías cuyos valores no coinciden.
+     * @return La cantidad de compañías corregidas.
      */
 
-    public void updateCompanyMetrics() {
-        String sql = """
-        UPDATE companies c
-        SET 
-            deliveries = COALESCE((
-                SELECT COUNT(o.id)
-                FROM orders o
-                JOIN order_products op ON o.id = op.order_id
-                JOIN products p ON op.product_id = p.id
-                WHERE p.company_id = c.id
-            ), 0),
-            failed_deliveries = COALESCE((
-                SELECT COUNT(o.id)
-                FROM orders o
-                JOIN order_products op ON o.id = op.order_id
-                JOIN products p ON op.product_id = p.id
-                WHERE p.company_id = c.id AND o.status = 'FALLIDA'
-            ), 0),
-            total_sales = COALESCE((
-                SELECT SUM(o.total_price)
-                FROM orders o
-                JOIN order_products op ON o.id = op.order_id
-                JOIN products p ON op.product_id = p.id
-                WHERE p.company_id = c.id
-            ), 0);
-        """;
-        jdbcTemplate.update(sql);
+    public int updateCompanyMetrics() {
+        Integer updated = jdbcTemplate.queryForObject("SELECT reconcile_company_metrics()", Integer.class);
+        return updated != null ? updated : 0;
     }
 
 
@@ -266,44 +256,49 @@ public class CompanyRepository implements CompanyRepositoryInt {
 
     /**
      * Método para encontrar los puntos de entrega más cercanos a una compañía específica.
+     * Búsqueda k-vecinos (KNN): el operador {@code <->} sobre geography recorre el índice GiST
+     * ix_clients_ubication_geog en orden de distancia y se detiene a los "limit" clientes, sin
+     * calcular la distancia a todos los clientes. La distancia final se refina con ST_Distance
+     * (esferoide) solo sobre esos candidatos.
      * @param companyId ID de la compañía para la cual se buscan los puntos de entrega.
      * @param limit Número máximo de puntos de entrega a retornar.
-     * @return Lista de NearestDeliveryPointDTO con los puntos de entrega más cercanos.
+     * @param radiusMeters Radio máximo en metros, o null para no limitar la distancia.
+     * @return Lista de NearestDeliveryPointDTO con los puntos de entrega más cercanos, del más cercano al más lejano.
      */
-    public List<NearestDeliveryPointDTO> findNearestDeliveryPoints(int companyId, int limit) {
+    public List<NearestDeliveryPointDTO> findNearestDeliveryPoints(int companyId, int limit, Double radiusMeters) {
+        String radiusFilter = radiusMeters != null
+                ? "AND ST_DWithin(c.ubication::geography, comp.ubication::geography, ?)"
+                : "";
         String sql = """
-            SELECT 
-                c.id AS client_id,
-                c.name AS client_name,
-                c.address AS client_address,
-                ST_AsText(c.ubication) AS client_location,
+            SELECT
+                nearest.id AS client_id,
+                nearest.name AS client_name,
+                nearest.address AS client_address,
+                ST_AsText(nearest.ubication) AS client_location,
                 comp.name AS company_name,
-                ST_Distance(c.ubication::geography, comp.ubication::geography) AS distance_meters
-            FROM 
-                clients c
-            CROSS JOIN 
+                ST_Distance(nearest.ubication::geography, comp.ubication::geography) AS distance_meters
+            FROM
                 companies comp
-            WHERE 
-                comp.id = ? 
-                AND c.ubication IS NOT NULL
+            CROSS JOIN LATERAL (
+                SELECT c.id, c.name, c.address, c.ubication
+                FROM clients c
+                WHERE c.ubication IS NOT NULL
+                  %s
+                ORDER BY c.ubication::geography <-> comp.ubication::geography
+                LIMIT ?
+            ) nearest
+            WHERE
+                comp.id = ?
                 AND comp.ubication IS NOT NULL
-            ORDER BY 
+            ORDER BY
                 distance_meters ASC
-            LIMIT ?
-            """;
-
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                new NearestDeliveryPointDTO(
-                        rs.getInt("client_id"),
-                        rs.getString("client_name"),
-                        rs.getString("client_address"),
-                        rs.getString("client_location"),
-                        rs.getString("company_name"),
-                        rs.getDouble("distance_meters")
-                ), companyId, limit);
-    }
-
+            """.formatted(radiusFilter);
 
+        Object[] args = radiusMeters != null
+                ? new Object[]{radiusMeters, limit, companyId}
+                : new Object[]{limit, companyId};
+        return jdbcTemplate.query(sql, NEAREST_DELIVERY_POINT_ROW_MAPPER, args);
+    }
 
     /**
      * Método para encontrar el punto de entrega más lejano para cada compañía.
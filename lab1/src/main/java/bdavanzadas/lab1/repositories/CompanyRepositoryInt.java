@@ -59,12 +59,13 @@ public interface CompanyRepositoryInt {
 
 
     /**
-     * Metodo para actualizar los metadatos de las empresas.
-     * Este método actualiza el número de entregas, entregas fallidas y total de ventas de cada empresa en la base de datos.
+     * Metodo para reconstruir los metadatos de las empresas.
+     * Este método recalcula desde cero el número de entregas, entregas fallidas y total de ventas de cada empresa,
+     * que normalmente se mantienen de forma incremental en la base de datos.
      *
-     * @return void
+     * @return La cantidad de empresas corregidas.
      */
-    void updateCompanyMetrics();
+    int updateCompanyMetrics();
 
     /**
      * Metodo para buscar las empresas con más volumen de comida entregada.
@@ -1,15 +1,16 @@
 package bdavanzadas.lab1.repositories;
 
-import bdavanzadas.lab1.dtos.CoverageCheckDTO;
+import bdavanzadas.lab1.dtos.MapFeatureDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
 import bdavanzadas.lab1.entities.CoverageAreaEntity;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import java.util.Collections;
 import org.springframework.stereotype.Repository;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 
 /**
@@ -34,12 +35,12 @@ public class CoverageAreaRepository implements CoverageAreaRepositoryInt {
      */
     @Override
     public List<CoverageAreaEntity> findAll() {
-        String sql = "SELECT coverage_id AS id, name, ST_AsText(coverageArea) AS coverageArea FROM coverage_area";
+        String sql = "SELECT coverage_id AS id, name, ST_AsEWKB(coverageArea) AS coverageArea FROM coverage_area";
         return jdbcTemplate.query(sql, (rs, rowNum) ->
                 new CoverageAreaEntity(
                         rs.getInt("id"),
                         rs.getString("name"),
-                        rs.getString("coverageArea")
+                        Geometries.read(rs, "coverageArea")
                 ));
     }
 
@@ -50,12 +51,12 @@ public class CoverageAreaRepository implements CoverageAreaRepositoryInt {
      */
     @Override
     public CoverageAreaEntity findById(int id) {
-        String sql = "SELECT coverage_id AS id, name, ST_AsText(coverageArea) AS coverageArea FROM coverage_area WHERE coverage_id = ?";
+        String sql = "SELECT coverage_id AS id, name, ST_AsEWKB(coverageArea) AS coverageArea FROM coverage_area WHERE coverage_id = ?";
         return jdbcTemplate.queryForObject(sql, new Object[]{id}, (rs, rowNum) ->
                 new CoverageAreaEntity(
                         rs.getInt("id"),
                         rs.getString("name"),
-                        rs.getString("coverageArea")
+                        Geometries.read(rs, "coverageArea")
                 ));
     }
 
@@ -66,10 +67,10 @@ public class CoverageAreaRepository implements CoverageAreaRepositoryInt {
      */
     @Override
     public void save(CoverageAreaEntity coverageArea) {
-        String sql = "INSERT INTO coverage_area (name, coverageArea) VALUES (?, ST_GeomFromText(?, 4326))";
+        String sql = "INSERT INTO coverage_area (name, coverageArea) VALUES (?, ST_GeomFromEWKB(?))";
         jdbcTemplate.update(sql,
                 coverageArea.getName(),
-                coverageArea.getCoverageArea());
+                Geometries.param(coverageArea.getCoverageArea()));
     }
 
 
@@ -79,10 +80,10 @@ public class CoverageAreaRepository implements CoverageAreaRepositoryInt {
      */
     @Override
     public void update(CoverageAreaEntity coverageArea) {
-        String sql = "UPDATE coverage_area SET name = ?, coverageArea = ST_GeomFromText(?, 4326) WHERE coverage_id = ?";
+        String sql = "UPDATE coverage_area SET name = ?, coverageArea = ST_GeomFromEWKB(?) WHERE coverage_id = ?";
         jdbcTemplate.update(sql,
                 coverageArea.getName(),
-                coverageArea.getCoverageArea(),
+                Geometries.param(coverageArea.getCoverageArea()),
                 coverageArea.getId());
     }
 
@@ -100,88 +101,41 @@ public class CoverageAreaRepository implements CoverageAreaRepositoryInt {
 
 
     /**
-     * Verifica eficientemente si un cliente está en zona de cobertura
-     * @param clientId ID del cliente
-     * @param companyId ID de la empresa
-     * @return true si está en cobertura, false si no
+     * Recorre las áreas de cobertura visibles en una vista del mapa, sin cargarlas en memoria.
+     * Se omiten las áreas más pequeñas que un pixel y el resto se simplifica con la tolerancia de la vista.
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param viewport La vista del mapa (bbox y zoom)
+     * @param consumer Recibe cada área a medida que se lee
      */
-    public boolean isClientInCoverageArea(int clientId, int companyId) {
+    public void streamMapFeatures(MapViewportDTO viewport, Consumer<? super MapFeatureDTO> consumer) {
         String sql = """
-            SELECT EXISTS (
-                SELECT 1
-                FROM clients c
-                JOIN coverage_area_company cac ON cac.company_id = ?
-                JOIN coverage_area ca ON ca.coverage_id = cac.coverage_id
-                WHERE c.id = ?
-                AND ST_Within(c.ubication, ca.coverageArea)
-                            )"""; // Paréntesis correctamente cerrado
-
-        try {
-            return Boolean.TRUE.equals(
-                    jdbcTemplate.queryForObject(sql, Boolean.class, companyId, clientId)
-            );
-        } catch (DataAccessException e) {
-            throw new DataAccessException("Error en consulta de cobertura", e) {};
-        }
+                SELECT ca.coverage_id AS id,
+                       ca.name,
+                       ST_AsEWKB(ST_SimplifyPreserveTopology(ca.coverageArea, ?)) AS geom
+                FROM coverage_area ca
+                WHERE ca.coverageArea && ST_MakeEnvelope(?, ?, ?, ?, 4326)
+                  AND GREATEST(ST_XMax(ca.coverageArea) - ST_XMin(ca.coverageArea),
+                               ST_YMax(ca.coverageArea) - ST_YMin(ca.coverageArea)) >= ?
+                """;
+        StreamingQueries.stream(jdbcTemplate, sql, (rs, rowNum) -> {
+                    Map<String, Object> properties = new LinkedHashMap<>();
+                    properties.put("name", rs.getString("name"));
+                    return new MapFeatureDTO(rs.getInt("id"), Geometries.read(rs, "geom"), properties);
+                }, consumer,
+                viewport.getToleranceDegrees(),
+                viewport.getMinLon(), viewport.getMinLat(), viewport.getMaxLon(), viewport.getMaxLat(),
+                viewport.getToleranceDegrees());
     }
 
+
     /**
-     * Obtiene información detallada de cobertura para un cliente y empresa
-     * @param clientId ID del cliente
-     * @param companyId ID de la empresa
-     * @return CoverageCheckDTO con la información (null si no existe relación)
+     * Obtiene la relación entre áreas de cobertura y empresas.
+     * Se usa para construir el índice de cobertura en memoria (CoverageAreaIndex).
+     * @return Lista de mapas con las columnas coverage_id y company_id
      */
-    public CoverageCheckDTO getClientCoverageDetails(int clientId, int companyId) {
-        String sql = """
-            SELECT 
-                c.id AS client_id,
-                c.name AS client_name,
-                comp.id AS company_id,
-                comp.name AS company_name,
-                ca.coverage_id,
-                ca.name AS coverage_name,
-                CASE 
-                    WHEN ca.coverage_id IS NULL THEN false
-                    ELSE ST_Within(c.ubication, ca.coverageArea)
-                END AS is_covered,
-                ST_Distance(
-                    c.ubication::geography, 
-                    comp.ubication::geography
-                ) AS distance_meters
-            FROM 
-                clients c
-            CROSS JOIN 
-                companies comp
-            LEFT JOIN (
-                SELECT cac.company_id, ca.coverage_id, ca.name, ca.coverageArea
-                FROM coverage_area_company cac
-                JOIN coverage_area ca ON ca.coverage_id = cac.coverage_id
-                WHERE cac.company_id = ?
-            ) ca ON ST_Intersects(c.ubication, ca.coverageArea)
-            WHERE 
-                c.id = ? 
-                AND comp.id = ?
-            ORDER BY
-                CASE WHEN ca.coverage_id IS NULL THEN 1 ELSE 0 END,
-                ST_Distance(c.ubication, ca.coverageArea)
-            LIMIT 1
-            """;
-
-        try {
-            return jdbcTemplate.queryForObject(sql, (rs, rowNum) ->
-                    new CoverageCheckDTO(
-                            rs.getInt("client_id"),
-                            rs.getString("client_name"),
-                            rs.getInt("company_id"),
-                            rs.getString("company_name"),
-                            rs.getObject("coverage_id", Integer.class), // Maneja posible null
-                            rs.getString("coverage_name"), // Puede ser null
-                            rs.getBoolean("is_covered"),
-                            rs.getDouble("distance_meters")
-                    ), companyId, clientId, companyId);
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
+    public List<Map<String, Object>> findCompanyLinks() {
+        String sql = "SELECT coverage_id, company_id FROM coverage_area_company";
+        return jdbcTemplate.queryForList(sql);
     }
 
     /**
@@ -215,49 +169,4 @@ public class CoverageAreaRepository implements CoverageAreaRepositoryInt {
                 companyId, clientId, maxDistanceMeters);
         return Boolean.TRUE.equals(result);
     }
-
-
-    /**
-     * Obtiene todas las coberturas de un cliente específico.
-     * @param clientId ID del cliente
-     * @return Lista de CoverageCheckDTO con la información de cobertura del cliente
-     */
-    public List<CoverageCheckDTO> getClientCoverages(int clientId) {
-        String sql = """
-        SELECT 
-            c.id AS client_id,
-            c.name AS client_name,
-            comp.id AS company_id,
-            comp.name AS company_name,
-            ca.coverage_id,
-            ca.name AS coverage_name,
-            TRUE AS is_covered,
-            0 AS distance_meters
-        FROM 
-            clients c
-        JOIN coverage_area_company cac ON 1=1
-        JOIN coverage_area ca ON ca.coverage_id = cac.coverage_id
-        JOIN companies comp ON comp.id = cac.company_id
-        WHERE 
-            c.id = ?
-            AND ST_Within(c.ubication, ca.coverageArea)
-        """;
-
-        try {
-            return jdbcTemplate.query(sql, (rs, rowNum) ->
-                    new CoverageCheckDTO(
-                            rs.getInt("client_id"),
-                            rs.getString("client_name"),
-                            rs.getInt("company_id"),
-                            rs.getString("company_name"),
-                            rs.getObject("coverage_id", Integer.class),
-                            rs.getString("coverage_name"),
-                            true, // Siempre true porque el WHERE ya filtra por ST_Within
-                            0 // distance_meters fijado en 0 como solicitaste
-                    ), clientId);
-        } catch (DataAccessException e) {
-            // Si hay error, devolvemos lista vacía
-            return Collections.emptyList();
-        }
-    }
 }
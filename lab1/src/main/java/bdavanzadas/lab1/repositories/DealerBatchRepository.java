@@ -0,0 +1,184 @@
+package bdavanzadas.lab1.repositories;
+
+import bdavanzadas.lab1.dtos.BatchCandidateDTO;
+import bdavanzadas.lab1.dtos.DealerBatchDTO;
+import bdavanzadas.lab1.entities.GeometryValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * La clase DealerBatchRepository maneja los lotes de reparto (tablas dealer_batch y dealer_batch_stop).
+ * Un lote asigna varios pedidos pendientes a un mismo repartidor: el primero en el orden de entrega queda
+ * EN PROCESO y los demás quedan asignados, en su estado pendiente, hasta que termina el anterior.
+ */
+@Repository
+public class DealerBatchRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final RowMapper<BatchCandidateDTO> CANDIDATE_ROW_MAPPER = (rs, rowNum) ->
+            new BatchCandidateDTO(
+                    rs.getInt("order_id"),
+                    rs.getBoolean("urgent"),
+                    rs.getDouble("pickup_longitude"),
+                    rs.getDouble("pickup_latitude"),
+                    rs.getDouble("dropoff_longitude"),
+                    rs.getDouble("dropoff_latitude")
+            );
+
+    private static final RowMapper<DealerBatchDTO> BATCH_ROW_MAPPER = (rs, rowNum) ->
+            new DealerBatchDTO(
+                    rs.getInt("id"),
+                    rs.getInt("dealer_id"),
+                    Arrays.asList((Integer[]) rs.getArray("order_ids").getArray()),
+                    rs.getDouble("distance_meters"),
+                    Geometries.read(rs, "route"),
+                    rs.getTimestamp("created_at")
+            );
+
+    /**
+     * Obtiene los pedidos pendientes sin repartidor que tienen punto de retiro y de entrega,
+     * primero los urgentes y luego los más antiguos.
+     * El retiro es el inicio de la ruta estimada o, si no hay ruta, la empresa del primer producto;
+     * la entrega es el final de la ruta o, si no hay ruta, la ubicación del cliente.
+     * @param limit Cantidad máxima de pedidos
+     * @return Lista de BatchCandidateDTO
+     */
+    public List<BatchCandidateDTO> findBatchCandidates(int limit) {
+        String sql = """
+                SELECT o.id AS order_id, o.status = 'URGENTE' AS urgent,
+                       ST_X(p.pickup) AS pickup_longitude, ST_Y(p.pickup) AS pickup_latitude,
+                       ST_X(p.dropoff) AS dropoff_longitude, ST_Y(p.dropoff) AS dropoff_latitude
+                FROM orders o
+                LEFT JOIN clients c ON c.id = o.client_id
+                CROSS JOIN LATERAL (
+                    SELECT COALESCE(ST_StartPoint(o.estimated_route), (
+                               SELECT co.ubication
+                               FROM order_products op
+                               JOIN products pr ON pr.id = op.product_id
+                               JOIN companies co ON co.id = pr.company_id
+                               WHERE op.order_id = o.id AND co.ubication IS NOT NULL
+                               ORDER BY pr.id
+                               LIMIT 1
+                           )) AS pickup,
+                           COALESCE(ST_EndPoint(o.estimated_route), c.ubication) AS dropoff
+                ) p
+                WHERE o.dealer_id IS NULL
+                  AND o.status IN ('PENDIENTE', 'URGENTE')
+                  AND p.pickup IS NOT NULL
+                  AND p.dropoff IS NOT NULL
+                ORDER BY o.status = 'URGENTE' DESC, o.order_date, o.id
+                LIMIT ?
+                """;
+        return jdbcTemplate.query(sql, CANDIDATE_ROW_MAPPER, limit);
+    }
+
+    /**
+     * Inserta un lote (sin sus paradas).
+     * @param dealerId El ID del repartidor
+     * @param route La ruta de varias paradas
+     * @param distanceMeters El largo de la ruta
+     * @return El lote insertado, con su ID y fecha de creación (sin pedidos)
+     */
+    public DealerBatchDTO insertBatch(int dealerId, GeometryValue route, double distanceMeters) {
+        String sql = """
+                INSERT INTO dealer_batch (dealer_id, route, distance_meters)
+                VALUES (?, ST_GeomFromEWKB(?), ?)
+                RETURNING id, created_at
+                """;
+        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> new DealerBatchDTO(
+                rs.getInt("id"), dealerId, null, distanceMeters, route, rs.getTimestamp("created_at")),
+                dealerId, Geometries.param(route), distanceMeters);
+    }
+
+    /**
+     * Asigna los pedidos de un lote al repartidor con una sola sentencia condicional:
+     * solo se asignan los pedidos que siguen pendientes y sin repartidor, y solo si el repartidor no tiene
+     * pedidos EN PROCESO. El primer pedido pasa a EN PROCESO; los demás conservan su estado.
+     * @param dealerId El ID del repartidor
+     * @param orderIds Los pedidos del lote
+     * @param firstOrderId El pedido que se entrega primero
+     * @return La cantidad de pedidos asignados (si es menor que la del lote, hay que deshacer la transacción)
+     * @throws org.springframework.dao.DuplicateKeyException Si otra asignación concurrente ocupó al repartidor.
+     */
+    public int assignBatchOrders(int dealerId, List<Integer> orderIds, int firstOrderId) {
+        String sql = """
+                UPDATE orders
+                SET dealer_id = ?,
+                    status = CASE WHEN id = ? THEN 'EN PROCESO' ELSE status END
+                WHERE id = ANY(?)
+                  AND dealer_id IS NULL
+                  AND status IN ('PENDIENTE', 'URGENTE')
+                  AND NOT EXISTS (SELECT 1 FROM orders active WHERE active.dealer_id = ? AND active.status = 'EN PROCESO')
+                """;
+        return jdbcTemplate.update(sql, dealerId, firstOrderId, orderIds.toArray(new Integer[0]), dealerId);
+    }
+
+    /**
+     * Inserta las paradas de un lote.
+     * @param batchId El ID del lote
+     * @param stops Filas {order_id, pickup_seq, delivery_seq}
+     */
+    public void insertStops(int batchId, List<int[]> stops) {
+        String sql = "INSERT INTO dealer_batch_stop (batch_id, order_id, pickup_seq, delivery_seq) VALUES (?, ?, ?, ?)";
+        jdbcTemplate.batchUpdate(sql, stops, stops.size(), (ps, stop) -> {
+            ps.setInt(1, batchId);
+            ps.setInt(2, stop[0]);
+            ps.setInt(3, stop[1]);
+            ps.setInt(4, stop[2]);
+        });
+    }
+
+    /**
+     * Pasa a EN PROCESO el siguiente pedido del lote de un pedido recién terminado (entregado o fallido).
+     * Es el siguiente en el orden de entrega que sigue asignado al repartidor del lote y pendiente;
+     * no hace nada si el repartidor ya tiene otro pedido EN PROCESO o si el pedido no pertenece a un lote.
+     * @param orderId El ID del pedido terminado
+     * @return true si se inició otro pedido
+     */
+    public boolean startNextStop(int orderId) {
+        String sql = """
+                UPDATE orders o SET status = 'EN PROCESO'
+                WHERE o.id = (
+                    SELECT next.order_id
+                    FROM dealer_batch_stop done
+                    JOIN dealer_batch b ON b.id = done.batch_id
+                    JOIN dealer_batch_stop next ON next.batch_id = done.batch_id
+                    JOIN orders n ON n.id = next.order_id
+                    WHERE done.order_id = ?
+                      AND n.dealer_id = b.dealer_id
+                      AND n.status IN ('PENDIENTE', 'URGENTE')
+                    ORDER BY next.delivery_seq
+                    LIMIT 1
+                )
+                  AND NOT EXISTS (SELECT 1 FROM orders active WHERE active.dealer_id = o.dealer_id AND active.status = 'EN PROCESO')
+                """;
+        return jdbcTemplate.update(sql, orderId) == 1;
+    }
+
+    /**
+     * Obtiene el último lote de un repartidor, con sus pedidos en el orden de entrega.
+     * @param dealerId El ID del repartidor
+     * @return El lote, o null si el repartidor no tiene lotes
+     */
+    public DealerBatchDTO findLatestByDealerId(int dealerId) {
+        String sql = """
+                SELECT b.id, b.dealer_id, b.distance_meters, b.created_at, ST_AsEWKB(b.route) AS route,
+                       array_agg(s.order_id ORDER BY s.delivery_seq) AS order_ids
+                FROM dealer_batch b
+                JOIN dealer_batch_stop s ON s.batch_id = b.id
+                WHERE b.dealer_id = ?
+                GROUP BY b.id
+                ORDER BY b.created_at DESC, b.id DESC
+                LIMIT 1
+                """;
+        List<DealerBatchDTO> result = jdbcTemplate.query(sql, BATCH_ROW_MAPPER, dealerId);
+        return result.isEmpty() ? null : result.get(0);
+    }
+}
@@ -1,14 +1,21 @@
 package bdavanzadas.lab1.repositories;
 
+import bdavanzadas.lab1.dtos.DealerLocationDTO;
+import bdavanzadas.lab1.dtos.DealerPerformanceDTO;
 import bdavanzadas.lab1.dtos.DealerWithDistanceDTO;
+import bdavanzadas.lab1.dtos.MapFeatureDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
 import bdavanzadas.lab1.entities.DealerEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 
 
@@ -28,6 +35,24 @@ public class DealerRepository  implements DealerRepositoryInt {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    private static final String DEALER_COLUMNS = "id, name, rut, email, phone, vehicle, plate, user_id, ST_AsText(ubication) as ubication";
+
+    /**
+     * Mapper de una fila de la tabla dealers (con la ubicación en WKT) a DealerEntity.
+     */
+    private static final RowMapper<DealerEntity> DEALER_ROW_MAPPER = (rs, rowNum) -> {
+        DealerEntity dealer = new DealerEntity();
+        dealer.setId(rs.getInt("id"));
+        dealer.setName(rs.getString("name"));
+        dealer.setRut(rs.getString("rut"));
+        dealer.setEmail(rs.getString("email"));
+        dealer.setPhone(rs.getString("phone"));
+        dealer.setVehicle(rs.getString("vehicle"));
+        dealer.setPlate(rs.getString("plate"));
+        dealer.setUbication(rs.getString("ubication"));
+        return dealer;
+    };
+
 
     /**
      * Metodo para guardar un dealer en la base de datos.
@@ -41,6 +66,44 @@ public class DealerRepository  implements DealerRepositoryInt {
     }
 
 
+    /**
+     * Metodo para obtener la ubicación de los dealers que no tienen un pedido EN PROCESO.
+     *
+     * @return Las posiciones de los dealers disponibles (receivedAtMillis en 0).
+     */
+    public List<DealerLocationDTO> findIdleDealerLocations() {
+        String sql = """
+                SELECT d.id, ST_X(d.ubication) AS longitude, ST_Y(d.ubication) AS latitude
+                FROM dealers d
+                WHERE d.ubication IS NOT NULL
+                  AND NOT EXISTS (SELECT 1 FROM orders o WHERE o.dealer_id = d.id AND o.status = 'EN PROCESO')
+                """;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new DealerLocationDTO(
+                rs.getInt("id"),
+                rs.getDouble("longitude"),
+                rs.getDouble("latitude"),
+                0L
+        ));
+    }
+
+
+    /**
+     * Metodo para actualizar la ubicación de varios dealers en un solo lote (JDBC batch).
+     * Solo modifica la columna ubication, sin reescribir el resto de la fila.
+     *
+     * @param "locations" Las posiciones a guardar, una por dealer.
+     * @return void
+     */
+    public void updateLocations(List<DealerLocationDTO> locations) {
+        String sql = "UPDATE dealers SET ubication = ST_SetSRID(ST_MakePoint(?, ?), 4326) WHERE id = ?";
+        jdbcTemplate.batchUpdate(sql, locations, locations.size(), (ps, location) -> {
+            ps.setDouble(1, location.getLongitude());
+            ps.setDouble(2, location.getLatitude());
+            ps.setInt(3, location.getDealerId());
+        });
+    }
+
+
     /**
      * Metodo para actualizar un dealer en la base de datos.
      *
@@ -106,19 +169,51 @@ public class DealerRepository  implements DealerRepositoryInt {
      * @return Una lista de todos los dealers.
      */
     public List<DealerEntity> findAll() {
-        String sql = "SELECT id, name, rut, email, phone, vehicle, plate, user_id, ST_AsText(ubication) as ubication FROM dealers";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> {
-            DealerEntity dealer = new DealerEntity();
-            dealer.setId(rs.getInt("id"));
-            dealer.setName(rs.getString("name"));
-            dealer.setRut(rs.getString("rut"));
-            dealer.setEmail(rs.getString("email"));
-            dealer.setPhone(rs.getString("phone"));
-            dealer.setVehicle(rs.getString("vehicle"));
-            dealer.setPlate(rs.getString("plate"));
-            dealer.setUbication(rs.getString("ubication"));
-            return dealer;
-        });
+        String sql = "SELECT " + DEALER_COLUMNS + " FROM dealers";
+        return jdbcTemplate.query(sql, DEALER_ROW_MAPPER);
+    }
+
+    /**
+     * Metodo para obtener una página de dealers ordenada por id (paginación por cursor).
+     * @param "afterId" Se devuelven los dealers con id mayor a este valor.
+     * @param "limit" La cantidad máxima de dealers a devolver.
+     * @return Una lista de dealers.
+     */
+    public List<DealerEntity> findAllAfter(int afterId, int limit) {
+        String sql = "SELECT " + DEALER_COLUMNS + " FROM dealers WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql, DEALER_ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * Metodo para recorrer todos los dealers sin cargarlos en memoria.
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param "consumer" Recibe cada dealer a medida que se lee.
+     */
+    public void streamAll(Consumer<? super DealerEntity> consumer) {
+        String sql = "SELECT " + DEALER_COLUMNS + " FROM dealers ORDER BY id";
+        StreamingQueries.stream(jdbcTemplate, sql, DEALER_ROW_MAPPER, consumer);
+    }
+
+    /**
+     * Recorre las posiciones de los repartidores visibles en una vista del mapa, sin cargarlas en memoria.
+     * Las posiciones son las escritas por DealerLocationStore (se actualizan cada dealers.location.flush-interval-ms).
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param "viewport" La vista del mapa (bbox)
+     * @param "consumer" Recibe cada repartidor a medida que se lee
+     */
+    public void streamMapFeatures(MapViewportDTO viewport, Consumer<? super MapFeatureDTO> consumer) {
+        String sql = """
+                SELECT d.id, d.name, d.vehicle, ST_AsEWKB(d.ubication) AS geom
+                FROM dealers d
+                WHERE d.ubication && ST_MakeEnvelope(?, ?, ?, ?, 4326)
+                """;
+        StreamingQueries.stream(jdbcTemplate, sql, (rs, rowNum) -> {
+                    Map<String, Object> properties = new LinkedHashMap<>();
+                    properties.put("name", rs.getString("name"));
+                    properties.put("vehicle", rs.getString("vehicle"));
+                    return new MapFeatureDTO(rs.getInt("id"), Geometries.read(rs, "geom"), properties);
+                }, consumer,
+                viewport.getMinLon(), viewport.getMinLat(), viewport.getMaxLon(), viewport.getMaxLat());
     }
 
 
@@ -170,9 +265,9 @@ public class DealerRepository  implements DealerRepositoryInt {
 
     /**
      * Metodo para buscar los 3 mejores repartidores.
-     * Este método realiza una consulta SQL que calcula el puntaje de rendimiento de cada repartidor basado en el número de entregas y la calificación promedio.
-     * El puntaje se calcula como 70% del número de entregas y 30% de la calificación promedio.
-     * El resultado se agrupa por el ID y nombre del repartidor, y se ordena de mayor a menor puntaje.
+     * El puntaje de rendimiento es 70% del número de entregas y 30% de la calificación promedio.
+     * Se lee del ranking dealer_performance, que mantienen los triggers de orders y ratings,
+     * usando el índice por puntaje (no recorre las tablas de órdenes ni de calificaciones).
      *
      * @return Una lista de mapas, donde cada mapa contiene el ID y nombre del repartidor, el total de entregas, la calificación promedio y el puntaje de rendimiento.
      */
@@ -180,21 +275,17 @@ public class DealerRepository  implements DealerRepositoryInt {
     public List<Map<String, Object>> getTopPerformingDealers() {
         String sql = """
             SELECT 
-                d.id AS dealer_id,
+                dp.dealer_id,
                 d.name AS dealer_name,
-                COUNT(o.id) AS total_deliveries,
-                COALESCE(AVG(r.rating), 0) AS avg_rating,
-                (COUNT(o.id) * 0.7 + COALESCE(AVG(r.rating), 0) * 0.3) AS performance_score
+                dp.deliveries AS total_deliveries,
+                COALESCE(dp.rating_sum::FLOAT / NULLIF(dp.rating_count, 0), 0) AS avg_rating,
+                dp.performance_score
             FROM 
-                dealers d
-            LEFT JOIN 
-                orders o ON d.id = o.dealer_id AND o.status = 'ENTREGADO'
-            LEFT JOIN 
-                ratings r ON d.id = r.dealer_id
-            GROUP BY 
-                d.id, d.name
+                dealer_performance dp
+            JOIN 
+                dealers d ON d.id = dp.dealer_id
             ORDER BY 
-                performance_score DESC
+                dp.performance_score DESC
             LIMIT 3;
         """;
 
@@ -203,57 +294,45 @@ public class DealerRepository  implements DealerRepositoryInt {
 
 
     /**
-     * Metodo para obtener el tiempo promedio de entrega por repartidor autenticado.
-     * Este método realiza una consulta SQL que calcula el tiempo promedio entre la fecha de pedido y la fecha de entrega para el repartidor autenticado.
-     * El resultado se agrupa por el ID y nombre del repartidor, y se ordena de menor a mayor tiempo promedio.
+     * Obtiene las estadísticas de un repartidor desde el ranking dealer_performance (búsqueda por llave primaria).
      *
-     * @param "userId" El id del usuario autenticado.
-     * @return El tiempo promedio de entrega en horas.
+     * @param dealerId ID del repartidor
+     * @return Las estadísticas, o null si el repartidor no existe
      */
-    public Double getAverageDeliveryTimeByAuthenticatedDealer(Long userId) {
-        // Obtener el dealerId asociado al usuario autenticado
-        String sqlDealerId = "SELECT id FROM dealers WHERE user_id = ?";
-        Integer dealerId = jdbcTemplate.queryForObject(sqlDealerId, new Object[]{userId}, Integer.class);
-
-        if (dealerId == null) {
-            throw new IllegalArgumentException("No se encontró un repartidor asociado al usuario autenticado.");
-        }
-
-        // Calcular el tiempo promedio de espera para el dealerId
-        String sqlAvgTime = """
-            SELECT AVG(EXTRACT(EPOCH FROM (o.delivery_date - o.order_date)) / 3600) AS avg_delivery_time_hours
-            FROM orders o
-            WHERE o.dealer_id = ? AND o.status = 'ENTREGADO' AND o.delivery_date IS NOT NULL
-        """;
+    public DealerPerformanceDTO findPerformanceByDealerId(int dealerId) {
+        String sql = """
+        SELECT dealer_id,
+               deliveries,
+               delivery_hours_sum / NULLIF(timed_deliveries, 0) AS avg_delivery_hours,
+               rating_sum::FLOAT / NULLIF(rating_count, 0) AS avg_rating,
+               performance_score
+        FROM dealer_performance
+        WHERE dealer_id = ?
+    """;
 
-        return jdbcTemplate.queryForObject(sqlAvgTime, new Object[]{dealerId}, Double.class);
+        List<DealerPerformanceDTO> result = jdbcTemplate.query(sql, (rs, rowNum) -> new DealerPerformanceDTO(
+                rs.getInt("dealer_id"),
+                rs.getInt("deliveries"),
+                rs.getObject("avg_delivery_hours") != null ? rs.getDouble("avg_delivery_hours") : null,
+                rs.getObject("avg_rating") != null ? rs.getDouble("avg_rating") : null,
+                rs.getDouble("performance_score")
+        ), dealerId);
+        return result.isEmpty() ? null : result.get(0);
     }
 
 
     /**
-     * Metodo para contar el número de entregas realizadas por el repartidor autenticado.
-     * Este método realiza una consulta SQL que cuenta el número de entregas realizadas por el repartidor autenticado.
-     *
-     * @param "userId" El id del usuario autenticado.
-     * @return El número de entregas realizadas.
+     * Metodo para obtener solo el id del repartidor asociado a un usuario.
+     * @param "userId" El id del usuario.
+     * @return El id del repartidor, o null si el usuario no tiene un repartidor asociado.
      */
-    public Integer getDeliveryCountByAuthenticatedDealer(Long userId) {
-        // Obtener el dealerId asociado al usuario autenticado
-        String sqlDealerId = "SELECT id FROM dealers WHERE user_id = ?";
-        Integer dealerId = jdbcTemplate.queryForObject(sqlDealerId, new Object[]{userId}, Integer.class);
-
-        if (dealerId == null) {
-            throw new IllegalArgumentException("No se encontró un repartidor asociado al usuario autenticado.");
+    public Integer findIdByUserId(Long userId) {
+        String sql = "SELECT id FROM dealers WHERE user_id = ?";
+        try {
+            return jdbcTemplate.queryForObject(sql, Integer.class, userId);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
         }
-
-        // Contar las entregas realizadas por el dealerId
-        String sqlDeliveryCount = """
-            SELECT COUNT(*) 
-            FROM orders 
-            WHERE dealer_id = ? AND status = 'ENTREGADO'
-        """;
-
-        return jdbcTemplate.queryForObject(sqlDeliveryCount, new Object[]{dealerId}, Integer.class);
     }
 
     /**
@@ -263,17 +342,8 @@ public class DealerRepository  implements DealerRepositoryInt {
      * @return Calificación promedio o null si no hay calificaciones
      */
     public Double getAverageRating(Integer dealerId) {
-        String sql = """
-        SELECT AVG(r.rating) 
-        FROM ratings r 
-        WHERE r.dealer_id = ?
-    """;
-
-        try {
-            return jdbcTemplate.queryForObject(sql, new Object[]{dealerId}, Double.class);
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
+        DealerPerformanceDTO performance = findPerformanceByDealerId(dealerId);
+        return performance != null ? performance.getAvgRating() : null;
     }
 
     /**
@@ -283,13 +353,8 @@ public class DealerRepository  implements DealerRepositoryInt {
      * @return Número de entregas
      */
     public Integer getDeliveryCount(Integer dealerId) {
-        String sql = """
-        SELECT COUNT(*) 
-        FROM orders 
-        WHERE dealer_id = ? AND status = 'ENTREGADO'
-    """;
-
-        return jdbcTemplate.queryForObject(sql, new Object[]{dealerId}, Integer.class);
+        DealerPerformanceDTO performance = findPerformanceByDealerId(dealerId);
+        return performance != null ? performance.getDeliveries() : 0;
     }
 
     /**
@@ -299,17 +364,8 @@ public class DealerRepository  implements DealerRepositoryInt {
      * @return Tiempo promedio en horas o null si no hay entregas
      */
     public Double getAverageDeliveryTime(Integer dealerId) {
-        String sql = """
-        SELECT AVG(EXTRACT(EPOCH FROM (o.delivery_date - o.order_date)) / 3600)
-        FROM orders o
-        WHERE o.dealer_id = ? AND o.status = 'ENTREGADO' AND o.delivery_date IS NOT NULL
-    """;
-
-        try {
-            return jdbcTemplate.queryForObject(sql, new Object[]{dealerId}, Double.class);
-        } catch (EmptyResultDataAccessException e) {
-            return null;
-        }
+        DealerPerformanceDTO performance = findPerformanceByDealerId(dealerId);
+        return performance != null ? performance.getAvgDeliveryHours() : null;
     }
 
 
@@ -344,28 +400,24 @@ public class DealerRepository  implements DealerRepositoryInt {
     }
 
     // rf 3: calcular la distancia total recorrida por un dealer en el ultimo mes
-    public Double getTotalDistanceByAuthenticatedDealer(Long userId) {
+    // (suma de los agregados diarios; el largo de cada ruta se calcula una sola vez, al guardar el pedido)
+    public Double getTotalDistanceByDealerId(int dealerId) {
         String sql = """
-            
-                SELECT
-                SUM(
-                    ST_Length(o.estimated_route::geography)
-                ) AS total_distance
+            SELECT
+                SUM(r.distance_meters) AS total_distance
             FROM
-                orders o
-            JOIN
-                dealers d ON o.dealer_id = d.id
+                order_rollup_daily r
             WHERE
-                d.user_id = ?
-                AND o.status = 'ENTREGADO'
-                AND o.delivery_date >= date_trunc('month', CURRENT_DATE)
-                AND o.delivery_date < date_trunc('month', CURRENT_DATE) + interval '1 month'
-                AND o.estimated_route IS NOT NULL
+                r.scope = 'DEALER'
+                AND r.scope_id = ?
+                AND r.status = 'ENTREGADO'
+                AND r.bucket_date >= date_trunc('month', CURRENT_DATE)
+                AND r.bucket_date < date_trunc('month', CURRENT_DATE) + interval '1 month'
             """;
 
         try {
             // Usamos queryForObject porque esperamos un único valor (la suma total)
-            Double totalDistance = jdbcTemplate.queryForObject(sql, Double.class, userId);
+            Double totalDistance = jdbcTemplate.queryForObject(sql, Double.class, dealerId);
             return totalDistance == null ? 0.0 : totalDistance;
         } catch (EmptyResultDataAccessException e) {
             // Esto ocurre si la consulta no devuelve ninguna fila
@@ -376,20 +428,20 @@ public class DealerRepository  implements DealerRepositoryInt {
 
     public List<DealerWithDistanceDTO> findAllWithDistance() {
         String sql = """
-            SELECT 
+            SELECT
                 d.id,
                 d.name,
-                COALESCE(
-                    SUM(ST_Length(o.estimated_route::geography)), 
-                    0.0
-                ) AS distance_meters
+                COALESCE(r.distance_meters, 0.0) AS distance_meters
             FROM dealers d
-            LEFT JOIN orders o ON d.id = o.dealer_id 
-                AND o.status = 'ENTREGADO'
-                AND o.delivery_date >= date_trunc('month', CURRENT_DATE)
-                AND o.delivery_date < date_trunc('month', CURRENT_DATE) + interval '1 month'
-                AND o.estimated_route IS NOT NULL
-            GROUP BY d.id, d.name
+            LEFT JOIN (
+                SELECT scope_id, SUM(distance_meters) AS distance_meters
+                FROM order_rollup_daily
+                WHERE scope = 'DEALER'
+                    AND status = 'ENTREGADO'
+                    AND bucket_date >= date_trunc('month', CURRENT_DATE)
+                    AND bucket_date < date_trunc('month', CURRENT_DATE) + interval '1 month'
+                GROUP BY scope_id
+            ) r ON r.scope_id = d.id
             ORDER BY distance_meters DESC
             """;
 
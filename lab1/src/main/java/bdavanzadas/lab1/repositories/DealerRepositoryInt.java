@@ -3,8 +3,11 @@ package bdavanzadas.lab1.repositories;
 
 
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.Map;
 
+import bdavanzadas.lab1.dtos.DealerLocationDTO;
+import bdavanzadas.lab1.dtos.DealerPerformanceDTO;
 import bdavanzadas.lab1.entities.DealerEntity;
 
 
@@ -23,6 +26,22 @@ public interface DealerRepositoryInt {
      */
     List<DealerEntity> findAll();
 
+    /**
+     * Metodo para obtener una página de dealers ordenada por id (paginación por cursor).
+     * @param "afterId" Se devuelven los dealers con id mayor a este valor.
+     * @param "limit" La cantidad máxima de dealers a devolver.
+     * @return Una lista de dealers.
+     *
+     */
+    List<DealerEntity> findAllAfter(int afterId, int limit);
+
+    /**
+     * Metodo para recorrer todos los dealers sin cargarlos en memoria.
+     * @param "consumer" Recibe cada elemento a medida que se lee.
+     *
+     */
+    void streamAll(Consumer<? super DealerEntity> consumer);
+
     /**
      * Metodo para guardar un dealer en la base de datos.
      * @param "dealer" El dealer a guardar.
@@ -38,6 +57,21 @@ public interface DealerRepositoryInt {
      */
     void update(DealerEntity dealer);
 
+    /**
+     * Metodo para actualizar la ubicación de varios dealers en un solo lote.
+     * @param "locations" Las posiciones a guardar, una por dealer.
+     * @return void
+     *
+     */
+    void updateLocations(List<DealerLocationDTO> locations);
+
+    /**
+     * Metodo para obtener la ubicación de los dealers que no tienen un pedido EN PROCESO.
+     * @return Las posiciones de los dealers disponibles.
+     *
+     */
+    List<DealerLocationDTO> findIdleDealerLocations();
+
 
     /**
      * Metodo para eliminar un dealer de la base de datos.
@@ -74,9 +108,8 @@ public interface DealerRepositoryInt {
 
     /**
      * Metodo para buscar los 3 mejores repartidores.
-     * Este método realiza una consulta SQL que calcula el puntaje de rendimiento de cada repartidor basado en el número de entregas y la calificación promedio.
-     * El puntaje se calcula como 70% del número de entregas y 30% de la calificación promedio.
-     * El resultado se agrupa por el ID y nombre del repartidor, y se ordena de mayor a menor puntaje.
+     * El puntaje de rendimiento se calcula como 70% del número de entregas y 30% de la calificación promedio,
+     * y se lee del ranking dealer_performance ordenado de mayor a menor puntaje.
      * @return Una lista de mapas, donde cada mapa contiene el ID y nombre del repartidor, el total de entregas, la calificación promedio y el puntaje de rendimiento.
      *
      */
@@ -84,23 +117,20 @@ public interface DealerRepositoryInt {
     List<Map<String, Object>> getTopPerformingDealers();
 
     /**
-     * Metodo para obtener el tiempo promedio de entrega por repartidor autenticado.
-     * Este método realiza una consulta SQL que calcula el tiempo promedio entre la fecha de pedido y la fecha de entrega para el repartidor autenticado.
-     * El resultado se agrupa por el ID y nombre del repartidor, y se ordena de menor a mayor tiempo promedio.
-     * @param "userId" El id del usuario autenticado.
-     * @return El tiempo promedio de entrega en horas.
+     * Metodo para obtener las estadísticas de un repartidor desde el ranking dealer_performance.
+     * @param "dealerId" El id del repartidor.
+     * @return Las estadísticas, o null si el repartidor no existe.
      *
      */
-    Double getAverageDeliveryTimeByAuthenticatedDealer(Long userId);
+    DealerPerformanceDTO findPerformanceByDealerId(int dealerId);
 
     /**
-     * Metodo para contar el número de entregas realizadas por el repartidor autenticado.
-     * Este método realiza una consulta SQL que cuenta el número de entregas realizadas por el repartidor autenticado.
-     * @param "userId" El id del usuario autenticado.
-     * @return El número de entregas realizadas.
+     * Metodo para obtener solo el id del repartidor asociado a un usuario.
+     * @param "userId" El id del usuario.
+     * @return El id del repartidor, o null si el usuario no tiene un repartidor asociado.
      *
      */
-    Integer getDeliveryCountByAuthenticatedDealer(Long userId);
+    Integer findIdByUserId(Long userId);
 
 
 }
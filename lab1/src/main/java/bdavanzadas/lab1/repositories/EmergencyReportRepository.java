@@ -3,8 +3,10 @@ package bdavanzadas.lab1.repositories;
 import bdavanzadas.lab1.entities.EmergencyReportEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * La clase EmergencyReportRepository maneja las operaciones CRUD para reportes de emergencia.
@@ -16,20 +18,45 @@ public class EmergencyReportRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    /**
+     * Mapper de una fila de la tabla emergency_report a EmergencyReportEntity.
+     */
+    private static final RowMapper<EmergencyReportEntity> EMERGENCY_REPORT_ROW_MAPPER = (rs, rowNum) ->
+            new EmergencyReportEntity(
+                    rs.getInt("id"),
+                    rs.getInt("order_id"),
+                    rs.getInt("dealer_id"),
+                    rs.getString("ubication")
+            );
+
     /**
      * Obtiene todos los reportes de emergencia de la base de datos.
      * @return Lista de EmergencyReportEntity
      */
     public List<EmergencyReportEntity> findAll() {
         String sql = "SELECT * FROM emergency_report";
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                new EmergencyReportEntity(
-                        rs.getInt("id"),
-                        rs.getInt("order_id"),
-                        rs.getInt("dealer_id"),
-                        rs.getString("ubication")
-                )
-        );
+        return jdbcTemplate.query(sql, EMERGENCY_REPORT_ROW_MAPPER);
+    }
+
+    /**
+     * Obtiene una página de reportes de emergencia ordenada por ID (paginación por cursor).
+     * @param afterId Se devuelven los reportes con ID mayor a este valor
+     * @param limit Cantidad máxima de reportes a devolver
+     * @return Lista de EmergencyReportEntity
+     */
+    public List<EmergencyReportEntity> findAllAfter(int afterId, int limit) {
+        String sql = "SELECT * FROM emergency_report WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql, EMERGENCY_REPORT_ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * Recorre todos los reportes de emergencia sin cargarlos en memoria.
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param consumer Recibe cada reporte a medida que se lee
+     */
+    public void streamAll(Consumer<? super EmergencyReportEntity> consumer) {
+        String sql = "SELECT * FROM emergency_report ORDER BY id";
+        StreamingQueries.stream(jdbcTemplate, sql, EMERGENCY_REPORT_ROW_MAPPER, consumer);
     }
 
     /**
@@ -0,0 +1,40 @@
+package bdavanzadas.lab1.repositories;
+
+import bdavanzadas.lab1.entities.GeometryValue;
+import org.springframework.jdbc.core.SqlParameterValue;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+
+/**
+ * Utilidad para leer y escribir geometrías en binario (EWKB) con JdbcTemplate.
+ * Las consultas seleccionan la columna con ST_AsEWKB(columna) y las escrituras usan ST_GeomFromEWKB(?),
+ * de modo que las geometrías viajan como bytea sin formatear ni reinterpretar texto WKT.
+ */
+final class Geometries {
+
+    private Geometries() {
+    }
+
+    /**
+     * Lee una columna seleccionada con ST_AsEWKB.
+     * @param rs El ResultSet posicionado en la fila
+     * @param column El nombre de la columna
+     * @return La geometría, o null si la columna es nula
+     */
+    static GeometryValue read(ResultSet rs, String column) throws SQLException {
+        byte[] ewkb = rs.getBytes(column);
+        return ewkb != null ? GeometryValue.fromWkb(ewkb) : null;
+    }
+
+    /**
+     * Parámetro para ST_GeomFromEWKB(?). Se indica el tipo para que un valor nulo también sea bytea.
+     * @param geometry La geometría (puede ser null)
+     * @return El parámetro de la sentencia
+     */
+    static SqlParameterValue param(GeometryValue geometry) {
+        return new SqlParameterValue(Types.BINARY, geometry != null ? geometry.toEwkb() : null);
+    }
+}
@@ -1,17 +1,29 @@
 package bdavanzadas.lab1.repositories;
 
+import bdavanzadas.lab1.dtos.MapFeatureDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
+import bdavanzadas.lab1.dtos.OrderBatchItemDTO;
 import bdavanzadas.lab1.dtos.OrderNameAddressDTO;
+import bdavanzadas.lab1.dtos.OrderRollupDTO;
+import bdavanzadas.lab1.dtos.OrderStatusChangeDTO;
 import bdavanzadas.lab1.dtos.TopSpenderDTO;
 import bdavanzadas.lab1.entities.ClientEntity;
+import bdavanzadas.lab1.entities.GeometryValue;
 import bdavanzadas.lab1.entities.OrdersEntity;
 import bdavanzadas.lab1.entities.ProductEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
 import org.springframework.stereotype.Repository;
 import bdavanzadas.lab1.dtos.OrderTotalProductsDTO;
 import bdavanzadas.lab1.dtos.OrderNameAddressDTO;
 
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
 
 /**
@@ -32,25 +44,93 @@ public class OrdersRepository implements OrdersRepositoryInt {
     private JdbcTemplate jdbcTemplate;
 
 
+    /**
+     * Mapper de una fila de la tabla orders (con la ruta estimada en EWKB) a OrdersEntity.
+     */
+    public static final RowMapper<OrdersEntity> ORDERS_ROW_MAPPER = (rs, rowNum) ->
+            new OrdersEntity(
+                    rs.getInt("id"),
+                    rs.getDate("order_date"),
+                    rs.getDate("delivery_date"),
+                    rs.getString("status"),
+                    rs.getInt("client_id"),
+                    rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
+                    rs.getDouble("total_price"),
+                    Geometries.read(rs, "estimated_route"),
+                    rs.getInt("version")
+            );
+
+    private static final String ORDERS_COLUMNS = "id, order_date, delivery_date, status, client_id, dealer_id, total_price, ST_AsEWKB(estimated_route) AS estimated_route, version";
+
+    /**
+     * Las mismas columnas de ORDERS_COLUMNS, calificadas con el alias "o" para las consultas con JOIN.
+     */
+    private static final String ORDERS_COLUMNS_O = "o.id, o.order_date, o.delivery_date, o.status, o.client_id, o.dealer_id, o.total_price, ST_AsEWKB(o.estimated_route) AS estimated_route, o.version";
+
+
     /**
      * Metodo para obtener todos los orders de la base de datos.
      * @return Una lista de orders.
      *
      */
     public List<OrdersEntity> findAll() {
-        String sql = "SELECT id, order_date, delivery_date, status, client_id, dealer_id, total_price, ST_AsText(estimated_route) AS estimated_route FROM orders";
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                )
-        );
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders";
+        return jdbcTemplate.query(sql, ORDERS_ROW_MAPPER);
+    }
+
+    /**
+     * Metodo para obtener una página de orders ordenada por id (paginación por cursor).
+     * @param "afterId" Se devuelven los orders con id mayor a este valor.
+     * @param "limit" La cantidad máxima de orders a devolver.
+     * @return Una lista de orders.
+     *
+     */
+    public List<OrdersEntity> findAllAfter(int afterId, int limit) {
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql, ORDERS_ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * Metodo para recorrer todos los orders sin cargarlos en memoria.
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param "consumer" Recibe cada order a medida que se lee.
+     *
+     */
+    public void streamAll(Consumer<? super OrdersEntity> consumer) {
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders ORDER BY id";
+        StreamingQueries.stream(jdbcTemplate, sql, ORDERS_ROW_MAPPER, consumer);
+    }
+
+    /**
+     * Metodo para recorrer las rutas de los orders visibles en una vista del mapa, sin cargarlas en memoria.
+     * Se omiten las rutas más pequeñas que un pixel; las rutas se entregan completas (en EWKB, sin decodificar)
+     * para que RouteLodService elija su nivel de detalle.
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param "viewport" La vista del mapa (bbox y zoom).
+     * @param "status" Estado de los orders a incluir, o null para todos.
+     * @param "consumer" Recibe cada ruta a medida que se lee.
+     *
+     */
+    public void streamRouteFeatures(MapViewportDTO viewport, String status, Consumer<? super MapFeatureDTO> consumer) {
+        String sql = """
+                SELECT o.id, o.status, o.client_id, o.dealer_id,
+                       ST_AsEWKB(o.estimated_route) AS geom
+                FROM orders o
+                WHERE o.estimated_route && ST_MakeEnvelope(?, ?, ?, ?, 4326)
+                  AND (?::VARCHAR IS NULL OR o.status = ?)
+                  AND GREATEST(ST_XMax(o.estimated_route) - ST_XMin(o.estimated_route),
+                               ST_YMax(o.estimated_route) - ST_YMin(o.estimated_route)) >= ?
+                """;
+        StreamingQueries.stream(jdbcTemplate, sql, (rs, rowNum) -> {
+                    Map<String, Object> properties = new LinkedHashMap<>();
+                    properties.put("status", rs.getString("status"));
+                    properties.put("clientId", rs.getInt("client_id"));
+                    properties.put("dealerId", rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null);
+                    return new MapFeatureDTO(rs.getInt("id"), Geometries.read(rs, "geom"), properties);
+                }, consumer,
+                viewport.getMinLon(), viewport.getMinLat(), viewport.getMaxLon(), viewport.getMaxLat(),
+                status, status,
+                viewport.getToleranceDegrees());
     }
 
     /**
@@ -68,13 +148,15 @@ public class OrdersRepository implements OrdersRepositoryInt {
 
     /**
      * Metodo para actualizar un order en la base de datos.
+     * No cambia el estado ni el repartidor: esos cambios pasan por transitionStatus y assignPendingOrderToIdleDealer,
+     * que validan el estado de origen, la versión y que el repartidor no tenga otro pedido en proceso.
      * @param "order" El order a actualizar.
      * @return void
      *
      */
     public void update(OrdersEntity order) {
-        String sql = "UPDATE orders SET order_date = ?, delivery_date = ?, status = ?, client_id = ?,dealer_id= ?, total_price = ? WHERE id = ?";
-        jdbcTemplate.update(sql, order.getOrderDate(), order.getDeliveryDate(), order.getStatus(), order.getClientId(),order.getDealerId(), order.getTotalPrice(), order.getId());
+        String sql = "UPDATE orders SET order_date = ?, delivery_date = ?, client_id = ?, total_price = ? WHERE id = ?";
+        jdbcTemplate.update(sql, order.getOrderDate(), order.getDeliveryDate(), order.getClientId(), order.getTotalPrice(), order.getId());
     }
 
     /**
@@ -96,18 +178,8 @@ public class OrdersRepository implements OrdersRepositoryInt {
      *
      */
     public OrdersEntity findById(int id) {
-        String sql = "SELECT id, order_date, delivery_date, status, client_id, dealer_id, total_price, ST_AsText(estimated_route) AS estimated_route FROM orders WHERE id = ?";
-        return jdbcTemplate.queryForObject(sql, new Object[]{id}, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                ));
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders WHERE id = ?";
+        return jdbcTemplate.queryForObject(sql, new Object[]{id}, ORDERS_ROW_MAPPER);
     }
 
     /**
@@ -117,19 +189,19 @@ public class OrdersRepository implements OrdersRepositoryInt {
      *
      */
     public List<OrdersEntity> findByClientId(int clientId) {
-        String sql = "SELECT id, order_date, delivery_date, status, client_id, dealer_id, total_price, ST_AsText(estimated_route) AS estimated_route FROM orders WHERE client_id = ?";
-        return jdbcTemplate.query(sql, new Object[]{clientId}, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                )
-        );
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders WHERE client_id = ?";
+        return jdbcTemplate.query(sql, new Object[]{clientId}, ORDERS_ROW_MAPPER);
+    }
+
+    /**
+     * Metodo para buscar los orders fallidos de un cliente, del más reciente al más antiguo.
+     * @param "clientId" El id del client a buscar.
+     * @return Una lista de orders fallidos.
+     *
+     */
+    public List<OrdersEntity> findFailedByClientId(int clientId) {
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders WHERE client_id = ? AND status = 'FALLIDA' ORDER BY order_date DESC";
+        return jdbcTemplate.query(sql, ORDERS_ROW_MAPPER, clientId);
     }
     /**
      * Metodo para buscar un order por su dealerId.
@@ -138,25 +210,14 @@ public class OrdersRepository implements OrdersRepositoryInt {
      *
      */
     public List<OrdersEntity> findByDealerId(int dealerId) {
-        String sql = "SELECT id, order_date, delivery_date, status, client_id, dealer_id, total_price, ST_AsText(estimated_route) AS estimated_route FROM orders WHERE dealer_id = ?";
-        return jdbcTemplate.query(sql, new Object[]{dealerId}, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                )
-        );
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders WHERE dealer_id = ?";
+        return jdbcTemplate.query(sql, new Object[]{dealerId}, ORDERS_ROW_MAPPER);
     }
 
 
     /**
      * Metodo para obtener el cliente que más ha gastado en pedidos entregados.
-     * Se realiza una consulta SQL que agrupa los pedidos por cliente y suma el total gastado.
+     * Se suman los agregados diarios de pedidos ENTREGADO de cada cliente (order_rollup_daily), sin recorrer los pedidos.
      * El cliente con el mayor gasto se selecciona y se devuelve como un objeto TopSpenderDTO.
      * @return Un objeto TopSpenderDTO que contiene la información del cliente que más ha gastado.
      *
@@ -166,10 +227,10 @@ public class OrdersRepository implements OrdersRepositoryInt {
     //RF 1: obtener el cliente que más ha gastado
     public TopSpenderDTO getTopSpender() {
         String sql = """
-        SELECT c.id, c.name, c.rut, c.email, c.phone, c.address, SUM(o.total_price) AS total_spent
-        FROM orders o
-        JOIN clients c ON o.client_id = c.id
-        WHERE o.status = 'ENTREGADO'
+        SELECT c.id, c.name, c.rut, c.email, c.phone, c.address, SUM(r.revenue) AS total_spent
+        FROM order_rollup_daily r
+        JOIN clients c ON r.scope_id = c.id
+        WHERE r.scope = 'CLIENT' AND r.status = 'ENTREGADO'
         GROUP BY c.id, c.name, c.rut, c.email, c.phone, c.address
         ORDER BY total_spent DESC
         LIMIT 1
@@ -188,20 +249,54 @@ public class OrdersRepository implements OrdersRepositoryInt {
         });
     }
 
+    /**
+     * Metodo para obtener los pedidos de un mes.
+     * Filtra por rango de fechas [inicio del mes, inicio del mes siguiente) para poder usar el índice sobre order_date.
+     * @param "month" El mes (1 a 12).
+     * @param "year" El año.
+     * @return Una lista de pedidos del mes.
+     * @throws IllegalArgumentException Si el mes no está entre 1 y 12.
+     */
     public List<OrdersEntity> findOrdersByMonth(int month, int year) {
-        String sql = "SELECT id, order_date, delivery_date, status, client_id, dealer_id, total_price, ST_AsText(estimated_route) AS estimated_route FROM orders WHERE EXTRACT(MONTH FROM order_date) = ? AND EXTRACT(YEAR FROM order_date) = ?";
-        return jdbcTemplate.query(sql, new Object[]{month, year}, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                )
-        );
+        if (month < 1 || month > 12) {
+            throw new IllegalArgumentException("El mes debe estar entre 1 y 12: " + month);
+        }
+        LocalDate start = LocalDate.of(year, month, 1);
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders WHERE order_date >= ? AND order_date < ?";
+        return jdbcTemplate.query(sql, ORDERS_ROW_MAPPER,
+                Timestamp.valueOf(start.atStartOfDay()), Timestamp.valueOf(start.plusMonths(1).atStartOfDay()));
+    }
+
+    /**
+     * Metodo para obtener los agregados de pedidos de un repartidor, empresa o cliente en un rango de fechas.
+     * Lee la tabla order_rollup_daily (mantenida por triggers), sin recorrer los pedidos.
+     * @param "scope" DEALER, COMPANY o CLIENT.
+     * @param "scopeId" El id del repartidor, empresa o cliente.
+     * @param "from" Primer día del rango (inclusive).
+     * @param "to" Último día del rango (inclusive).
+     * @param "monthly" true para agrupar por mes, false para agrupar por día.
+     * @return Los agregados por período y estado, ordenados por período.
+     */
+    public List<OrderRollupDTO> findRollups(String scope, int scopeId, LocalDate from, LocalDate to, boolean monthly) {
+        String bucket = monthly ? "date_trunc('month', bucket_date)::DATE" : "bucket_date";
+        String sql = """
+            SELECT scope, scope_id, %s AS bucket, status,
+                   SUM(order_count)::INT AS order_count, SUM(revenue) AS revenue, SUM(distance_meters) AS distance_meters
+            FROM order_rollup_daily
+            WHERE scope = ? AND scope_id = ? AND bucket_date >= ? AND bucket_date <= ?
+            GROUP BY scope, scope_id, bucket, status
+            HAVING SUM(order_count) <> 0
+            ORDER BY bucket, status
+            """.formatted(bucket);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new OrderRollupDTO(
+                rs.getString("scope"),
+                rs.getInt("scope_id"),
+                rs.getDate("bucket").toLocalDate(),
+                rs.getString("status"),
+                rs.getInt("order_count"),
+                rs.getDouble("revenue"),
+                rs.getDouble("distance_meters")
+        ), scope, scopeId, java.sql.Date.valueOf(from), java.sql.Date.valueOf(to));
     }
 
 
@@ -215,33 +310,14 @@ public class OrdersRepository implements OrdersRepositoryInt {
      * */
     public List<OrdersEntity> findFailedOrdersByCompanyId(int companyId) {
         String sql = """
-    SELECT 
-        o.id,
-        o.order_date,
-        o.delivery_date,
-        o.status,
-        o.client_id,
-        o.dealer_id,
-        o.total_price,
-        ST_AsText(o.estimated_route) AS estimated_route
+    SELECT %s
     FROM orders o
     JOIN order_products op ON o.id = op.order_id
     JOIN products p ON op.product_id = p.id
     JOIN companies c ON p.company_id = c.id
     WHERE c.id = ? AND o.status = 'FALLIDA'
-    """;
-        return jdbcTemplate.query(sql, new Object[]{companyId}, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                )
-        );
+    """.formatted(ORDERS_COLUMNS_O);
+        return jdbcTemplate.query(sql, new Object[]{companyId}, ORDERS_ROW_MAPPER);
     }
 
 
@@ -257,47 +333,76 @@ public class OrdersRepository implements OrdersRepositoryInt {
 
     public List<OrdersEntity> findDeliveredOrdersByCompanyId(int companyId) {
         String sql = """
-    SELECT 
-        o.id,
-        o.order_date,
-        o.delivery_date,
-        o.status,
-        o.client_id,
-        o.dealer_id,
-        o.total_price,
-        ST_AsText(o.estimated_route) AS estimated_route
+    SELECT %s
     FROM orders o
     JOIN order_products op ON o.id = op.order_id
     JOIN products p ON op.product_id = p.id
     JOIN companies c ON p.company_id = c.id
     WHERE c.id = ? AND o.status = 'ENTREGADO'
-    """;
-        return jdbcTemplate.query(sql, new Object[]{companyId}, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                )
-        );
+    """.formatted(ORDERS_COLUMNS_O);
+        return jdbcTemplate.query(sql, new Object[]{companyId}, ORDERS_ROW_MAPPER);
     }
 
 
     /**
-     * Metodo para actualizar el estado de un pedido por ID de repartidor.
-     * @param "orderId" El id del pedido a actualizar.
-     * @param "dealerId" El id del repartidor que actualiza el pedido.
-     * @param "newStatus" El nuevo estado del pedido.
-     * @return void
-     *
+     * Mapper del resultado de un cambio de estado (columnas de RETURNING) a OrderStatusChangeDTO.
+     */
+    private static final RowMapper<OrderStatusChangeDTO> STATUS_CHANGE_ROW_MAPPER = (rs, rowNum) ->
+            new OrderStatusChangeDTO(
+                    rs.getInt("id"),
+                    rs.getString("status"),
+                    rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
+                    rs.getTimestamp("delivery_date"),
+                    rs.getInt("version")
+            );
+
+    /**
+     * Metodo para cambiar el estado de un pedido con una sola sentencia condicional.
+     * Solo cambia el pedido si su estado actual es uno de los permitidos y, si se indican,
+     * si pertenece al repartidor y si su versión es la esperada. La versión aumenta con el cambio (trigger).
+     * @param "orderId" El id del pedido.
+     * @param "newStatus" El nuevo estado.
+     * @param "fromStatuses" Los estados desde los que se permite el cambio.
+     * @param "dealerId" El repartidor que debe tener el pedido, o null para no exigirlo.
+     * @param "expectedVersion" La versión que debe tener el pedido, o null para no exigirla.
+     * @param "deliveryDate" La fecha de entrega (solo se escribe si changeDeliveryDate es true).
+     * @param "changeDeliveryDate" Si se escribe la fecha de entrega (solo al pasar a ENTREGADO).
+     * @return El pedido después del cambio, o null si no se cumplió alguna condición.
      */
-    public void updateOrderStatusByDealerId(int orderId, int dealerId, String newStatus) {
-        String sql = "UPDATE orders SET status = ? WHERE id = ? AND dealer_id = ?";
-        jdbcTemplate.update(sql, newStatus, orderId, dealerId);
+    public OrderStatusChangeDTO transitionStatus(int orderId, String newStatus, String[] fromStatuses, Integer dealerId,
+                                                 Integer expectedVersion, Date deliveryDate, boolean changeDeliveryDate) {
+        StringBuilder sql = new StringBuilder("UPDATE orders SET status = ?");
+        List<Object> args = new ArrayList<>(6);
+        args.add(newStatus);
+        if (changeDeliveryDate) {
+            sql.append(", delivery_date = ?");
+            args.add(new SqlParameterValue(Types.TIMESTAMP, deliveryDate != null ? new Timestamp(deliveryDate.getTime()) : null));
+        }
+        sql.append(" WHERE id = ? AND status = ANY(?)");
+        args.add(orderId);
+        args.add(fromStatuses);
+        if (dealerId != null) {
+            sql.append(" AND dealer_id = ?");
+            args.add(dealerId);
+        }
+        if (expectedVersion != null) {
+            sql.append(" AND version = ?");
+            args.add(expectedVersion);
+        }
+        sql.append(" RETURNING id, status, dealer_id, delivery_date, version");
+        List<OrderStatusChangeDTO> result = jdbcTemplate.query(sql.toString(), STATUS_CHANGE_ROW_MAPPER, args.toArray());
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Metodo para obtener el estado, el repartidor y la versión actuales de un pedido.
+     * @param "orderId" El id del pedido.
+     * @return El estado del pedido, o null si no existe.
+     */
+    public OrderStatusChangeDTO findStatusById(int orderId) {
+        String sql = "SELECT id, status, dealer_id, delivery_date, version FROM orders WHERE id = ?";
+        List<OrderStatusChangeDTO> result = jdbcTemplate.query(sql, STATUS_CHANGE_ROW_MAPPER, orderId);
+        return result.isEmpty() ? null : result.get(0);
     }
     /**
      * Metodo para obtener los pedidos de una compañia por ID de compañia.
@@ -307,32 +412,13 @@ public class OrdersRepository implements OrdersRepositoryInt {
     //get all orders by company id
     public List<OrdersEntity> findOrdersByCompanyId(int companyId) {
         String sql = """
-    SELECT 
-        o.id,
-        o.order_date,
-        o.delivery_date,
-        o.status,
-        o.client_id,
-        o.dealer_id,
-        o.total_price,
-        ST_AsText(o.estimated_route) AS estimated_route
+    SELECT %s
     FROM orders o
     JOIN dealers d ON o.dealer_id = d.id
     JOIN products p ON d.id = p.company_id
     WHERE p.company_id = ?
-    """;
-        return jdbcTemplate.query(sql, new Object[]{companyId}, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                )
-        );
+    """.formatted(ORDERS_COLUMNS_O);
+        return jdbcTemplate.query(sql, new Object[]{companyId}, ORDERS_ROW_MAPPER);
     }
 
 
@@ -365,32 +451,52 @@ public class OrdersRepository implements OrdersRepositoryInt {
      */
     // Obtener la orden En proceso por ID del repartidor
     public OrdersEntity findActiveOrderByDealerId(int dealerId) {
-        String sql = "SELECT id, order_date, delivery_date, status, client_id, dealer_id, total_price, ST_AsText(estimated_route) AS estimated_route FROM orders WHERE dealer_id = ? AND status = 'EN PROCESO'";
-        List<OrdersEntity> orders = jdbcTemplate.query(sql, new Object[]{dealerId}, (rs, rowNum) ->
-                new OrdersEntity(
-                        rs.getInt("id"),
-                        rs.getDate("order_date"),
-                        rs.getDate("delivery_date"),
-                        rs.getString("status"),
-                        rs.getInt("client_id"),
-                        rs.getObject("dealer_id") != null ? rs.getInt("dealer_id") : null,
-                        rs.getDouble("total_price"),
-                        rs.getString("estimated_route")
-                )
-        );
+        String sql = "SELECT " + ORDERS_COLUMNS + " FROM orders WHERE dealer_id = ? AND status = 'EN PROCESO'";
+        List<OrdersEntity> orders = jdbcTemplate.query(sql, new Object[]{dealerId}, ORDERS_ROW_MAPPER);
         return orders.isEmpty() ? null : orders.get(0);
     }
 
     /**
-     * Metodo para asignar un pedido a un repartidor.
+     * Metodo para asignar un pedido pendiente (sin repartidor) a un repartidor sin pedidos EN PROCESO.
+     * Es la única asignación individual: un pedido ya asignado (por ejemplo, a un lote) o ya terminado no se
+     * puede volver a asignar. La verificación y la asignación son una sola sentencia; el índice único
+     * ux_orders_dealer_en_proceso impide que dos asignaciones concurrentes dejen al repartidor con dos pedidos en proceso.
      * @param "orderId" El id del pedido a asignar.
      * @param "dealerId" El id del repartidor a asignar.
-     * @return void
-     *
+     * @return true si se asignó el pedido, false si el pedido ya no está pendiente o el repartidor está ocupado.
+     * @throws org.springframework.dao.DuplicateKeyException Si otra asignación concurrente ganó la carrera.
+     */
+    public boolean assignPendingOrderToIdleDealer(int orderId, int dealerId) {
+        String sql = """
+                UPDATE orders SET dealer_id = ?, status = 'EN PROCESO'
+                WHERE id = ?
+                  AND dealer_id IS NULL
+                  AND status IN ('PENDIENTE', 'URGENTE')
+                  AND NOT EXISTS (SELECT 1 FROM orders active WHERE active.dealer_id = ? AND active.status = 'EN PROCESO')
+                """;
+        return jdbcTemplate.update(sql, dealerId, orderId, dealerId) == 1;
+    }
+
+    /**
+     * Metodo para obtener el punto de retiro de un pedido pendiente (sin repartidor).
+     * Es el inicio de la ruta estimada (la empresa) o, si el pedido no tiene ruta, la ubicación del cliente.
+     * @param "orderId" El id del pedido.
+     * @return {longitud, latitud}, o null si el pedido no existe, ya fue asignado o no tiene ubicación.
      */
-    public void assignOrderToDealer(int orderId, int dealerId) {
-        String sql = "UPDATE orders SET dealer_id = ?, status = 'EN PROCESO' WHERE id = ?";
-        jdbcTemplate.update(sql, dealerId, orderId);
+    public double[] findPendingOrderPickup(int orderId) {
+        String sql = """
+                SELECT ST_X(pickup) AS longitude, ST_Y(pickup) AS latitude
+                FROM (
+                    SELECT COALESCE(ST_StartPoint(o.estimated_route), c.ubication) AS pickup
+                    FROM orders o
+                    LEFT JOIN clients c ON c.id = o.client_id
+                    WHERE o.id = ? AND o.dealer_id IS NULL AND o.status IN ('PENDIENTE', 'URGENTE')
+                ) p
+                WHERE pickup IS NOT NULL
+                """;
+        List<double[]> result = jdbcTemplate.query(sql,
+                (rs, rowNum) -> new double[]{rs.getDouble("longitude"), rs.getDouble("latitude")}, orderId);
+        return result.isEmpty() ? null : result.get(0);
     }
 
 
@@ -473,39 +579,215 @@ public class OrdersRepository implements OrdersRepositoryInt {
         );
     }
 
-    public void updateEstimatedRoute(int orderId, String lineStringWKT) {
-        String sql = "UPDATE orders SET estimated_route = ST_GeomFromText(?, 4326) WHERE id = ?";
-        jdbcTemplate.update(sql, lineStringWKT, orderId);
+    public void updateEstimatedRoute(int orderId, GeometryValue route) {
+        String sql = "UPDATE orders SET estimated_route = ST_GeomFromEWKB(?) WHERE id = ?";
+        jdbcTemplate.update(sql, Geometries.param(route), orderId);
     }
 
     public void updateEstimatedRouteFromPoints(int orderId, List<Map<String, Double>> points) {
-        // Construir el array de puntos para ST_MakeLine
-        StringBuilder pointsBuilder = new StringBuilder();
-        List<Object> args = new ArrayList<>();
+        String sql = buildRouteFromPointsSql(points.size());
+        jdbcTemplate.update(sql, routeFromPointsArgs(orderId, points));
+    }
 
-        for (Map<String, Double> point : points) {
-            if (pointsBuilder.length() > 0) {
+    /**
+     * Construye la sentencia UPDATE que arma la ruta con ST_MakeLine a partir de una cantidad de puntos.
+     * Cada punto usa dos parámetros (longitud, latitud) y el último parámetro es el id del pedido.
+     * @param "pointCount" La cantidad de puntos de la ruta.
+     * @return La sentencia SQL.
+     */
+    static String buildRouteFromPointsSql(int pointCount) {
+        StringBuilder pointsBuilder = new StringBuilder();
+        for (int i = 0; i < pointCount; i++) {
+            if (i > 0) {
                 pointsBuilder.append(", ");
             }
             pointsBuilder.append("ST_SetSRID(ST_MakePoint(?, ?), 4326)");
-            args.add(point.get("longitude"));
-            args.add(point.get("latitude"));
         }
 
-        args.add(orderId);
-
-        String sql = String.format(
+        return String.format(
                 "UPDATE orders SET estimated_route = ST_MakeLine(ARRAY[%s]) WHERE id = ?",
                 pointsBuilder.toString()
         );
+    }
 
-        jdbcTemplate.update(sql, args.toArray());
+    /**
+     * Arma los parámetros de la sentencia de buildRouteFromPointsSql.
+     * @param "orderId" El id del pedido.
+     * @param "points" Los puntos de la ruta, con las llaves "longitude" y "latitude".
+     * @return Los parámetros en el orden de la sentencia.
+     */
+    static Object[] routeFromPointsArgs(int orderId, List<Map<String, Double>> points) {
+        List<Object> args = new ArrayList<>();
+        for (Map<String, Double> point : points) {
+            args.add(point.get("longitude"));
+            args.add(point.get("latitude"));
+        }
+        args.add(orderId);
+        return args.toArray();
+    }
+
+    /**
+     * Metodo para obtener el ID del último pedido de un cliente.
+     * @param "clientId" El id del cliente.
+     * @return El ID del último pedido, o null si el cliente no tiene pedidos.
+     */
+    public Integer findLastOrderIdByClientId(int clientId) {
+        String sql = "SELECT MAX(id) FROM orders WHERE client_id = ?";
+        return jdbcTemplate.queryForObject(sql, Integer.class, clientId);
+    }
+
+    /**
+     * Metodo para registrar varios pedidos con sus productos en una sola transacción.
+     * Hace lo mismo que register_order_with_products para cada pedido, pero con sentencias por lote:
+     * los IDs se reservan de la secuencia, los pedidos y sus productos se insertan con JDBC batch,
+     * y el stock y las métricas de las empresas se actualizan con una sentencia para todo el lote.
+     * Debe llamarse dentro de una transacción; cualquier error deshace el lote completo.
+     * @param "orders" Los pedidos a registrar, con el ID del cliente ya resuelto y sin productos repetidos.
+     * @return Los IDs generados, en el mismo orden que los pedidos recibidos.
+     * @throws IllegalArgumentException Si un producto o cliente no existe, no tiene ubicación o no hay stock suficiente.
+     */
+    public List<Integer> saveBatch(List<OrderBatchItemDTO> orders) {
+        // 1. Cantidad pedida por producto
+        Map<Integer, Integer> quantities = new TreeMap<>();
+        Set<Integer> clientIds = new TreeSet<>();
+        for (OrderBatchItemDTO order : orders) {
+            for (Integer productId : order.getProductIds()) {
+                quantities.merge(productId, 1, Integer::sum);
+            }
+            clientIds.add(order.getClientId());
+        }
+        Integer[] productIds = quantities.keySet().toArray(new Integer[0]);
+
+        // 2. Bloquear los productos en orden de ID (evita deadlocks entre lotes) y validar precio, stock y ubicación
+        Map<Integer, Double> prices = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT p.id, p.price, p.stock, c.ubication IS NOT NULL AS has_location
+                FROM products p
+                LEFT JOIN companies c ON c.id = p.company_id
+                WHERE p.id = ANY(?)
+                ORDER BY p.id
+                FOR UPDATE OF p
+                """, rs -> {
+            int productId = rs.getInt("id");
+            if (!rs.getBoolean("has_location")) {
+                throw new IllegalArgumentException("No se pudo determinar la ubicación de la empresa para el producto ID " + productId);
+            }
+            if (rs.getInt("stock") < quantities.get(productId)) {
+                throw new IllegalArgumentException("Sin stock para el producto ID " + productId);
+            }
+            prices.put(productId, rs.getDouble("price"));
+        }, (Object) productIds);
+        for (Integer productId : productIds) {
+            if (!prices.containsKey(productId)) {
+                throw new IllegalArgumentException("El producto con ID " + productId + " no existe");
+            }
+        }
+
+        List<Integer> locatedClients = jdbcTemplate.queryForList(
+                "SELECT id FROM clients WHERE id = ANY(?) AND ubication IS NOT NULL",
+                Integer.class, (Object) clientIds.toArray(new Integer[0]));
+        for (Integer clientId : clientIds) {
+            if (!locatedClients.contains(clientId)) {
+                throw new IllegalArgumentException("El cliente con ID " + clientId + " no tiene ubicación registrada");
+            }
+        }
+
+        // 3. Reservar los IDs de los pedidos
+        List<Integer> orderIds = jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence('orders', 'id'))::INT FROM generate_series(1, ?)",
+                Integer.class, orders.size());
+
+        // 4. Insertar los pedidos con la ruta recta entre la empresa del primer producto y el cliente
+        List<Object[]> orderRows = new ArrayList<>(orders.size());
+        List<Object[]> productRows = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            OrderBatchItemDTO order = orders.get(i);
+            Integer orderId = orderIds.get(i);
+            double totalPrice = 0.0;
+            for (Integer productId : order.getProductIds()) {
+                totalPrice += prices.get(productId);
+                productRows.add(new Object[]{orderId, productId});
+            }
+            orderRows.add(new Object[]{
+                    orderId,
+                    new Timestamp(order.getOrderDate().getTime()),
+                    order.getStatus(),
+                    order.getClientId(),
+                    order.getDealerId(),
+                    totalPrice,
+                    order.getClientId(),
+                    order.getProductIds().get(0)
+            });
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO orders (id, order_date, status, client_id, dealer_id, total_price, estimated_route)
+                VALUES (?, ?, ?, ?, ?, ?, (
+                    SELECT ST_MakeLine(co.ubication, cl.ubication)
+                    FROM products p
+                    JOIN companies co ON co.id = p.company_id
+                    JOIN clients cl ON cl.id = ?
+                    WHERE p.id = ?
+                ))
+                """, orderRows);
+        jdbcTemplate.batchUpdate("INSERT INTO order_products (order_id, product_id) VALUES (?, ?)", productRows);
+
+        // 5. Descontar el stock de todos los productos con una sola sentencia
+        Integer[] amounts = quantities.values().toArray(new Integer[0]);
+        int updated = jdbcTemplate.update("""
+                UPDATE products p
+                SET stock = p.stock - d.amount
+                FROM unnest(?::INT[], ?::INT[]) AS d(id, amount)
+                WHERE p.id = d.id AND p.stock >= d.amount
+                """, productIds, amounts);
+        if (updated != productIds.length) {
+            throw new IllegalArgumentException("Sin stock suficiente para los productos del lote");
+        }
+
+        // 6. Actualizar las métricas de las empresas (equivale a apply_company_metrics_delta por pedido)
+        Integer[] ids = orderIds.toArray(new Integer[0]);
+        jdbcTemplate.query("""
+                SELECT c.id
+                FROM companies c
+                WHERE c.id IN (
+                    SELECT p.company_id
+                    FROM order_products op
+                    JOIN products p ON p.id = op.product_id
+                    WHERE op.order_id = ANY(?)
+                )
+                ORDER BY c.id
+                FOR UPDATE
+                """, rs -> { }, (Object) ids);
+        jdbcTemplate.update("""
+                WITH company_orders AS (
+                    SELECT DISTINCT p.company_id, o.id, o.status, o.total_price
+                    FROM orders o
+                    JOIN order_products op ON op.order_id = o.id
+                    JOIN products p ON p.id = op.product_id
+                    WHERE o.id = ANY(?)
+                ),
+                totals AS (
+                    SELECT company_id,
+                           COUNT(*) AS deliveries,
+                           COUNT(*) FILTER (WHERE status = 'FALLIDA') AS failed_deliveries,
+                           SUM(total_price) AS total_sales
+                    FROM company_orders
+                    GROUP BY company_id
+                )
+                UPDATE companies c
+                SET deliveries = COALESCE(c.deliveries, 0) + t.deliveries,
+                    failed_deliveries = COALESCE(c.failed_deliveries, 0) + t.failed_deliveries,
+                    total_sales = COALESCE(c.total_sales, 0) + t.total_sales
+                FROM totals t
+                WHERE c.id = t.company_id
+                """, (Object) ids);
+
+        return orderIds;
     }
 
     /**
      * Método para obtener los pedidos cuya ruta estimada cruza más de 2 zonas de reparto.
-     * Utiliza funciones geoespaciales para determinar las intersecciones entre la ruta del pedido
-     * y las áreas de cobertura definidas en el sistema.
+     * La cantidad de zonas que cruza cada ruta (orders.coverage_zone_count) la mantienen los triggers
+     * de orders y coverage_area al guardar una ruta o cambiar una zona, por lo que la consulta no evalúa geometrías.
      *
      * @return La lista de ordenes con nombre y dirección del cliente que cruzan mas de 2 zonas.
      */
@@ -524,12 +806,8 @@ public class OrdersRepository implements OrdersRepositoryInt {
             orders o
         LEFT JOIN 
             clients c ON o.client_id = c.id
-        WHERE (
-            SELECT COUNT(DISTINCT ca.coverage_id)
-            FROM coverage_area ca
-            WHERE ST_Crosses(o.estimated_route, ca.coverageArea)
-               OR ST_Intersects(o.estimated_route, ca.coverageArea)
-        ) > 2
+        WHERE 
+            o.coverage_zone_count > 2
     """;
 
         return jdbcTemplate.query(sql, (rs, rowNum) ->
@@ -544,12 +822,5 @@ public class OrdersRepository implements OrdersRepositoryInt {
                         rs.getString("client_address")
                 ));
     }
-
-    public void updateOrderStatusAndDeliveryDate(int orderId, int dealerId, String status, Date deliveryDate) {
-        jdbcTemplate.update(
-                "UPDATE orders SET status = ?, delivery_date = ? WHERE id = ? AND dealer_id = ?",
-                status, deliveryDate, orderId, dealerId
-        );
-    }
 }
 
@@ -1,9 +1,13 @@
 package bdavanzadas.lab1.repositories;
 
+import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 
+import bdavanzadas.lab1.dtos.OrderBatchItemDTO;
 import bdavanzadas.lab1.dtos.OrderNameAddressDTO;
+import bdavanzadas.lab1.dtos.OrderStatusChangeDTO;
 import bdavanzadas.lab1.dtos.OrderTotalProductsDTO;
 import bdavanzadas.lab1.dtos.TopSpenderDTO;
 import bdavanzadas.lab1.entities.OrdersEntity;
@@ -26,6 +30,22 @@ public interface OrdersRepositoryInt {
      */
     List<OrdersEntity> findAll();
 
+    /**
+     * Metodo para obtener una página de orders ordenada por id (paginación por cursor).
+     * @param "afterId" Se devuelven los orders con id mayor a este valor.
+     * @param "limit" La cantidad máxima de orders a devolver.
+     * @return Una lista de orders.
+     *
+     */
+    List<OrdersEntity> findAllAfter(int afterId, int limit);
+
+    /**
+     * Metodo para recorrer todos los orders sin cargarlos en memoria.
+     * @param "consumer" Recibe cada elemento a medida que se lee.
+     *
+     */
+    void streamAll(Consumer<? super OrdersEntity> consumer);
+
     /**
      * Metodo para guardar un order en la base de datos.
      * @param "order" El order a guardar.
@@ -35,7 +55,7 @@ public interface OrdersRepositoryInt {
     void save(OrdersEntity order);
 
     /**
-     * Metodo para actualizar un order en la base de datos.
+     * Metodo para actualizar un order en la base de datos, sin cambiar su estado ni su repartidor.
      * @param "order" que se actualizará.
      * @return void
      *
@@ -108,14 +128,18 @@ public interface OrdersRepositoryInt {
     List<OrdersEntity> findDeliveredOrdersByCompanyId(int companyId);
 
     /**
-     * Metodo para actualizar el estado de un pedido por ID de repartidor.
-     * @param "orderId" El id del pedido a actualizar.
-     * @param "dealerId" El id del repartidor que actualiza el pedido.
-     * @param "newStatus" El nuevo estado del pedido.
-     * @return void
-     *
+     * Metodo para cambiar el estado de un pedido con una sola sentencia condicional.
+     * @param "orderId" El id del pedido.
+     * @param "newStatus" El nuevo estado.
+     * @param "fromStatuses" Los estados desde los que se permite el cambio.
+     * @param "dealerId" El repartidor que debe tener el pedido, o null para no exigirlo.
+     * @param "expectedVersion" La versión que debe tener el pedido, o null para no exigirla.
+     * @param "deliveryDate" La fecha de entrega (solo se escribe si changeDeliveryDate es true).
+     * @param "changeDeliveryDate" Si se escribe la fecha de entrega.
+     * @return El pedido después del cambio, o null si no se cumplió alguna condición.
      */
-    void updateOrderStatusByDealerId(int orderId, int dealerId, String newStatus);
+    OrderStatusChangeDTO transitionStatus(int orderId, String newStatus, String[] fromStatuses, Integer dealerId,
+                                          Integer expectedVersion, Date deliveryDate, boolean changeDeliveryDate);
 
     /**
      * Metodo para obtener los pedidos de una compañia por ID de compañia.
@@ -141,13 +165,21 @@ public interface OrdersRepositoryInt {
     OrdersEntity findActiveOrderByDealerId(int dealerId);
 
     /**
-     * Metodo para asignar un pedido a un repartidor.
+     * Metodo para asignar un pedido pendiente (sin repartidor) a un repartidor sin pedidos EN PROCESO.
      * @param "orderId" El id del pedido a asignar.
      * @param "dealerId" El id del repartidor a asignar.
-     * @return void
+     * @return true si se asignó el pedido.
      *
      */
-    void assignOrderToDealer(int orderId, int dealerId);
+    boolean assignPendingOrderToIdleDealer(int orderId, int dealerId);
+
+    /**
+     * Metodo para obtener el punto de retiro de un pedido pendiente.
+     * @param "orderId" El id del pedido.
+     * @return {longitud, latitud}, o null si el pedido no está pendiente.
+     *
+     */
+    double[] findPendingOrderPickup(int orderId);
 
     /**
      * Metodo para obtener los pedidos de un repartidor con el conteo de productos.
@@ -164,4 +196,18 @@ public interface OrdersRepositoryInt {
      *
      */
     OrderNameAddressDTO findActiveOrderNameAddresDTOByDealerId(int dealerId);
+
+    /**
+     * Metodo para obtener el ID del último pedido de un cliente.
+     * @param "clientId" El id del cliente.
+     * @return El ID del último pedido, o null si el cliente no tiene pedidos.
+     */
+    Integer findLastOrderIdByClientId(int clientId);
+
+    /**
+     * Metodo para registrar varios pedidos con sus productos en una sola transacción.
+     * @param "orders" Los pedidos a registrar, con el ID del cliente ya resuelto.
+     * @return Los IDs generados, en el mismo orden que los pedidos recibidos.
+     */
+    List<Integer> saveBatch(List<OrderBatchItemDTO> orders);
 }
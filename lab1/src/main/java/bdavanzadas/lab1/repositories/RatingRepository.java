@@ -3,8 +3,10 @@ package bdavanzadas.lab1.repositories;
 import bdavanzadas.lab1.entities.RatingEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.function.Consumer;
 
 
 
@@ -26,20 +28,46 @@ public class RatingRepository implements RatingRepositoryInt {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    /**
+     * Mapper de una fila de la tabla ratings a RatingEntity.
+     */
+    private static final RowMapper<RatingEntity> RATING_ROW_MAPPER = (rs, rowNum) ->
+            new RatingEntity(
+                    rs.getInt("id"),
+                    rs.getInt("rating"),
+                    rs.getString("comment"),
+                    rs.getDate("date"),
+                    rs.getInt("client_id"),
+                    rs.getInt("dealer_id"),
+                    rs.getInt("order_id")
+            );
+
     public List<RatingEntity> findAll() {
         String sql = "SELECT * FROM ratings";
-        return jdbcTemplate.query(sql, (rs, rowNum) ->
-                new RatingEntity(
-                        rs.getInt("id"),
-                        rs.getInt("rating"),
-                        rs.getString("comment"),
-                        rs.getDate("date"),
-                        rs.getInt("client_id"),
-                        rs.getInt("dealer_id"),
-                        rs.getInt("order_id")
+        return jdbcTemplate.query(sql, RATING_ROW_MAPPER);
+    }
 
-                )
-        );
+    /**
+     * Metodo para obtener una página de ratings ordenada por id (paginación por cursor).
+     * @param "afterId" Se devuelven los ratings con id mayor a este valor.
+     * @param "limit" La cantidad máxima de ratings a devolver.
+     * @return Una lista de ratings.
+     *
+     */
+    public List<RatingEntity> findAllAfter(int afterId, int limit) {
+        String sql = "SELECT * FROM ratings WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sql, RATING_ROW_MAPPER, afterId, limit);
+    }
+
+    /**
+     * Metodo para recorrer todos los ratings sin cargarlos en memoria.
+     * Debe llamarse dentro de una transacción para que se use el fetch size.
+     * @param "consumer" Recibe cada rating a medida que se lee.
+     *
+     */
+    public void streamAll(Consumer<? super RatingEntity> consumer) {
+        String sql = "SELECT * FROM ratings ORDER BY id";
+        StreamingQueries.stream(jdbcTemplate, sql, RATING_ROW_MAPPER, consumer);
     }
 
 
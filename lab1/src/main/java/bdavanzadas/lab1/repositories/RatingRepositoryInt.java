@@ -2,6 +2,7 @@ package bdavanzadas.lab1.repositories;
 
 
 import java.util.List;
+import java.util.function.Consumer;
 import bdavanzadas.lab1.entities.RatingEntity;
 
 
@@ -17,6 +18,22 @@ public interface RatingRepositoryInt {
      * Se utiliza para ejecutar consultas SQL y mapear los resultados a objetos Java.
      */
     List<RatingEntity> findAll();
+
+    /**
+     * Metodo para obtener una página de ratings ordenada por id (paginación por cursor).
+     * @param "afterId" Se devuelven los ratings con id mayor a este valor.
+     * @param "limit" La cantidad máxima de ratings a devolver.
+     * @return Una lista de ratings.
+     *
+     */
+    List<RatingEntity> findAllAfter(int afterId, int limit);
+
+    /**
+     * Metodo para recorrer todos los ratings sin cargarlos en memoria.
+     * @param "consumer" Recibe cada elemento a medida que se lee.
+     *
+     */
+    void streamAll(Consumer<? super RatingEntity> consumer);
     /**
      * Metodo para guardar un rating en la base de datos.
      * @param "rating" El rating a guardar.
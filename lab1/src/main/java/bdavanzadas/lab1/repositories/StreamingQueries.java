@@ -0,0 +1,44 @@
+package bdavanzadas.lab1.repositories;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.function.Consumer;
+
+
+/**
+ * Utilidad para recorrer el resultado de una consulta fila a fila sin cargarlo completo en memoria.
+ * Usa un fetch size acotado, por lo que PostgreSQL entrega las filas por bloques mediante un cursor.
+ * Para que el cursor se use, la llamada debe ejecutarse dentro de una transacción (autocommit desactivado).
+ */
+final class StreamingQueries {
+
+    /**
+     * Cantidad de filas que se piden a la base de datos en cada bloque.
+     */
+    static final int FETCH_SIZE = 500;
+
+    private StreamingQueries() {
+    }
+
+    /**
+     * Ejecuta la consulta y entrega cada fila mapeada al consumidor, a medida que se lee.
+     * @param jdbcTemplate El JdbcTemplate a usar
+     * @param sql La consulta a ejecutar
+     * @param rowMapper El mapper de cada fila
+     * @param consumer El consumidor que recibe cada fila
+     * @param args Los parámetros de la consulta
+     */
+    static <T> void stream(JdbcTemplate jdbcTemplate, String sql, RowMapper<T> rowMapper, Consumer<? super T> consumer, Object... args) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow())));
+    }
+}
@@ -1,14 +1,17 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import bdavanzadas.lab1.Security.ActorIdentityCache;
 import bdavanzadas.lab1.entities.ClientEntity;
 import bdavanzadas.lab1.repositories.ClientRepository;
 import bdavanzadas.lab1.services.UserService;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -24,6 +27,20 @@ public class ClientService {
     @Autowired
     private UserService userService;
 
+    /**
+     * Cache de identidades de los usuarios autenticados.
+     * Se invalida al eliminar un cliente.
+     */
+    @Autowired
+    private ActorIdentityCache actorIdentityCache;
+
+    /**
+     * Índice en memoria de las áreas de cobertura.
+     * Guarda la ubicación de los clientes, por lo que se invalida al actualizarlos o eliminarlos.
+     */
+    @Autowired
+    private CoverageAreaIndex coverageAreaIndex;
+
 
     /**
      * Constructor del servicio de clientes.
@@ -56,6 +73,28 @@ public class ClientService {
         return clientRepository.findAll();
     }
 
+    /**
+     * Obtiene una página de clientes ordenada por ID (paginación por cursor).
+     * @param afterId Se devuelven los clientes con ID mayor a este valor.
+     * @param limit La cantidad máxima de clientes a devolver.
+     * @return La página con el cursor de la siguiente.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageDTO<ClientEntity> getClientsPage(int afterId, int limit) {
+        KeysetPageDTO.validate(afterId, limit);
+        return KeysetPageDTO.of(clientRepository.findAllAfter(afterId, limit), limit, ClientEntity::getId);
+    }
+
+    /**
+     * Recorre todos los clientes sin cargarlos en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param consumer Recibe cada elemento a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllClients(Consumer<ClientEntity> consumer) {
+        clientRepository.streamAll(consumer);
+    }
+
     /**
      * Obtiene un cliente por su ID.
      * @param id El ID del cliente a buscar.
@@ -84,6 +123,7 @@ public class ClientService {
     public void updateClient(ClientEntity client) {
         validateUbicacion(client.getUbication()); // Valida el WKT antes de actualizar
         clientRepository.update(client);
+        coverageAreaIndex.invalidateClientAfterCommit(client.getId());
     }
 
     /**
@@ -93,6 +133,8 @@ public class ClientService {
     @Transactional
     public void deleteClient(int id) {
         clientRepository.delete(id);
+        actorIdentityCache.invalidateClient(id);
+        coverageAreaIndex.invalidateClientAfterCommit(id);
     }
 
     /**
@@ -156,7 +198,40 @@ public class ClientService {
         }
     }
 
+    @Transactional(readOnly = true)
     public List<ClientEntity> getClientsBeyond5KmFromCompanies() {
         return clientRepository.findClientsBeyond5KmFromCompanies();
     }
+
+    /**
+     * Obtiene los clientes que están a más de "meters" metros de todas las empresas.
+     * @param meters La distancia mínima en metros a la empresa más cercana.
+     * @return Lista de clientes ordenada por nombre.
+     */
+    @Transactional(readOnly = true)
+    public List<ClientEntity> getClientsBeyondDistanceFromCompanies(double meters) {
+        validateDistance(meters);
+        return clientRepository.findClientsBeyondDistanceFromCompanies(meters);
+    }
+
+    /**
+     * Recorre los clientes que están a más de "meters" metros de todas las empresas, sin cargarlos en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param meters La distancia mínima en metros a la empresa más cercana.
+     * @param consumer Recibe cada elemento a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamClientsBeyondDistanceFromCompanies(double meters, Consumer<ClientEntity> consumer) {
+        clientRepository.streamClientsBeyondDistanceFromCompanies(meters, consumer);
+    }
+
+    /**
+     * Valida que la distancia sea un número de metros no negativo.
+     * @param meters La distancia a validar.
+     */
+    public void validateDistance(double meters) {
+        if (!Double.isFinite(meters) || meters < 0) {
+            throw new IllegalArgumentException("La distancia debe ser un número de metros mayor o igual a 0");
+        }
+    }
 }
\ No newline at end of file
@@ -21,6 +21,13 @@ public class CompanyService {
     @Autowired
     private CompanyRepository companyRepository;
 
+    /**
+     * Índice en memoria de las áreas de cobertura.
+     * Guarda el nombre y la ubicación de las compañías, por lo que se recarga al modificarlas.
+     */
+    @Autowired
+    private CoverageAreaIndex coverageAreaIndex;
+
     @Transactional(readOnly = true)
     public List<CompanyEntity> getAllCompanies() {
         return companyRepository.findAll();
@@ -36,6 +43,7 @@ public class CompanyService {
         // Validar el formato de la ubicación en WKT (Well-Known Text)
         validateUbicacion(company.getUbication());
         companyRepository.save(company);
+        coverageAreaIndex.refreshAfterCommit();
     }
 
     @Transactional
@@ -43,11 +51,13 @@ public class CompanyService {
         // Validar el formato de la ubicación en WKT (Well-Known Text)
         validateUbicacion(company.getUbication());
         companyRepository.update(company);
+        coverageAreaIndex.refreshAfterCommit();
     }
 
     @Transactional
     public void deleteCompany(int id) {
         companyRepository.delete(id);
+        coverageAreaIndex.refreshAfterCommit();
     }
 
     @Transactional(readOnly = true)
@@ -79,13 +89,41 @@ public class CompanyService {
         }
     }
 
+    /**
+     * Número de puntos de entrega devueltos cuando no se indica k.
+     */
+    public static final int DEFAULT_NEAREST_POINTS = 5;
+
+    /**
+     * Número máximo de puntos de entrega que se pueden pedir en una búsqueda.
+     */
+    public static final int MAX_NEAREST_POINTS = 500;
+
     public List<NearestDeliveryPointDTO> getTop5NearestDeliveryPoints(int companyId) {
+        return getNearestDeliveryPoints(companyId, DEFAULT_NEAREST_POINTS, null);
+    }
+
+    /**
+     * Obtiene los k puntos de entrega (clientes) más cercanos a una compañía.
+     * @param "companyId" El id de la compañía.
+     * @param "k" Cantidad de puntos a devolver (entre 1 y MAX_NEAREST_POINTS).
+     * @param "radiusMeters" Radio máximo en metros, o null para no limitar la distancia.
+     * @return Los puntos de entrega ordenados del más cercano al más lejano.
+     */
+    @Transactional(readOnly = true)
+    public List<NearestDeliveryPointDTO> getNearestDeliveryPoints(int companyId, int k, Double radiusMeters) {
         // Validación básica del ID
         if (companyId <= 0) {
             throw new IllegalArgumentException("El ID de compañía debe ser positivo");
         }
+        if (k < 1 || k > MAX_NEAREST_POINTS) {
+            throw new IllegalArgumentException("k debe estar entre 1 y " + MAX_NEAREST_POINTS);
+        }
+        if (radiusMeters != null && (!Double.isFinite(radiusMeters) || radiusMeters <= 0)) {
+            throw new IllegalArgumentException("El radio debe ser un número positivo de metros");
+        }
 
-        return companyRepository.findNearestDeliveryPoints(companyId, 5);
+        return companyRepository.findNearestDeliveryPoints(companyId, k, radiusMeters);
     }
 
     // rf4-identificar el punto de entrega más lejano desde cada compañía
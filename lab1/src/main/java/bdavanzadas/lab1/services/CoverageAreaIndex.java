@@ -0,0 +1,443 @@
+package bdavanzadas.lab1.services;
+
+import bdavanzadas.lab1.dtos.CoverageCheckDTO;
+import bdavanzadas.lab1.entities.CoverageAreaEntity;
+import bdavanzadas.lab1.repositories.ClientRepository;
+import bdavanzadas.lab1.repositories.CompanyRepository;
+import bdavanzadas.lab1.repositories.CoverageAreaRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * La clase CoverageAreaIndex mantiene en memoria las áreas de cobertura y responde las
+ * consultas de cobertura (punto dentro de polígono) sin ir a la base de datos.
+ *
+ * Las áreas se cargan en un STRtree de PreparedGeometry junto con la relación área-empresa
+ * y la ubicación de cada empresa. El índice es inmutable: cada recarga construye uno nuevo
+ * y lo reemplaza de forma atómica, por lo que las lecturas concurrentes nunca ven un estado parcial.
+ * Las recargas se hacen de a una, de modo que un índice cargado antes nunca reemplaza a uno más nuevo.
+ * La ubicación de los clientes se guarda en un cache acotado (coverage.client-cache.max-entries)
+ * y se invalida después de confirmar la actualización o eliminación de un cliente.
+ */
+@Service
+public class CoverageAreaIndex {
+
+    /**
+     * Radio medio de la Tierra en metros, usado para calcular distancias (fórmula de haversine).
+     */
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
+
+    /**
+     * Repositorio de áreas de cobertura.
+     * Se usa para cargar los polígonos y su relación con las empresas.
+     */
+    @Autowired
+    private CoverageAreaRepository coverageAreaRepository;
+
+    /**
+     * Repositorio de compañías.
+     * Se usa para cargar el nombre y la ubicación de las empresas.
+     */
+    @Autowired
+    private CompanyRepository companyRepository;
+
+    /**
+     * Repositorio de clientes.
+     * Se usa para obtener la ubicación de un cliente que aún no está en cache.
+     */
+    @Autowired
+    private ClientRepository clientRepository;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Serializa las recargas (ReentrantLock y no synchronized, para no fijar el hilo virtual durante la consulta).
+     */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /**
+     * Recargas pedidas hasta ahora, y la última incluida en el índice publicado (protegida por refreshLock).
+     */
+    private final AtomicLong refreshRequests = new AtomicLong();
+    private long loadedRequests;
+
+    /**
+     * Invalidaciones de clientes hasta ahora. Una ubicación leída antes de una invalidación no se guarda en cache.
+     */
+    private final AtomicLong clientInvalidations = new AtomicLong();
+
+    /**
+     * Registro de métricas (aciertos, fallos y tamaño del cache de clientes).
+     */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Cantidad máxima de ubicaciones de clientes que se mantienen en memoria.
+     */
+    @Value("${coverage.client-cache.max-entries:100000}")
+    private long maxClientEntries;
+
+    private Cache<Integer, ClientLocation> clientLocations;
+
+    @PostConstruct
+    void init() {
+        clientLocations = Caffeine.newBuilder()
+                .maximumSize(maxClientEntries)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, clientLocations, "coverageClientLocations");
+    }
+
+    /**
+     * Verifica si un cliente está dentro de alguna zona de cobertura de una empresa.
+     * @param clientId ID del cliente
+     * @param companyId ID de la empresa
+     * @return true si está en cobertura, false si no (o si el cliente no existe)
+     */
+    public boolean isClientInCoverageArea(int clientId, int companyId) {
+        ClientLocation client = getClientLocation(clientId);
+        if (client == null || client.point == null) {
+            return false;
+        }
+        for (CoverageZone zone : snapshot().candidates(client.point)) {
+            if (zone.companyIds.contains(companyId) && zone.geometry.contains(client.point)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtiene información detallada de cobertura para un cliente y empresa.
+     * Si el cliente está en varias zonas de la empresa, se prefiere una que lo contenga completamente.
+     * @param clientId ID del cliente
+     * @param companyId ID de la empresa
+     * @return CoverageCheckDTO con la información (null si el cliente o la empresa no existen)
+     */
+    public CoverageCheckDTO getClientCoverageDetails(int clientId, int companyId) {
+        Snapshot current = snapshot();
+        ClientLocation client = getClientLocation(clientId);
+        CompanyLocation company = current.companies.get(companyId);
+        if (client == null || company == null) {
+            return null;
+        }
+
+        CoverageZone match = null;
+        boolean covered = false;
+        if (client.point != null) {
+            for (CoverageZone zone : current.candidates(client.point)) {
+                if (!zone.companyIds.contains(companyId) || !zone.geometry.intersects(client.point)) {
+                    continue;
+                }
+                if (zone.geometry.contains(client.point)) {
+                    match = zone;
+                    covered = true;
+                    break;
+                }
+                if (match == null) {
+                    match = zone; // En el borde de la zona: intersecta pero no está dentro
+                }
+            }
+        }
+
+        return new CoverageCheckDTO(
+                clientId,
+                client.name,
+                companyId,
+                company.name,
+                match != null ? match.id : null,
+                match != null ? match.name : null,
+                covered,
+                distanceMeters(client.point, company.point)
+        );
+    }
+
+    /**
+     * Obtiene todas las coberturas (empresa y zona) donde se encuentra un cliente.
+     * @param clientId ID del cliente
+     * @return Lista de CoverageCheckDTO con las coberturas encontradas
+     */
+    public List<CoverageCheckDTO> getClientCoverages(int clientId) {
+        Snapshot current = snapshot();
+        ClientLocation client = getClientLocation(clientId);
+        if (client == null || client.point == null) {
+            return Collections.emptyList();
+        }
+
+        List<CoverageCheckDTO> coverages = new ArrayList<>();
+        for (CoverageZone zone : zonesContaining(current, client.point)) {
+            for (Integer companyId : zone.companyIds) {
+                CompanyLocation company = current.companies.get(companyId);
+                if (company != null) {
+                    coverages.add(new CoverageCheckDTO(
+                            clientId, client.name, companyId, company.name,
+                            zone.id, zone.name, true, 0));
+                }
+            }
+        }
+        return coverages;
+    }
+
+    /**
+     * Obtiene los IDs de las zonas de cobertura que contienen un punto.
+     * @param lon Longitud del punto
+     * @param lat Latitud del punto
+     * @return Lista con los IDs de las zonas que contienen el punto
+     */
+    public List<Integer> findCoverageIdsContaining(double lon, double lat) {
+        Point point = GEOMETRY_FACTORY.createPoint(new Coordinate(lon, lat));
+        List<Integer> ids = new ArrayList<>();
+        for (CoverageZone zone : zonesContaining(snapshot(), point)) {
+            ids.add(zone.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Recarga el índice desde la base de datos.
+     * Construye un índice nuevo y lo reemplaza de una vez, sin bloquear las lecturas.
+     * Las recargas se ejecutan de a una; si mientras esperaba otra recarga empezó después de este pedido,
+     * esa ya incluye sus cambios y no se vuelve a cargar.
+     */
+    public void refresh() {
+        long request = refreshRequests.incrementAndGet();
+        refreshLock.lock();
+        try {
+            if (loadedRequests >= request) {
+                return;
+            }
+            // Todo pedido registrado hasta aquí fue confirmado antes de empezar la carga
+            long covered = refreshRequests.get();
+            snapshot = load();
+            loadedRequests = covered;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Recarga el índice una vez confirmada la transacción actual,
+     * para no publicar cambios que luego se deshagan. Sin transacción activa recarga de inmediato.
+     */
+    public void refreshAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh();
+                }
+            });
+        } else {
+            refresh();
+        }
+    }
+
+    /**
+     * Elimina del cache la ubicación de un cliente.
+     * @param clientId ID del cliente
+     */
+    public void invalidateClient(int clientId) {
+        clientInvalidations.incrementAndGet();
+        clientLocations.invalidate(clientId);
+    }
+
+    /**
+     * Elimina del cache la ubicación de un cliente una vez confirmada la transacción actual (al actualizarlo
+     * o eliminarlo), para que una consulta concurrente no vuelva a guardar la ubicación anterior.
+     * Sin transacción activa la elimina de inmediato.
+     * @param clientId ID del cliente
+     */
+    public void invalidateClientAfterCommit(int clientId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateClient(clientId);
+                }
+            });
+        } else {
+            invalidateClient(clientId);
+        }
+    }
+
+    /**
+     * Distancia en metros entre dos puntos lon/lat, calculada con la fórmula de haversine.
+     * @return La distancia en metros, o 0 si alguno de los puntos es null
+     */
+    static double distanceMeters(Point a, Point b) {
+        if (a == null || b == null) {
+            return 0;
+        }
+        return distanceMeters(a.getX(), a.getY(), b.getX(), b.getY());
+    }
+
+    /**
+     * Distancia en metros entre dos coordenadas lon/lat, calculada con la fórmula de haversine.
+     */
+    static double distanceMeters(double lon1, double lat1, double lon2, double lat2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLat = phi2 - phi1;
+        double dLon = Math.toRadians(lon2 - lon1);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(phi1) * Math.cos(phi2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+    }
+
+    private List<CoverageZone> zonesContaining(Snapshot current, Point point) {
+        List<CoverageZone> zones = new ArrayList<>();
+        for (CoverageZone zone : current.candidates(point)) {
+            if (zone.geometry.contains(point)) {
+                zones.add(zone);
+            }
+        }
+        return zones;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            refresh(); // Primera consulta: las llamadas concurrentes esperan una sola carga
+            current = snapshot;
+        }
+        return current;
+    }
+
+    private ClientLocation getClientLocation(int clientId) {
+        ClientLocation cached = clientLocations.getIfPresent(clientId);
+        if (cached != null) {
+            return cached;
+        }
+        long invalidations = clientInvalidations.get();
+        Map<String, Object> row = clientRepository.findLocationById(clientId);
+        if (row == null) {
+            return null;
+        }
+        ClientLocation location = new ClientLocation((String) row.get("name"), toPoint(row.get("lon"), row.get("lat")));
+        // Solo se guarda si ningún cliente se invalidó durante la consulta (podría ser una ubicación anterior)
+        clientLocations.asMap().compute(clientId,
+                (id, previous) -> clientInvalidations.get() == invalidations ? location : previous);
+        return location;
+    }
+
+    /**
+     * Carga las áreas de cobertura, la relación con las empresas y la ubicación de las empresas.
+     */
+    private Snapshot load() {
+        Map<Integer, Set<Integer>> companiesByCoverage = new HashMap<>();
+        for (Map<String, Object> link : coverageAreaRepository.findCompanyLinks()) {
+            int coverageId = ((Number) link.get("coverage_id")).intValue();
+            int companyId = ((Number) link.get("company_id")).intValue();
+            companiesByCoverage.computeIfAbsent(coverageId, id -> new HashSet<>()).add(companyId);
+        }
+
+        STRtree tree = new STRtree();
+        for (CoverageAreaEntity area : coverageAreaRepository.findAll()) {
+            // Las áreas llegan en EWKB: se decodifican directo a JTS, sin formatear ni interpretar WKT
+            Geometry geometry = area.getCoverageArea().getGeometry();
+            Set<Integer> companyIds = companiesByCoverage.getOrDefault(area.getId(), Collections.emptySet());
+            CoverageZone zone = new CoverageZone(area.getId(), area.getName(),
+                    PreparedGeometryFactory.prepare(geometry), Collections.unmodifiableSet(companyIds));
+            tree.insert(geometry.getEnvelopeInternal(), zone);
+        }
+        tree.build();
+
+        Map<Integer, CompanyLocation> companies = new HashMap<>();
+        for (Map<String, Object> row : companyRepository.findAllLocations()) {
+            int id = ((Number) row.get("id")).intValue();
+            companies.put(id, new CompanyLocation((String) row.get("name"), toPoint(row.get("lon"), row.get("lat"))));
+        }
+
+        return new Snapshot(tree, companies);
+    }
+
+    private static Point toPoint(Object lon, Object lat) {
+        if (lon == null || lat == null) {
+            return null;
+        }
+        return GEOMETRY_FACTORY.createPoint(new Coordinate(((Number) lon).doubleValue(), ((Number) lat).doubleValue()));
+    }
+
+    /**
+     * Estado inmutable del índice: el árbol de zonas y las empresas por ID.
+     */
+    private static final class Snapshot {
+        private final STRtree tree;
+        private final Map<Integer, CompanyLocation> companies;
+
+        private Snapshot(STRtree tree, Map<Integer, CompanyLocation> companies) {
+            this.tree = tree;
+            this.companies = companies;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<CoverageZone> candidates(Point point) {
+            return tree.query(new Envelope(point.getCoordinate()));
+        }
+    }
+
+    private static final class CoverageZone {
+        private final int id;
+        private final String name;
+        private final PreparedGeometry geometry;
+        private final Set<Integer> companyIds;
+
+        private CoverageZone(int id, String name, PreparedGeometry geometry, Set<Integer> companyIds) {
+            this.id = id;
+            this.name = name;
+            this.geometry = geometry;
+            this.companyIds = companyIds;
+        }
+    }
+
+    private static final class CompanyLocation {
+        private final String name;
+        private final Point point;
+
+        private CompanyLocation(String name, Point point) {
+            this.name = name;
+            this.point = point;
+        }
+    }
+
+    private static final class ClientLocation {
+        private final String name;
+        private final Point point;
+
+        private ClientLocation(String name, Point point) {
+            this.name = name;
+            this.point = point;
+        }
+    }
+}
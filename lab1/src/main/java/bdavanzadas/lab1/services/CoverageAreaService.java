@@ -1,15 +1,19 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.Config.CacheConfig;
 import bdavanzadas.lab1.dtos.CoverageCheckDTO;
+import bdavanzadas.lab1.dtos.MapFeatureDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
 import bdavanzadas.lab1.entities.CoverageAreaEntity;
 import bdavanzadas.lab1.repositories.CoverageAreaRepository;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 
 /**
@@ -26,14 +30,33 @@ public class CoverageAreaService {
     @Autowired
     private CoverageAreaRepository coverageAreaRepository;
 
+    /**
+     * Índice en memoria de las áreas de cobertura.
+     * Responde las consultas de cobertura sin ir a la base de datos y se recarga al modificar un área.
+     */
+    @Autowired
+    private CoverageAreaIndex coverageAreaIndex;
+
     /**
      * Método para obtener todas las áreas de cobertura de la base de datos.
      * @return Una lista de áreas de cobertura.
      */
+    @Cacheable(CacheConfig.COVERAGE_AREAS)
     public List<CoverageAreaEntity> getAllCoverageAreas() {
         return coverageAreaRepository.findAll();
     }
 
+    /**
+     * Recorre las áreas de cobertura visibles en una vista del mapa sin cargarlas en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param viewport La vista del mapa (bbox y zoom).
+     * @param consumer Recibe cada área a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamMapFeatures(MapViewportDTO viewport, Consumer<MapFeatureDTO> consumer) {
+        coverageAreaRepository.streamMapFeatures(viewport, consumer);
+    }
+
     /**
      * Método para buscar un área de cobertura por su ID.
      * @param id El ID del área de cobertura a buscar.
@@ -47,24 +70,30 @@ public class CoverageAreaService {
      * Método crear un área de cobertura.
      * @param coverageArea El área de cobertura a crear.
      */
+    @CacheEvict(cacheNames = CacheConfig.COVERAGE_AREAS, allEntries = true)
     public void createCoverageArea(CoverageAreaEntity coverageArea) {
         coverageAreaRepository.save(coverageArea);
+        coverageAreaIndex.refreshAfterCommit();
     }
 
     /**
      * Método para actualizar un área de cobertura.
      * @param coverageArea El área de cobertura a actualizar.
      */
+    @CacheEvict(cacheNames = CacheConfig.COVERAGE_AREAS, allEntries = true)
     public void updateCoverageArea(CoverageAreaEntity coverageArea) {
         coverageAreaRepository.update(coverageArea);
+        coverageAreaIndex.refreshAfterCommit();
     }
 
     /**
      * Método para eliminar un área de cobertura por su ID.
      * @param id El ID del área de cobertura a eliminar.
      */
+    @CacheEvict(cacheNames = CacheConfig.COVERAGE_AREAS, allEntries = true)
     public void deleteCoverageArea(int id) {
         coverageAreaRepository.delete(id);
+        coverageAreaIndex.refreshAfterCommit();
     }
 
 
@@ -72,24 +101,23 @@ public class CoverageAreaService {
      * Verificación básica de cobertura sin validaciones
      * @param clientId ID del cliente
      * @param companyId ID de la empresa
-     * @return resultado directo del repository
+     * @return resultado directo del índice de cobertura
      */
     public boolean checkClientCoverage(int clientId, int companyId) {
-        return coverageAreaRepository.isClientInCoverageArea(clientId, companyId);
+        return coverageAreaIndex.isClientInCoverageArea(clientId, companyId);
     }
 
     /**
      * Verificación detallada
      * @return DTO o null si hay algún problema
      */
-    @Transactional(readOnly = true)
     public CoverageCheckDTO getClientCoverageDetails(int clientId, int companyId) {
         if (clientId <= 0 || companyId <= 0) {
             return null;
         }
 
 
-        return coverageAreaRepository.getClientCoverageDetails(clientId, companyId);
+        return coverageAreaIndex.getClientCoverageDetails(clientId, companyId);
     }
 
     /**
@@ -103,6 +131,6 @@ public class CoverageAreaService {
             throw new IllegalArgumentException("El ID de cliente debe ser mayor a cero");
         }
 
-        return coverageAreaRepository.getClientCoverages(clientId);
+        return coverageAreaIndex.getClientCoverages(clientId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,312 @@
+package bdavanzadas.lab1.services;
+
+import bdavanzadas.lab1.dtos.BatchCandidateDTO;
+import bdavanzadas.lab1.dtos.DealerBatchDTO;
+import bdavanzadas.lab1.dtos.DealerLocationDTO;
+import bdavanzadas.lab1.entities.GeometryValue;
+import bdavanzadas.lab1.repositories.DealerBatchRepository;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * La clase DealerBatchService agrupa pedidos pendientes cercanos en lotes de reparto, uno por repartidor.
+ *
+ * Los pedidos se agrupan alrededor de un pedido semilla (primero los urgentes y luego los más antiguos):
+ * entran los pedidos cuyo retiro está cerca del retiro de la semilla (la misma empresa o empresas vecinas)
+ * y cuya entrega está cerca de la entrega de la semilla. Cada grupo se asigna al repartidor disponible más
+ * cercano y el orden de las paradas se calcula con RouteBatchSolver (vecino más cercano y 2-opt sobre
+ * distancias de haversine), en paralelo para todos los lotes. No se usa una red vial: la ruta guardada es
+ * la línea que une las paradas.
+ *
+ * Cada lote se guarda en su propia transacción con sentencias condicionales; si entretanto otro proceso
+ * asignó alguno de sus pedidos o al repartidor, el lote se descarta sin afectar a los demás.
+ */
+@Service
+public class DealerBatchService {
+
+    /**
+     * Cantidad máxima de pedidos por lote.
+     */
+    public static final int MAX_ORDERS_PER_BATCH = 20;
+
+    /**
+     * Radio máximo (en metros) para agrupar retiros o entregas.
+     */
+    public static final double MAX_RADIUS_METERS = 50_000;
+
+    /**
+     * Un lote necesita al menos dos pedidos; un pedido solo se despacha con DealerDispatchService.
+     */
+    private static final int MIN_ORDERS_PER_BATCH = 2;
+
+    private static final double METERS_PER_DEGREE = 111_320;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), GeometryValue.SRID);
+
+    @Autowired
+    private DealerBatchRepository dealerBatchRepository;
+
+    /**
+     * Índice de repartidores disponibles, para elegir el repartidor de cada lote.
+     */
+    @Autowired
+    private DealerDispatchService dealerDispatchService;
+
+    @Autowired
+    private UserService userService;
+
+    /**
+     * Transacción de cada lote (una por lote, para que un lote rechazado no deshaga los demás).
+     */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Cantidad máxima de pedidos pendientes que se consideran en una planificación.
+     */
+    @Value("${dispatch.batch.max-candidates:2000}")
+    private int maxCandidates;
+
+    private final AtomicBoolean planning = new AtomicBoolean();
+
+    /**
+     * Agrupa los pedidos pendientes en lotes y los asigna a los repartidores disponibles.
+     * @param maxOrders Cantidad máxima de pedidos por lote (entre 2 y MAX_ORDERS_PER_BATCH)
+     * @param pickupRadiusMeters Distancia máxima entre el retiro de un pedido y el de la semilla del lote
+     * @param dropoffRadiusMeters Distancia máxima entre la entrega de un pedido y la de la semilla del lote
+     * @return Los lotes creados
+     * @throws IllegalArgumentException Si algún parámetro no es válido
+     * @throws IllegalStateException Si ya hay una planificación en curso
+     */
+    public List<DealerBatchDTO> planBatches(int maxOrders, double pickupRadiusMeters, double dropoffRadiusMeters) {
+        if (maxOrders < MIN_ORDERS_PER_BATCH || maxOrders > MAX_ORDERS_PER_BATCH) {
+            throw new IllegalArgumentException("La cantidad de pedidos por lote debe estar entre "
+                    + MIN_ORDERS_PER_BATCH + " y " + MAX_ORDERS_PER_BATCH);
+        }
+        if (!(pickupRadiusMeters > 0 && pickupRadiusMeters <= MAX_RADIUS_METERS)
+                || !(dropoffRadiusMeters > 0 && dropoffRadiusMeters <= MAX_RADIUS_METERS)) {
+            throw new IllegalArgumentException("Los radios deben ser mayores que 0 y de a lo más " + (int) MAX_RADIUS_METERS + " metros");
+        }
+        if (!planning.compareAndSet(false, true)) {
+            throw new IllegalStateException("Ya hay una planificación de lotes en curso");
+        }
+        try {
+            List<BatchCandidateDTO> candidates = dealerBatchRepository.findBatchCandidates(maxCandidates);
+            List<PlannedBatch> groups = group(candidates, maxOrders, pickupRadiusMeters, dropoffRadiusMeters);
+
+            // El orden de las paradas de cada lote es independiente de los demás
+            List<SolvedBatch> solved = groups.parallelStream().map(DealerBatchService::solve).toList();
+
+            List<DealerBatchDTO> created = new ArrayList<>(solved.size());
+            for (SolvedBatch batch : solved) {
+                DealerBatchDTO saved = save(batch);
+                if (saved != null) {
+                    dealerDispatchService.markBusy(batch.dealerId());
+                    created.add(saved);
+                }
+            }
+            return created;
+        } finally {
+            planning.set(false);
+        }
+    }
+
+    /**
+     * Obtiene el último lote del repartidor autenticado.
+     * @return El lote, o null si el repartidor no tiene lotes
+     */
+    @Transactional(readOnly = true)
+    public DealerBatchDTO getAuthenticatedDealerBatch() {
+        Integer dealerId = userService.getAuthenticatedDealerId();
+        return dealerBatchRepository.findLatestByDealerId(dealerId);
+    }
+
+    /**
+     * Agrupa los pedidos alrededor de semillas y elige el repartidor de cada grupo.
+     */
+    private List<PlannedBatch> group(List<BatchCandidateDTO> candidates, int maxOrders,
+                                     double pickupRadiusMeters, double dropoffRadiusMeters) {
+        STRtree pickups = new STRtree();
+        for (BatchCandidateDTO candidate : candidates) {
+            pickups.insert(new Envelope(new Coordinate(candidate.getPickupLongitude(), candidate.getPickupLatitude())), candidate);
+        }
+        pickups.build();
+
+        Set<Integer> usedOrders = new HashSet<>();
+        Set<Integer> usedDealers = new HashSet<>();
+        List<PlannedBatch> groups = new ArrayList<>();
+        for (BatchCandidateDTO seed : candidates) {
+            if (usedOrders.contains(seed.getOrderId())) {
+                continue;
+            }
+
+            List<BatchCandidateDTO> members = new ArrayList<>();
+            @SuppressWarnings("unchecked")
+            List<BatchCandidateDTO> nearby = pickups.query(searchEnvelope(seed, pickupRadiusMeters));
+            for (BatchCandidateDTO candidate : nearby) {
+                if (candidate != seed && !usedOrders.contains(candidate.getOrderId())
+                        && pickupDistance(seed, candidate) <= pickupRadiusMeters
+                        && dropoffDistance(seed, candidate) <= dropoffRadiusMeters) {
+                    members.add(candidate);
+                }
+            }
+            if (members.size() + 1 < MIN_ORDERS_PER_BATCH) {
+                continue;
+            }
+            // Los más cercanos a la semilla primero, contando el retiro y la entrega
+            members.sort(Comparator.comparingDouble(candidate -> pickupDistance(seed, candidate) + dropoffDistance(seed, candidate)));
+            if (members.size() > maxOrders - 1) {
+                members = members.subList(0, maxOrders - 1);
+            }
+
+            DealerLocationDTO dealer = nearestUnusedDealer(seed, usedDealers);
+            if (dealer == null) {
+                break; // No quedan repartidores disponibles
+            }
+
+            List<BatchCandidateDTO> orders = new ArrayList<>(members.size() + 1);
+            orders.add(seed);
+            orders.addAll(members);
+            for (BatchCandidateDTO order : orders) {
+                usedOrders.add(order.getOrderId());
+            }
+            usedDealers.add(dealer.getDealerId());
+            groups.add(new PlannedBatch(dealer, orders));
+        }
+        return groups;
+    }
+
+    private DealerLocationDTO nearestUnusedDealer(BatchCandidateDTO seed, Set<Integer> usedDealers) {
+        List<DealerLocationDTO> dealers = dealerDispatchService.nearestIdleDealers(
+                seed.getPickupLongitude(), seed.getPickupLatitude(), usedDealers.size() + 1);
+        for (DealerLocationDTO dealer : dealers) {
+            if (!usedDealers.contains(dealer.getDealerId())) {
+                return dealer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Calcula el orden de las paradas de un lote y su ruta.
+     * Los pedidos de una misma empresa comparten el punto de retiro.
+     */
+    private static SolvedBatch solve(PlannedBatch batch) {
+        Map<Coordinate, Integer> pickupIndex = new LinkedHashMap<>();
+        int[] orderPickup = new int[batch.orders().size()];
+        double[][] dropoffs = new double[batch.orders().size()][];
+        for (int i = 0; i < batch.orders().size(); i++) {
+            BatchCandidateDTO order = batch.orders().get(i);
+            Coordinate pickup = new Coordinate(order.getPickupLongitude(), order.getPickupLatitude());
+            orderPickup[i] = pickupIndex.computeIfAbsent(pickup, key -> pickupIndex.size());
+            dropoffs[i] = new double[]{order.getDropoffLongitude(), order.getDropoffLatitude()};
+        }
+        double[][] pickups = new double[pickupIndex.size()][];
+        for (Map.Entry<Coordinate, Integer> entry : pickupIndex.entrySet()) {
+            pickups[entry.getValue()] = new double[]{entry.getKey().getX(), entry.getKey().getY()};
+        }
+
+        double[] start = {batch.dealer().getLongitude(), batch.dealer().getLatitude()};
+        RouteBatchSolver.Solution solution = RouteBatchSolver.solve(start, pickups, dropoffs);
+
+        // Posición de cada parada en la ruta (0 = posición del repartidor)
+        Coordinate[] route = new Coordinate[1 + pickups.length + dropoffs.length];
+        route[0] = new Coordinate(start[0], start[1]);
+        int[] pickupSeq = new int[pickups.length];
+        for (int i = 0; i < solution.pickupOrder().length; i++) {
+            int pickup = solution.pickupOrder()[i];
+            pickupSeq[pickup] = 1 + i;
+            route[1 + i] = new Coordinate(pickups[pickup][0], pickups[pickup][1]);
+        }
+        List<Integer> orderIds = new ArrayList<>(dropoffs.length);
+        List<int[]> stops = new ArrayList<>(dropoffs.length);
+        for (int i = 0; i < solution.dropoffOrder().length; i++) {
+            int order = solution.dropoffOrder()[i];
+            int deliverySeq = 1 + pickups.length + i;
+            route[deliverySeq] = new Coordinate(dropoffs[order][0], dropoffs[order][1]);
+            int orderId = batch.orders().get(order).getOrderId();
+            orderIds.add(orderId);
+            stops.add(new int[]{orderId, pickupSeq[orderPickup[order]], deliverySeq});
+        }
+
+        GeometryValue line = GeometryValue.of(GEOMETRY_FACTORY.createLineString(route));
+        return new SolvedBatch(batch.dealer().getDealerId(), orderIds, stops, line, solution.distanceMeters());
+    }
+
+    /**
+     * Guarda un lote en su propia transacción.
+     * @return El lote guardado, o null si alguno de sus pedidos o el repartidor ya no estaban disponibles
+     */
+    private DealerBatchDTO save(SolvedBatch batch) {
+        try {
+            return transactionTemplate.execute(status -> {
+                DealerBatchDTO saved = dealerBatchRepository.insertBatch(batch.dealerId(), batch.route(), batch.distanceMeters());
+                int assigned = dealerBatchRepository.assignBatchOrders(batch.dealerId(), batch.orderIds(), batch.orderIds().get(0));
+                if (assigned != batch.orderIds().size()) {
+                    status.setRollbackOnly();
+                    return null;
+                }
+                dealerBatchRepository.insertStops(saved.getId(), batch.stops());
+                saved.setOrderIds(batch.orderIds());
+                return saved;
+            });
+        } catch (DuplicateKeyException e) {
+            dealerDispatchService.markBusy(batch.dealerId()); // Otra asignación concurrente ocupó al repartidor
+            return null;
+        } catch (ConcurrencyFailureException e) {
+            return null; // Bloqueo con otra transacción que asignaba los mismos pedidos
+        }
+    }
+
+    private static Envelope searchEnvelope(BatchCandidateDTO seed, double radiusMeters) {
+        double latDegrees = radiusMeters / METERS_PER_DEGREE;
+        double cos = Math.max(Math.cos(Math.toRadians(seed.getPickupLatitude())), 0.01);
+        double lonDegrees = latDegrees / cos;
+        return new Envelope(seed.getPickupLongitude() - lonDegrees, seed.getPickupLongitude() + lonDegrees,
+                seed.getPickupLatitude() - latDegrees, seed.getPickupLatitude() + latDegrees);
+    }
+
+    private static double pickupDistance(BatchCandidateDTO a, BatchCandidateDTO b) {
+        return CoverageAreaIndex.distanceMeters(a.getPickupLongitude(), a.getPickupLatitude(),
+                b.getPickupLongitude(), b.getPickupLatitude());
+    }
+
+    private static double dropoffDistance(BatchCandidateDTO a, BatchCandidateDTO b) {
+        return CoverageAreaIndex.distanceMeters(a.getDropoffLongitude(), a.getDropoffLatitude(),
+                b.getDropoffLongitude(), b.getDropoffLatitude());
+    }
+
+    /**
+     * Grupo de pedidos con su repartidor, antes de ordenar las paradas.
+     */
+    private record PlannedBatch(DealerLocationDTO dealer, List<BatchCandidateDTO> orders) {
+    }
+
+    /**
+     * Lote con sus paradas ordenadas.
+     * @param orderIds Pedidos en el orden de entrega
+     * @param stops Filas {order_id, pickup_seq, delivery_seq}
+     */
+    private record SolvedBatch(int dealerId, List<Integer> orderIds, List<int[]> stops, GeometryValue route, double distanceMeters) {
+    }
+}
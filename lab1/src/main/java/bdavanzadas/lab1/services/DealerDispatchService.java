@@ -0,0 +1,194 @@
+package bdavanzadas.lab1.services;
+
+import bdavanzadas.lab1.dtos.DealerLocationDTO;
+import bdavanzadas.lab1.repositories.DealerRepository;
+import bdavanzadas.lab1.repositories.OrdersRepository;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.index.strtree.ItemDistance;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * La clase DealerDispatchService asigna pedidos pendientes al repartidor disponible más cercano.
+ *
+ * Mantiene en memoria un STRtree con la posición de los repartidores sin pedidos EN PROCESO
+ * (la última posición informada en DealerLocationStore o, si no hay, la de la tabla dealers).
+ * Para despachar un pedido se buscan los k repartidores más cercanos al punto de retiro y se intenta
+ * asignar el pedido a cada uno, en orden de distancia, con una sentencia condicional; la base de datos
+ * decide, por lo que un índice desactualizado solo cuesta un intento más, nunca una doble asignación.
+ */
+@Service
+public class DealerDispatchService {
+
+    /**
+     * Cantidad de repartidores candidatos que se consideran por defecto.
+     */
+    public static final int DEFAULT_CANDIDATES = 5;
+
+    /**
+     * Cantidad máxima de repartidores candidatos por despacho.
+     */
+    public static final int MAX_CANDIDATES = 50;
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), 4326);
+
+    /**
+     * Distancia entre entradas del índice (distancia entre envelopes en grados).
+     * Sirve para ordenar los candidatos; la distancia final se calcula en metros.
+     */
+    private static final ItemDistance ENVELOPE_DISTANCE = (a, b) ->
+            ((Envelope) a.getBounds()).distance((Envelope) b.getBounds());
+
+    /**
+     * Repositorio de órdenes, usado para obtener el punto de retiro y asignar el pedido.
+     */
+    @Autowired
+    private OrdersRepository ordersRepository;
+
+    /**
+     * Repositorio de dealers, usado para cargar los repartidores disponibles.
+     */
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    /**
+     * Últimas posiciones informadas por los repartidores.
+     */
+    @Autowired
+    private DealerLocationStore dealerLocationStore;
+
+    private volatile STRtree index;
+
+    /**
+     * Repartidores asignados desde la última reconstrucción del índice.
+     * Se excluyen de las búsquedas hasta la siguiente reconstrucción.
+     */
+    private final Set<Integer> busyDealers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Asigna un pedido pendiente al repartidor disponible más cercano a su punto de retiro.
+     * No es transaccional a propósito: cada intento de asignación es una sentencia atómica e independiente,
+     * de modo que un intento rechazado (por ejemplo, por el índice único) no aborta los siguientes.
+     * @param orderId El ID del pedido
+     * @param candidates Cantidad de repartidores cercanos a intentar (entre 1 y MAX_CANDIDATES)
+     * @return El ID del repartidor asignado
+     * @throws IllegalArgumentException Si el pedido no existe, ya fue asignado o no tiene ubicación, o si candidates no es válido
+     * @throws IllegalStateException Si ningún repartidor cercano está disponible
+     */
+    public int dispatch(int orderId, int candidates) {
+        if (candidates < 1 || candidates > MAX_CANDIDATES) {
+            throw new IllegalArgumentException("La cantidad de candidatos debe estar entre 1 y " + MAX_CANDIDATES);
+        }
+        double[] pickup = ordersRepository.findPendingOrderPickup(orderId);
+        if (pickup == null) {
+            throw new IllegalArgumentException("El pedido con ID " + orderId + " no existe, ya fue asignado o no tiene ubicación");
+        }
+
+        for (DealerLocationDTO dealer : nearestIdleDealers(pickup[0], pickup[1], candidates)) {
+            boolean assigned;
+            try {
+                assigned = ordersRepository.assignPendingOrderToIdleDealer(orderId, dealer.getDealerId());
+            } catch (DuplicateKeyException e) {
+                assigned = false; // Otra asignación concurrente ocupó al repartidor
+            }
+            if (assigned) {
+                busyDealers.add(dealer.getDealerId());
+                return dealer.getDealerId();
+            }
+            if (ordersRepository.findPendingOrderPickup(orderId) == null) {
+                throw new IllegalArgumentException("El pedido con ID " + orderId + " ya fue asignado");
+            }
+            busyDealers.add(dealer.getDealerId());
+        }
+        throw new IllegalStateException("No hay repartidores disponibles cerca del pedido " + orderId);
+    }
+
+    /**
+     * Excluye a un repartidor de las búsquedas hasta la siguiente reconstrucción del índice
+     * (por ejemplo, al asignarle un lote de reparto).
+     * @param dealerId El ID del repartidor
+     */
+    void markBusy(int dealerId) {
+        busyDealers.add(dealerId);
+    }
+
+    /**
+     * Obtiene los repartidores disponibles más cercanos a un punto, ordenados por distancia en metros.
+     * @param longitude La longitud
+     * @param latitude La latitud
+     * @param k La cantidad máxima de repartidores
+     * @return Los repartidores encontrados (puede haber menos de k)
+     */
+    public List<DealerLocationDTO> nearestIdleDealers(double longitude, double latitude, int k) {
+        STRtree current = index();
+        if (current.size() == 0) {
+            return List.of();
+        }
+        Point origin = GEOMETRY_FACTORY.createPoint(new Coordinate(longitude, latitude));
+        // Se piden más vecinos para compensar los repartidores ocupados desde la última reconstrucción
+        int wanted = Math.min(current.size(), k + busyDealers.size());
+        Object[] found = current.nearestNeighbour(origin.getEnvelopeInternal(), origin, ENVELOPE_DISTANCE, wanted);
+
+        List<DealerLocationDTO> dealers = new ArrayList<>(found.length);
+        for (Object item : found) {
+            DealerLocationDTO dealer = (DealerLocationDTO) item;
+            if (!busyDealers.contains(dealer.getDealerId())) {
+                dealers.add(dealer);
+            }
+        }
+        dealers.sort(Comparator.comparingDouble(dealer -> CoverageAreaIndex.distanceMeters(origin,
+                GEOMETRY_FACTORY.createPoint(new Coordinate(dealer.getLongitude(), dealer.getLatitude())))));
+        return dealers.size() > k ? dealers.subList(0, k) : dealers;
+    }
+
+    /**
+     * Reconstruye el índice con los repartidores disponibles y sus últimas posiciones.
+     * Se ejecuta periódicamente; el índice nuevo reemplaza al anterior de forma atómica.
+     */
+    @Scheduled(fixedDelayString = "${dispatch.index.refresh-interval-ms:10000}")
+    public void refresh() {
+        Map<Integer, DealerLocationDTO> idle = new HashMap<>();
+        for (DealerLocationDTO dealer : dealerRepository.findIdleDealerLocations()) {
+            DealerLocationDTO live = dealerLocationStore.getLatest(dealer.getDealerId());
+            idle.put(dealer.getDealerId(), live != null ? live : dealer);
+        }
+
+        STRtree tree = new STRtree();
+        for (DealerLocationDTO dealer : idle.values()) {
+            tree.insert(new Envelope(new Coordinate(dealer.getLongitude(), dealer.getLatitude())), dealer);
+        }
+        tree.build();
+
+        busyDealers.clear();
+        index = tree;
+    }
+
+    private STRtree index() {
+        STRtree current = index;
+        if (current == null) {
+            synchronized (this) {
+                if (index == null) {
+                    refresh();
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,125 @@
+package bdavanzadas.lab1.services;
+
+import bdavanzadas.lab1.dtos.DealerLocationDTO;
+import bdavanzadas.lab1.repositories.DealerRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Almacén en memoria de la última posición de cada repartidor.
+ * Las posiciones GPS se guardan en un mapa concurrente (sin bloqueos para las lecturas) y se
+ * escriben en la base de datos por lotes cada cierto intervalo, solo con la última posición de cada
+ * repartidor dentro del intervalo, en lugar de un UPDATE por cada posición recibida.
+ */
+@Service
+public class DealerLocationStore {
+
+    /**
+     * Repositorio de dealers, usado para escribir las posiciones en la base de datos.
+     */
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    /**
+     * Última posición conocida de cada repartidor.
+     */
+    private final Map<Integer, DealerLocationDTO> latest = new ConcurrentHashMap<>();
+
+    /**
+     * Posiciones recibidas desde la última escritura en la base de datos (una por repartidor).
+     */
+    private final Map<Integer, DealerLocationDTO> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Registra una nueva posición de un repartidor.
+     * Si ya había una posición pendiente para el repartidor, se reemplaza.
+     * @param dealerId El ID del repartidor
+     * @param longitude La longitud
+     * @param latitude La latitud
+     * @return La posición registrada
+     */
+    public DealerLocationDTO record(int dealerId, double longitude, double latitude) {
+        DealerLocationDTO location = new DealerLocationDTO(dealerId, longitude, latitude, System.currentTimeMillis());
+        latest.put(dealerId, location);
+        pending.put(dealerId, location);
+        return location;
+    }
+
+    /**
+     * Obtiene la última posición conocida de un repartidor.
+     * @param dealerId El ID del repartidor
+     * @return La posición, o null si el repartidor no ha informado posiciones
+     */
+    public DealerLocationDTO getLatest(int dealerId) {
+        return latest.get(dealerId);
+    }
+
+    /**
+     * Obtiene la última posición conocida de todos los repartidores que han informado posiciones.
+     * @return Las posiciones (vista de solo lectura)
+     */
+    public Collection<DealerLocationDTO> getAllLatest() {
+        return Collections.unmodifiableCollection(latest.values());
+    }
+
+    /**
+     * Olvida la posición de un repartidor (por ejemplo, al eliminarlo).
+     * @param dealerId El ID del repartidor
+     */
+    public void remove(int dealerId) {
+        latest.remove(dealerId);
+        pending.remove(dealerId);
+    }
+
+    /**
+     * Escribe en la base de datos las posiciones pendientes, en un solo lote.
+     * Una posición que llega mientras se escribe el lote queda pendiente para la siguiente escritura.
+     * @return La cantidad de repartidores actualizados
+     */
+    @Scheduled(fixedDelayString = "${dealers.location.flush-interval-ms:5000}")
+    public int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        List<DealerLocationDTO> batch = new ArrayList<>(pending.size());
+        for (DealerLocationDTO location : pending.values()) {
+            // Solo se quita si no fue reemplazada por una posición más nueva
+            if (pending.remove(location.getDealerId(), location)) {
+                batch.add(location);
+            }
+        }
+        // Orden por ID para que escrituras concurrentes bloqueen las filas en el mismo orden
+        batch.sort(Comparator.comparingInt(DealerLocationDTO::getDealerId));
+
+        try {
+            dealerRepository.updateLocations(batch);
+        } catch (RuntimeException e) {
+            // Se devuelven al lote pendiente, salvo que ya haya una posición más nueva
+            for (DealerLocationDTO location : batch) {
+                pending.putIfAbsent(location.getDealerId(), location);
+            }
+            throw e;
+        }
+        return batch.size();
+    }
+
+    /**
+     * Escribe las posiciones pendientes antes de cerrar la aplicación.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
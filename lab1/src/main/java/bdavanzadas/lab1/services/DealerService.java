@@ -1,6 +1,12 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
+import bdavanzadas.lab1.Security.ActorIdentityCache;
+import bdavanzadas.lab1.dtos.DealerLocationDTO;
+import bdavanzadas.lab1.dtos.DealerPerformanceDTO;
 import bdavanzadas.lab1.dtos.DealerWithDistanceDTO;
+import bdavanzadas.lab1.dtos.MapFeatureDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
 import bdavanzadas.lab1.entities.ClientEntity;
 import bdavanzadas.lab1.repositories.OrdersRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +19,7 @@ import bdavanzadas.lab1.repositories.DealerRepository;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -43,6 +50,20 @@ public class DealerService {
     @Autowired
     private UserService userService;
 
+    /**
+     * Cache de identidades de los usuarios autenticados.
+     * Se invalida al eliminar un dealer.
+     */
+    @Autowired
+    private ActorIdentityCache actorIdentityCache;
+
+    /**
+     * Última posición informada por cada dealer (en memoria).
+     * Se escribe en la base de datos por lotes.
+     */
+    @Autowired
+    private DealerLocationStore dealerLocationStore;
+
 
     /**
      * Metodo para obtener todos los dealers de la base de datos.
@@ -53,6 +74,39 @@ public class DealerService {
         return dealerRepository.findAll();
     }
 
+    /**
+     * Obtiene una página de dealers ordenada por ID (paginación por cursor).
+     * @param afterId Se devuelven los dealers con ID mayor a este valor.
+     * @param limit La cantidad máxima de dealers a devolver.
+     * @return La página con el cursor de la siguiente.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageDTO<DealerEntity> getDealersPage(int afterId, int limit) {
+        KeysetPageDTO.validate(afterId, limit);
+        return KeysetPageDTO.of(dealerRepository.findAllAfter(afterId, limit), limit, DealerEntity::getId);
+    }
+
+    /**
+     * Recorre todos los dealers sin cargarlos en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param consumer Recibe cada elemento a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllDealers(Consumer<DealerEntity> consumer) {
+        dealerRepository.streamAll(consumer);
+    }
+
+    /**
+     * Recorre las posiciones de los dealers visibles en una vista del mapa sin cargarlas en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param viewport La vista del mapa (bbox).
+     * @param consumer Recibe cada elemento a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamMapFeatures(MapViewportDTO viewport, Consumer<MapFeatureDTO> consumer) {
+        dealerRepository.streamMapFeatures(viewport, consumer);
+    }
+
     /**
      * Metodo para buscar un dealer por su id.
      * @param "id" El id del dealer a buscar.
@@ -99,6 +153,45 @@ public class DealerService {
     @Transactional
     public void deleteDealer(int id) {
         dealerRepository.delete(id);
+        actorIdentityCache.invalidateDealer(id);
+        dealerLocationStore.remove(id);
+    }
+
+
+    /**
+     * Metodo para registrar la posición GPS actual del dealer autenticado.
+     * La posición queda disponible de inmediato para las lecturas y se guarda en la base de datos
+     * en la siguiente escritura por lotes.
+     * @param "longitude" La longitud.
+     * @param "latitude" La latitud.
+     * @return La posición registrada.
+     */
+    public DealerLocationDTO recordAuthenticatedDealerLocation(double longitude, double latitude) {
+        if (!Double.isFinite(longitude) || longitude < -180 || longitude > 180
+                || !Double.isFinite(latitude) || latitude < -90 || latitude > 90) {
+            throw new IllegalArgumentException("Coordenadas inválidas: longitud debe estar entre -180 y 180 y latitud entre -90 y 90.");
+        }
+        Integer dealerId = userService.getAuthenticatedDealerId();
+        return dealerLocationStore.record(dealerId, longitude, latitude);
+    }
+
+
+    /**
+     * Metodo para obtener la última posición informada por un dealer.
+     * @param "dealerId" El id del dealer.
+     * @return La posición, o null si el dealer no ha informado posiciones desde que inició la aplicación.
+     */
+    public DealerLocationDTO getLatestLocation(int dealerId) {
+        return dealerLocationStore.getLatest(dealerId);
+    }
+
+
+    /**
+     * Metodo para obtener la última posición informada por cada dealer.
+     * @return Las posiciones de los dealers que han informado posiciones.
+     */
+    public List<DealerLocationDTO> getAllLatestLocations() {
+        return new ArrayList<>(dealerLocationStore.getAllLatest());
     }
 
 
@@ -114,8 +207,8 @@ public class DealerService {
         return dealerRepository.findDealerNameById(dealerId);
     }
 
-    // Patrón para validar WKT (ej: "POINT(-70.123 -33.456)")
-    private static final Pattern WKT_PATTERN = Pattern.compile(
+    // Patrón para validar WKT (ej: "POINT(-70.123 -33.456)"); visible en el paquete para los benchmarks
+    static final Pattern WKT_PATTERN = Pattern.compile(
             "^POINT\\(-?\\d+\\.?\\d* -?\\d+\\.?\\d*\\)$"
     );
 
@@ -134,6 +227,7 @@ public class DealerService {
      * @return Una lista de los 3 mejores repartidores.
      */
     //RF 05 TOP 3 MEJORES REPARTIDORES
+    @Transactional(readOnly = true)
     public List<Map<String, Object>> getTopPerformingDealers() {
         return dealerRepository.getTopPerformingDealers();
     }
@@ -144,6 +238,7 @@ public class DealerService {
      * @return Una lista de dealers con su tiempo promedio de entrega.
      */
     //RF 04: TIEMPO PROMEDIO DE ESPERA
+    @Transactional(readOnly = true)
     public List<Map<String, Object>> getAverageDeliveryTimeByDealer() {
         return dealerRepository.getAverageDeliveryTimeByDealer();
     }
@@ -155,9 +250,9 @@ public class DealerService {
      */
     @Transactional(readOnly = true)
     public Double getAverageDeliveryTimeByAuthenticatedDealer() {
-        // Obtener el ID del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-        return dealerRepository.getAverageDeliveryTimeByAuthenticatedDealer(userId);
+        // Obtener el ID del dealer autenticado
+        Integer dealerId = userService.getAuthenticatedDealerId();
+        return dealerRepository.getAverageDeliveryTime(dealerId);
     }
 
     /**
@@ -166,9 +261,9 @@ public class DealerService {
      */
     @Transactional(readOnly = true)
     public Integer getDeliveryCountByAuthenticatedDealer() {
-        // Obtener el ID del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-        return dealerRepository.getDeliveryCountByAuthenticatedDealer(userId);
+        // Obtener el ID del dealer autenticado
+        Integer dealerId = userService.getAuthenticatedDealerId();
+        return dealerRepository.getDeliveryCount(dealerId);
     }
 
     /**
@@ -190,15 +285,15 @@ public class DealerService {
             data.put("id", dealer.getId());
             data.put("name", dealer.getName());
 
-            // Manejo de valores nulos para las estadísticas
-            Double avgWaitTime = dealerRepository.getAverageDeliveryTime(dealer.getId());
+            // Estadísticas desde el ranking (una sola búsqueda por llave); manejo de valores nulos
+            DealerPerformanceDTO performance = dealerRepository.findPerformanceByDealerId(dealer.getId());
+            Double avgWaitTime = performance != null ? performance.getAvgDeliveryHours() : null;
             data.put("avgWaitTime", avgWaitTime != null ? avgWaitTime : 0.0);
 
-            Double rating = dealerRepository.getAverageRating(dealer.getId());
+            Double rating = performance != null ? performance.getAvgRating() : null;
             data.put("rating", rating != null ? rating : "Sin calificaciones");
 
-            Integer deliveryCount = dealerRepository.getDeliveryCount(dealer.getId());
-            data.put("deliveryCount", deliveryCount != null ? deliveryCount : 0);
+            data.put("deliveryCount", performance != null ? performance.getDeliveries() : 0);
 
             return data;
 
@@ -214,12 +309,9 @@ public class DealerService {
      */
     @Transactional(readOnly = true)
     public double getTotalDistanceByAuthenticatedDealer() {
-        // Obtener el ID del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-        if (userId == null) {
-            throw new IllegalArgumentException("Usuario no autenticado");
-        }
-        return dealerRepository.getTotalDistanceByAuthenticatedDealer(userId);
+        // Obtener el ID del dealer autenticado
+        Integer dealerId = userService.getAuthenticatedDealerId();
+        return dealerRepository.getTotalDistanceByDealerId(dealerId);
     }
 
 
@@ -1,5 +1,6 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
@@ -8,6 +9,7 @@ import bdavanzadas.lab1.entities.EmergencyReportEntity;
 import bdavanzadas.lab1.repositories.EmergencyReportRepository;
 import org.springframework.jdbc.core.JdbcTemplate;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * La clase EmergencyReportService maneja la lógica de negocio para reportes de emergencia.
@@ -35,6 +37,28 @@ public class EmergencyReportService {
         return emergencyReportRepository.findAll();
     }
 
+    /**
+     * Obtiene una página de reportes de emergencia ordenada por ID (paginación por cursor).
+     * @param afterId Se devuelven los reportes de emergencia con ID mayor a este valor.
+     * @param limit La cantidad máxima de reportes de emergencia a devolver.
+     * @return La página con el cursor de la siguiente.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageDTO<EmergencyReportEntity> getEmergencyReportsPage(int afterId, int limit) {
+        KeysetPageDTO.validate(afterId, limit);
+        return KeysetPageDTO.of(emergencyReportRepository.findAllAfter(afterId, limit), limit, EmergencyReportEntity::getId);
+    }
+
+    /**
+     * Recorre todos los reportes de emergencia sin cargarlos en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param consumer Recibe cada elemento a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllEmergencyReports(Consumer<EmergencyReportEntity> consumer) {
+        emergencyReportRepository.streamAll(consumer);
+    }
+
     /**
      * Registra un nuevo reporte de emergencia
      * @param emergencyReport Datos del reporte
@@ -109,7 +133,7 @@ public class EmergencyReportService {
      * @param wkt Cadena en formato WKT
      * @return true si es válido, false en caso contrario
      */
-    private boolean isValidWktPoint(String wkt) {
+    static boolean isValidWktPoint(String wkt) {
         if (wkt == null || wkt.isEmpty()) {
             return false;
         }
@@ -115,20 +115,17 @@ public class OrderDetailsService {
 
 
     /**
-     * Metodo para crear detalles de órdenes para el último pedido insertado.
+     * Metodo para crear detalles de órdenes para un pedido.
+     * @param "orderId" El id del pedido.
      * @param "paymentMethod" El método de pago utilizado.
      * @param "totalProducts" El total de productos en la orden.
      * @param "price" El precio total de la orden.
      * @return void
      */
     @Transactional
-    public void createOrderDetailsForLastOrder(String paymentMethod, int totalProducts, double price) {
-        // Obtener el ID del último pedido insertado
-        int lastOrderId = ordersService.getLastInsertedOrderId();
-
-        // Crear los detalles de la orden
+    public void createOrderDetails(int orderId, String paymentMethod, int totalProducts, double price) {
         OrderDetailsEntity orderDetails = new OrderDetailsEntity();
-        orderDetails.setOrderId(lastOrderId);
+        orderDetails.setOrderId(orderId);
         orderDetails.setPaymentMethod(paymentMethod);
         orderDetails.setTotalProducts(totalProducts);
         orderDetails.setPrice(price);
@@ -136,4 +133,21 @@ public class OrderDetailsService {
         // Guardar los detalles en la base de datos
         orderDetailsRepository.save(orderDetails);
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Metodo para crear detalles de órdenes para el último pedido del cliente autenticado.
+     * @param "paymentMethod" El método de pago utilizado.
+     * @param "totalProducts" El total de productos en la orden.
+     * @param "price" El precio total de la orden.
+     * @return void
+     * @deprecated Usar el ID que devuelve la creación del pedido (o pasar paymentMethod al crearlo).
+     */
+    @Deprecated
+    @Transactional
+    public void createOrderDetailsForLastOrder(String paymentMethod, int totalProducts, double price) {
+        // Último pedido del cliente autenticado (no el último global, que podría ser de otro cliente)
+        int lastOrderId = ordersService.getLastOrderIdOfAuthenticatedClient();
+        createOrderDetails(lastOrderId, paymentMethod, totalProducts, price);
+    }
+}
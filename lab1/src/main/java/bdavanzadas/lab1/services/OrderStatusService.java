@@ -0,0 +1,134 @@
+package bdavanzadas.lab1.services;
+
+import bdavanzadas.lab1.dtos.OrderStatusChangeDTO;
+import bdavanzadas.lab1.repositories.DealerBatchRepository;
+import bdavanzadas.lab1.repositories.OrdersRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * La clase OrderStatusService aplica los cambios de estado de los pedidos.
+ *
+ * Los cambios permitidos están en una tabla explícita (estado nuevo -> estados de origen) y cada cambio es
+ * una sola sentencia UPDATE ... WHERE id = ? AND status = ANY(?) [AND dealer_id = ?] [AND version = ?] RETURNING,
+ * sin leer el pedido antes. El pedido solo se lee si el cambio no se aplicó, para informar la causa.
+ * Cada cambio de estado aumenta la versión del pedido (trigger trg_bump_order_version), de modo que el cliente
+ * puede enviar la versión que vio y el cambio se rechaza si otro lo modificó entretanto.
+ *
+ * La asignación a un repartidor (EN PROCESO) no pasa por aquí: la hacen las sentencias condicionales de
+ * OrdersRepository, DealerDispatchService y DealerBatchService, que también aumentan la versión.
+ */
+@Service
+public class OrderStatusService {
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String URGENTE = "URGENTE";
+    public static final String EN_PROCESO = "EN PROCESO";
+    public static final String ENTREGADO = "ENTREGADO";
+    public static final String FALLIDA = "FALLIDA";
+
+    /**
+     * Cambios permitidos: para cada estado nuevo, los estados desde los que se puede llegar a él.
+     * ENTREGADO y FALLIDA son finales.
+     */
+    static final Map<String, Set<String>> ALLOWED_FROM = Map.of(
+            URGENTE, Set.of(PENDIENTE),
+            ENTREGADO, Set.of(PENDIENTE, URGENTE, EN_PROCESO),
+            FALLIDA, Set.of(PENDIENTE, URGENTE, EN_PROCESO)
+    );
+
+    /**
+     * Cambios permitidos cuando los hace un repartidor: solo puede terminar el pedido que tiene EN PROCESO.
+     * Los pedidos de un lote que esperan su turno siguen pendientes y no se pueden terminar todavía.
+     */
+    static final Map<String, Set<String>> DEALER_ALLOWED_FROM = Map.of(
+            ENTREGADO, Set.of(EN_PROCESO),
+            FALLIDA, Set.of(EN_PROCESO)
+    );
+
+    @Autowired
+    private OrdersRepository ordersRepository;
+
+    /**
+     * Repositorio de lotes de reparto, para iniciar el siguiente pedido del lote al terminar uno.
+     */
+    @Autowired
+    private DealerBatchRepository dealerBatchRepository;
+
+    /**
+     * Cambia el estado de un pedido.
+     * Repetir un cambio ya aplicado (por ejemplo, un segundo toque de "entregado") no vuelve a aplicarlo
+     * y devuelve el pedido tal como quedó.
+     * @param orderId El ID del pedido
+     * @param newStatus El nuevo estado (URGENTE, ENTREGADO o FALLIDA; un repartidor solo ENTREGADO o FALLIDA)
+     * @param dealerId El repartidor que debe tener el pedido EN PROCESO, o null si el cambio no lo hace un repartidor
+     * @param expectedVersion La versión del pedido que vio el cliente, o null para no exigirla
+     * @param deliveryDate La fecha de entrega (para ENTREGADO; null = ahora)
+     * @return El pedido después del cambio, con su nueva versión
+     * @throws IllegalArgumentException Si el estado no es válido o el pedido no existe
+     * @throws SecurityException Si el pedido no pertenece al repartidor
+     * @throws IllegalStateException Si el cambio no está permitido desde el estado actual
+     * @throws OptimisticLockingFailureException Si la versión del pedido no es la esperada
+     */
+    @Transactional
+    public OrderStatusChangeDTO transition(int orderId, String newStatus, Integer dealerId, Integer expectedVersion, Date deliveryDate) {
+        String target = normalize(newStatus);
+        Set<String> from = (dealerId != null ? DEALER_ALLOWED_FROM : ALLOWED_FROM).get(target);
+        if (from == null) {
+            throw new IllegalArgumentException("Estado no válido: " + newStatus);
+        }
+
+        boolean delivered = ENTREGADO.equals(target);
+        boolean finalStatus = delivered || FALLIDA.equals(target);
+        // Solo la entrega escribe la fecha de entrega; FALLIDA la deja como estaba
+        Date date = delivered ? (deliveryDate != null ? deliveryDate : new Date()) : null;
+        OrderStatusChangeDTO changed = ordersRepository.transitionStatus(orderId, target, from.toArray(new String[0]),
+                dealerId, expectedVersion, date, delivered);
+        if (changed != null) {
+            if (finalStatus) {
+                dealerBatchRepository.startNextStop(orderId);
+            }
+            return changed;
+        }
+        return rejected(orderId, target, from, dealerId, expectedVersion);
+    }
+
+    /**
+     * Determina por qué no se aplicó un cambio de estado.
+     * @return El pedido, si el cambio ya estaba aplicado
+     */
+    private OrderStatusChangeDTO rejected(int orderId, String target, Set<String> from, Integer dealerId, Integer expectedVersion) {
+        OrderStatusChangeDTO current = ordersRepository.findStatusById(orderId);
+        if (current == null) {
+            throw new IllegalArgumentException("El pedido con ID " + orderId + " no existe");
+        }
+        if (dealerId != null && !dealerId.equals(current.getDealerId())) {
+            throw new SecurityException("El pedido con ID " + orderId + " no pertenece al repartidor");
+        }
+        if (target.equals(current.getStatus())) {
+            return current;
+        }
+        if (!from.contains(current.getStatus())) {
+            throw new IllegalStateException("El pedido con ID " + orderId + " no puede pasar de "
+                    + current.getStatus() + " a " + target);
+        }
+        // El estado permite el cambio: la versión no coincidía o el pedido cambió entre ambas sentencias
+        throw new OptimisticLockingFailureException("El pedido con ID " + orderId + " fue modificado (versión actual "
+                + current.getVersion() + (expectedVersion != null ? ", esperada " + expectedVersion : "") + ")");
+    }
+
+    private static String normalize(String status) {
+        if (status == null || status.isBlank()) {
+            throw new IllegalArgumentException("El estado no puede estar vacío");
+        }
+        return status.trim().toUpperCase(Locale.ROOT);
+    }
+}
@@ -1,10 +1,24 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.Config.CacheConfig;
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
+import bdavanzadas.lab1.dtos.MapFeatureDTO;
+import bdavanzadas.lab1.dtos.MapViewportDTO;
+import bdavanzadas.lab1.dtos.OrderBatchItemDTO;
 import bdavanzadas.lab1.dtos.OrderNameAddressDTO;
+import bdavanzadas.lab1.dtos.OrderRollupDTO;
+import bdavanzadas.lab1.dtos.OrderStatusChangeDTO;
 import bdavanzadas.lab1.dtos.TopSpenderDTO;
 
+import bdavanzadas.lab1.entities.GeometryValue;
 import bdavanzadas.lab1.entities.ProductEntity;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -14,9 +28,13 @@ import bdavanzadas.lab1.dtos.OrderTotalProductsDTO;
 
 
 
+import java.time.LocalDate;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -52,6 +70,18 @@ public class OrdersService {
     @Autowired
     private UserService userService;
 
+    /**
+     * Niveles de detalle de las rutas estimadas, para los mapas.
+     */
+    @Autowired
+    private RouteLodService routeLodService;
+
+    /**
+     * Cambios de estado de los pedidos (tabla de cambios permitidos y control de concurrencia optimista).
+     */
+    @Autowired
+    private OrderStatusService orderStatusService;
+
 
 
 
@@ -64,6 +94,73 @@ public class OrdersService {
         return ordersRepository.findAll();
     }
 
+    /**
+     * Obtiene una página de pedidos ordenada por ID (paginación por cursor).
+     * @param afterId Se devuelven los pedidos con ID mayor a este valor.
+     * @param limit La cantidad máxima de pedidos a devolver.
+     * @return La página con el cursor de la siguiente.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageDTO<OrdersEntity> getOrdersPage(int afterId, int limit) {
+        KeysetPageDTO.validate(afterId, limit);
+        return KeysetPageDTO.of(ordersRepository.findAllAfter(afterId, limit), limit, OrdersEntity::getId);
+    }
+
+    /**
+     * Recorre todos los pedidos sin cargarlos en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param consumer Recibe cada elemento a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllOrders(Consumer<OrdersEntity> consumer) {
+        ordersRepository.streamAll(consumer);
+    }
+
+    /**
+     * Recorre las rutas de los pedidos visibles en una vista del mapa sin cargarlas en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param viewport La vista del mapa (bbox y zoom).
+     * @param status Estado de los pedidos a incluir, o null para todos.
+     * @param consumer Recibe cada ruta a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamRouteFeatures(MapViewportDTO viewport, String status, Consumer<MapFeatureDTO> consumer) {
+        if (viewport.getToleranceDegrees() <= 0) {
+            ordersRepository.streamRouteFeatures(viewport, status, consumer);
+            return;
+        }
+        // Cada ruta se entrega en el nivel de detalle del zoom, precalculado y guardado por RouteLodService
+        ordersRepository.streamRouteFeatures(viewport, status, feature -> {
+            feature.setGeometry(routeLodService.forTolerance(feature.getId(), feature.getGeometry(), viewport.getToleranceDegrees()));
+            consumer.accept(feature);
+        });
+    }
+
+    /**
+     * Obtiene la ruta estimada de un pedido en el nivel de detalle de un zoom o de una tolerancia.
+     * @param orderId El ID del pedido.
+     * @param zoom El nivel de zoom del mapa (opcional).
+     * @param toleranceDegrees El error máximo aceptado en grados (opcional, se usa si no hay zoom).
+     * @return La ruta, o null si el pedido no tiene ruta.
+     */
+    @Transactional(readOnly = true)
+    public GeometryValue getOrderRoute(int orderId, Integer zoom, Double toleranceDegrees) {
+        if (zoom != null && (zoom < 0 || zoom > MapViewportDTO.MAX_ZOOM)) {
+            throw new IllegalArgumentException("El zoom debe estar entre 0 y " + MapViewportDTO.MAX_ZOOM);
+        }
+        if (toleranceDegrees != null && (toleranceDegrees < 0 || toleranceDegrees.isNaN())) {
+            throw new IllegalArgumentException("La tolerancia debe ser un número de grados no negativo");
+        }
+        GeometryValue route = ordersRepository.findById(orderId).getEstimatedRoute();
+        if (zoom != null) {
+            return routeLodService.forZoom(orderId, route, zoom);
+        }
+        if (toleranceDegrees != null) {
+            return routeLodService.forTolerance(orderId, route, toleranceDegrees);
+        }
+        return route;
+    }
+
 
     /**
      * Metodo para guardar un pedido en la base de datos.
@@ -78,6 +175,7 @@ public class OrdersService {
 
     /**
      * Metodo para actualizar un pedido en la base de datos.
+     * El estado y el dealer del pedido no se modifican (ver OrderStatusService y assignOrderToDealer).
      * @param "order" El pedido a actualizar.
      * @return void
      */
@@ -121,15 +219,8 @@ public class OrdersService {
 
     @Transactional(readOnly = true)
     public List<OrdersEntity> getOrdersByClientId() {
-        // Obtener el userId del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-
-        // Obtener el clientId asociado al userId
-        String sql = "SELECT id FROM clients WHERE user_id = ?";
-        Integer clientId = jdbcTemplate.queryForObject(sql, Integer.class, userId);
-        if (clientId == null) {
-            throw new IllegalArgumentException("No se encontró un cliente asociado al usuario con ID " + userId);
-        }
+        // Obtener el clientId del usuario autenticado
+        Integer clientId = userService.getAuthenticatedClientId();
 
         // Obtener los pedidos del cliente
         return ordersRepository.findByClientId(clientId);
@@ -172,58 +263,185 @@ public class OrdersService {
         return ordersRepository.getTopSpender();
     }
 
+    /**
+     * Ámbitos de los agregados de pedidos.
+     */
+    private static final Set<String> ROLLUP_SCOPES = Set.of("DEALER", "COMPANY", "CLIENT");
+
+    /**
+     * Método para obtener los agregados de pedidos (cantidad por estado, ventas y distancia recorrida)
+     * de un repartidor, empresa o cliente, por día o por mes.
+     * @param "scope" DEALER, COMPANY o CLIENT.
+     * @param "scopeId" El id del repartidor, empresa o cliente.
+     * @param "from" Primer día del rango (inclusive).
+     * @param "to" Último día del rango (inclusive).
+     * @param "granularity" "day" o "month".
+     * @return Los agregados por período y estado.
+     * @throws IllegalArgumentException Si algún parámetro no es válido.
+     */
+    @Transactional(readOnly = true)
+    public List<OrderRollupDTO> getOrderRollups(String scope, int scopeId, LocalDate from, LocalDate to, String granularity) {
+        String normalizedScope = scope == null ? null : scope.toUpperCase();
+        if (!ROLLUP_SCOPES.contains(normalizedScope)) {
+            throw new IllegalArgumentException("El ámbito debe ser DEALER, COMPANY o CLIENT");
+        }
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new IllegalArgumentException("El rango de fechas no es válido");
+        }
+        if (!"day".equalsIgnoreCase(granularity) && !"month".equalsIgnoreCase(granularity)) {
+            throw new IllegalArgumentException("La granularidad debe ser day o month");
+        }
+        return ordersRepository.findRollups(normalizedScope, scopeId, from, to, "month".equalsIgnoreCase(granularity));
+    }
+
+
+    /**
+     * Método para crear una orden con sus productos asociados
+     * @param "order" La entidad de la orden a crear
+     * @param "productIds" Lista de IDs de productos a asociar a la orden
+     * @param "routePoints" Puntos de la ruta estimada (opcional)
+     * @return El ID de la orden creada
+     *
+     * Equivale a createOrderWithProducts(order, productIds, routePoints, null), sin detalle de la orden.
+     */
+    @Transactional
+    // El stock de los productos cambia: se invalidan las lecturas del catálogo que lo incluyen
+    @CacheEvict(cacheNames = {CacheConfig.PRODUCTS, CacheConfig.PRODUCTS_BY_STOCK, CacheConfig.PRODUCTS_BY_CATEGORY}, allEntries = true)
+    public Integer createOrderWithProducts(OrdersEntity order, List<Integer> productIds,
+                                           List<Map<String, Double>> routePoints) {
+        return createOrderWithProducts(order, productIds, routePoints, null);
+    }
+
 
     /**
      * Método para crear una orden con sus productos asociados
      * @param "order" La entidad de la orden a crear
      * @param "productIds" Lista de IDs de productos a asociar a la orden
+     * @param "routePoints" Puntos de la ruta estimada (opcional)
+     * @param "paymentMethod" Método de pago para el detalle de la orden (opcional)
+     * @return El ID de la orden creada
      *
-     * Este método utiliza el procedimiento almacenado 'register_order_with_products' para:
-     * 1. Registrar la orden en la base de datos
-     * 2. Asociar todos los productos de la lista a la orden creada
+     * Este método utiliza la función almacenada 'create_order_with_products', que en una sola llamada:
+     * 1. Registra la orden en la base de datos y devuelve su ID
+     * 2. Asocia todos los productos de la lista a la orden creada y descuenta el stock
+     * 3. Guarda la ruta estimada (los puntos, el WKT de la orden o la ruta recta empresa-cliente)
+     * 4. Si se indica el método de pago, guarda el detalle de la orden
      *
-     * El procedimiento recibe como parámetros:
-     * - Fecha de la orden
-     * - Estado de la orden
-     * - ID del cliente
-     * - Array de IDs de productos
-     * - ID del dealer (opcional)
+     * Como el ID lo devuelve la base de datos, no es necesario buscar el último pedido insertado.
      */
     @Transactional
-    public void createOrderWithProducts(OrdersEntity order, List<Integer> productIds,
-                                        List<Map<String, Double>> routePoints) {
+    // El stock de los productos cambia: se invalidan las lecturas del catálogo que lo incluyen
+    @CacheEvict(cacheNames = {CacheConfig.PRODUCTS, CacheConfig.PRODUCTS_BY_STOCK, CacheConfig.PRODUCTS_BY_CATEGORY}, allEntries = true)
+    public Integer createOrderWithProducts(OrdersEntity order, List<Integer> productIds,
+                                           List<Map<String, Double>> routePoints, String paymentMethod) {
         // 1. Obtener clientId del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-        String sql = "SELECT id FROM clients WHERE user_id = ?";
-        Integer clientId = jdbcTemplate.queryForObject(sql, Integer.class, userId);
+        Integer clientId = userService.getAuthenticatedClientId();
+        order.setClientId(clientId);
 
-        if (clientId == null) {
-            throw new IllegalArgumentException("No se encontró cliente asociado al usuario ID: " + userId);
+        // 2. Ruta estimada: los puntos tienen prioridad sobre el WKT de la orden
+        String routeWkt = null;
+        if (routePoints != null && !routePoints.isEmpty()) {
+            routeWkt = toLineStringWkt(routePoints);
+        } else if (order.getEstimatedRoute() != null) {
+            requireLineString(order.getEstimatedRoute());
+            // El WKT llega ya validado desde el JSON y se entrega tal cual a la función almacenada
+            routeWkt = order.getEstimatedRoute().toWkt();
         }
-        order.setClientId(clientId);
 
-        // 2. Registrar el pedido con los productos (procedimiento almacenado)
-        sql = "CALL register_order_with_products(?, ?, ?, ?, ?)";
-        jdbcTemplate.update(sql,
+        // 3. Registrar el pedido con los productos, la ruta y el detalle (función almacenada)
+        String sql = "SELECT create_order_with_products(?, ?, ?, ?, ?, ?, ?)";
+        return jdbcTemplate.queryForObject(sql, Integer.class,
                 order.getOrderDate(),
                 order.getStatus(),
                 order.getClientId(),
                 productIds.toArray(new Integer[0]),
-                order.getDealerId()
+                order.getDealerId(),
+                paymentMethod,
+                routeWkt
         );
+    }
 
-        // 3. Obtener el ID del pedido recién creado
-        Integer orderId = getLastInsertedOrderId();
 
-        // 4. Si se proporcionaron puntos para la ruta, calcular y guardar
-        if (routePoints != null && !routePoints.isEmpty()) {
-            updateOrderRouteWithPoints(orderId, routePoints);
+    /**
+     * Convierte los puntos de una ruta en un LINESTRING en formato WKT.
+     * @param "points" Los puntos de la ruta, con las llaves "longitude" y "latitude".
+     * @return La ruta en formato WKT.
+     */
+    private static String toLineStringWkt(List<Map<String, Double>> points) {
+        if (points.size() < 2) {
+            throw new IllegalArgumentException("Se necesitan al menos 2 puntos para crear una ruta");
+        }
+        StringBuilder wkt = new StringBuilder("LINESTRING(");
+        for (int i = 0; i < points.size(); i++) {
+            Map<String, Double> point = points.get(i);
+            if (point.get("longitude") == null || point.get("latitude") == null) {
+                throw new IllegalArgumentException("Cada punto debe tener 'longitude' y 'latitude'");
+            }
+            if (i > 0) {
+                wkt.append(',');
+            }
+            wkt.append(point.get("longitude")).append(' ').append(point.get("latitude"));
+        }
+        return wkt.append(')').toString();
+    }
+
+
+    /**
+     * Cantidad máxima de pedidos que se aceptan en una carga masiva.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+
+    /**
+     * Método para registrar varios pedidos con sus productos en una sola transacción.
+     * Cada pedido se registra igual que con createOrderWithProducts (precio total, ruta estimada,
+     * descuento de stock y métricas de las empresas), pero todo el lote usa un número fijo de sentencias.
+     * Si un pedido no es válido no se registra ninguno.
+     *
+     * Un administrador debe indicar el cliente de cada pedido; para un cliente se usa siempre su propio ID.
+     *
+     * @param "orders" Los pedidos a registrar.
+     * @return Los IDs de los pedidos creados, en el mismo orden en que se recibieron.
+     * @throws IllegalArgumentException Si el lote está vacío, es demasiado grande o algún pedido no es válido.
+     */
+    @Transactional
+    // El stock de los productos cambia: se invalidan las lecturas del catálogo que lo incluyen
+    @CacheEvict(cacheNames = {CacheConfig.PRODUCTS, CacheConfig.PRODUCTS_BY_STOCK, CacheConfig.PRODUCTS_BY_CATEGORY}, allEntries = true)
+    public List<Integer> createOrdersBatch(List<OrderBatchItemDTO> orders) {
+        if (orders == null || orders.isEmpty()) {
+            throw new IllegalArgumentException("El lote debe contener al menos un pedido");
         }
+        if (orders.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("El lote no puede contener más de " + MAX_BATCH_SIZE + " pedidos");
+        }
+
+        boolean isAdmin = "ADMIN".equals(userService.getAuthenticatedRole());
+        Integer authenticatedClientId = isAdmin ? null : userService.getAuthenticatedClientId();
+        Date now = new Date();
 
-        // Opcional: Si el pedido viene con WKT directamente
-        if (order.getEstimatedRoute() != null && !order.getEstimatedRoute().isEmpty()) {
-            updateOrderRouteWithWKT(orderId, order.getEstimatedRoute());
+        for (int i = 0; i < orders.size(); i++) {
+            OrderBatchItemDTO order = orders.get(i);
+            if (order == null || order.getProductIds() == null || order.getProductIds().isEmpty()) {
+                throw new IllegalArgumentException("El pedido " + i + " debe contener al menos un producto");
+            }
+            Set<Integer> distinct = new HashSet<>(order.getProductIds());
+            if (distinct.contains(null) || distinct.size() != order.getProductIds().size()) {
+                throw new IllegalArgumentException("El pedido " + i + " contiene productos repetidos o nulos");
+            }
+
+            if (isAdmin) {
+                if (order.getClientId() == null) {
+                    throw new IllegalArgumentException("El pedido " + i + " debe indicar el ID del cliente");
+                }
+            } else {
+                order.setClientId(authenticatedClientId);
+            }
+            if (order.getOrderDate() == null) {
+                order.setOrderDate(now);
+            }
         }
+
+        return ordersRepository.saveBatch(orders);
     }
 
 
@@ -232,42 +450,58 @@ public class OrdersService {
      * @return El ID del último pedido insertado
      *
      * Este método utiliza una consulta SQL para obtener el ID del último pedido insertado en la tabla de pedidos.
+     * @deprecated Con solicitudes concurrentes puede devolver el pedido de otro cliente;
+     * usar el ID que devuelve createOrderWithProducts.
      */
+    @Deprecated
     @Transactional(readOnly = true)
     public Integer getLastInsertedOrderId() {
         String sql = "SELECT id FROM orders ORDER BY id DESC LIMIT 1";
         return jdbcTemplate.queryForObject(sql, Integer.class);
     }
 
+    /**
+     * Método para obtener el ID del último pedido del cliente autenticado.
+     * @return El ID del último pedido del cliente.
+     * @throws IllegalArgumentException Si el cliente no tiene pedidos.
+     */
+    @Transactional(readOnly = true)
+    public Integer getLastOrderIdOfAuthenticatedClient() {
+        Integer clientId = userService.getAuthenticatedClientId();
+        Integer orderId = ordersRepository.findLastOrderIdByClientId(clientId);
+        if (orderId == null) {
+            throw new IllegalArgumentException("El cliente con ID " + clientId + " no tiene pedidos");
+        }
+        return orderId;
+    }
+
     /**
      * Método para marcar un pedido como entregado
-     * Este metodo utiliza un procedimiento almacenado para cambiar el estado de un pedido a "ENTREGADO"
-     * y registrar la fecha de entrega.
+     * Este metodo cambia el estado de un pedido a "ENTREGADO" y registra la fecha de entrega
+     * en una sola sentencia condicional (ver OrderStatusService).
      *
      * @param "orderId" El ID del pedido a marcar como entregado
      * @param "deliveryDate" La fecha de entrega del pedido
-     * @return void
+     * @return El pedido después del cambio
      */
     @Transactional
-    public void markAsDelivered(int orderId, Date deliveryDate) {
-        String sql = "CALL change_order_status(?, ?, ?)";
-        jdbcTemplate.update(sql, orderId, "ENTREGADO", deliveryDate);
+    public OrderStatusChangeDTO markAsDelivered(int orderId, Date deliveryDate) {
+        return orderStatusService.transition(orderId, OrderStatusService.ENTREGADO, null, null, deliveryDate);
     }
 
 
 
     /**
      * Método para marcar un pedido como fallido
-     * Este metodo utiliza un procedimiento almacenado para cambiar el estado de un pedido a "FALLIDA"
+     * Este metodo cambia el estado de un pedido a "FALLIDA" en una sola sentencia condicional
      * y no requiere una fecha de entrega.
      *
      * @param "orderId" El ID del pedido a marcar como fallido
-     * @return void
+     * @return El pedido después del cambio
      */
     @Transactional
-    public void markAsFailed(int orderId) {
-        String sql = "CALL change_order_status(?, ?, ?)";
-        jdbcTemplate.update(sql, orderId, "FALLIDA", null); // no se requiere fecha
+    public OrderStatusChangeDTO markAsFailed(int orderId) {
+        return orderStatusService.transition(orderId, OrderStatusService.FALLIDA, null, null, null);
     }
 
 
@@ -304,26 +538,17 @@ public class OrdersService {
 
     /**
      * Método para actualizar el estado de un pedido por ID de dealer
+     * El cambio se aplica solo si el pedido pertenece al dealer, en una sola sentencia condicional
+     * (ver OrderStatusService); ENTREGADO registra la fecha de entrega y FALLIDA la borra.
      * @param "orderId" El ID del pedido a actualizar
      * @param "dealerId" El ID del dealer asociado al pedido
      * @param "newStatus" El nuevo estado del pedido
-     * @return void
+     * @param "expectedVersion" La versión del pedido que vio el dealer, o null para no exigirla
+     * @return El pedido después del cambio
      */
     @Transactional
-    public void updateOrderStatusByDealerId(int orderId, int dealerId, String newStatus) {
-        OrdersEntity order = ordersRepository.findById(orderId);
-        if (order == null || !dealerIdEquals(order.getDealerId(), dealerId)) {
-            throw new IllegalArgumentException("No autorizado o no existe la orden.");
-        }
-        if ("ENTREGADO".equalsIgnoreCase(newStatus)) {
-            // Actualiza status y fecha de entrega directamente vía repositorio (sin procedimiento)
-            ordersRepository.updateOrderStatusAndDeliveryDate(orderId, dealerId, newStatus, new Date());
-        } else if ("FALLIDA".equalsIgnoreCase(newStatus)) {
-            // Borra la fecha de entrega
-            ordersRepository.updateOrderStatusAndDeliveryDate(orderId, dealerId, newStatus, null);
-        } else {
-            ordersRepository.updateOrderStatusByDealerId(orderId, dealerId, newStatus);
-        }
+    public OrderStatusChangeDTO updateOrderStatusByDealerId(int orderId, int dealerId, String newStatus, Integer expectedVersion) {
+        return orderStatusService.transition(orderId, newStatus, dealerId, expectedVersion, new Date());
     }
 
 
@@ -344,9 +569,9 @@ public class OrdersService {
      */
     @Transactional(readOnly = true)
     public String getAddressOfLoggedClient() {
-        Long userId = userService.getAuthenticatedUserId();
-        String sql = "SELECT address FROM clients WHERE user_id = ?";
-        return jdbcTemplate.queryForObject(sql, String.class, userId);
+        Integer clientId = userService.getAuthenticatedClientId();
+        String sql = "SELECT address FROM clients WHERE id = ?";
+        return jdbcTemplate.queryForObject(sql, String.class, clientId);
     }
 
 
@@ -355,12 +580,11 @@ public class OrdersService {
      * @param "orderId" El ID del pedido a marcar como urgente
      * @return void
      *
-     * Este método utiliza una consulta SQL para actualizar el estado de un pedido a "URGENTE".
+     * Este método cambia el estado de un pedido PENDIENTE a "URGENTE" (ver OrderStatusService).
      */
     @Transactional
-    public void markAsUrgent(int orderId) {
-        String sql = "UPDATE orders SET status = 'URGENTE' WHERE id = ?";
-        jdbcTemplate.update(sql, orderId);
+    public OrderStatusChangeDTO markAsUrgent(int orderId) {
+        return orderStatusService.transition(orderId, OrderStatusService.URGENTE, null, null, null);
     }
 
 
@@ -373,15 +597,8 @@ public class OrdersService {
      */
     @Transactional(readOnly = true)
     public List<OrdersEntity> getOrdersByDealerId() {
-        // Obtener el userId del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-
-        // Obtener el dealerId asociado al userId
-        String sql = "SELECT id FROM dealers WHERE user_id = ?";
-        Integer dealerId = jdbcTemplate.queryForObject(sql, Integer.class, userId);
-        if (dealerId == null) {
-            throw new IllegalArgumentException("No se encontró un dealer asociado al usuario con ID " + userId);
-        }
+        // Obtener el dealerId del usuario autenticado
+        Integer dealerId = userService.getAuthenticatedDealerId();
 
         // Obtener los pedidos del dealer
         return ordersRepository.findByDealerId(dealerId);
@@ -397,15 +614,8 @@ public class OrdersService {
      */
     @Transactional(readOnly = true)
     public OrdersEntity getActiveOrderByDealer() {
-        // Obtener el userId del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-
-        // Obtener el dealerId asociado al userId
-        String sql = "SELECT id FROM dealers WHERE user_id = ?";
-        Integer dealerId = jdbcTemplate.queryForObject(sql, Integer.class, userId);
-        if (dealerId == null) {
-            throw new IllegalArgumentException("No se encontró un dealer asociado al usuario con ID " + userId);
-        }
+        // Obtener el dealerId del usuario autenticado
+        Integer dealerId = userService.getAuthenticatedDealerId();
 
         // Obtener la orden activa del dealer
         return ordersRepository.findActiveOrderByDealerId(dealerId);
@@ -418,29 +628,36 @@ public class OrdersService {
      * @return void
      *
      * Este método obtiene el ID del usuario autenticado y luego busca el ID del dealer asociado a ese usuario.
-     * Luego, verifica si el dealer ya tiene una orden activa y, si no es así, asigna la orden al dealer.
+     * La orden se asigna con una sola sentencia condicional, que solo asigna órdenes pendientes sin dealer
+     * y no asigna si el dealer ya tiene una orden activa.
+     * @throws EmptyResultDataAccessException Si la orden no existe
+     * @throws IllegalStateException Si la orden ya fue asignada o finalizada, o si el dealer ya tiene una orden activa
      */
     @Transactional
     public void assignOrderToDealer(int orderId) {
         // Obtener dealerId del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-        Integer dealerId = jdbcTemplate.queryForObject(
-                "SELECT id FROM dealers WHERE user_id = ?",
-                Integer.class, userId
-        );
-
-        if (dealerId == null) {
-            throw new IllegalArgumentException("No se encontró un dealer asociado al usuario");
+        Integer dealerId = userService.getAuthenticatedDealerId();
+
+        // Asignar orden al dealer solo si no tiene otra orden activa
+        boolean assigned;
+        try {
+            assigned = ordersRepository.assignPendingOrderToIdleDealer(orderId, dealerId);
+        } catch (DuplicateKeyException e) {
+            assigned = false; // Otra asignación concurrente dejó al dealer con una orden activa
         }
-
-        // Verificar que el dealer no tenga otra orden activa
-        OrdersEntity activeOrder = ordersRepository.findActiveOrderByDealerId(dealerId);
-        if (activeOrder != null) {
+        if (!assigned) {
+            // La orden solo se lee si no se asignó, para informar la causa
+            OrderStatusChangeDTO current = ordersRepository.findStatusById(orderId);
+            if (current == null) {
+                throw new EmptyResultDataAccessException("La orden con ID " + orderId + " no existe", 1);
+            }
+            if (current.getDealerId() != null
+                    || (!OrderStatusService.PENDIENTE.equals(current.getStatus())
+                        && !OrderStatusService.URGENTE.equals(current.getStatus()))) {
+                throw new IllegalStateException("La orden con ID " + orderId + " ya fue asignada o finalizada");
+            }
             throw new IllegalStateException("El dealer ya tiene una orden activa");
         }
-
-        // Asignar orden al dealer
-        ordersRepository.assignOrderToDealer(orderId, dealerId);
     }
 
 
@@ -453,14 +670,7 @@ public class OrdersService {
      */
     @Transactional(readOnly = true)
     public List<OrderTotalProductsDTO> getOrdersWithProductCountByDealerId() {
-        Long userId = userService.getAuthenticatedUserId();
-
-        String sql = "SELECT id FROM dealers WHERE user_id = ?";
-        Integer dealerId = jdbcTemplate.queryForObject(sql, Integer.class, userId);
-
-        if (dealerId == null) {
-            throw new IllegalArgumentException("No se encontró un dealer asociado al usuario con ID " + userId);
-        }
+        Integer dealerId = userService.getAuthenticatedDealerId();
 
         return ordersRepository.findOrdersWithProductCountByDealerId(dealerId);
     }
@@ -475,16 +685,8 @@ public class OrdersService {
      */
     @Transactional(readOnly = true)
     public OrderNameAddressDTO getActiveOrderNameAddresDTOByDealerId() {
-        // Obtener el ID del usuario autenticado
-        Long userId = userService.getAuthenticatedUserId();
-
-        // Obtener el dealerId asociado al usuario autenticado
-        String sql = "SELECT id FROM dealers WHERE user_id = ?";
-        Integer dealerId = jdbcTemplate.queryForObject(sql, Integer.class, userId);
-
-        if (dealerId == null) {
-            throw new IllegalArgumentException("No se encontró un dealer asociado al usuario con ID " + userId);
-        }
+        // Obtener el dealerId del usuario autenticado
+        Integer dealerId = userService.getAuthenticatedDealerId();
 
         // Llamar al repositorio para obtener la orden activa
         return ordersRepository.findActiveOrderNameAddresDTOByDealerId(dealerId);
@@ -492,11 +694,22 @@ public class OrdersService {
 
     @Transactional
     public void updateOrderRouteWithWKT(int orderId, String lineStringWKT) {
-        // Validación básica del WKT
-        if (!lineStringWKT.toUpperCase().startsWith("LINESTRING(")) {
-            throw new IllegalArgumentException("Formato WKT inválido. Debe comenzar con 'LINESTRING('");
+        // El WKT se interpreta una vez aquí y se guarda en binario (EWKB)
+        GeometryValue route = GeometryValue.fromWkt(lineStringWKT);
+        requireLineString(route);
+        ordersRepository.updateEstimatedRoute(orderId, route);
+        routeLodService.evict(orderId);
+    }
+
+    /**
+     * Verifica que una ruta sea un LINESTRING no vacío (un LINEARRING tampoco se acepta).
+     * @param "route" La ruta a verificar.
+     */
+    private static void requireLineString(GeometryValue route) {
+        Geometry geometry = route.getGeometry();
+        if (!(geometry instanceof LineString) || geometry instanceof LinearRing || geometry.isEmpty()) {
+            throw new IllegalArgumentException("Formato WKT inválido. Debe ser un LINESTRING no vacío");
         }
-        ordersRepository.updateEstimatedRoute(orderId, lineStringWKT);
     }
 
     @Transactional
@@ -513,6 +726,7 @@ public class OrdersService {
         }
 
         ordersRepository.updateEstimatedRouteFromPoints(orderId, points);
+        routeLodService.evict(orderId);
     }
 
     /**
@@ -523,14 +737,4 @@ public class OrdersService {
         return ordersRepository.findOrdersCrossingMoreThanTwoCoverageAreas();
     }
 
-    /**
-     * Compara si el dealerId de la entidad OrdersEntity es igual al dealerId proporcionado.
-     * @param a El dealerId de la entidad OrdersEntity.
-     * @param b El dealerId proporcionado para comparar.
-     * @return true si son iguales, false en caso contrario.
-     */
-    private boolean dealerIdEquals(Integer a, int b) {
-        return a != null && a == b;
-    }
-
 }
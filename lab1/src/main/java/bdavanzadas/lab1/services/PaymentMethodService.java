@@ -1,7 +1,10 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.Config.CacheConfig;
 import bdavanzadas.lab1.entities.PaymentMethodEntity;
 import bdavanzadas.lab1.repositories.PaymentMethodRepository;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -67,6 +70,7 @@ public class PaymentMethodService {
      *
      */
     @Transactional
+    @CacheEvict(cacheNames = CacheConfig.COMPANY_PAYMENT_METHODS, allEntries = true)
     public void savePaymentMethod(PaymentMethodEntity paymentMethodEntity) {
         paymentMethodRepository.save(paymentMethodEntity);
     }
@@ -78,6 +82,7 @@ public class PaymentMethodService {
      *
      */
     @Transactional
+    @CacheEvict(cacheNames = CacheConfig.COMPANY_PAYMENT_METHODS, allEntries = true)
     public void deletePaymentMethod(int id) {
         paymentMethodRepository.deleteById(id);
     }
@@ -89,6 +94,7 @@ public class PaymentMethodService {
      *
      */
     @Transactional
+    @CacheEvict(cacheNames = CacheConfig.COMPANY_PAYMENT_METHODS, allEntries = true)
     public void updatePaymentMethod(PaymentMethodEntity paymentMethodEntity) {
         paymentMethodRepository.update(paymentMethodEntity);
     }
@@ -101,6 +107,8 @@ public class PaymentMethodService {
      *
      */
     //getPaymentMethodsByCompanyId
+    @Transactional(readOnly = true)
+    @Cacheable(CacheConfig.COMPANY_PAYMENT_METHODS)
     public List<PaymentMethodEntity> getPaymentMethodsByCompanyId(int companyId) {
         return paymentMethodRepository.getPaymentMethodsByCompanyId(companyId);
     }
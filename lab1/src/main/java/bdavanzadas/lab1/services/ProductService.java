@@ -1,9 +1,12 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.Config.CacheConfig;
 import bdavanzadas.lab1.entities.OrdersEntity;
 import bdavanzadas.lab1.entities.ProductEntity;
 import bdavanzadas.lab1.repositories.OrdersRepository;
 import bdavanzadas.lab1.repositories.ProductRepository;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -37,10 +40,13 @@ public class ProductService {
 
     /**
      * Metodo para obtener todos los productos de la base de datos.
+     * Las lecturas del catálogo quedan en cache y se invalidan al guardar, actualizar o eliminar
+     * un producto y al descontar stock en la creación de pedidos (OrdersService).
      * @return Una lista de productos.
      */
 
     @Transactional(readOnly = true)
+    @Cacheable(CacheConfig.PRODUCTS)
     public List<ProductEntity> getAllProducts() {
         return repo.findAll();
     }
@@ -62,6 +68,7 @@ public class ProductService {
      * @return void
      */
     @Transactional
+    @CacheEvict(cacheNames = {CacheConfig.PRODUCTS, CacheConfig.PRODUCTS_BY_STOCK, CacheConfig.PRODUCTS_BY_CATEGORY, CacheConfig.PRODUCT_CATEGORIES}, allEntries = true)
     public void saveProduct(ProductEntity product) {
         repo.save(product);
     }
@@ -72,6 +79,7 @@ public class ProductService {
      * @return void
      */
     @Transactional
+    @CacheEvict(cacheNames = {CacheConfig.PRODUCTS, CacheConfig.PRODUCTS_BY_STOCK, CacheConfig.PRODUCTS_BY_CATEGORY, CacheConfig.PRODUCT_CATEGORIES}, allEntries = true)
     public void updateProduct(ProductEntity product) {
         repo.update(product);
     }
@@ -82,6 +90,7 @@ public class ProductService {
      * @return void
      */
     @Transactional
+    @CacheEvict(cacheNames = {CacheConfig.PRODUCTS, CacheConfig.PRODUCTS_BY_STOCK, CacheConfig.PRODUCTS_BY_CATEGORY, CacheConfig.PRODUCT_CATEGORIES}, allEntries = true)
     public void deleteProduct(int id) {
         repo.delete(id);
     }
@@ -93,6 +102,7 @@ public class ProductService {
      *
      */
     @Transactional(readOnly = true)
+    @Cacheable(CacheConfig.PRODUCTS_BY_STOCK)
     public List<ProductEntity> getProductsByStock() {
         return repo.findByStock();
     }
@@ -104,6 +114,7 @@ public class ProductService {
      *
      */
     @Transactional
+    @Cacheable(CacheConfig.PRODUCTS_BY_CATEGORY)
     public List<ProductEntity> getProductsByCategory(String category) {return repo.findbyCategory(category);}
 
     /**
@@ -112,6 +123,7 @@ public class ProductService {
      *
      */
     @Transactional
+    @Cacheable(CacheConfig.PRODUCT_CATEGORIES)
     public List<String> findallCategories(){
         return repo.findAllCategories();
     }
@@ -1,7 +1,7 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.dtos.KeysetPageDTO;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import bdavanzadas.lab1.entities.RatingEntity;
@@ -14,6 +14,7 @@ import bdavanzadas.lab1.services.UserService;
 
 
 import java.util.List;
+import java.util.function.Consumer;
 
 
 
@@ -72,6 +73,28 @@ public class RatingService {
         return ratingRepository.findAll();
     }
 
+    /**
+     * Obtiene una página de calificaciones ordenada por ID (paginación por cursor).
+     * @param afterId Se devuelven los calificaciones con ID mayor a este valor.
+     * @param limit La cantidad máxima de calificaciones a devolver.
+     * @return La página con el cursor de la siguiente.
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageDTO<RatingEntity> getRatingsPage(int afterId, int limit) {
+        KeysetPageDTO.validate(afterId, limit);
+        return KeysetPageDTO.of(ratingRepository.findAllAfter(afterId, limit), limit, RatingEntity::getId);
+    }
+
+    /**
+     * Recorre todos los calificaciones sin cargarlos en memoria.
+     * La transacción permite que la consulta use un cursor con fetch size acotado.
+     * @param consumer Recibe cada elemento a medida que se lee.
+     */
+    @Transactional(readOnly = true)
+    public void streamAllRatings(Consumer<RatingEntity> consumer) {
+        ratingRepository.streamAll(consumer);
+    }
+
 
     /**
      * Metodo para guardar una calificación en la base de datos.
@@ -158,23 +181,13 @@ public class RatingService {
     @Transactional(readOnly = true)
     public List<RatingEntity> getRatingsByDealerIdAuthenticated() {
         try {
-            // Obtener el userId del usuario autenticado
-            Long userId = userService.getAuthenticatedUserId();
-            if (userId == null) {
-                throw new IllegalArgumentException("El usuario no está autenticado.");
-            }
-
-            // Obtener el dealerId a partir del userId
-            String sql = "SELECT id FROM dealers WHERE user_id = ?";
-            Integer dealerId = jdbcTemplate.queryForObject(sql, new Object[]{userId}, Integer.class);
-            if (dealerId == null) {
-                throw new IllegalArgumentException("El dealer no existe para el usuario autenticado.");
-            }
+            // Obtener el dealerId del usuario autenticado
+            Integer dealerId = userService.getAuthenticatedDealerId();
 
             // Obtener las calificaciones a partir del dealerId
             return ratingRepository.findByDealerId(dealerId);
-        } catch (EmptyResultDataAccessException e) {
-            throw new IllegalArgumentException("No se encontró un dealer asociado al usuario autenticado.", e);
+        } catch (IllegalArgumentException e) {
+            throw e; // Usuario sin dealer asociado
         } catch (Exception e) {
             throw new RuntimeException("Error al obtener las calificaciones del dealer autenticado.", e);
         }
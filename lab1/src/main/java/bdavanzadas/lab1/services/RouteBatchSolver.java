@@ -0,0 +1,147 @@
+package bdavanzadas.lab1.services;
+
+
+/**
+ * Orden de las paradas de un lote de reparto, sin red vial: las distancias son de haversine (en línea recta).
+ * El repartidor parte de su posición, pasa por todos los puntos de retiro y después por todos los puntos de
+ * entrega, de modo que cada pedido se retira antes de entregarse. Cada tramo es un camino abierto con el
+ * inicio fijo: se construye con el vecino más cercano y se mejora con 2-opt hasta que ningún cambio acorta la ruta.
+ * Con lotes de decenas de paradas cada solución toma del orden de microsegundos a pocos milisegundos
+ * (ver RouteBatchSolverBenchmark en lab1-benchmarks).
+ */
+final class RouteBatchSolver {
+
+    /**
+     * Mejora mínima (en metros) para aceptar un cambio de 2-opt; evita ciclos por errores de redondeo.
+     */
+    private static final double EPSILON_METERS = 1e-6;
+
+    private RouteBatchSolver() {
+    }
+
+    /**
+     * Resultado de un lote: el orden de los retiros, el de las entregas y el largo total de la ruta.
+     * @param pickupOrder Índices de los puntos de retiro, en el orden en que se visitan
+     * @param dropoffOrder Índices de los puntos de entrega, en el orden en que se visitan
+     * @param distanceMeters Largo de la ruta completa, desde la posición del repartidor
+     */
+    record Solution(int[] pickupOrder, int[] dropoffOrder, double distanceMeters) {
+    }
+
+    /**
+     * Calcula el orden de las paradas de un lote.
+     * @param start Posición del repartidor {longitud, latitud}
+     * @param pickups Puntos de retiro {longitud, latitud}, sin repetir
+     * @param dropoffs Puntos de entrega {longitud, latitud}
+     * @return El orden de las paradas y el largo de la ruta
+     */
+    static Solution solve(double[] start, double[][] pickups, double[][] dropoffs) {
+        int[] pickupPath = openPath(start, pickups);
+        double[] lastPickup = pickupPath.length > 0 ? pickups[pickupPath[pickupPath.length - 1]] : start;
+        int[] dropoffPath = openPath(lastPickup, dropoffs);
+
+        double distance = 0;
+        double[] previous = start;
+        for (int index : pickupPath) {
+            distance += distance(previous, pickups[index]);
+            previous = pickups[index];
+        }
+        for (int index : dropoffPath) {
+            distance += distance(previous, dropoffs[index]);
+            previous = dropoffs[index];
+        }
+        return new Solution(pickupPath, dropoffPath, distance);
+    }
+
+    /**
+     * Camino abierto que parte de start y visita todos los puntos una vez.
+     * @return Los índices de los puntos en el orden de visita
+     */
+    static int[] openPath(double[] start, double[][] points) {
+        int n = points.length;
+        if (n == 0) {
+            return new int[0];
+        }
+
+        // Nodo 0 = inicio fijo, nodo i + 1 = points[i]
+        double[][] matrix = new double[n + 1][n + 1];
+        for (int i = 0; i <= n; i++) {
+            double[] a = i == 0 ? start : points[i - 1];
+            for (int j = i + 1; j <= n; j++) {
+                double d = distance(a, points[j - 1]);
+                matrix[i][j] = d;
+                matrix[j][i] = d;
+            }
+        }
+
+        int[] path = nearestNeighbour(matrix);
+        twoOpt(path, matrix);
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = path[i + 1] - 1;
+        }
+        return order;
+    }
+
+    /**
+     * Camino del vecino más cercano desde el nodo 0.
+     */
+    private static int[] nearestNeighbour(double[][] matrix) {
+        int size = matrix.length;
+        int[] path = new int[size];
+        boolean[] visited = new boolean[size];
+        visited[0] = true;
+        for (int position = 1; position < size; position++) {
+            int current = path[position - 1];
+            int next = -1;
+            for (int candidate = 1; candidate < size; candidate++) {
+                if (!visited[candidate] && (next < 0 || matrix[current][candidate] < matrix[current][next])) {
+                    next = candidate;
+                }
+            }
+            path[position] = next;
+            visited[next] = true;
+        }
+        return path;
+    }
+
+    /**
+     * Mejora el camino invirtiendo tramos mientras alguna inversión lo acorte.
+     * El primer nodo queda fijo y el último no vuelve al inicio (camino abierto).
+     */
+    private static void twoOpt(int[] path, double[][] matrix) {
+        int last = path.length - 1;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 1; i < last; i++) {
+                for (int j = i + 1; j <= last; j++) {
+                    // Invertir path[i..j] cambia la arista de entrada al tramo y, si no es el final, la de salida
+                    double before = matrix[path[i - 1]][path[i]];
+                    double after = matrix[path[i - 1]][path[j]];
+                    if (j < last) {
+                        before += matrix[path[j]][path[j + 1]];
+                        after += matrix[path[i]][path[j + 1]];
+                    }
+                    if (after < before - EPSILON_METERS) {
+                        reverse(path, i, j);
+                        improved = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void reverse(int[] path, int from, int to) {
+        while (from < to) {
+            int tmp = path[from];
+            path[from++] = path[to];
+            path[to--] = tmp;
+        }
+    }
+
+    private static double distance(double[] a, double[] b) {
+        return CoverageAreaIndex.distanceMeters(a[0], a[1], b[0], b[1]);
+    }
+}
@@ -0,0 +1,167 @@
+package bdavanzadas.lab1.services;
+
+import bdavanzadas.lab1.dtos.MapViewportDTO;
+import bdavanzadas.lab1.entities.GeometryValue;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+
+/**
+ * Niveles de detalle (LOD) de las rutas estimadas de los pedidos.
+ * Las rutas se guardan con todos sus puntos (por ejemplo, trazas GPS), pero un mapa general no necesita
+ * más de un punto por pixel. Para cada ruta se precalculan versiones simplificadas con Douglas-Peucker
+ * a la tolerancia de varios niveles de zoom y se guardan en un cache en memoria; cada consulta recibe el
+ * nivel más simplificado cuyo error no supera la tolerancia pedida.
+ * El cache se acota por la cantidad total de puntos guardados y detecta las rutas que cambiaron en la base
+ * de datos comparando una huella de sus bytes (EWKB), por lo que no entrega niveles desactualizados.
+ */
+@Service
+public class RouteLodService {
+
+    /**
+     * Niveles de zoom precalculados, del más detallado al más simplificado.
+     */
+    static final int[] LEVEL_ZOOMS = {16, 13, 10, 7, 4};
+
+    /**
+     * Tolerancia (en grados) de cada nivel: el ancho de un pixel en su zoom.
+     */
+    private static final double[] LEVEL_TOLERANCES = Arrays.stream(LEVEL_ZOOMS)
+            .mapToDouble(MapViewportDTO::pixelDegrees)
+            .toArray();
+
+    /**
+     * Registro de métricas (aciertos, fallos y tamaño del cache).
+     */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Cantidad máxima de puntos (sumando todos los niveles) que se mantienen en memoria.
+     */
+    @Value("${routes.lod.cache.max-vertices:2000000}")
+    private long maxVertices;
+
+    /**
+     * Minutos sin consultas tras los cuales se descartan los niveles de una ruta.
+     */
+    @Value("${routes.lod.cache.expire-after-access-minutes:30}")
+    private long expireAfterAccessMinutes;
+
+    private Cache<Integer, RouteLevels> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxVertices)
+                .weigher((Integer orderId, RouteLevels levels) -> levels.vertexCount())
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "routeLod");
+    }
+
+    /**
+     * Obtiene la ruta de un pedido en el nivel de detalle de un zoom.
+     * @param orderId El ID del pedido
+     * @param route La ruta completa, tal como está en la base de datos
+     * @param zoom El nivel de zoom del mapa
+     * @return La ruta simplificada, o la ruta completa si el zoom es mayor que el nivel más detallado
+     */
+    public GeometryValue forZoom(int orderId, GeometryValue route, int zoom) {
+        return forTolerance(orderId, route, MapViewportDTO.pixelDegrees(zoom));
+    }
+
+    /**
+     * Obtiene la ruta de un pedido en el nivel más simplificado cuyo error no supera la tolerancia.
+     * @param orderId El ID del pedido
+     * @param route La ruta completa, tal como está en la base de datos
+     * @param toleranceDegrees El error máximo aceptado, en grados (0 = ruta completa)
+     * @return La ruta simplificada, o la ruta completa si ningún nivel cumple la tolerancia
+     */
+    public GeometryValue forTolerance(int orderId, GeometryValue route, double toleranceDegrees) {
+        if (route == null) {
+            return null;
+        }
+        int level = levelFor(toleranceDegrees);
+        if (level < 0) {
+            return route;
+        }
+
+        byte[] ewkb = route.toEwkb();
+        int fingerprint = Arrays.hashCode(ewkb);
+        RouteLevels levels = cache.getIfPresent(orderId);
+        if (levels == null || levels.fingerprint() != fingerprint || levels.byteLength() != ewkb.length) {
+            Geometry geometry = route.getGeometry();
+            if (geometry.getNumPoints() <= 2) {
+                return route; // Una línea recta no se puede simplificar más
+            }
+            levels = RouteLevels.build(route, fingerprint, ewkb.length);
+            cache.put(orderId, levels);
+        }
+        return levels.levels()[level];
+    }
+
+    /**
+     * Descarta los niveles de una ruta (por ejemplo, al actualizarla).
+     * @param orderId El ID del pedido
+     */
+    public void evict(int orderId) {
+        cache.invalidate(orderId);
+    }
+
+    /**
+     * Índice del nivel más simplificado cuya tolerancia no supera la pedida, o -1 si ninguno la cumple.
+     */
+    static int levelFor(double toleranceDegrees) {
+        for (int i = LEVEL_TOLERANCES.length - 1; i >= 0; i--) {
+            if (LEVEL_TOLERANCES[i] <= toleranceDegrees) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Niveles precalculados de una ruta y la huella de la ruta completa con que se calcularon.
+     */
+    private record RouteLevels(int fingerprint, int byteLength, GeometryValue[] levels, int vertexCount) {
+
+        static RouteLevels build(GeometryValue route, int fingerprint, int byteLength) {
+            Geometry geometry = route.getGeometry();
+            GeometryValue[] levels = new GeometryValue[LEVEL_TOLERANCES.length];
+            GeometryValue previous = route;
+            int previousPoints = geometry.getNumPoints();
+            int vertexCount = 0;
+            boolean holdsRoute = false;
+            for (int i = 0; i < LEVEL_TOLERANCES.length; i++) {
+                // Cada nivel se simplifica desde la ruta completa para que su error no se acumule
+                Geometry simplified = DouglasPeuckerSimplifier.simplify(geometry, LEVEL_TOLERANCES[i]);
+                int points = simplified.getNumPoints();
+                if (points < previousPoints) {
+                    previous = GeometryValue.of(simplified);
+                    previousPoints = points;
+                    vertexCount += points;
+                }
+                // Si el nivel no quitó puntos se reutiliza el anterior
+                levels[i] = previous;
+                holdsRoute |= previous == route;
+            }
+            if (holdsRoute) {
+                vertexCount += geometry.getNumPoints();
+            }
+            return new RouteLevels(fingerprint, byteLength, levels, vertexCount);
+        }
+    }
+}
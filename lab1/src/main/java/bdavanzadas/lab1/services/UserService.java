@@ -1,5 +1,7 @@
 package bdavanzadas.lab1.services;
 
+import bdavanzadas.lab1.Security.ActorIdentityCache;
+import bdavanzadas.lab1.Security.AuthenticatedUser;
 import bdavanzadas.lab1.entities.ClientEntity;
 import bdavanzadas.lab1.entities.DealerEntity;
 import bdavanzadas.lab1.entities.UserEntity;
@@ -55,6 +57,14 @@ public class UserService {
     private DealerRepository dealerRepository;
 
 
+    /**
+     * Cache de identidades.
+     * Relaciona cada usuario con su cliente o dealer para no consultarlo en cada solicitud.
+     */
+    @Autowired
+    private ActorIdentityCache actorIdentityCache;
+
+
     /**
      * Metodo para registrar un nuevo usuario administrador.
      * @param "username" El nombre de usuario del nuevo administrador.
@@ -114,6 +124,7 @@ public class UserService {
         client.setUserId(user.getId());
         client.setUbication(ubication != null ? ubication : "POINT(0 0)");  // Usar el parámetro ubication, no client.getUbication()
         clientRepository.save(client);
+        actorIdentityCache.invalidateUser((long) user.getId());
     }
 
 
@@ -159,6 +170,7 @@ public class UserService {
         dealer.setUbication(ubication != null ? ubication : "POINT(0 0)"); // Asignar una ubicación por defecto, puede ser modificada posteriormente
 
         dealerRepository.save(dealer);
+        actorIdentityCache.invalidateUser((long) user.getId());
     }
 
     /**
@@ -187,9 +199,65 @@ public class UserService {
      * Si no hay un usuario autenticado, lanza una excepción.
      */
     public Long getAuthenticatedUserId() {
+        return getAuthenticatedUser().getUserId();
+    }
+
+
+    /**
+     * Metodo para obtener el rol del usuario autenticado.
+     * @return El rol del usuario autenticado (ADMIN, CLIENT o DEALER).
+     */
+    public String getAuthenticatedRole() {
+        return getAuthenticatedUser().getRole();
+    }
+
+
+    /**
+     * Metodo para obtener el ID del cliente asociado al usuario autenticado.
+     * @return El ID del cliente autenticado.
+     *
+     * El ID se resuelve al autenticar la solicitud y queda en cache, por lo que no se consulta la base de datos.
+     * Si el usuario no tiene un cliente asociado, lanza una excepción.
+     */
+    public Integer getAuthenticatedClientId() {
+        AuthenticatedUser user = getAuthenticatedUser();
+        Integer clientId = user.getClientId() != null
+                ? user.getClientId()
+                : actorIdentityCache.getClientId(user.getUserId());
+        if (clientId == null) {
+            throw new IllegalArgumentException("No se encontró un cliente asociado al usuario con ID " + user.getUserId());
+        }
+        return clientId;
+    }
+
+
+    /**
+     * Metodo para obtener el ID del dealer asociado al usuario autenticado.
+     * @return El ID del dealer autenticado.
+     *
+     * El ID se resuelve al autenticar la solicitud y queda en cache, por lo que no se consulta la base de datos.
+     * Si el usuario no tiene un dealer asociado, lanza una excepción.
+     */
+    public Integer getAuthenticatedDealerId() {
+        AuthenticatedUser user = getAuthenticatedUser();
+        Integer dealerId = user.getDealerId() != null
+                ? user.getDealerId()
+                : actorIdentityCache.getDealerId(user.getUserId());
+        if (dealerId == null) {
+            throw new IllegalArgumentException("No se encontró un dealer asociado al usuario con ID " + user.getUserId());
+        }
+        return dealerId;
+    }
+
+
+    /**
+     * Obtiene el principal del usuario autenticado desde el contexto de seguridad.
+     * Si no hay un usuario autenticado, lanza una excepción.
+     */
+    private AuthenticatedUser getAuthenticatedUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication != null && authentication.getPrincipal() instanceof Long) {
-            return (Long) authentication.getPrincipal(); // Retorna el ID del usuario autenticado
+        if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return user; // Retorna el usuario autenticado
         }
         throw new RuntimeException("Usuario no autenticado");
     }
@@ -0,0 +1,584 @@
+-- ========================
+-- V2: MÉTRICAS, RANKING Y ZONAS DE COBERTURA
+-- ========================
+-- Métricas de empresas y ranking de repartidores mantenidos por triggers, zonas de cobertura que cruza
+-- la ruta de cada pedido, creación de pedidos en una sola llamada y un solo pedido EN PROCESO por repartidor.
+-- Al final se recalculan los valores mantenidos por triggers para los datos existentes.
+
+-- Zonas de cobertura que cruza la ruta (mantenido por triggers)
+ALTER TABLE orders ADD COLUMN coverage_zone_count INT NOT NULL DEFAULT 0;
+
+-- Índices espaciales para calcular las zonas que cruza cada ruta
+CREATE INDEX ix_coverage_area_geom ON coverage_area USING GIST (coverageArea);
+CREATE INDEX ix_orders_estimated_route ON orders USING GIST (estimated_route);
+CREATE INDEX ix_orders_multi_zone ON orders (id) WHERE coverage_zone_count > 2;
+
+-- Un repartidor puede tener a lo sumo un pedido EN PROCESO (evita asignaciones concurrentes duplicadas).
+-- Las asignaciones concurrentes anteriores pueden haber dejado repartidores con varios pedidos EN PROCESO:
+-- se conserva el más antiguo de cada uno y los demás vuelven a quedar PENDIENTE y sin repartidor.
+DO $$
+DECLARE
+    v_released INT;
+BEGIN
+    WITH extra AS (
+        SELECT id
+        FROM (
+            SELECT id, ROW_NUMBER() OVER (PARTITION BY dealer_id ORDER BY order_date, id) AS position
+            FROM orders
+            WHERE status = 'EN PROCESO' AND dealer_id IS NOT NULL
+        ) ranked
+        WHERE position > 1
+    )
+    UPDATE orders o
+    SET status = 'PENDIENTE', dealer_id = NULL
+    FROM extra
+    WHERE o.id = extra.id;
+
+    GET DIAGNOSTICS v_released = ROW_COUNT;
+    IF v_released > 0 THEN
+        RAISE NOTICE 'Pedidos EN PROCESO duplicados devueltos a PENDIENTE: %', v_released;
+    END IF;
+END $$;
+
+CREATE UNIQUE INDEX ux_orders_dealer_en_proceso ON orders (dealer_id) WHERE status = 'EN PROCESO';
+
+-- Ranking de repartidores, mantenido por triggers sobre orders, ratings y dealers.
+-- Evita recalcular entregas y calificaciones sobre todas las órdenes en cada consulta.
+CREATE TABLE dealer_performance (
+                                    dealer_id INT PRIMARY KEY,
+                                    deliveries INT NOT NULL DEFAULT 0,                   -- Pedidos ENTREGADO
+                                    timed_deliveries INT NOT NULL DEFAULT 0,             -- Pedidos ENTREGADO con fecha de entrega
+                                    delivery_hours_sum FLOAT NOT NULL DEFAULT 0,         -- Suma de horas entre pedido y entrega
+                                    rating_sum INT NOT NULL DEFAULT 0,
+                                    rating_count INT NOT NULL DEFAULT 0,
+                                    performance_score FLOAT GENERATED ALWAYS AS (
+                                        deliveries * 0.7
+                                        + (CASE WHEN rating_count > 0 THEN rating_sum::FLOAT / rating_count ELSE 0 END) * 0.3
+                                    ) STORED,
+                                    FOREIGN KEY (dealer_id) REFERENCES dealers(id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_dealer_performance_score ON dealer_performance (performance_score DESC);
+
+-- Zonas de cobertura que cruza la ruta estimada de cada pedido (mantenido por triggers)
+CREATE TABLE order_coverage_area (
+                                     order_id INT,
+                                     coverage_id INT,
+                                     PRIMARY KEY (order_id, coverage_id),
+                                     FOREIGN KEY (order_id) REFERENCES orders(id) ON DELETE CASCADE,
+                                     FOREIGN KEY (coverage_id) REFERENCES coverage_area(coverage_id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_order_coverage_area_coverage ON order_coverage_area (coverage_id);
+
+-- ========================
+-- PROCEDIMIENTOS ALMACENADOS
+-- ========================
+
+-- Métricas de empresas (deliveries, failed_deliveries, total_sales).
+-- Se mantienen de forma incremental: cada pedido suma a las empresas de sus productos
+-- (una vez por empresa, aunque el pedido tenga varios productos de la misma empresa).
+CREATE OR REPLACE FUNCTION apply_company_metrics_delta(
+    p_order_id INT,
+    p_deliveries INT,
+    p_failed INT,
+    p_sales FLOAT
+)
+RETURNS VOID AS $$
+BEGIN
+    -- Bloquear las empresas en orden de ID para evitar deadlocks entre pedidos concurrentes
+    PERFORM 1
+    FROM companies
+    WHERE id IN (
+        SELECT p.company_id
+        FROM order_products op
+                 JOIN products p ON p.id = op.product_id
+        WHERE op.order_id = p_order_id
+    )
+    ORDER BY id
+    FOR UPDATE;
+
+    UPDATE companies c
+    SET deliveries = COALESCE(c.deliveries, 0) + p_deliveries,
+        failed_deliveries = COALESCE(c.failed_deliveries, 0) + p_failed,
+        total_sales = COALESCE(c.total_sales, 0) + p_sales
+    WHERE c.id IN (
+        SELECT p.company_id
+        FROM order_products op
+                 JOIN products p ON p.id = op.product_id
+        WHERE op.order_id = p_order_id
+    );
+END;
+$$ LANGUAGE plpgsql;
+
+-- Recalcula desde cero las métricas de todas las empresas (reconciliación).
+-- Solo actualiza las empresas cuyos valores difieren de los calculados.
+CREATE OR REPLACE FUNCTION reconcile_company_metrics()
+RETURNS INT AS $$
+DECLARE
+    v_updated INT;
+BEGIN
+    WITH company_orders AS (
+        SELECT DISTINCT p.company_id, o.id, o.status, o.total_price
+        FROM orders o
+                 JOIN order_products op ON op.order_id = o.id
+                 JOIN products p ON p.id = op.product_id
+    ),
+    totals AS (
+        SELECT
+            c.id AS company_id,
+            COUNT(co.id) AS deliveries,
+            COUNT(co.id) FILTER (WHERE co.status = 'FALLIDA') AS failed_deliveries,
+            COALESCE(SUM(co.total_price), 0) AS total_sales
+        FROM companies c
+                 LEFT JOIN company_orders co ON co.company_id = c.id
+        GROUP BY c.id
+    )
+    UPDATE companies c
+    SET deliveries = t.deliveries,
+        failed_deliveries = t.failed_deliveries,
+        total_sales = t.total_sales
+    FROM totals t
+    WHERE c.id = t.company_id
+      AND (c.deliveries, c.failed_deliveries, c.total_sales)
+          IS DISTINCT FROM (t.deliveries::INT, t.failed_deliveries::INT, t.total_sales::FLOAT);
+
+    GET DIAGNOSTICS v_updated = ROW_COUNT;
+    RETURN v_updated;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 1 y 3 Registrar un pedido completo y descuenta el stock.
+-- Devuelve el ID del pedido creado. Opcionalmente guarda en la misma llamada la ruta (WKT)
+-- y el detalle del pedido, para no tener que buscar el pedido después por el último ID.
+CREATE OR REPLACE FUNCTION create_order_with_products(
+    p_order_date TIMESTAMP,
+    p_status VARCHAR,
+    p_client_id INT,
+    p_product_ids INT[],
+    p_dealer_id INT DEFAULT NULL,
+    p_payment_method VARCHAR DEFAULT NULL,
+    p_route_wkt TEXT DEFAULT NULL
+)
+RETURNS INT AS $$
+DECLARE
+v_order_id INT;
+    v_product_id INT;
+    v_total_price FLOAT := 0.0;
+    v_client_location GEOMETRY;
+    v_company_location GEOMETRY;
+    v_estimated_route GEOMETRY;
+BEGIN
+    -- 1. Validar que haya productos
+    IF array_length(p_product_ids, 1) IS NULL OR array_length(p_product_ids, 1) = 0 THEN
+        RAISE EXCEPTION 'La orden debe contener al menos un producto';
+END IF;
+
+    -- 2. Obtener ubicación del cliente
+SELECT ubication INTO v_client_location
+FROM clients
+WHERE id = p_client_id;
+
+IF v_client_location IS NULL THEN
+        RAISE EXCEPTION 'El cliente con ID % no tiene ubicación registrada', p_client_id;
+END IF;
+
+    -- 3. Obtener empresa del primer producto para la ubicación
+SELECT c.ubication INTO v_company_location
+FROM products p
+         JOIN companies c ON p.company_id = c.id
+WHERE p.id = p_product_ids[1]
+    LIMIT 1;
+
+IF v_company_location IS NULL THEN
+        RAISE EXCEPTION 'No se pudo determinar la ubicación de la empresa para el producto ID %', p_product_ids[1];
+END IF;
+
+    -- 4. Usar la ruta entregada o calcular la ruta recta (línea directa entre empresa y cliente)
+    IF p_route_wkt IS NOT NULL THEN
+        v_estimated_route := ST_GeomFromText(p_route_wkt, 4326);
+    ELSE
+        v_estimated_route := ST_MakeLine(v_company_location, v_client_location);
+    END IF;
+
+    -- 5. Calcular el precio total de los productos
+SELECT COALESCE(SUM(price), 0)
+INTO v_total_price
+FROM products
+WHERE id = ANY(p_product_ids);
+
+-- 6. Insertar la orden con la ruta estimada
+INSERT INTO orders (
+    order_date,
+    status,
+    client_id,
+    dealer_id,  -- Se usa el parámetro p_dealer_id
+    total_price,
+    estimated_route
+)
+VALUES (
+           p_order_date,
+           p_status,
+           p_client_id,
+           p_dealer_id,  -- Usar el parámetro en lugar de NULL fijo
+           v_total_price,
+           v_estimated_route
+       )
+    RETURNING id INTO v_order_id;
+
+-- 7. Procesar productos
+FOREACH v_product_id IN ARRAY p_product_ids LOOP
+        -- Registrar producto en la orden
+        INSERT INTO order_products (order_id, product_id)
+        VALUES (v_order_id, v_product_id);
+
+        -- Reducir stock
+UPDATE products
+SET stock = stock - 1
+WHERE id = v_product_id AND stock > 0;
+
+IF NOT FOUND THEN
+            RAISE EXCEPTION 'Sin stock para el producto ID %', v_product_id;
+END IF;
+END LOOP;
+
+    -- 8. Actualizar las métricas de las empresas de los productos del pedido
+    PERFORM apply_company_metrics_delta(
+        v_order_id,
+        1,
+        CASE WHEN p_status = 'FALLIDA' THEN 1 ELSE 0 END,
+        v_total_price
+    );
+
+    -- 9. Detalle del pedido
+    IF p_payment_method IS NOT NULL THEN
+        INSERT INTO order_details (order_id, payment_method, total_products, price)
+        VALUES (v_order_id, p_payment_method, array_length(p_product_ids, 1), v_total_price);
+    END IF;
+
+    RETURN v_order_id;
+END;
+$$ LANGUAGE plpgsql;
+
+
+-- Versión como procedimiento (se mantiene por compatibilidad); delega en create_order_with_products.
+CREATE OR REPLACE PROCEDURE register_order_with_products(
+    p_order_date TIMESTAMP,
+    p_status VARCHAR,
+    p_client_id INT,
+    p_product_ids INT[],
+    p_dealer_id INT DEFAULT NULL  -- Mantener este parámetro aunque no se use
+)
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    PERFORM create_order_with_products(p_order_date, p_status, p_client_id, p_product_ids, p_dealer_id);
+END;
+$$;
+
+-- ========================
+-- TRIGGERS
+-- ========================
+
+-- 4. Mantener las métricas de las empresas al cambiar el estado o el total de un pedido.
+-- Cubre change_order_status y cualquier otra actualización directa del estado.
+-- Trigger function:
+CREATE OR REPLACE FUNCTION update_company_metrics_on_order_change()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_failed_delta INT;
+    v_sales_delta FLOAT;
+BEGIN
+    v_failed_delta := (CASE WHEN NEW.status = 'FALLIDA' THEN 1 ELSE 0 END)
+                    - (CASE WHEN OLD.status = 'FALLIDA' THEN 1 ELSE 0 END);
+    v_sales_delta := COALESCE(NEW.total_price, 0) - COALESCE(OLD.total_price, 0);
+
+    IF v_failed_delta <> 0 OR v_sales_delta <> 0 THEN
+        PERFORM apply_company_metrics_delta(NEW.id, 0, v_failed_delta, v_sales_delta);
+END IF;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_company_metrics
+    AFTER UPDATE OF status, total_price ON orders
+    FOR EACH ROW
+    WHEN (OLD.status IS DISTINCT FROM NEW.status OR OLD.total_price IS DISTINCT FROM NEW.total_price)
+EXECUTE FUNCTION update_company_metrics_on_order_change();
+
+-- 5. Mantener el ranking de repartidores (dealer_performance).
+-- Suma (o resta) a un repartidor las entregas, horas de entrega y calificaciones indicadas.
+CREATE OR REPLACE FUNCTION apply_dealer_performance_delta(
+    p_dealer_id INT,
+    p_deliveries INT,
+    p_delivery_hours FLOAT,
+    p_timed_deliveries INT,
+    p_rating_sum INT,
+    p_rating_count INT
+)
+RETURNS VOID AS $$
+BEGIN
+    IF p_dealer_id IS NULL THEN
+        RETURN;
+END IF;
+
+INSERT INTO dealer_performance AS dp (dealer_id, deliveries, delivery_hours_sum, timed_deliveries, rating_sum, rating_count)
+VALUES (p_dealer_id, p_deliveries, p_delivery_hours, p_timed_deliveries, p_rating_sum, p_rating_count)
+    ON CONFLICT (dealer_id) DO UPDATE
+                                   SET deliveries = dp.deliveries + EXCLUDED.deliveries,
+                                   delivery_hours_sum = dp.delivery_hours_sum + EXCLUDED.delivery_hours_sum,
+                                   timed_deliveries = dp.timed_deliveries + EXCLUDED.timed_deliveries,
+                                   rating_sum = dp.rating_sum + EXCLUDED.rating_sum,
+                                   rating_count = dp.rating_count + EXCLUDED.rating_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger function: resta el aporte de la fila anterior y suma el de la nueva
+CREATE OR REPLACE FUNCTION update_dealer_performance_on_order_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.status = 'ENTREGADO' THEN
+        PERFORM apply_dealer_performance_delta(
+            OLD.dealer_id,
+            -1,
+            -COALESCE(EXTRACT(EPOCH FROM (OLD.delivery_date - OLD.order_date)) / 3600, 0),
+            CASE WHEN OLD.delivery_date IS NOT NULL THEN -1 ELSE 0 END,
+            0, 0
+        );
+END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.status = 'ENTREGADO' THEN
+        PERFORM apply_dealer_performance_delta(
+            NEW.dealer_id,
+            1,
+            COALESCE(EXTRACT(EPOCH FROM (NEW.delivery_date - NEW.order_date)) / 3600, 0),
+            CASE WHEN NEW.delivery_date IS NOT NULL THEN 1 ELSE 0 END,
+            0, 0
+        );
+END IF;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_dealer_performance_on_order
+    AFTER INSERT OR DELETE OR UPDATE OF status, dealer_id, order_date, delivery_date ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION update_dealer_performance_on_order_change();
+
+-- Trigger function:
+CREATE OR REPLACE FUNCTION update_dealer_performance_on_rating_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM apply_dealer_performance_delta(OLD.dealer_id, 0, 0, 0, -OLD.rating, -1);
+END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM apply_dealer_performance_delta(NEW.dealer_id, 0, 0, 0, NEW.rating, 1);
+END IF;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_dealer_performance_on_rating
+    AFTER INSERT OR DELETE OR UPDATE OF rating, dealer_id ON ratings
+    FOR EACH ROW
+EXECUTE FUNCTION update_dealer_performance_on_rating_change();
+
+-- Trigger function: todo repartidor nuevo entra al ranking con valores en cero
+CREATE OR REPLACE FUNCTION create_dealer_performance_row()
+RETURNS TRIGGER AS $$
+BEGIN
+INSERT INTO dealer_performance (dealer_id) VALUES (NEW.id)
+    ON CONFLICT (dealer_id) DO NOTHING;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_create_dealer_performance
+    AFTER INSERT ON dealers
+    FOR EACH ROW
+EXECUTE FUNCTION create_dealer_performance_row();
+
+-- Recalcula desde cero el ranking de todos los repartidores (reconciliación).
+-- Solo actualiza las filas cuyos valores difieren de los calculados.
+CREATE OR REPLACE FUNCTION reconcile_dealer_performance()
+RETURNS INT AS $$
+DECLARE
+    v_updated INT;
+BEGIN
+    WITH delivered AS (
+        SELECT o.dealer_id,
+               COUNT(*) AS deliveries,
+               COUNT(o.delivery_date) AS timed_deliveries,
+               COALESCE(SUM(EXTRACT(EPOCH FROM (o.delivery_date - o.order_date)) / 3600), 0) AS delivery_hours_sum
+        FROM orders o
+        WHERE o.status = 'ENTREGADO' AND o.dealer_id IS NOT NULL
+        GROUP BY o.dealer_id
+    ),
+    rated AS (
+        SELECT r.dealer_id, SUM(r.rating) AS rating_sum, COUNT(*) AS rating_count
+        FROM ratings r
+        WHERE r.dealer_id IS NOT NULL
+        GROUP BY r.dealer_id
+    ),
+    totals AS (
+        SELECT d.id AS dealer_id,
+               COALESCE(dv.deliveries, 0)::INT AS deliveries,
+               COALESCE(dv.timed_deliveries, 0)::INT AS timed_deliveries,
+               COALESCE(dv.delivery_hours_sum, 0)::FLOAT AS delivery_hours_sum,
+               COALESCE(rt.rating_sum, 0)::INT AS rating_sum,
+               COALESCE(rt.rating_count, 0)::INT AS rating_count
+        FROM dealers d
+                 LEFT JOIN delivered dv ON dv.dealer_id = d.id
+                 LEFT JOIN rated rt ON rt.dealer_id = d.id
+    )
+    INSERT INTO dealer_performance AS dp (dealer_id, deliveries, timed_deliveries, delivery_hours_sum, rating_sum, rating_count)
+    SELECT dealer_id, deliveries, timed_deliveries, delivery_hours_sum, rating_sum, rating_count
+    FROM totals
+    ON CONFLICT (dealer_id) DO UPDATE
+        SET deliveries = EXCLUDED.deliveries,
+            timed_deliveries = EXCLUDED.timed_deliveries,
+            delivery_hours_sum = EXCLUDED.delivery_hours_sum,
+            rating_sum = EXCLUDED.rating_sum,
+            rating_count = EXCLUDED.rating_count
+        WHERE (dp.deliveries, dp.timed_deliveries, dp.delivery_hours_sum, dp.rating_sum, dp.rating_count)
+              IS DISTINCT FROM (EXCLUDED.deliveries, EXCLUDED.timed_deliveries, EXCLUDED.delivery_hours_sum, EXCLUDED.rating_sum, EXCLUDED.rating_count);
+
+    GET DIAGNOSTICS v_updated = ROW_COUNT;
+    RETURN v_updated;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 6. Mantener las zonas de cobertura que cruza la ruta de cada pedido (order_coverage_area).
+-- Trigger function: cuenta las zonas al insertar el pedido o cambiar su ruta
+CREATE OR REPLACE FUNCTION count_order_coverage_areas()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.coverage_zone_count := (
+        SELECT COUNT(*)
+        FROM coverage_area ca
+        WHERE NEW.estimated_route IS NOT NULL
+          AND ST_Intersects(NEW.estimated_route, ca.coverageArea)
+    );
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_count_order_coverage_areas
+    BEFORE INSERT OR UPDATE OF estimated_route ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION count_order_coverage_areas();
+
+-- Trigger function: guarda las zonas que cruza la ruta del pedido
+CREATE OR REPLACE FUNCTION link_order_coverage_areas()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' THEN
+DELETE FROM order_coverage_area WHERE order_id = NEW.id;
+END IF;
+
+    IF NEW.estimated_route IS NOT NULL THEN
+        INSERT INTO order_coverage_area (order_id, coverage_id)
+SELECT NEW.id, ca.coverage_id
+FROM coverage_area ca
+WHERE ST_Intersects(NEW.estimated_route, ca.coverageArea);
+END IF;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_link_order_coverage_areas
+    AFTER INSERT OR UPDATE OF estimated_route ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION link_order_coverage_areas();
+
+-- Trigger function: al crear o cambiar una zona, recalcula los pedidos que la cruzaban o la cruzan ahora
+CREATE OR REPLACE FUNCTION relink_coverage_area_orders()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_affected INT[];
+BEGIN
+    SELECT COALESCE(array_agg(order_id), '{}') INTO v_affected
+    FROM order_coverage_area
+    WHERE coverage_id = NEW.coverage_id;
+
+    DELETE FROM order_coverage_area WHERE coverage_id = NEW.coverage_id;
+
+    INSERT INTO order_coverage_area (order_id, coverage_id)
+    SELECT o.id, NEW.coverage_id
+    FROM orders o
+    WHERE ST_Intersects(o.estimated_route, NEW.coverageArea);
+
+    UPDATE orders o
+    SET coverage_zone_count = (SELECT COUNT(*) FROM order_coverage_area oca WHERE oca.order_id = o.id)
+    WHERE o.id = ANY(v_affected)
+       OR o.id IN (SELECT order_id FROM order_coverage_area WHERE coverage_id = NEW.coverage_id);
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_relink_coverage_area_orders
+    AFTER INSERT OR UPDATE OF coverageArea ON coverage_area
+    FOR EACH ROW
+EXECUTE FUNCTION relink_coverage_area_orders();
+
+-- Trigger function: al eliminar una zona, descuenta la zona de los pedidos que la cruzaban
+-- (las filas de order_coverage_area se eliminan en cascada)
+CREATE OR REPLACE FUNCTION unlink_coverage_area_orders()
+RETURNS TRIGGER AS $$
+BEGIN
+UPDATE orders
+SET coverage_zone_count = coverage_zone_count - 1
+WHERE id IN (SELECT order_id FROM order_coverage_area WHERE coverage_id = OLD.coverage_id);
+RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_unlink_coverage_area_orders
+    BEFORE DELETE ON coverage_area
+    FOR EACH ROW
+EXECUTE FUNCTION unlink_coverage_area_orders();
+
+-- Recalcula desde cero las zonas de todos los pedidos (reconciliación).
+-- Devuelve la cantidad de pedidos cuyo conteo cambió.
+CREATE OR REPLACE FUNCTION reconcile_order_coverage_areas()
+RETURNS INT AS $$
+DECLARE
+    v_updated INT;
+BEGIN
+    DELETE FROM order_coverage_area;
+
+    INSERT INTO order_coverage_area (order_id, coverage_id)
+    SELECT o.id, ca.coverage_id
+    FROM orders o
+             JOIN coverage_area ca ON ST_Intersects(o.estimated_route, ca.coverageArea);
+
+    UPDATE orders o
+    SET coverage_zone_count = t.zones
+    FROM (
+        SELECT o2.id, COUNT(oca.coverage_id)::INT AS zones
+        FROM orders o2
+                 LEFT JOIN order_coverage_area oca ON oca.order_id = o2.id
+        GROUP BY o2.id
+    ) t
+    WHERE o.id = t.id
+      AND o.coverage_zone_count <> t.zones;
+
+    GET DIAGNOSTICS v_updated = ROW_COUNT;
+    RETURN v_updated;
+END;
+$$ LANGUAGE plpgsql;
+
+-- ========================
+-- DATOS EXISTENTES
+-- ========================
+SELECT reconcile_company_metrics();
+SELECT reconcile_dealer_performance();
+SELECT reconcile_order_coverage_areas();
@@ -0,0 +1,35 @@
+-- ========================
+-- V3: ÍNDICES
+-- ========================
+-- Índices espaciales, de llaves foráneas y parciales. Los de las rutas y zonas de cobertura
+-- (ix_coverage_area_geom, ix_orders_estimated_route) y ux_orders_dealer_en_proceso se crean en V2.
+
+-- Índices espaciales (GiST) sobre las columnas de geometría
+CREATE INDEX ix_clients_ubication ON clients USING GIST (ubication);
+CREATE INDEX ix_dealers_ubication ON dealers USING GIST (ubication);
+CREATE INDEX ix_companies_ubication ON companies USING GIST (ubication);
+CREATE INDEX ix_emergency_report_ubication ON emergency_report USING GIST (ubication);
+
+-- Índices de expresión sobre geography, para las consultas de distancia en metros (ST_DWithin/ST_Distance con ::geography)
+CREATE INDEX ix_clients_ubication_geog ON clients USING GIST ((ubication::geography));
+CREATE INDEX ix_dealers_ubication_geog ON dealers USING GIST ((ubication::geography));
+CREATE INDEX ix_companies_ubication_geog ON companies USING GIST ((ubication::geography));
+
+-- Índices sobre llaves foráneas y filtros frecuentes
+CREATE INDEX ix_orders_client_id ON orders (client_id);
+CREATE INDEX ix_orders_dealer_status ON orders (dealer_id, status);
+CREATE INDEX ix_orders_status ON orders (status);
+CREATE INDEX ix_products_company_id ON products (company_id);
+CREATE INDEX ix_order_products_product_id ON order_products (product_id);
+CREATE INDEX ix_ratings_dealer_id ON ratings (dealer_id);
+CREATE INDEX ix_ratings_client_id ON ratings (client_id);
+CREATE INDEX ix_ratings_order_id ON ratings (order_id);
+CREATE INDEX ix_emergency_report_order_id ON emergency_report (order_id);
+CREATE INDEX ix_emergency_report_dealer_id ON emergency_report (dealer_id);
+CREATE INDEX ix_coverage_area_company_coverage ON coverage_area_company (coverage_id);
+
+-- Índices parciales
+-- Pedidos pendientes sin repartidor (despacho)
+CREATE INDEX ix_orders_pending ON orders (id) WHERE dealer_id IS NULL AND status IN ('PENDIENTE', 'URGENTE');
+
+ANALYZE;
@@ -0,0 +1,128 @@
+-- ========================
+-- V4: PROXIMIDAD CLIENTE-EMPRESA
+-- ========================
+-- Tabla con la empresa más cercana a cada cliente, mantenida por triggers, para responder las
+-- consultas de clientes lejanos a toda empresa con un rango sobre un índice.
+
+-- Empresa más cercana a cada cliente y su distancia en metros, mantenida por triggers sobre clients y companies.
+-- Permite responder "clientes a más de N metros de toda empresa" con un rango sobre distance_meters.
+-- distance_meters es 'Infinity' si el cliente no tiene ubicación o no hay empresas con ubicación.
+CREATE TABLE client_company_proximity (
+                                          client_id INT PRIMARY KEY,
+                                          nearest_company_id INT,
+                                          distance_meters FLOAT NOT NULL DEFAULT 'Infinity',
+                                          FOREIGN KEY (client_id) REFERENCES clients(id) ON DELETE CASCADE,
+                                          FOREIGN KEY (nearest_company_id) REFERENCES companies(id) ON DELETE SET NULL
+);
+
+CREATE INDEX ix_client_company_proximity_distance ON client_company_proximity (distance_meters);
+
+-- 7. Mantener la empresa más cercana a cada cliente (client_company_proximity).
+-- Recalcula la empresa más cercana de los clientes indicados, opcionalmente ignorando una empresa
+-- (la que se está eliminando). Usa KNN (<->) sobre el índice geography de companies y refina los
+-- primeros candidatos con ST_Distance sobre el esferoide. Devuelve la cantidad de filas que cambiaron.
+CREATE OR REPLACE FUNCTION refresh_client_company_proximity(p_client_ids INT[], p_excluded_company_id INT DEFAULT NULL)
+RETURNS INT AS $$
+DECLARE
+    v_updated INT;
+BEGIN
+    INSERT INTO client_company_proximity AS p (client_id, nearest_company_id, distance_meters)
+    SELECT c.id, nearest.id, COALESCE(nearest.distance_meters, 'Infinity')
+    FROM clients c
+             LEFT JOIN LATERAL (
+        SELECT cand.id, ST_Distance(c.ubication::geography, cand.ubication::geography) AS distance_meters
+        FROM (
+                 SELECT co.id, co.ubication
+                 FROM companies co
+                 WHERE c.ubication IS NOT NULL
+                   AND co.ubication IS NOT NULL
+                   AND co.id IS DISTINCT FROM p_excluded_company_id
+                 ORDER BY co.ubication::geography <-> c.ubication::geography
+                 LIMIT 4
+             ) cand
+        ORDER BY distance_meters
+        LIMIT 1
+        ) nearest ON TRUE
+    WHERE c.id = ANY(p_client_ids)
+    ORDER BY c.id
+    ON CONFLICT (client_id) DO UPDATE
+        SET nearest_company_id = EXCLUDED.nearest_company_id,
+            distance_meters = EXCLUDED.distance_meters
+    WHERE p.nearest_company_id IS DISTINCT FROM EXCLUDED.nearest_company_id
+       OR p.distance_meters <> EXCLUDED.distance_meters;
+
+    GET DIAGNOSTICS v_updated = ROW_COUNT;
+    RETURN v_updated;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger function: al crear un cliente o cambiar su ubicación, recalcula su empresa más cercana
+CREATE OR REPLACE FUNCTION update_client_proximity_on_client_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM refresh_client_company_proximity(ARRAY[NEW.id]);
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_client_proximity_on_client
+    AFTER INSERT OR UPDATE OF ubication ON clients
+    FOR EACH ROW
+EXECUTE FUNCTION update_client_proximity_on_client_change();
+
+-- Trigger function: al crear una empresa o cambiar su ubicación, recalcula solo los clientes que
+-- la tenían como más cercana o que ahora quedan más cerca de ella que de su empresa actual
+CREATE OR REPLACE FUNCTION update_client_proximity_on_company_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM refresh_client_company_proximity(ARRAY(
+        SELECT p.client_id
+        FROM client_company_proximity p
+                 JOIN clients c ON c.id = p.client_id
+        WHERE (TG_OP = 'UPDATE' AND p.nearest_company_id = NEW.id)
+           OR (NEW.ubication IS NOT NULL
+               AND c.ubication IS NOT NULL
+               AND (p.distance_meters = 'Infinity'
+                    OR ST_DWithin(c.ubication::geography, NEW.ubication::geography, p.distance_meters)))
+    ));
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_client_proximity_on_company
+    AFTER INSERT OR UPDATE OF ubication ON companies
+    FOR EACH ROW
+EXECUTE FUNCTION update_client_proximity_on_company_change();
+
+-- Trigger function: antes de eliminar una empresa, reasigna sus clientes a la siguiente más cercana
+CREATE OR REPLACE FUNCTION update_client_proximity_on_company_delete()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM refresh_client_company_proximity(ARRAY(
+        SELECT client_id FROM client_company_proximity WHERE nearest_company_id = OLD.id
+    ), OLD.id);
+RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_client_proximity_on_company_delete
+    BEFORE DELETE ON companies
+    FOR EACH ROW
+EXECUTE FUNCTION update_client_proximity_on_company_delete();
+
+-- Recalcula desde cero la empresa más cercana de todos los clientes (reconciliación).
+-- Devuelve la cantidad de clientes cuya fila cambió.
+CREATE OR REPLACE FUNCTION reconcile_client_company_proximity()
+RETURNS INT AS $$
+BEGIN
+    RETURN refresh_client_company_proximity(ARRAY(SELECT id FROM clients));
+END;
+$$ LANGUAGE plpgsql;
+
+-- Carga inicial para las bases de datos existentes
+SELECT reconcile_client_company_proximity();
+
+ANALYZE client_company_proximity;
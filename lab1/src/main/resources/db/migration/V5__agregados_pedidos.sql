@@ -0,0 +1,240 @@
+-- ========================
+-- V5: AGREGADOS DE PEDIDOS
+-- ========================
+-- Largo de la ruta de cada pedido (calculado una vez) y agregados diarios/mensuales por repartidor,
+-- empresa y cliente, para que los reportes no recorran ni midan todas las rutas en cada consulta.
+
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS route_length_meters FLOAT; -- Largo de la ruta estimada en metros (mantenido por triggers)
+
+-- Índice para filtrar pedidos por rango de fechas (por ejemplo, pedidos de un mes)
+CREATE INDEX IF NOT EXISTS ix_orders_order_date ON orders (order_date);
+
+-- Agregados diarios de pedidos por repartidor, empresa y cliente, mantenidos por triggers sobre orders y order_products.
+-- Cada pedido suma en el día de su entrega si está ENTREGADO (o de su fecha de pedido si no tiene fecha de entrega),
+-- y en el día de su fecha de pedido en cualquier otro estado.
+CREATE TABLE order_rollup_daily (
+                                    scope VARCHAR(10) NOT NULL,             -- 'DEALER', 'COMPANY' o 'CLIENT'
+                                    scope_id INT NOT NULL,                  -- ID del repartidor, empresa o cliente
+                                    bucket_date DATE NOT NULL,
+                                    status VARCHAR(50) NOT NULL,
+                                    order_count INT NOT NULL DEFAULT 0,
+                                    revenue FLOAT NOT NULL DEFAULT 0,       -- Suma de total_price
+                                    distance_meters FLOAT NOT NULL DEFAULT 0, -- Suma de route_length_meters
+                                    PRIMARY KEY (scope, scope_id, bucket_date, status)
+);
+
+CREATE INDEX ix_order_rollup_daily_bucket ON order_rollup_daily (scope, bucket_date);
+
+-- Agregados mensuales (suma de los diarios)
+CREATE VIEW order_rollup_monthly AS
+SELECT scope,
+       scope_id,
+       date_trunc('month', bucket_date)::DATE AS bucket_month,
+       status,
+       SUM(order_count)::INT AS order_count,
+       SUM(revenue) AS revenue,
+       SUM(distance_meters) AS distance_meters
+FROM order_rollup_daily
+GROUP BY scope, scope_id, date_trunc('month', bucket_date), status;
+
+-- 8. Largo de la ruta de cada pedido y agregados diarios (order_rollup_daily).
+-- Trigger function: calcula el largo de la ruta en metros una sola vez, al guardar la ruta
+CREATE OR REPLACE FUNCTION set_order_route_length()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.route_length_meters := CASE
+        WHEN NEW.estimated_route IS NULL THEN NULL
+        ELSE ST_Length(NEW.estimated_route::geography)
+    END;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_set_order_route_length
+    BEFORE INSERT OR UPDATE OF estimated_route ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION set_order_route_length();
+
+-- Suma (p_sign = 1) o resta (p_sign = -1) un pedido en los agregados.
+-- Sin p_company_id se aplica al repartidor, al cliente y a las empresas de sus productos;
+-- con p_company_id se aplica solo a esa empresa.
+CREATE OR REPLACE FUNCTION apply_order_rollup(p_order orders, p_sign INT, p_company_id INT DEFAULT NULL)
+RETURNS VOID AS $$
+DECLARE
+    v_bucket DATE;
+BEGIN
+    v_bucket := (CASE
+        WHEN p_order.status = 'ENTREGADO' THEN COALESCE(p_order.delivery_date, p_order.order_date)
+        ELSE p_order.order_date
+    END)::DATE;
+    IF v_bucket IS NULL THEN
+        RETURN;
+END IF;
+
+    INSERT INTO order_rollup_daily AS r (scope, scope_id, bucket_date, status, order_count, revenue, distance_meters)
+    SELECT s.scope, s.scope_id, v_bucket, COALESCE(p_order.status, 'SIN ESTADO'),
+           p_sign, p_sign * COALESCE(p_order.total_price, 0), p_sign * COALESCE(p_order.route_length_meters, 0)
+    FROM (
+             SELECT 'DEALER' AS scope, p_order.dealer_id AS scope_id WHERE p_company_id IS NULL
+             UNION ALL
+             SELECT 'CLIENT', p_order.client_id WHERE p_company_id IS NULL
+             UNION ALL
+             SELECT DISTINCT 'COMPANY', p.company_id
+             FROM order_products op
+                      JOIN products p ON p.id = op.product_id
+             WHERE p_company_id IS NULL AND op.order_id = p_order.id
+             UNION ALL
+             SELECT 'COMPANY', p_company_id WHERE p_company_id IS NOT NULL
+         ) s
+    WHERE s.scope_id IS NOT NULL
+    ORDER BY s.scope, s.scope_id
+    ON CONFLICT (scope, scope_id, bucket_date, status) DO UPDATE
+        SET order_count = r.order_count + EXCLUDED.order_count,
+            revenue = r.revenue + EXCLUDED.revenue,
+            distance_meters = r.distance_meters + EXCLUDED.distance_meters;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger function: al crear, modificar o eliminar un pedido, mueve su aporte en los agregados
+CREATE OR REPLACE FUNCTION update_order_rollup_on_order_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM apply_order_rollup(OLD, -1);
+END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM apply_order_rollup(NEW, 1);
+END IF;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_order_rollup_on_order
+    AFTER INSERT OR DELETE ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION update_order_rollup_on_order_change();
+
+CREATE TRIGGER trg_update_order_rollup_on_order_update
+    AFTER UPDATE ON orders
+    FOR EACH ROW
+    WHEN (OLD.status IS DISTINCT FROM NEW.status
+        OR OLD.order_date IS DISTINCT FROM NEW.order_date
+        OR OLD.delivery_date IS DISTINCT FROM NEW.delivery_date
+        OR OLD.total_price IS DISTINCT FROM NEW.total_price
+        OR OLD.route_length_meters IS DISTINCT FROM NEW.route_length_meters
+        OR OLD.dealer_id IS DISTINCT FROM NEW.dealer_id
+        OR OLD.client_id IS DISTINCT FROM NEW.client_id)
+EXECUTE FUNCTION update_order_rollup_on_order_change();
+
+-- Trigger function: al agregar productos a un pedido, suma el pedido a las empresas que aparecen por primera vez en él
+-- (a nivel de sentencia, para contar una sola vez cada empresa aunque se inserten varios productos a la vez)
+CREATE OR REPLACE FUNCTION link_order_rollup_companies()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM apply_order_rollup(o, 1, t.company_id)
+    FROM (
+             SELECT DISTINCT nr.order_id, p.company_id
+             FROM new_rows nr
+                      JOIN products p ON p.id = nr.product_id
+         ) t
+             JOIN orders o ON o.id = t.order_id
+    WHERE NOT EXISTS (
+        SELECT 1
+        FROM order_products op
+                 JOIN products p2 ON p2.id = op.product_id
+        WHERE op.order_id = t.order_id
+          AND p2.company_id = t.company_id
+          AND op.product_id NOT IN (SELECT nr2.product_id FROM new_rows nr2 WHERE nr2.order_id = t.order_id)
+    )
+    ORDER BY t.order_id, t.company_id;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_link_order_rollup_companies
+    AFTER INSERT ON order_products
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION link_order_rollup_companies();
+
+-- Trigger function: al quitar productos de un pedido, resta el pedido de las empresas que ya no tienen productos en él
+CREATE OR REPLACE FUNCTION unlink_order_rollup_companies()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM apply_order_rollup(o, -1, t.company_id)
+    FROM (
+             SELECT DISTINCT orr.order_id, p.company_id
+             FROM old_rows orr
+                      JOIN products p ON p.id = orr.product_id
+         ) t
+             JOIN orders o ON o.id = t.order_id
+    WHERE NOT EXISTS (
+        SELECT 1
+        FROM order_products op
+                 JOIN products p2 ON p2.id = op.product_id
+        WHERE op.order_id = t.order_id
+          AND p2.company_id = t.company_id
+    )
+    ORDER BY t.order_id, t.company_id;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_unlink_order_rollup_companies
+    AFTER DELETE ON order_products
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION unlink_order_rollup_companies();
+
+-- Recalcula desde cero el largo de las rutas y los agregados diarios (reconciliación).
+-- Devuelve la cantidad de filas de agregados.
+CREATE OR REPLACE FUNCTION reconcile_order_rollups()
+RETURNS INT AS $$
+DECLARE
+    v_rows INT;
+BEGIN
+    UPDATE orders
+    SET route_length_meters = ST_Length(estimated_route::geography)
+    WHERE estimated_route IS NOT NULL
+      AND route_length_meters IS NULL;
+
+    DELETE FROM order_rollup_daily;
+
+    INSERT INTO order_rollup_daily (scope, scope_id, bucket_date, status, order_count, revenue, distance_meters)
+    SELECT s.scope, s.scope_id, b.bucket_date, COALESCE(o.status, 'SIN ESTADO'),
+           COUNT(*)::INT, SUM(COALESCE(o.total_price, 0)), SUM(COALESCE(o.route_length_meters, 0))
+    FROM orders o
+             CROSS JOIN LATERAL (
+        SELECT (CASE
+                    WHEN o.status = 'ENTREGADO' THEN COALESCE(o.delivery_date, o.order_date)
+                    ELSE o.order_date
+                END)::DATE AS bucket_date
+        ) b
+             CROSS JOIN LATERAL (
+        SELECT 'DEALER'::VARCHAR AS scope, o.dealer_id AS scope_id
+        UNION ALL
+        SELECT 'CLIENT', o.client_id
+        UNION ALL
+        SELECT DISTINCT 'COMPANY', p.company_id
+        FROM order_products op
+                 JOIN products p ON p.id = op.product_id
+        WHERE op.order_id = o.id
+        ) s
+    WHERE b.bucket_date IS NOT NULL
+      AND s.scope_id IS NOT NULL
+    GROUP BY s.scope, s.scope_id, b.bucket_date, COALESCE(o.status, 'SIN ESTADO');
+
+    GET DIAGNOSTICS v_rows = ROW_COUNT;
+    RETURN v_rows;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Carga inicial para las bases de datos existentes
+SELECT reconcile_order_rollups();
+
+ANALYZE orders;
+ANALYZE order_rollup_daily;
@@ -0,0 +1,31 @@
+-- ========================
+-- V6: LOTES DE REPARTO
+-- ========================
+-- Un lote agrupa pedidos pendientes cercanos para un mismo repartidor, con una ruta de varias paradas:
+-- primero los retiros (empresas) y luego las entregas (clientes), en el orden calculado por el backend.
+-- El repartidor sigue teniendo a lo sumo un pedido EN PROCESO: el resto de los pedidos del lote queda
+-- asignado en estado PENDIENTE/URGENTE y pasa a EN PROCESO al terminar el anterior.
+
+CREATE TABLE dealer_batch (
+                              id SERIAL PRIMARY KEY,
+                              dealer_id INT NOT NULL,
+                              created_at TIMESTAMP NOT NULL DEFAULT now(),
+                              route geometry(LineString, 4326) NOT NULL,  -- Ruta completa: repartidor, retiros y entregas
+                              distance_meters FLOAT NOT NULL,             -- Largo de la ruta (haversine)
+                              FOREIGN KEY (dealer_id) REFERENCES dealers(id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_dealer_batch_dealer ON dealer_batch (dealer_id, created_at DESC);
+
+-- Paradas de cada pedido del lote: posición de su retiro y de su entrega en la ruta
+CREATE TABLE dealer_batch_stop (
+                                   batch_id INT NOT NULL,
+                                   order_id INT NOT NULL,
+                                   pickup_seq INT NOT NULL,
+                                   delivery_seq INT NOT NULL,
+                                   PRIMARY KEY (batch_id, order_id),
+                                   FOREIGN KEY (batch_id) REFERENCES dealer_batch(id) ON DELETE CASCADE,
+                                   FOREIGN KEY (order_id) REFERENCES orders(id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_dealer_batch_stop_order ON dealer_batch_stop (order_id);
@@ -0,0 +1,54 @@
+-- ========================
+-- V7: VERSIÓN DE LOS PEDIDOS
+-- ========================
+-- Control de concurrencia optimista de los cambios de estado: cada cambio de estado o de repartidor
+-- aumenta la versión del pedido, de modo que una actualización condicionada a una versión anterior no
+-- sobrescribe un cambio concurrente (por ejemplo, dos toques de "entregado" del mismo repartidor).
+
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0; -- Aumenta con cada cambio de estado o de repartidor (mantenido por trigger)
+
+CREATE OR REPLACE FUNCTION bump_order_version()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.version := OLD.version + 1;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_bump_order_version
+    BEFORE UPDATE OF status, dealer_id ON orders
+    FOR EACH ROW
+    WHEN (OLD.status IS DISTINCT FROM NEW.status OR OLD.dealer_id IS DISTINCT FROM NEW.dealer_id)
+EXECUTE FUNCTION bump_order_version();
+
+-- Cambiar el estado de un pedido con una sola sentencia condicional (antes leía el estado y luego actualizaba,
+-- por lo que dos llamadas concurrentes podían finalizar el mismo pedido dos veces)
+CREATE OR REPLACE PROCEDURE change_order_status(
+    p_order_id INT,
+    p_new_status VARCHAR,
+    p_delivery_date TIMESTAMP DEFAULT NULL
+)
+LANGUAGE plpgsql
+AS $$
+DECLARE
+v_current_status VARCHAR;
+BEGIN
+UPDATE orders
+SET status = p_new_status,
+    delivery_date = CASE WHEN p_new_status = 'ENTREGADO' THEN COALESCE(p_delivery_date, NOW()) ELSE delivery_date END
+WHERE id = p_order_id
+  AND status IS DISTINCT FROM 'ENTREGADO'
+  AND status IS DISTINCT FROM 'FALLIDA';
+
+IF NOT FOUND THEN
+SELECT status INTO v_current_status
+FROM orders
+WHERE id = p_order_id;
+
+IF NOT FOUND THEN
+            RAISE EXCEPTION 'Pedido con ID % no existe', p_order_id;
+END IF;
+        RAISE EXCEPTION 'El pedido ya ha sido finalizado con estado %', v_current_status;
+END IF;
+END;
+$$;
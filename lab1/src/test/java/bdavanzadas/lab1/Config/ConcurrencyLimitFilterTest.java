@@ -0,0 +1,95 @@
+package bdavanzadas.lab1.Config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitFilterTest {
+
+	private ConcurrencyLimitFilter concurrencyLimitFilter;
+
+	@BeforeEach
+	void setUp() {
+		concurrencyLimitFilter = new ConcurrencyLimitFilter();
+		ReflectionTestUtils.setField(concurrencyLimitFilter, "pools", List.of());
+		ReflectionTestUtils.setField(concurrencyLimitFilter, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(concurrencyLimitFilter, "maxConcurrent", 2);
+		ReflectionTestUtils.setField(concurrencyLimitFilter, "streamingMaxConcurrent", 1);
+		ReflectionTestUtils.setField(concurrencyLimitFilter, "queueTimeoutMs", 0L);
+		concurrencyLimitFilter.init();
+	}
+
+	@Test
+	void streamingRequestsAreDetectedByPath() {
+		assertTrue(ConcurrencyLimitFilter.isStreaming(get("/orders/stream")));
+		assertTrue(ConcurrencyLimitFilter.isStreaming(get("/dealers/geojson")));
+		assertTrue(ConcurrencyLimitFilter.isStreaming(get("/orders/routes/geojson")));
+		assertFalse(ConcurrencyLimitFilter.isStreaming(get("/orders/1")));
+	}
+
+	@Test
+	void openStreamDoesNotBlockShortRequests() throws Exception {
+		int[] statuses = new int[2];
+
+		// Mientras la descarga sigue abierta, una solicitud corta pasa y otra descarga espera (503)
+		int status = filter("/orders/stream", () -> {
+			statuses[0] = filter("/orders/1", () -> { });
+			statuses[1] = filter("/dealers/geojson", () -> { });
+		});
+
+		assertEquals(200, status);
+		assertEquals(200, statuses[0]);
+		assertEquals(503, statuses[1]);
+	}
+
+	@Test
+	void shortRequestsUseTheirOwnPermits() throws Exception {
+		int[] statuses = new int[2];
+
+		int status = filter("/orders/1", () -> {
+			statuses[0] = filter("/orders/2", () -> { });
+			statuses[1] = filter("/orders/stream", () -> { });
+		});
+
+		assertEquals(200, status);
+		assertEquals(503, statuses[0]);
+		assertEquals(200, statuses[1]);
+	}
+
+	@Test
+	void permitIsReleasedAfterTheRequest() throws Exception {
+		assertEquals(200, filter("/orders/stream", () -> { }));
+		assertEquals(200, filter("/orders/stream", () -> { }));
+	}
+
+	private int filter(String uri, Body body) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		FilterChain chain = (request, ignored) -> {
+			try {
+				body.run();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		};
+		concurrencyLimitFilter.doFilter(get(uri), response, chain);
+		return response.getStatus();
+	}
+
+	private static MockHttpServletRequest get(String uri) {
+		return new MockHttpServletRequest("GET", uri);
+	}
+
+	private interface Body {
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,63 @@
+package bdavanzadas.lab1.Config;
+
+import bdavanzadas.lab1.dtos.MapFeatureDTO;
+import bdavanzadas.lab1.entities.GeometryValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeoJsonWriterTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private GeoJsonWriter geoJsonWriter;
+
+	@BeforeEach
+	void setUp() {
+		geoJsonWriter = new GeoJsonWriter();
+		ReflectionTestUtils.setField(geoJsonWriter, "objectMapper", objectMapper);
+	}
+
+	@Test
+	void writesFeatureCollection() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		geoJsonWriter.write(response, 4, consumer -> {
+			consumer.accept(feature(1));
+			consumer.accept(feature(2));
+		});
+
+		JsonNode json = objectMapper.readTree(response.getContentAsString());
+		assertEquals("FeatureCollection", json.get("type").asText());
+		assertEquals(2, json.get("features").size());
+		assertEquals("[-70.6483,-33.4372]", json.get("features").get(0).get("geometry").get("coordinates").toString());
+	}
+
+	@Test
+	void failedStreamIsNotValidJson() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		assertThrows(IllegalStateException.class, () -> geoJsonWriter.write(response, 4, consumer -> {
+			consumer.accept(feature(1));
+			throw new IllegalStateException("Falló la consulta");
+		}));
+
+		String body = response.getContentAsString();
+		assertTrue(body.startsWith("{\"type\":\"FeatureCollection\",\"features\":[{"), body);
+		assertThrows(JsonProcessingException.class, () -> objectMapper.readTree(body));
+	}
+
+	private static MapFeatureDTO feature(int id) {
+		return new MapFeatureDTO(id, GeometryValue.fromWkt("POINT(-70.6483 -33.4372)"), Map.of("name", "Repartidor " + id));
+	}
+}
@@ -0,0 +1,95 @@
+package bdavanzadas.lab1.Security;
+
+import bdavanzadas.lab1.repositories.ClientRepository;
+import bdavanzadas.lab1.repositories.DealerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActorIdentityCacheTest {
+
+	private final ClientRepository clientRepository = mock(ClientRepository.class);
+	private final DealerRepository dealerRepository = mock(DealerRepository.class);
+
+	private ActorIdentityCache actorIdentityCache;
+
+	@BeforeEach
+	void setUp() {
+		actorIdentityCache = new ActorIdentityCache();
+		ReflectionTestUtils.setField(actorIdentityCache, "clientRepository", clientRepository);
+		ReflectionTestUtils.setField(actorIdentityCache, "dealerRepository", dealerRepository);
+		ReflectionTestUtils.setField(actorIdentityCache, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(actorIdentityCache, "maxEntries", 100L);
+		actorIdentityCache.init();
+	}
+
+	@Test
+	void queriesOncePerUser() {
+		when(clientRepository.findIdByUserId(1L)).thenReturn(10);
+
+		assertEquals(10, actorIdentityCache.getClientId(1L));
+		assertEquals(10, actorIdentityCache.getClientId(1L));
+		verify(clientRepository, times(1)).findIdByUserId(1L);
+	}
+
+	@Test
+	void missingIdIsNotCached() {
+		when(dealerRepository.findIdByUserId(2L)).thenReturn(null, 20);
+
+		assertNull(actorIdentityCache.getDealerId(2L));
+		assertEquals(20, actorIdentityCache.getDealerId(2L));
+	}
+
+	@Test
+	void invalidateClientById() {
+		when(clientRepository.findIdByUserId(1L)).thenReturn(10, 11);
+		actorIdentityCache.getClientId(1L);
+
+		actorIdentityCache.invalidateClient(10);
+
+		assertEquals(11, actorIdentityCache.getClientId(1L));
+	}
+
+	@Test
+	void invalidateDealerById() {
+		when(dealerRepository.findIdByUserId(2L)).thenReturn(20, 21);
+		actorIdentityCache.getDealerId(2L);
+
+		actorIdentityCache.invalidateDealer(20);
+
+		assertEquals(21, actorIdentityCache.getDealerId(2L));
+	}
+
+	@Test
+	void invalidateUser() {
+		when(clientRepository.findIdByUserId(1L)).thenReturn(10, 12);
+		actorIdentityCache.getClientId(1L);
+
+		actorIdentityCache.invalidateUser(1L);
+
+		assertEquals(12, actorIdentityCache.getClientId(1L));
+		// La relación inversa anterior ya no existe: invalidar el cliente 10 no descarta al usuario
+		actorIdentityCache.invalidateClient(10);
+		assertEquals(12, actorIdentityCache.getClientId(1L));
+		verify(clientRepository, times(2)).findIdByUserId(1L);
+	}
+
+	@Test
+	void idReadDuringInvalidationIsNotCached() {
+		when(clientRepository.findIdByUserId(1L)).thenAnswer(invocation -> {
+			actorIdentityCache.invalidateClient(10); // El cliente se elimina mientras se consulta
+			return 10;
+		}).thenReturn(11);
+
+		assertEquals(10, actorIdentityCache.getClientId(1L));
+		assertEquals(11, actorIdentityCache.getClientId(1L));
+	}
+}
@@ -0,0 +1,24 @@
+package bdavanzadas.lab1.entities;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GeometryValueTest {
+
+	@Test
+	void wktMatchesPostgisAsText() {
+		assertEquals("LINESTRING(-70.65 -33.45,-70.6 -33.4)", roundTrip("LINESTRING (-70.65 -33.45, -70.6 -33.4)"));
+		assertEquals("POINT(-70.6483 -33.4372)", roundTrip("POINT (-70.6483 -33.4372)"));
+		assertEquals("POLYGON((0 0,1 0,1 1,0 0),(0.1 0.1,0.2 0.1,0.2 0.2,0.1 0.1))",
+				roundTrip("POLYGON ((0 0, 1 0, 1 1, 0 0), (0.1 0.1, 0.2 0.1, 0.2 0.2, 0.1 0.1))"));
+		assertEquals("GEOMETRYCOLLECTION(POINT(1 2),LINESTRING(0 0,1 1))",
+				roundTrip("GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (0 0, 1 1))"));
+		assertEquals("LINESTRING EMPTY", roundTrip("LINESTRING EMPTY"));
+	}
+
+	private static String roundTrip(String wkt) {
+		// Como al leer de la base de datos: solo los bytes, sin el texto original
+		return GeometryValue.fromWkb(GeometryValue.fromWkt(wkt).toEwkb()).toWkt();
+	}
+}
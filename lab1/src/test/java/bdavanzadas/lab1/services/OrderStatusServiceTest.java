@@ -0,0 +1,152 @@
+package bdavanzadas.lab1.services;
+
+import bdavanzadas.lab1.dtos.OrderStatusChangeDTO;
+import bdavanzadas.lab1.repositories.DealerBatchRepository;
+import bdavanzadas.lab1.repositories.OrdersRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.Date;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderStatusServiceTest {
+
+	@Mock
+	private OrdersRepository ordersRepository;
+
+	@Mock
+	private DealerBatchRepository dealerBatchRepository;
+
+	@InjectMocks
+	private OrderStatusService orderStatusService;
+
+	@Test
+	void transitionTable() {
+		assertEquals(Set.of("PENDIENTE"), OrderStatusService.ALLOWED_FROM.get("URGENTE"));
+		assertEquals(Set.of("PENDIENTE", "URGENTE", "EN PROCESO"), OrderStatusService.ALLOWED_FROM.get("ENTREGADO"));
+		assertEquals(Set.of("PENDIENTE", "URGENTE", "EN PROCESO"), OrderStatusService.ALLOWED_FROM.get("FALLIDA"));
+		assertNull(OrderStatusService.ALLOWED_FROM.get("PENDIENTE"));
+		assertNull(OrderStatusService.ALLOWED_FROM.get("EN PROCESO"));
+
+		assertEquals(Set.of("EN PROCESO"), OrderStatusService.DEALER_ALLOWED_FROM.get("ENTREGADO"));
+		assertEquals(Set.of("EN PROCESO"), OrderStatusService.DEALER_ALLOWED_FROM.get("FALLIDA"));
+		assertNull(OrderStatusService.DEALER_ALLOWED_FROM.get("URGENTE"));
+	}
+
+	@Test
+	void dealerTransitionOnlyFromEnProceso() {
+		OrderStatusChangeDTO changed = status("ENTREGADO", 7, 3);
+		when(ordersRepository.transitionStatus(eq(1), eq("ENTREGADO"), any(), eq(7), isNull(), any(), eq(true)))
+				.thenReturn(changed);
+
+		assertSame(changed, orderStatusService.transition(1, " entregado ", 7, null, null));
+
+		ArgumentCaptor<String[]> from = ArgumentCaptor.forClass(String[].class);
+		verify(ordersRepository).transitionStatus(eq(1), eq("ENTREGADO"), from.capture(), eq(7), isNull(), any(), eq(true));
+		assertEquals(Set.of("EN PROCESO"), Set.of(from.getValue()));
+		verify(dealerBatchRepository).startNextStop(1);
+	}
+
+	@Test
+	void adminTransitionKeepsWiderTable() {
+		when(ordersRepository.transitionStatus(eq(1), eq("FALLIDA"), any(), isNull(), isNull(), isNull(), eq(false)))
+				.thenReturn(status("FALLIDA", null, 2));
+
+		orderStatusService.transition(1, "FALLIDA", null, null, null);
+
+		ArgumentCaptor<String[]> from = ArgumentCaptor.forClass(String[].class);
+		verify(ordersRepository).transitionStatus(eq(1), eq("FALLIDA"), from.capture(), isNull(), isNull(), isNull(), eq(false));
+		assertEquals(Set.of("PENDIENTE", "URGENTE", "EN PROCESO"), Set.of(from.getValue()));
+	}
+
+	@Test
+	void dealerCannotMarkUrgent() {
+		assertThrows(IllegalArgumentException.class, () -> orderStatusService.transition(1, "URGENTE", 7, null, null));
+		verify(ordersRepository, never()).transitionStatus(anyInt(), anyString(), any(), any(), any(), any(), anyBoolean());
+	}
+
+	@Test
+	void invalidStatus() {
+		assertThrows(IllegalArgumentException.class, () -> orderStatusService.transition(1, "EN PROCESO", null, null, null));
+		assertThrows(IllegalArgumentException.class, () -> orderStatusService.transition(1, " ", null, null, null));
+	}
+
+	@Test
+	void doubleTapIsIdempotent() {
+		OrderStatusChangeDTO delivered = status("ENTREGADO", 7, 4);
+		when(ordersRepository.transitionStatus(eq(1), eq("ENTREGADO"), any(), eq(7), eq(3), any(), eq(true)))
+				.thenReturn(null);
+		when(ordersRepository.findStatusById(1)).thenReturn(delivered);
+
+		assertSame(delivered, orderStatusService.transition(1, "ENTREGADO", 7, 3, new Date()));
+		verify(dealerBatchRepository, never()).startNextStop(anyInt());
+	}
+
+	@Test
+	void unknownOrder() {
+		when(ordersRepository.findStatusById(1)).thenReturn(null);
+
+		assertThrows(IllegalArgumentException.class, () -> orderStatusService.transition(1, "ENTREGADO", 7, null, null));
+	}
+
+	@Test
+	void orderOfAnotherDealerIsForbidden() {
+		when(ordersRepository.findStatusById(1)).thenReturn(status("EN PROCESO", 8, 2));
+
+		assertThrows(SecurityException.class, () -> orderStatusService.transition(1, "ENTREGADO", 7, null, null));
+	}
+
+	@Test
+	void unassignedOrderIsForbiddenForDealer() {
+		when(ordersRepository.findStatusById(1)).thenReturn(status("PENDIENTE", null, 0));
+
+		assertThrows(SecurityException.class, () -> orderStatusService.transition(1, "FALLIDA", 7, null, null));
+	}
+
+	@Test
+	void finishedOrderConflicts() {
+		when(ordersRepository.findStatusById(1)).thenReturn(status("FALLIDA", 7, 3));
+
+		assertThrows(IllegalStateException.class, () -> orderStatusService.transition(1, "ENTREGADO", 7, null, null));
+	}
+
+	@Test
+	void batchOrderWaitingItsTurnConflictsForDealer() {
+		when(ordersRepository.findStatusById(1)).thenReturn(status("PENDIENTE", 7, 1));
+
+		assertThrows(IllegalStateException.class, () -> orderStatusService.transition(1, "ENTREGADO", 7, null, null));
+	}
+
+	@Test
+	void versionMismatch() {
+		when(ordersRepository.findStatusById(1)).thenReturn(status("EN PROCESO", 7, 5));
+
+		OptimisticLockingFailureException e = assertThrows(OptimisticLockingFailureException.class,
+				() -> orderStatusService.transition(1, "ENTREGADO", 7, 4, null));
+		assertEquals("El pedido con ID 1 fue modificado (versión actual 5, esperada 4)", e.getMessage());
+	}
+
+	private static OrderStatusChangeDTO status(String status, Integer dealerId, int version) {
+		return new OrderStatusChangeDTO(1, status, dealerId, null, version);
+	}
+}
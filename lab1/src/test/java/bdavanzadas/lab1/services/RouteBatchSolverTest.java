@@ -0,0 +1,193 @@
+package bdavanzadas.lab1.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteBatchSolverTest {
+
+	private static final double[] START = {-70.6483, -33.4372};
+
+	@Test
+	void everyStopIsVisitedOnce() {
+		Random random = new Random(7);
+		for (int n = 1; n <= 20; n++) {
+			double[][] pickups = randomPoints(random, n, -70.60, -33.42, 0.03);
+			double[][] dropoffs = randomPoints(random, n, -70.57, -33.40, 0.1);
+
+			RouteBatchSolver.Solution solution = RouteBatchSolver.solve(START, pickups, dropoffs);
+
+			assertPermutation(n, solution.pickupOrder());
+			assertPermutation(n, solution.dropoffOrder());
+		}
+	}
+
+	@Test
+	void pickupsComeBeforeDropoffs() {
+		Random random = new Random(11);
+		double[][] pickups = randomPoints(random, 8, -70.60, -33.42, 0.03);
+		double[][] dropoffs = randomPoints(random, 8, -70.57, -33.40, 0.1);
+
+		RouteBatchSolver.Solution solution = RouteBatchSolver.solve(START, pickups, dropoffs);
+
+		// El largo informado es el de: inicio, todos los retiros y luego todas las entregas
+		assertEquals(pathLength(START, pickups, solution.pickupOrder(), dropoffs, solution.dropoffOrder()),
+				solution.distanceMeters(), 1e-6);
+		// Las entregas se ordenan desde el último retiro
+		double[] lastPickup = pickups[solution.pickupOrder()[pickups.length - 1]];
+		assertArrayEquals(RouteBatchSolver.openPath(lastPickup, dropoffs), solution.dropoffOrder());
+	}
+
+	@Test
+	void pickupsComeBeforeDropoffsEvenWhenADropoffIsCloser() {
+		// La entrega está junto al repartidor y el retiro lejos: igual se retira primero
+		double[][] pickups = {{-70.55, -33.40}};
+		double[][] dropoffs = {{-70.6484, -33.4373}};
+
+		RouteBatchSolver.Solution solution = RouteBatchSolver.solve(START, pickups, dropoffs);
+
+		assertEquals(distance(START, pickups[0]) + distance(pickups[0], dropoffs[0]), solution.distanceMeters(), 1e-6);
+	}
+
+	@Test
+	void twoOptNeverLengthensNearestNeighbour() {
+		Random random = new Random(42);
+		for (int run = 0; run < 200; run++) {
+			int n = 2 + random.nextInt(25);
+			double[][] points = randomPoints(random, n, -70.60, -33.42, 0.1);
+
+			int[] improved = RouteBatchSolver.openPath(START, points);
+
+			assertPermutation(n, improved);
+			assertTrue(openPathLength(START, points, improved) <= openPathLength(START, points, nearestNeighbour(START, points)) + 1e-6,
+					"run " + run);
+		}
+	}
+
+	@Test
+	void twoOptRemovesCrossing() {
+		// Vecino más cercano: 0, 1, 2, 3 con un cruce; 2-opt lo deshace
+		double[] start = {0, 0};
+		double[][] points = {{0.010, 0}, {0.011, 0.010}, {0.021, 0}, {0.001, 0.010}};
+
+		int[] path = RouteBatchSolver.openPath(start, points);
+
+		assertTrue(openPathLength(start, points, path) < openPathLength(start, points, nearestNeighbour(start, points)));
+	}
+
+	@Test
+	void emptyBatch() {
+		RouteBatchSolver.Solution solution = RouteBatchSolver.solve(START, new double[0][], new double[0][]);
+
+		assertEquals(0, solution.pickupOrder().length);
+		assertEquals(0, solution.dropoffOrder().length);
+		assertEquals(0, solution.distanceMeters());
+	}
+
+	@Test
+	void noPickupsStartsDropoffsFromDealer() {
+		double[][] dropoffs = {{-70.60, -33.40}, {-70.64, -33.43}};
+
+		RouteBatchSolver.Solution solution = RouteBatchSolver.solve(START, new double[0][], dropoffs);
+
+		assertArrayEquals(new int[]{1, 0}, solution.dropoffOrder());
+		assertEquals(distance(START, dropoffs[1]) + distance(dropoffs[1], dropoffs[0]), solution.distanceMeters(), 1e-6);
+	}
+
+	@Test
+	void singleOrder() {
+		double[][] pickups = {{-70.60, -33.42}};
+		double[][] dropoffs = {{-70.57, -33.40}};
+
+		RouteBatchSolver.Solution solution = RouteBatchSolver.solve(START, pickups, dropoffs);
+
+		assertArrayEquals(new int[]{0}, solution.pickupOrder());
+		assertArrayEquals(new int[]{0}, solution.dropoffOrder());
+		assertEquals(distance(START, pickups[0]) + distance(pickups[0], dropoffs[0]), solution.distanceMeters(), 1e-6);
+	}
+
+	@Test
+	void duplicatePoints() {
+		double[] point = {-70.60, -33.42};
+		double[][] pickups = {point, point.clone(), point.clone()};
+		double[][] dropoffs = {{-70.57, -33.40}, {-70.57, -33.40}, START.clone()};
+
+		RouteBatchSolver.Solution solution = RouteBatchSolver.solve(START, pickups, dropoffs);
+
+		assertPermutation(3, solution.pickupOrder());
+		assertPermutation(3, solution.dropoffOrder());
+		assertEquals(pathLength(START, pickups, solution.pickupOrder(), dropoffs, solution.dropoffOrder()),
+				solution.distanceMeters(), 1e-6);
+		// Los retiros repetidos no agregan distancia y las entregas repetidas van seguidas
+		assertEquals(distance(START, point) + distance(point, dropoffs[0]) + distance(dropoffs[0], START),
+				solution.distanceMeters(), 1e-6);
+	}
+
+	@Test
+	void pointsAtTheStart() {
+		double[][] points = {START.clone(), START.clone()};
+
+		int[] path = RouteBatchSolver.openPath(START, points);
+
+		assertPermutation(2, path);
+		assertEquals(0, openPathLength(START, points, path));
+	}
+
+	private static void assertPermutation(int n, int[] order) {
+		assertArrayEquals(IntStream.range(0, n).toArray(), Arrays.stream(order).sorted().toArray(), Arrays.toString(order));
+	}
+
+	/**
+	 * Vecino más cercano de referencia (en caso de empate, el de menor índice), sin 2-opt.
+	 */
+	private static int[] nearestNeighbour(double[] start, double[][] points) {
+		int[] order = new int[points.length];
+		boolean[] visited = new boolean[points.length];
+		double[] current = start;
+		for (int position = 0; position < points.length; position++) {
+			int next = -1;
+			for (int candidate = 0; candidate < points.length; candidate++) {
+				if (!visited[candidate] && (next < 0 || distance(current, points[candidate]) < distance(current, points[next]))) {
+					next = candidate;
+				}
+			}
+			order[position] = next;
+			visited[next] = true;
+			current = points[next];
+		}
+		return order;
+	}
+
+	private static double pathLength(double[] start, double[][] pickups, int[] pickupOrder, double[][] dropoffs, int[] dropoffOrder) {
+		double[] lastPickup = pickupOrder.length > 0 ? pickups[pickupOrder[pickupOrder.length - 1]] : start;
+		return openPathLength(start, pickups, pickupOrder) + openPathLength(lastPickup, dropoffs, dropoffOrder);
+	}
+
+	private static double openPathLength(double[] start, double[][] points, int[] order) {
+		double length = 0;
+		double[] previous = start;
+		for (int index : order) {
+			length += distance(previous, points[index]);
+			previous = points[index];
+		}
+		return length;
+	}
+
+	private static double distance(double[] a, double[] b) {
+		return CoverageAreaIndex.distanceMeters(a[0], a[1], b[0], b[1]);
+	}
+
+	private static double[][] randomPoints(Random random, int n, double longitude, double latitude, double spread) {
+		double[][] points = new double[n][];
+		for (int i = 0; i < n; i++) {
+			points[i] = new double[]{longitude + (random.nextDouble() - 0.5) * spread, latitude + (random.nextDouble() - 0.5) * spread};
+		}
+		return points;
+	}
+}
@@ -0,0 +1,114 @@
+package bdavanzadas.lab1.services;
+
+import bdavanzadas.lab1.dtos.MapViewportDTO;
+import bdavanzadas.lab1.entities.GeometryValue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteLodServiceTest {
+
+	private RouteLodService routeLodService;
+
+	@BeforeEach
+	void setUp() {
+		routeLodService = new RouteLodService();
+		ReflectionTestUtils.setField(routeLodService, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(routeLodService, "maxVertices", 1_000_000L);
+		ReflectionTestUtils.setField(routeLodService, "expireAfterAccessMinutes", 30L);
+		routeLodService.init();
+	}
+
+	@Test
+	void levelForBoundaries() {
+		int[] zooms = RouteLodService.LEVEL_ZOOMS;
+		assertEquals(-1, RouteLodService.levelFor(0));
+		assertEquals(-1, RouteLodService.levelFor(Math.nextDown(MapViewportDTO.pixelDegrees(zooms[0]))));
+		for (int i = 0; i < zooms.length; i++) {
+			double tolerance = MapViewportDTO.pixelDegrees(zooms[i]);
+			assertEquals(i, RouteLodService.levelFor(tolerance), "zoom " + zooms[i]);
+			if (i + 1 < zooms.length) {
+				// Justo por debajo del nivel siguiente se mantiene este nivel
+				assertEquals(i, RouteLodService.levelFor(Math.nextDown(MapViewportDTO.pixelDegrees(zooms[i + 1]))));
+			}
+		}
+		assertEquals(zooms.length - 1, RouteLodService.levelFor(MapViewportDTO.pixelDegrees(0)));
+	}
+
+	@Test
+	void zoomBeyondMostDetailedLevelReturnsFullRoute() {
+		GeometryValue route = zigzag(-70.70, 0.0005);
+
+		assertSame(route, routeLodService.forZoom(1, route, 18));
+	}
+
+	@Test
+	void straightLineIsNotSimplified() {
+		GeometryValue route = GeometryValue.fromWkt("LINESTRING(-70.65 -33.45,-70.6 -33.4)");
+
+		assertSame(route, routeLodService.forZoom(1, route, 4));
+	}
+
+	@Test
+	void levelsAreCachedForTheSameRoute() {
+		GeometryValue route = zigzag(-70.70, 0.0005);
+
+		GeometryValue simplified = routeLodService.forZoom(1, route, 4);
+		assertEquals(2, simplified.getGeometry().getNumPoints());
+		// Otra lectura de la misma ruta (mismos bytes) reutiliza los niveles calculados
+		assertSame(simplified, routeLodService.forZoom(1, GeometryValue.fromWkb(route.toEwkb().clone()), 4));
+	}
+
+	@Test
+	void changedRouteInvalidatesLevels() {
+		GeometryValue first = routeLodService.forZoom(1, zigzag(-70.70, 0.0005), 4);
+
+		GeometryValue changed = routeLodService.forZoom(1, zigzag(-70.60, 0.0005), 4);
+
+		assertNotSame(first, changed);
+		assertEquals(-70.60, changed.getGeometry().getCoordinates()[0].x, 1e-9);
+	}
+
+	@Test
+	void evictDiscardsLevels() {
+		GeometryValue route = zigzag(-70.70, 0.0005);
+		GeometryValue first = routeLodService.forZoom(1, route, 4);
+
+		routeLodService.evict(1);
+
+		GeometryValue rebuilt = routeLodService.forZoom(1, route, 4);
+		assertNotSame(first, rebuilt);
+		assertEquals(first, rebuilt);
+	}
+
+	@Test
+	void moreDetailedLevelsKeepMorePoints() {
+		GeometryValue route = zigzag(-70.70, 0.0005);
+		int previous = Integer.MAX_VALUE;
+		for (int zoom : RouteLodService.LEVEL_ZOOMS) {
+			int points = routeLodService.forZoom(1, route, zoom).getGeometry().getNumPoints();
+			assertTrue(points <= previous, "zoom " + zoom);
+			previous = points;
+		}
+	}
+
+	/**
+	 * Ruta de 201 puntos hacia el este, con un zigzag de la amplitud indicada (en grados).
+	 */
+	private static GeometryValue zigzag(double startLongitude, double amplitude) {
+		StringBuilder wkt = new StringBuilder("LINESTRING(");
+		for (int i = 0; i <= 200; i++) {
+			if (i > 0) {
+				wkt.append(',');
+			}
+			wkt.append(startLongitude + i * 0.001).append(' ').append(-33.45 + (i % 2 == 0 ? 0 : amplitude));
+		}
+		return GeometryValue.fromWkt(wkt.append(')').toString());
+	}
+}
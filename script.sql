@@ -17,16 +17,49 @@ DROP TABLE IF EXISTS users CASCADE;
 DROP TABLE IF EXISTS coverage_area CASCADE;
 DROP TABLE IF EXISTS coverage_area_company CASCADE;
 DROP TABLE IF EXISTS emergency_report CASCADE;
+DROP TABLE IF EXISTS dealer_performance CASCADE;
+DROP TABLE IF EXISTS order_coverage_area CASCADE;
+DROP TABLE IF EXISTS client_company_proximity CASCADE;
+DROP VIEW IF EXISTS order_rollup_monthly;
+DROP TABLE IF EXISTS order_rollup_daily CASCADE;
+DROP TABLE IF EXISTS dealer_batch_stop CASCADE;
+DROP TABLE IF EXISTS dealer_batch CASCADE;
 
 
 -- Eliminar procedimientos almacenados
 DROP PROCEDURE IF EXISTS register_order_with_products(TIMESTAMP, VARCHAR, INT, INT[], INT);
 DROP PROCEDURE IF EXISTS change_order_status(INT, VARCHAR, TIMESTAMP);
+DROP FUNCTION IF EXISTS create_order_with_products(TIMESTAMP, VARCHAR, INT, INT[], INT, VARCHAR, TEXT);
 
 -- Eliminar funciones de triggers
 DROP FUNCTION IF EXISTS set_delivery_date_when_delivered() CASCADE;
 DROP FUNCTION IF EXISTS log_failed_order() CASCADE;
 DROP FUNCTION IF EXISTS insert_auto_rating_if_late() CASCADE;
+DROP FUNCTION IF EXISTS update_company_metrics_on_order_change() CASCADE;
+DROP FUNCTION IF EXISTS apply_company_metrics_delta(INT, INT, INT, FLOAT);
+DROP FUNCTION IF EXISTS reconcile_company_metrics();
+DROP FUNCTION IF EXISTS apply_dealer_performance_delta(INT, INT, FLOAT, INT, INT, INT);
+DROP FUNCTION IF EXISTS update_dealer_performance_on_order_change() CASCADE;
+DROP FUNCTION IF EXISTS update_dealer_performance_on_rating_change() CASCADE;
+DROP FUNCTION IF EXISTS create_dealer_performance_row() CASCADE;
+DROP FUNCTION IF EXISTS reconcile_dealer_performance();
+DROP FUNCTION IF EXISTS count_order_coverage_areas() CASCADE;
+DROP FUNCTION IF EXISTS link_order_coverage_areas() CASCADE;
+DROP FUNCTION IF EXISTS relink_coverage_area_orders() CASCADE;
+DROP FUNCTION IF EXISTS unlink_coverage_area_orders() CASCADE;
+DROP FUNCTION IF EXISTS reconcile_order_coverage_areas();
+DROP FUNCTION IF EXISTS refresh_client_company_proximity(INT[], INT);
+DROP FUNCTION IF EXISTS update_client_proximity_on_client_change() CASCADE;
+DROP FUNCTION IF EXISTS update_client_proximity_on_company_change() CASCADE;
+DROP FUNCTION IF EXISTS update_client_proximity_on_company_delete() CASCADE;
+DROP FUNCTION IF EXISTS reconcile_client_company_proximity();
+DROP FUNCTION IF EXISTS set_order_route_length() CASCADE;
+DROP FUNCTION IF EXISTS update_order_rollup_on_order_change() CASCADE;
+DROP FUNCTION IF EXISTS link_order_rollup_companies() CASCADE;
+DROP FUNCTION IF EXISTS unlink_order_rollup_companies() CASCADE;
+DROP FUNCTION IF EXISTS apply_order_rollup(orders, INT, INT);
+DROP FUNCTION IF EXISTS reconcile_order_rollups();
+DROP FUNCTION IF EXISTS bump_order_version() CASCADE;
 
 -- Eliminar extensión si es necesario (opcional)
 -- DROP EXTENSION IF EXISTS postgis CASCADE;
@@ -86,7 +119,10 @@ CREATE TABLE orders (
                         client_id INT,
                         dealer_id INT,
                         total_price FLOAT,
-                        estimated_route  GEOMETRY(LineString, 4326)
+                        estimated_route  GEOMETRY(LineString, 4326),
+                        coverage_zone_count INT NOT NULL DEFAULT 0, -- Zonas de cobertura que cruza la ruta (mantenido por triggers)
+                        route_length_meters FLOAT, -- Largo de la ruta estimada en metros (mantenido por triggers)
+                        version INT NOT NULL DEFAULT 0 -- Aumenta con cada cambio de estado o de repartidor (mantenido por trigger)
 );
 
 CREATE TABLE order_details (
@@ -137,6 +173,11 @@ CREATE TABLE coverage_area (
                                coverageArea geometry(Polygon, 4326) NOT NULL
 );
 
+-- Índices espaciales para calcular las zonas que cruza cada ruta
+CREATE INDEX ix_coverage_area_geom ON coverage_area USING GIST (coverageArea);
+CREATE INDEX ix_orders_estimated_route ON orders USING GIST (estimated_route);
+CREATE INDEX ix_orders_multi_zone ON orders (id) WHERE coverage_zone_count > 2;
+
 -- ========================
 -- RATINGS
 -- ========================
@@ -145,6 +186,9 @@ ALTER TABLE orders
     ADD FOREIGN KEY (client_id) REFERENCES clients(id),
     ADD FOREIGN KEY (dealer_id) REFERENCES dealers(id);
 
+-- Un repartidor puede tener a lo sumo un pedido EN PROCESO (evita asignaciones concurrentes duplicadas)
+CREATE UNIQUE INDEX ux_orders_dealer_en_proceso ON orders (dealer_id) WHERE status = 'EN PROCESO';
+
 CREATE TABLE ratings (
                          id SERIAL PRIMARY KEY,
                          rating INT NOT NULL,
@@ -170,6 +214,96 @@ CREATE TABLE emergency_report (
 );
 
 
+-- Ranking de repartidores, mantenido por triggers sobre orders, ratings y dealers.
+-- Evita recalcular entregas y calificaciones sobre todas las órdenes en cada consulta.
+CREATE TABLE dealer_performance (
+                                    dealer_id INT PRIMARY KEY,
+                                    deliveries INT NOT NULL DEFAULT 0,                   -- Pedidos ENTREGADO
+                                    timed_deliveries INT NOT NULL DEFAULT 0,             -- Pedidos ENTREGADO con fecha de entrega
+                                    delivery_hours_sum FLOAT NOT NULL DEFAULT 0,         -- Suma de horas entre pedido y entrega
+                                    rating_sum INT NOT NULL DEFAULT 0,
+                                    rating_count INT NOT NULL DEFAULT 0,
+                                    performance_score FLOAT GENERATED ALWAYS AS (
+                                        deliveries * 0.7
+                                        + (CASE WHEN rating_count > 0 THEN rating_sum::FLOAT / rating_count ELSE 0 END) * 0.3
+                                    ) STORED,
+                                    FOREIGN KEY (dealer_id) REFERENCES dealers(id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_dealer_performance_score ON dealer_performance (performance_score DESC);
+
+-- Empresa más cercana a cada cliente y su distancia en metros, mantenida por triggers sobre clients y companies.
+-- Permite responder "clientes a más de N metros de toda empresa" con un rango sobre distance_meters.
+-- distance_meters es 'Infinity' si el cliente no tiene ubicación o no hay empresas con ubicación.
+CREATE TABLE client_company_proximity (
+                                          client_id INT PRIMARY KEY,
+                                          nearest_company_id INT,
+                                          distance_meters FLOAT NOT NULL DEFAULT 'Infinity',
+                                          FOREIGN KEY (client_id) REFERENCES clients(id) ON DELETE CASCADE,
+                                          FOREIGN KEY (nearest_company_id) REFERENCES companies(id) ON DELETE SET NULL
+);
+
+CREATE INDEX ix_client_company_proximity_distance ON client_company_proximity (distance_meters);
+
+-- Agregados diarios de pedidos por repartidor, empresa y cliente, mantenidos por triggers sobre orders y order_products.
+-- Cada pedido suma en el día de su entrega si está ENTREGADO (o de su fecha de pedido si no tiene fecha de entrega),
+-- y en el día de su fecha de pedido en cualquier otro estado.
+CREATE TABLE order_rollup_daily (
+                                    scope VARCHAR(10) NOT NULL,             -- 'DEALER', 'COMPANY' o 'CLIENT'
+                                    scope_id INT NOT NULL,                  -- ID del repartidor, empresa o cliente
+                                    bucket_date DATE NOT NULL,
+                                    status VARCHAR(50) NOT NULL,
+                                    order_count INT NOT NULL DEFAULT 0,
+                                    revenue FLOAT NOT NULL DEFAULT 0,       -- Suma de total_price
+                                    distance_meters FLOAT NOT NULL DEFAULT 0, -- Suma de route_length_meters
+                                    PRIMARY KEY (scope, scope_id, bucket_date, status)
+);
+
+CREATE INDEX ix_order_rollup_daily_bucket ON order_rollup_daily (scope, bucket_date);
+
+-- Índice para filtrar pedidos por rango de fechas (por ejemplo, pedidos de un mes)
+CREATE INDEX ix_orders_order_date ON orders (order_date);
+
+-- Agregados mensuales (suma de los diarios)
+CREATE VIEW order_rollup_monthly AS
+SELECT scope,
+       scope_id,
+       date_trunc('month', bucket_date)::DATE AS bucket_month,
+       status,
+       SUM(order_count)::INT AS order_count,
+       SUM(revenue) AS revenue,
+       SUM(distance_meters) AS distance_meters
+FROM order_rollup_daily
+GROUP BY scope, scope_id, date_trunc('month', bucket_date), status;
+
+-- Lotes de reparto: pedidos pendientes cercanos agrupados para un mismo repartidor, con una ruta de varias paradas
+-- (primero los retiros y luego las entregas). El repartidor sigue teniendo a lo sumo un pedido EN PROCESO: el resto
+-- de los pedidos del lote queda asignado en estado PENDIENTE/URGENTE y pasa a EN PROCESO al terminar el anterior.
+CREATE TABLE dealer_batch (
+                              id SERIAL PRIMARY KEY,
+                              dealer_id INT NOT NULL,
+                              created_at TIMESTAMP NOT NULL DEFAULT now(),
+                              route geometry(LineString, 4326) NOT NULL,  -- Ruta completa: repartidor, retiros y entregas
+                              distance_meters FLOAT NOT NULL,             -- Largo de la ruta (haversine)
+                              FOREIGN KEY (dealer_id) REFERENCES dealers(id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_dealer_batch_dealer ON dealer_batch (dealer_id, created_at DESC);
+
+-- Paradas de cada pedido del lote: posición de su retiro y de su entrega en la ruta
+CREATE TABLE dealer_batch_stop (
+                                   batch_id INT NOT NULL,
+                                   order_id INT NOT NULL,
+                                   pickup_seq INT NOT NULL,
+                                   delivery_seq INT NOT NULL,
+                                   PRIMARY KEY (batch_id, order_id),
+                                   FOREIGN KEY (batch_id) REFERENCES dealer_batch(id) ON DELETE CASCADE,
+                                   FOREIGN KEY (order_id) REFERENCES orders(id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_dealer_batch_stop_order ON dealer_batch_stop (order_id);
+
+
 -- ========================
 -- RELATIONAL TABLES (N:N)
 -- ========================
@@ -194,6 +328,17 @@ CREATE TABLE coverage_area_company
 
 );
 
+-- Zonas de cobertura que cruza la ruta estimada de cada pedido (mantenido por triggers)
+CREATE TABLE order_coverage_area (
+                                     order_id INT,
+                                     coverage_id INT,
+                                     PRIMARY KEY (order_id, coverage_id),
+                                     FOREIGN KEY (order_id) REFERENCES orders(id) ON DELETE CASCADE,
+                                     FOREIGN KEY (coverage_id) REFERENCES coverage_area(coverage_id) ON DELETE CASCADE
+);
+
+CREATE INDEX ix_order_coverage_area_coverage ON order_coverage_area (coverage_id);
+
 -- Relación pedidos-productos
 CREATE TABLE order_products (
                                 order_id INT,
@@ -207,16 +352,92 @@ CREATE TABLE order_products (
 -- PROCEDIMIENTOS ALMACENADOS
 -- ========================
 
+-- Métricas de empresas (deliveries, failed_deliveries, total_sales).
+-- Se mantienen de forma incremental: cada pedido suma a las empresas de sus productos
+-- (una vez por empresa, aunque el pedido tenga varios productos de la misma empresa).
+CREATE OR REPLACE FUNCTION apply_company_metrics_delta(
+    p_order_id INT,
+    p_deliveries INT,
+    p_failed INT,
+    p_sales FLOAT
+)
+RETURNS VOID AS $$
+BEGIN
+    -- Bloquear las empresas en orden de ID para evitar deadlocks entre pedidos concurrentes
+    PERFORM 1
+    FROM companies
+    WHERE id IN (
+        SELECT p.company_id
+        FROM order_products op
+                 JOIN products p ON p.id = op.product_id
+        WHERE op.order_id = p_order_id
+    )
+    ORDER BY id
+    FOR UPDATE;
+
+    UPDATE companies c
+    SET deliveries = COALESCE(c.deliveries, 0) + p_deliveries,
+        failed_deliveries = COALESCE(c.failed_deliveries, 0) + p_failed,
+        total_sales = COALESCE(c.total_sales, 0) + p_sales
+    WHERE c.id IN (
+        SELECT p.company_id
+        FROM order_products op
+                 JOIN products p ON p.id = op.product_id
+        WHERE op.order_id = p_order_id
+    );
+END;
+$$ LANGUAGE plpgsql;
+
+-- Recalcula desde cero las métricas de todas las empresas (reconciliación).
+-- Solo actualiza las empresas cuyos valores difieren de los calculados.
+CREATE OR REPLACE FUNCTION reconcile_company_metrics()
+RETURNS INT AS $$
+DECLARE
+    v_updated INT;
+BEGIN
+    WITH company_orders AS (
+        SELECT DISTINCT p.company_id, o.id, o.status, o.total_price
+        FROM orders o
+                 JOIN order_products op ON op.order_id = o.id
+                 JOIN products p ON p.id = op.product_id
+    ),
+    totals AS (
+        SELECT
+            c.id AS company_id,
+            COUNT(co.id) AS deliveries,
+            COUNT(co.id) FILTER (WHERE co.status = 'FALLIDA') AS failed_deliveries,
+            COALESCE(SUM(co.total_price), 0) AS total_sales
+        FROM companies c
+                 LEFT JOIN company_orders co ON co.company_id = c.id
+        GROUP BY c.id
+    )
+    UPDATE companies c
+    SET deliveries = t.deliveries,
+        failed_deliveries = t.failed_deliveries,
+        total_sales = t.total_sales
+    FROM totals t
+    WHERE c.id = t.company_id
+      AND (c.deliveries, c.failed_deliveries, c.total_sales)
+          IS DISTINCT FROM (t.deliveries::INT, t.failed_deliveries::INT, t.total_sales::FLOAT);
+
+    GET DIAGNOSTICS v_updated = ROW_COUNT;
+    RETURN v_updated;
+END;
+$$ LANGUAGE plpgsql;
+
 -- 1 y 3 Registrar un pedido completo y descuenta el stock.
-CREATE OR REPLACE PROCEDURE register_order_with_products(
+-- Devuelve el ID del pedido creado. Opcionalmente guarda en la misma llamada la ruta (WKT)
+-- y el detalle del pedido, para no tener que buscar el pedido después por el último ID.
+CREATE OR REPLACE FUNCTION create_order_with_products(
     p_order_date TIMESTAMP,
     p_status VARCHAR,
     p_client_id INT,
     p_product_ids INT[],
-    p_dealer_id INT DEFAULT NULL  -- Mantener este parámetro aunque no se use
+    p_dealer_id INT DEFAULT NULL,
+    p_payment_method VARCHAR DEFAULT NULL,
+    p_route_wkt TEXT DEFAULT NULL
 )
-LANGUAGE plpgsql
-AS $$
+RETURNS INT AS $$
 DECLARE
 v_order_id INT;
     v_product_id INT;
@@ -250,8 +471,12 @@ IF v_company_location IS NULL THEN
         RAISE EXCEPTION 'No se pudo determinar la ubicación de la empresa para el producto ID %', p_product_ids[1];
 END IF;
 
-    -- 4. Calcular ruta recta (línea directa entre empresa y cliente)
-    v_estimated_route := ST_MakeLine(v_company_location, v_client_location);
+    -- 4. Usar la ruta entregada o calcular la ruta recta (línea directa entre empresa y cliente)
+    IF p_route_wkt IS NOT NULL THEN
+        v_estimated_route := ST_GeomFromText(p_route_wkt, 4326);
+    ELSE
+        v_estimated_route := ST_MakeLine(v_company_location, v_client_location);
+    END IF;
 
     -- 5. Calcular el precio total de los productos
 SELECT COALESCE(SUM(price), 0)
@@ -293,12 +518,44 @@ IF NOT FOUND THEN
             RAISE EXCEPTION 'Sin stock para el producto ID %', v_product_id;
 END IF;
 END LOOP;
+
+    -- 8. Actualizar las métricas de las empresas de los productos del pedido
+    PERFORM apply_company_metrics_delta(
+        v_order_id,
+        1,
+        CASE WHEN p_status = 'FALLIDA' THEN 1 ELSE 0 END,
+        v_total_price
+    );
+
+    -- 9. Detalle del pedido
+    IF p_payment_method IS NOT NULL THEN
+        INSERT INTO order_details (order_id, payment_method, total_products, price)
+        VALUES (v_order_id, p_payment_method, array_length(p_product_ids, 1), v_total_price);
+    END IF;
+
+    RETURN v_order_id;
+END;
+$$ LANGUAGE plpgsql;
+
+
+-- Versión como procedimiento (se mantiene por compatibilidad); delega en create_order_with_products.
+CREATE OR REPLACE PROCEDURE register_order_with_products(
+    p_order_date TIMESTAMP,
+    p_status VARCHAR,
+    p_client_id INT,
+    p_product_ids INT[],
+    p_dealer_id INT DEFAULT NULL  -- Mantener este parámetro aunque no se use
+)
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    PERFORM create_order_with_products(p_order_date, p_status, p_client_id, p_product_ids, p_dealer_id);
 END;
 $$;
 
 -- ========================
 
--- 2 Cambiar el estado de un pedido con validación
+-- 2 Cambiar el estado de un pedido con validación, en una sola sentencia condicional
 CREATE OR REPLACE PROCEDURE change_order_status(
     p_order_id INT,
     p_new_status VARCHAR,
@@ -309,30 +566,24 @@ AS $$
 DECLARE
 v_current_status VARCHAR;
 BEGIN
-    -- Validar que el pedido exista y obtener su estado actual
+    -- Actualizar solo si aún no está finalizado; el estado y la fecha se cambian en la misma sentencia
+UPDATE orders
+SET status = p_new_status,
+    delivery_date = CASE WHEN p_new_status = 'ENTREGADO' THEN COALESCE(p_delivery_date, NOW()) ELSE delivery_date END
+WHERE id = p_order_id
+  AND status IS DISTINCT FROM 'ENTREGADO'
+  AND status IS DISTINCT FROM 'FALLIDA';
+
+IF NOT FOUND THEN
+        -- Informar por qué no se actualizó
 SELECT status INTO v_current_status
 FROM orders
 WHERE id = p_order_id;
 
 IF NOT FOUND THEN
-        RAISE EXCEPTION 'Pedido con ID % no existe', p_order_id;
+            RAISE EXCEPTION 'Pedido con ID % no existe', p_order_id;
 END IF;
-
-    -- Validar que aún no esté finalizado
-    IF v_current_status IN ('ENTREGADO', 'FALLIDA') THEN
         RAISE EXCEPTION 'El pedido ya ha sido finalizado con estado %', v_current_status;
-END IF;
-
-    -- Actualizar el estado y la fecha si corresponde
-    IF p_new_status = 'ENTREGADO' THEN
-UPDATE orders
-SET status = p_new_status,
-    delivery_date = COALESCE(p_delivery_date, NOW())
-WHERE id = p_order_id;
-ELSE
-UPDATE orders
-SET status = p_new_status
-WHERE id = p_order_id;
 END IF;
 END;
 $$;
@@ -417,6 +668,650 @@ CREATE TRIGGER trg_auto_rating_if_late
     WHEN (OLD.status IS DISTINCT FROM NEW.status)
 EXECUTE FUNCTION insert_auto_rating_if_late();
 
+-- 4. Mantener las métricas de las empresas al cambiar el estado o el total de un pedido.
+-- Cubre change_order_status y cualquier otra actualización directa del estado.
+-- Trigger function:
+CREATE OR REPLACE FUNCTION update_company_metrics_on_order_change()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_failed_delta INT;
+    v_sales_delta FLOAT;
+BEGIN
+    v_failed_delta := (CASE WHEN NEW.status = 'FALLIDA' THEN 1 ELSE 0 END)
+                    - (CASE WHEN OLD.status = 'FALLIDA' THEN 1 ELSE 0 END);
+    v_sales_delta := COALESCE(NEW.total_price, 0) - COALESCE(OLD.total_price, 0);
+
+    IF v_failed_delta <> 0 OR v_sales_delta <> 0 THEN
+        PERFORM apply_company_metrics_delta(NEW.id, 0, v_failed_delta, v_sales_delta);
+END IF;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_company_metrics
+    AFTER UPDATE OF status, total_price ON orders
+    FOR EACH ROW
+    WHEN (OLD.status IS DISTINCT FROM NEW.status OR OLD.total_price IS DISTINCT FROM NEW.total_price)
+EXECUTE FUNCTION update_company_metrics_on_order_change();
+
+-- 5. Mantener el ranking de repartidores (dealer_performance).
+-- Suma (o resta) a un repartidor las entregas, horas de entrega y calificaciones indicadas.
+CREATE OR REPLACE FUNCTION apply_dealer_performance_delta(
+    p_dealer_id INT,
+    p_deliveries INT,
+    p_delivery_hours FLOAT,
+    p_timed_deliveries INT,
+    p_rating_sum INT,
+    p_rating_count INT
+)
+RETURNS VOID AS $$
+BEGIN
+    IF p_dealer_id IS NULL THEN
+        RETURN;
+END IF;
+
+INSERT INTO dealer_performance AS dp (dealer_id, deliveries, delivery_hours_sum, timed_deliveries, rating_sum, rating_count)
+VALUES (p_dealer_id, p_deliveries, p_delivery_hours, p_timed_deliveries, p_rating_sum, p_rating_count)
+    ON CONFLICT (dealer_id) DO UPDATE
+                                   SET deliveries = dp.deliveries + EXCLUDED.deliveries,
+                                   delivery_hours_sum = dp.delivery_hours_sum + EXCLUDED.delivery_hours_sum,
+                                   timed_deliveries = dp.timed_deliveries + EXCLUDED.timed_deliveries,
+                                   rating_sum = dp.rating_sum + EXCLUDED.rating_sum,
+                                   rating_count = dp.rating_count + EXCLUDED.rating_count;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger function: resta el aporte de la fila anterior y suma el de la nueva
+CREATE OR REPLACE FUNCTION update_dealer_performance_on_order_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.status = 'ENTREGADO' THEN
+        PERFORM apply_dealer_performance_delta(
+            OLD.dealer_id,
+            -1,
+            -COALESCE(EXTRACT(EPOCH FROM (OLD.delivery_date - OLD.order_date)) / 3600, 0),
+            CASE WHEN OLD.delivery_date IS NOT NULL THEN -1 ELSE 0 END,
+            0, 0
+        );
+END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.status = 'ENTREGADO' THEN
+        PERFORM apply_dealer_performance_delta(
+            NEW.dealer_id,
+            1,
+            COALESCE(EXTRACT(EPOCH FROM (NEW.delivery_date - NEW.order_date)) / 3600, 0),
+            CASE WHEN NEW.delivery_date IS NOT NULL THEN 1 ELSE 0 END,
+            0, 0
+        );
+END IF;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_dealer_performance_on_order
+    AFTER INSERT OR DELETE OR UPDATE OF status, dealer_id, order_date, delivery_date ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION update_dealer_performance_on_order_change();
+
+-- Trigger function:
+CREATE OR REPLACE FUNCTION update_dealer_performance_on_rating_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM apply_dealer_performance_delta(OLD.dealer_id, 0, 0, 0, -OLD.rating, -1);
+END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM apply_dealer_performance_delta(NEW.dealer_id, 0, 0, 0, NEW.rating, 1);
+END IF;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_dealer_performance_on_rating
+    AFTER INSERT OR DELETE OR UPDATE OF rating, dealer_id ON ratings
+    FOR EACH ROW
+EXECUTE FUNCTION update_dealer_performance_on_rating_change();
+
+-- Trigger function: todo repartidor nuevo entra al ranking con valores en cero
+CREATE OR REPLACE FUNCTION create_dealer_performance_row()
+RETURNS TRIGGER AS $$
+BEGIN
+INSERT INTO dealer_performance (dealer_id) VALUES (NEW.id)
+    ON CONFLICT (dealer_id) DO NOTHING;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_create_dealer_performance
+    AFTER INSERT ON dealers
+    FOR EACH ROW
+EXECUTE FUNCTION create_dealer_performance_row();
+
+-- Recalcula desde cero el ranking de todos los repartidores (reconciliación).
+-- Solo actualiza las filas cuyos valores difieren de los calculados.
+CREATE OR REPLACE FUNCTION reconcile_dealer_performance()
+RETURNS INT AS $$
+DECLARE
+    v_updated INT;
+BEGIN
+    WITH delivered AS (
+        SELECT o.dealer_id,
+               COUNT(*) AS deliveries,
+               COUNT(o.delivery_date) AS timed_deliveries,
+               COALESCE(SUM(EXTRACT(EPOCH FROM (o.delivery_date - o.order_date)) / 3600), 0) AS delivery_hours_sum
+        FROM orders o
+        WHERE o.status = 'ENTREGADO' AND o.dealer_id IS NOT NULL
+        GROUP BY o.dealer_id
+    ),
+    rated AS (
+        SELECT r.dealer_id, SUM(r.rating) AS rating_sum, COUNT(*) AS rating_count
+        FROM ratings r
+        WHERE r.dealer_id IS NOT NULL
+        GROUP BY r.dealer_id
+    ),
+    totals AS (
+        SELECT d.id AS dealer_id,
+               COALESCE(dv.deliveries, 0)::INT AS deliveries,
+               COALESCE(dv.timed_deliveries, 0)::INT AS timed_deliveries,
+               COALESCE(dv.delivery_hours_sum, 0)::FLOAT AS delivery_hours_sum,
+               COALESCE(rt.rating_sum, 0)::INT AS rating_sum,
+               COALESCE(rt.rating_count, 0)::INT AS rating_count
+        FROM dealers d
+                 LEFT JOIN delivered dv ON dv.dealer_id = d.id
+                 LEFT JOIN rated rt ON rt.dealer_id = d.id
+    )
+    INSERT INTO dealer_performance AS dp (dealer_id, deliveries, timed_deliveries, delivery_hours_sum, rating_sum, rating_count)
+    SELECT dealer_id, deliveries, timed_deliveries, delivery_hours_sum, rating_sum, rating_count
+    FROM totals
+    ON CONFLICT (dealer_id) DO UPDATE
+        SET deliveries = EXCLUDED.deliveries,
+            timed_deliveries = EXCLUDED.timed_deliveries,
+            delivery_hours_sum = EXCLUDED.delivery_hours_sum,
+            rating_sum = EXCLUDED.rating_sum,
+            rating_count = EXCLUDED.rating_count
+        WHERE (dp.deliveries, dp.timed_deliveries, dp.delivery_hours_sum, dp.rating_sum, dp.rating_count)
+              IS DISTINCT FROM (EXCLUDED.deliveries, EXCLUDED.timed_deliveries, EXCLUDED.delivery_hours_sum, EXCLUDED.rating_sum, EXCLUDED.rating_count);
+
+    GET DIAGNOSTICS v_updated = ROW_COUNT;
+    RETURN v_updated;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 6. Mantener las zonas de cobertura que cruza la ruta de cada pedido (order_coverage_area).
+-- Trigger function: cuenta las zonas al insertar el pedido o cambiar su ruta
+CREATE OR REPLACE FUNCTION count_order_coverage_areas()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.coverage_zone_count := (
+        SELECT COUNT(*)
+        FROM coverage_area ca
+        WHERE NEW.estimated_route IS NOT NULL
+          AND ST_Intersects(NEW.estimated_route, ca.coverageArea)
+    );
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_count_order_coverage_areas
+    BEFORE INSERT OR UPDATE OF estimated_route ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION count_order_coverage_areas();
+
+-- Trigger function: guarda las zonas que cruza la ruta del pedido
+CREATE OR REPLACE FUNCTION link_order_coverage_areas()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' THEN
+DELETE FROM order_coverage_area WHERE order_id = NEW.id;
+END IF;
+
+    IF NEW.estimated_route IS NOT NULL THEN
+        INSERT INTO order_coverage_area (order_id, coverage_id)
+SELECT NEW.id, ca.coverage_id
+FROM coverage_area ca
+WHERE ST_Intersects(NEW.estimated_route, ca.coverageArea);
+END IF;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_link_order_coverage_areas
+    AFTER INSERT OR UPDATE OF estimated_route ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION link_order_coverage_areas();
+
+-- Trigger function: al crear o cambiar una zona, recalcula los pedidos que la cruzaban o la cruzan ahora
+CREATE OR REPLACE FUNCTION relink_coverage_area_orders()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_affected INT[];
+BEGIN
+    SELECT COALESCE(array_agg(order_id), '{}') INTO v_affected
+    FROM order_coverage_area
+    WHERE coverage_id = NEW.coverage_id;
+
+    DELETE FROM order_coverage_area WHERE coverage_id = NEW.coverage_id;
+
+    INSERT INTO order_coverage_area (order_id, coverage_id)
+    SELECT o.id, NEW.coverage_id
+    FROM orders o
+    WHERE ST_Intersects(o.estimated_route, NEW.coverageArea);
+
+    UPDATE orders o
+    SET coverage_zone_count = (SELECT COUNT(*) FROM order_coverage_area oca WHERE oca.order_id = o.id)
+    WHERE o.id = ANY(v_affected)
+       OR o.id IN (SELECT order_id FROM order_coverage_area WHERE coverage_id = NEW.coverage_id);
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_relink_coverage_area_orders
+    AFTER INSERT OR UPDATE OF coverageArea ON coverage_area
+    FOR EACH ROW
+EXECUTE FUNCTION relink_coverage_area_orders();
+
+-- Trigger function: al eliminar una zona, descuenta la zona de los pedidos que la cruzaban
+-- (las filas de order_coverage_area se eliminan en cascada)
+CREATE OR REPLACE FUNCTION unlink_coverage_area_orders()
+RETURNS TRIGGER AS $$
+BEGIN
+UPDATE orders
+SET coverage_zone_count = coverage_zone_count - 1
+WHERE id IN (SELECT order_id FROM order_coverage_area WHERE coverage_id = OLD.coverage_id);
+RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_unlink_coverage_area_orders
+    BEFORE DELETE ON coverage_area
+    FOR EACH ROW
+EXECUTE FUNCTION unlink_coverage_area_orders();
+
+-- Recalcula desde cero las zonas de todos los pedidos (reconciliación).
+-- Devuelve la cantidad de pedidos cuyo conteo cambió.
+CREATE OR REPLACE FUNCTION reconcile_order_coverage_areas()
+RETURNS INT AS $$
+DECLARE
+    v_updated INT;
+BEGIN
+    DELETE FROM order_coverage_area;
+
+    INSERT INTO order_coverage_area (order_id, coverage_id)
+    SELECT o.id, ca.coverage_id
+    FROM orders o
+             JOIN coverage_area ca ON ST_Intersects(o.estimated_route, ca.coverageArea);
+
+    UPDATE orders o
+    SET coverage_zone_count = t.zones
+    FROM (
+        SELECT o2.id, COUNT(oca.coverage_id)::INT AS zones
+        FROM orders o2
+                 LEFT JOIN order_coverage_area oca ON oca.order_id = o2.id
+        GROUP BY o2.id
+    ) t
+    WHERE o.id = t.id
+      AND o.coverage_zone_count <> t.zones;
+
+    GET DIAGNOSTICS v_updated = ROW_COUNT;
+    RETURN v_updated;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 7. Mantener la empresa más cercana a cada cliente (client_company_proximity).
+-- Recalcula la empresa más cercana de los clientes indicados, opcionalmente ignorando una empresa
+-- (la que se está eliminando). Usa KNN (<->) sobre el índice geography de companies y refina los
+-- primeros candidatos con ST_Distance sobre el esferoide. Devuelve la cantidad de filas que cambiaron.
+CREATE OR REPLACE FUNCTION refresh_client_company_proximity(p_client_ids INT[], p_excluded_company_id INT DEFAULT NULL)
+RETURNS INT AS $$
+DECLARE
+    v_updated INT;
+BEGIN
+    INSERT INTO client_company_proximity AS p (client_id, nearest_company_id, distance_meters)
+    SELECT c.id, nearest.id, COALESCE(nearest.distance_meters, 'Infinity')
+    FROM clients c
+             LEFT JOIN LATERAL (
+        SELECT cand.id, ST_Distance(c.ubication::geography, cand.ubication::geography) AS distance_meters
+        FROM (
+                 SELECT co.id, co.ubication
+                 FROM companies co
+                 WHERE c.ubication IS NOT NULL
+                   AND co.ubication IS NOT NULL
+                   AND co.id IS DISTINCT FROM p_excluded_company_id
+                 ORDER BY co.ubication::geography <-> c.ubication::geography
+                 LIMIT 4
+             ) cand
+        ORDER BY distance_meters
+        LIMIT 1
+        ) nearest ON TRUE
+    WHERE c.id = ANY(p_client_ids)
+    ORDER BY c.id
+    ON CONFLICT (client_id) DO UPDATE
+        SET nearest_company_id = EXCLUDED.nearest_company_id,
+            distance_meters = EXCLUDED.distance_meters
+    WHERE p.nearest_company_id IS DISTINCT FROM EXCLUDED.nearest_company_id
+       OR p.distance_meters <> EXCLUDED.distance_meters;
+
+    GET DIAGNOSTICS v_updated = ROW_COUNT;
+    RETURN v_updated;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger function: al crear un cliente o cambiar su ubicación, recalcula su empresa más cercana
+CREATE OR REPLACE FUNCTION update_client_proximity_on_client_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM refresh_client_company_proximity(ARRAY[NEW.id]);
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_client_proximity_on_client
+    AFTER INSERT OR UPDATE OF ubication ON clients
+    FOR EACH ROW
+EXECUTE FUNCTION update_client_proximity_on_client_change();
+
+-- Trigger function: al crear una empresa o cambiar su ubicación, recalcula solo los clientes que
+-- la tenían como más cercana o que ahora quedan más cerca de ella que de su empresa actual
+CREATE OR REPLACE FUNCTION update_client_proximity_on_company_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM refresh_client_company_proximity(ARRAY(
+        SELECT p.client_id
+        FROM client_company_proximity p
+                 JOIN clients c ON c.id = p.client_id
+        WHERE (TG_OP = 'UPDATE' AND p.nearest_company_id = NEW.id)
+           OR (NEW.ubication IS NOT NULL
+               AND c.ubication IS NOT NULL
+               AND (p.distance_meters = 'Infinity'
+                    OR ST_DWithin(c.ubication::geography, NEW.ubication::geography, p.distance_meters)))
+    ));
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_client_proximity_on_company
+    AFTER INSERT OR UPDATE OF ubication ON companies
+    FOR EACH ROW
+EXECUTE FUNCTION update_client_proximity_on_company_change();
+
+-- Trigger function: antes de eliminar una empresa, reasigna sus clientes a la siguiente más cercana
+CREATE OR REPLACE FUNCTION update_client_proximity_on_company_delete()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM refresh_client_company_proximity(ARRAY(
+        SELECT client_id FROM client_company_proximity WHERE nearest_company_id = OLD.id
+    ), OLD.id);
+RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_client_proximity_on_company_delete
+    BEFORE DELETE ON companies
+    FOR EACH ROW
+EXECUTE FUNCTION update_client_proximity_on_company_delete();
+
+-- Recalcula desde cero la empresa más cercana de todos los clientes (reconciliación).
+-- Devuelve la cantidad de clientes cuya fila cambió.
+CREATE OR REPLACE FUNCTION reconcile_client_company_proximity()
+RETURNS INT AS $$
+BEGIN
+    RETURN refresh_client_company_proximity(ARRAY(SELECT id FROM clients));
+END;
+$$ LANGUAGE plpgsql;
+
+-- 8. Largo de la ruta de cada pedido y agregados diarios (order_rollup_daily).
+-- Trigger function: calcula el largo de la ruta en metros una sola vez, al guardar la ruta
+CREATE OR REPLACE FUNCTION set_order_route_length()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.route_length_meters := CASE
+        WHEN NEW.estimated_route IS NULL THEN NULL
+        ELSE ST_Length(NEW.estimated_route::geography)
+    END;
+RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_set_order_route_length
+    BEFORE INSERT OR UPDATE OF estimated_route ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION set_order_route_length();
+
+-- Suma (p_sign = 1) o resta (p_sign = -1) un pedido en los agregados.
+-- Sin p_company_id se aplica al repartidor, al cliente y a las empresas de sus productos;
+-- con p_company_id se aplica solo a esa empresa.
+CREATE OR REPLACE FUNCTION apply_order_rollup(p_order orders, p_sign INT, p_company_id INT DEFAULT NULL)
+RETURNS VOID AS $$
+DECLARE
+    v_bucket DATE;
+BEGIN
+    v_bucket := (CASE
+        WHEN p_order.status = 'ENTREGADO' THEN COALESCE(p_order.delivery_date, p_order.order_date)
+        ELSE p_order.order_date
+    END)::DATE;
+    IF v_bucket IS NULL THEN
+        RETURN;
+END IF;
+
+    INSERT INTO order_rollup_daily AS r (scope, scope_id, bucket_date, status, order_count, revenue, distance_meters)
+    SELECT s.scope, s.scope_id, v_bucket, COALESCE(p_order.status, 'SIN ESTADO'),
+           p_sign, p_sign * COALESCE(p_order.total_price, 0), p_sign * COALESCE(p_order.route_length_meters, 0)
+    FROM (
+             SELECT 'DEALER' AS scope, p_order.dealer_id AS scope_id WHERE p_company_id IS NULL
+             UNION ALL
+             SELECT 'CLIENT', p_order.client_id WHERE p_company_id IS NULL
+             UNION ALL
+             SELECT DISTINCT 'COMPANY', p.company_id
+             FROM order_products op
+                      JOIN products p ON p.id = op.product_id
+             WHERE p_company_id IS NULL AND op.order_id = p_order.id
+             UNION ALL
+             SELECT 'COMPANY', p_company_id WHERE p_company_id IS NOT NULL
+         ) s
+    WHERE s.scope_id IS NOT NULL
+    ORDER BY s.scope, s.scope_id
+    ON CONFLICT (scope, scope_id, bucket_date, status) DO UPDATE
+        SET order_count = r.order_count + EXCLUDED.order_count,
+            revenue = r.revenue + EXCLUDED.revenue,
+            distance_meters = r.distance_meters + EXCLUDED.distance_meters;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger function: al crear, modificar o eliminar un pedido, mueve su aporte en los agregados
+CREATE OR REPLACE FUNCTION update_order_rollup_on_order_change()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM apply_order_rollup(OLD, -1);
+END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM apply_order_rollup(NEW, 1);
+END IF;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_update_order_rollup_on_order
+    AFTER INSERT OR DELETE ON orders
+    FOR EACH ROW
+EXECUTE FUNCTION update_order_rollup_on_order_change();
+
+CREATE TRIGGER trg_update_order_rollup_on_order_update
+    AFTER UPDATE ON orders
+    FOR EACH ROW
+    WHEN (OLD.status IS DISTINCT FROM NEW.status
+        OR OLD.order_date IS DISTINCT FROM NEW.order_date
+        OR OLD.delivery_date IS DISTINCT FROM NEW.delivery_date
+        OR OLD.total_price IS DISTINCT FROM NEW.total_price
+        OR OLD.route_length_meters IS DISTINCT FROM NEW.route_length_meters
+        OR OLD.dealer_id IS DISTINCT FROM NEW.dealer_id
+        OR OLD.client_id IS DISTINCT FROM NEW.client_id)
+EXECUTE FUNCTION update_order_rollup_on_order_change();
+
+-- Trigger function: al agregar productos a un pedido, suma el pedido a las empresas que aparecen por primera vez en él
+-- (a nivel de sentencia, para contar una sola vez cada empresa aunque se inserten varios productos a la vez)
+CREATE OR REPLACE FUNCTION link_order_rollup_companies()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM apply_order_rollup(o, 1, t.company_id)
+    FROM (
+             SELECT DISTINCT nr.order_id, p.company_id
+             FROM new_rows nr
+                      JOIN products p ON p.id = nr.product_id
+         ) t
+             JOIN orders o ON o.id = t.order_id
+    WHERE NOT EXISTS (
+        SELECT 1
+        FROM order_products op
+                 JOIN products p2 ON p2.id = op.product_id
+        WHERE op.order_id = t.order_id
+          AND p2.company_id = t.company_id
+          AND op.product_id NOT IN (SELECT nr2.product_id FROM new_rows nr2 WHERE nr2.order_id = t.order_id)
+    )
+    ORDER BY t.order_id, t.company_id;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_link_order_rollup_companies
+    AFTER INSERT ON order_products
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION link_order_rollup_companies();
+
+-- Trigger function: al quitar productos de un pedido, resta el pedido de las empresas que ya no tienen productos en él
+CREATE OR REPLACE FUNCTION unlink_order_rollup_companies()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM apply_order_rollup(o, -1, t.company_id)
+    FROM (
+             SELECT DISTINCT orr.order_id, p.company_id
+             FROM old_rows orr
+                      JOIN products p ON p.id = orr.product_id
+         ) t
+             JOIN orders o ON o.id = t.order_id
+    WHERE NOT EXISTS (
+        SELECT 1
+        FROM order_products op
+                 JOIN products p2 ON p2.id = op.product_id
+        WHERE op.order_id = t.order_id
+          AND p2.company_id = t.company_id
+    )
+    ORDER BY t.order_id, t.company_id;
+RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Trigger:
+CREATE TRIGGER trg_unlink_order_rollup_companies
+    AFTER DELETE ON order_products
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION unlink_order_rollup_companies();
+
+-- Recalcula desde cero el largo de las rutas y los agregados diarios (reconciliación).
+-- Devuelve la cantidad de filas de agregados.
+CREATE OR REPLACE FUNCTION reconcile_order_rollups()
+RETURNS INT AS $$
+DECLARE
+    v_rows INT;
+BEGIN
+    UPDATE orders
+    SET route_length_meters = ST_Length(estimated_route::geography)
+    WHERE estimated_route IS NOT NULL
+      AND route_length_meters IS NULL;
+
+    DELETE FROM order_rollup_daily;
+
+    INSERT INTO order_rollup_daily (scope, scope_id, bucket_date, status, order_count, revenue, distance_meters)
+    SELECT s.scope, s.scope_id, b.bucket_date, COALESCE(o.status, 'SIN ESTADO'),
+           COUNT(*)::INT, SUM(COALESCE(o.total_price, 0)), SUM(COALESCE(o.route_length_meters, 0))
+    FROM orders o
+             CROSS JOIN LATERAL (
+        SELECT (CASE
+                    WHEN o.status = 'ENTREGADO' THEN COALESCE(o.delivery_date, o.order_date)
+                    ELSE o.order_date
+                END)::DATE AS bucket_date
+        ) b
+             CROSS JOIN LATERAL (
+        SELECT 'DEALER'::VARCHAR AS scope, o.dealer_id AS scope_id
+        UNION ALL
+        SELECT 'CLIENT', o.client_id
+        UNION ALL
+        SELECT DISTINCT 'COMPANY', p.company_id
+        FROM order_products op
+                 JOIN products p ON p.id = op.product_id
+        WHERE op.order_id = o.id
+        ) s
+    WHERE b.bucket_date IS NOT NULL
+      AND s.scope_id IS NOT NULL
+    GROUP BY s.scope, s.scope_id, b.bucket_date, COALESCE(o.status, 'SIN ESTADO');
+
+    GET DIAGNOSTICS v_rows = ROW_COUNT;
+    RETURN v_rows;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 9. Versión de los pedidos (control de concurrencia optimista de los cambios de estado).
+-- Cada cambio de estado o de repartidor aumenta la versión, sin importar qué sentencia lo hizo.
+CREATE OR REPLACE FUNCTION bump_order_version()
+RETURNS TRIGGER AS $$
+BEGIN
+    NEW.version := OLD.version + 1;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_bump_order_version
+    BEFORE UPDATE OF status, dealer_id ON orders
+    FOR EACH ROW
+    WHEN (OLD.status IS DISTINCT FROM NEW.status OR OLD.dealer_id IS DISTINCT FROM NEW.dealer_id)
+EXECUTE FUNCTION bump_order_version();
+
+-- ========================
+-- ÍNDICES (equivalente a la migración V3__indices.sql)
+-- ========================
+-- Índices espaciales (GiST) sobre las columnas de geometría
+CREATE INDEX ix_clients_ubication ON clients USING GIST (ubication);
+CREATE INDEX ix_dealers_ubication ON dealers USING GIST (ubication);
+CREATE INDEX ix_companies_ubication ON companies USING GIST (ubication);
+CREATE INDEX ix_emergency_report_ubication ON emergency_report USING GIST (ubication);
+
+-- Índices de expresión sobre geography, para las consultas de distancia en metros (ST_DWithin/ST_Distance con ::geography)
+CREATE INDEX ix_clients_ubication_geog ON clients USING GIST ((ubication::geography));
+CREATE INDEX ix_dealers_ubication_geog ON dealers USING GIST ((ubication::geography));
+CREATE INDEX ix_companies_ubication_geog ON companies USING GIST ((ubication::geography));
+
+-- Índices sobre llaves foráneas y filtros frecuentes
+CREATE INDEX ix_orders_client_id ON orders (client_id);
+CREATE INDEX ix_orders_dealer_status ON orders (dealer_id, status);
+CREATE INDEX ix_orders_status ON orders (status);
+CREATE INDEX ix_products_company_id ON products (company_id);
+CREATE INDEX ix_order_products_product_id ON order_products (product_id);
+CREATE INDEX ix_ratings_dealer_id ON ratings (dealer_id);
+CREATE INDEX ix_ratings_client_id ON ratings (client_id);
+CREATE INDEX ix_ratings_order_id ON ratings (order_id);
+CREATE INDEX ix_emergency_report_order_id ON emergency_report (order_id);
+CREATE INDEX ix_emergency_report_dealer_id ON emergency_report (dealer_id);
+CREATE INDEX ix_coverage_area_company_coverage ON coverage_area_company (coverage_id);
+
+-- Índices parciales
+-- Pedidos pendientes sin repartidor (despacho)
+CREATE INDEX ix_orders_pending ON orders (id) WHERE dealer_id IS NULL AND status IN ('PENDIENTE', 'URGENTE');
+
 -- ========================
 -- MENSAJE DE CONFIRMACIÓN
 -- ========================